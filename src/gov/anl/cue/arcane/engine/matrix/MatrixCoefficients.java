@@ -0,0 +1,319 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import org.apache.commons.math3.linear.AbstractRealMatrix;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.SparseRealMatrix;
+
+/**
+ * The MatrixCoefficients class stores a variable's coefficient matrix as
+ * one value for each allowed link, in the row order of the links. Cells
+ * that are not allowed read as Double.NaN. The links are shared between
+ * copies, so copying the coefficients only copies the values, and the
+ * cost grows with the number of links rather than with the square of the
+ * number of nodes.
+ * 
+ * Setting an allowed cell to Double.NaN, or a cell that is not allowed to
+ * a number, replaces the links rather than changing them.
+ */
+public class MatrixCoefficients extends AbstractRealMatrix implements
+		SparseRealMatrix, Serializable {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
+	/** The allowed links. */
+	public MatrixLinks links;
+
+	/** The value of each link, in row order. */
+	public double[] values;
+
+	/**
+	 * Instantiates new coefficients from links and their values.
+	 *
+	 * @param newLinks the links
+	 * @param newValues the values, in the row order of the links
+	 */
+	public MatrixCoefficients(MatrixLinks newLinks, double[] newValues) {
+
+		// Store the links and values.
+		this.links = newLinks;
+		this.values = newValues;
+
+	}
+
+	/**
+	 * Instantiates new coefficients from the allowed cells of another
+	 * coefficient matrix.
+	 *
+	 * @param coefficients the coefficients
+	 */
+	public MatrixCoefficients(RealMatrix coefficients) {
+
+		// Find the links.
+		this.links = new MatrixLinks(coefficients);
+		this.values = new double[this.links.count()];
+
+		// Copy the allowed cells.
+		for (int row = 0; row < this.links.rowCount; row++) {
+			double[] rowValues = coefficients.getRow(row);
+			for (int link = this.links.rowStarts[row];
+					link < this.links.rowStarts[row + 1]; link++) {
+				this.values[link] = rowValues[this.links.rowColumns[link]];
+			}
+		}
+
+	}
+
+	/**
+	 * Finds the index of a cell's value.
+	 *
+	 * @param row the row
+	 * @param column the column
+	 * @return the index, or -1 if the cell is not allowed
+	 */
+	public int indexOf(int row, int column) {
+
+		// Check the cell.
+		int word = row * this.links.rowWords + (column >>> 6);
+		long bit = 1L << column;
+		if ((this.links.mask[word] & bit) == 0) {
+			return -1;
+		}
+
+		// Count the allowed cells before the cell in its row.
+		int index = this.links.rowStarts[row] +
+				Long.bitCount(this.links.mask[word] & (bit - 1));
+		for (int before = row * this.links.rowWords; before < word; before++) {
+			index += Long.bitCount(this.links.mask[before]);
+		}
+
+		// Return the results.
+		return index;
+
+	}
+
+	/**
+	 * Moves the values to new links. Cells that are allowed by both sets
+	 * of links keep their values, and newly allowed cells are set to
+	 * Double.NaN until they are filled in.
+	 *
+	 * @param newLinks the new links
+	 */
+	public void relink(MatrixLinks newLinks) {
+
+		// Check for the same cells.
+		if (this.links.sameAs(newLinks)) {
+			this.links = newLinks;
+			return;
+		}
+
+		// Move the values row by row.
+		double[] newValues = new double[newLinks.count()];
+		for (int row = 0; row < newLinks.rowCount; row++) {
+			int link = this.links.rowStarts[row];
+			int end = this.links.rowStarts[row + 1];
+			for (int newLink = newLinks.rowStarts[row];
+					newLink < newLinks.rowStarts[row + 1]; newLink++) {
+				int column = newLinks.rowColumns[newLink];
+				while ((link < end) && (this.links.rowColumns[link] < column)) {
+					link++;
+				}
+				newValues[newLink] = ((link < end) &&
+						(this.links.rowColumns[link] == column)) ?
+						this.values[link] : Double.NaN;
+			}
+		}
+
+		// Store the results.
+		this.links = newLinks;
+		this.values = newValues;
+
+	}
+
+	/**
+	 * Converts the coefficients to a dense matrix.
+	 *
+	 * @return the dense matrix
+	 */
+	public Array2DRowRealMatrix toDense() {
+
+		// Return the results.
+		return new Array2DRowRealMatrix(this.getData(), false);
+
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.apache.commons.math3.linear.AbstractRealMatrix#getData()
+	 */
+	@Override
+	public double[][] getData() {
+
+		// Fill in the allowed cells.
+		double[][] data = new double[this.links.rowCount][this.links.columnCount];
+		for (int row = 0; row < this.links.rowCount; row++) {
+			Arrays.fill(data[row], Double.NaN);
+			for (int link = this.links.rowStarts[row];
+					link < this.links.rowStarts[row + 1]; link++) {
+				data[row][this.links.rowColumns[link]] = this.values[link];
+			}
+		}
+
+		// Return the results.
+		return data;
+
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.apache.commons.math3.linear.AbstractRealMatrix#getRowDimension()
+	 */
+	@Override
+	public int getRowDimension() {
+
+		// Return the results.
+		return this.links.rowCount;
+
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.apache.commons.math3.linear.AbstractRealMatrix#getColumnDimension()
+	 */
+	@Override
+	public int getColumnDimension() {
+
+		// Return the results.
+		return this.links.columnCount;
+
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.apache.commons.math3.linear.AbstractRealMatrix#createMatrix(int, int)
+	 */
+	@Override
+	public RealMatrix createMatrix(int rowDimension, int columnDimension) {
+
+		// Return the results.
+		return new Array2DRowRealMatrix(rowDimension, columnDimension);
+
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.apache.commons.math3.linear.AbstractRealMatrix#copy()
+	 */
+	@Override
+	public MatrixCoefficients copy() {
+
+		// Return the results.
+		return new MatrixCoefficients(this.links, this.values.clone());
+
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.apache.commons.math3.linear.AbstractRealMatrix#getEntry(int, int)
+	 */
+	@Override
+	public double getEntry(int row, int column) {
+
+		// Find the cell.
+		MatrixUtils.checkMatrixIndex(this, row, column);
+		int index = this.indexOf(row, column);
+
+		// Return the results.
+		return (index < 0) ? Double.NaN : this.values[index];
+
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.apache.commons.math3.linear.AbstractRealMatrix#setEntry(int, int, double)
+	 */
+	@Override
+	public void setEntry(int row, int column, double value) {
+
+		// Check for a change to an allowed cell.
+		MatrixUtils.checkMatrixIndex(this, row, column);
+		int index = this.indexOf(row, column);
+		if ((index >= 0) && !Double.isNaN(value)) {
+			this.values[index] = value;
+			return;
+		}
+
+		// Check for a cell that stays not allowed.
+		if ((index < 0) && Double.isNaN(value)) {
+			return;
+		}
+
+		// Replace the links.
+		long[] newMask = this.links.mask.clone();
+		newMask[row * this.links.rowWords + (column >>> 6)] ^= 1L << column;
+		this.relink(new MatrixLinks(this.links.rowCount,
+				this.links.columnCount, newMask));
+		if (index < 0) {
+			this.values[this.indexOf(row, column)] = value;
+		}
+
+	}
+
+}
@@ -53,7 +53,17 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.math3.random.RandomDataGenerator;
@@ -128,6 +138,473 @@ public class MatrixEngine implements Serializable {
 	/** The random generator. */
 	public transient RandomDataGenerator RANDOM_GENERATOR = null;
 	
+	/**
+	 * The on-disk formulation flag. Formulations are normally compiled
+	 * and loaded in memory. Setting this flag writes each formulation's
+	 * source and class files to the temporary directory for debugging.
+	 */
+	public transient boolean diskFormulation = false;
+	
+	/**
+	 * The Enum FORMULATION_BACKEND.
+	 */
+	public static enum FORMULATION_BACKEND {
+		
+		/** The javac backend, which compiles generated Java source. */
+		JAVAC,
+		
+		/**
+		 * The bytecode backend, which emits formulation classes directly
+		 * and falls back to javac for equations that it does not support.
+		 */
+		BYTECODE,
+		
+		/**
+		 * The interpreter backend, which evaluates formulations without
+		 * generating code and falls back to javac for equations that it
+		 * does not support.
+		 */
+		INTERPRETER,
+		
+		/**
+		 * The tiered backend, which interprets cheap runs and compiles
+		 * expensive or frequently used formulations to bytecode.
+		 */
+		TIERED
+		
+	}
+	
+	/** The formulation backend, which defaults to BYTECODE. */
+	public transient FORMULATION_BACKEND formulationBackend = null;
+	
+	/**
+	 * Gets the formulation backend.
+	 *
+	 * @return the formulation backend
+	 */
+	@Transient
+	public FORMULATION_BACKEND getFormulationBackend() {
+	
+		// Return the requested backend or the default.
+		return (this.formulationBackend == null) ?
+				FORMULATION_BACKEND.BYTECODE : this.formulationBackend;
+		
+	}
+	
+	/**
+	 * The Enum FORMULATION_SHAPE.
+	 */
+	public static enum FORMULATION_SHAPE {
+		
+		/** One field per variable and node, with unrolled equations. */
+		NODE_FIELDS,
+		
+		/**
+		 * Arrays indexed by variable and node, with one loop per distinct
+		 * equation. These formulations are compiled with javac, and
+		 * models that cannot use them fall back to node fields.
+		 */
+		NODE_ARRAYS
+		
+	}
+	
+	/** The formulation code shape, which defaults to NODE_FIELDS. */
+	public transient FORMULATION_SHAPE formulationShape = null;
+	
+	/**
+	 * Gets the formulation shape.
+	 *
+	 * @return the formulation shape
+	 */
+	@Transient
+	public FORMULATION_SHAPE getFormulationShape() {
+	
+		// Return the requested shape or the default.
+		return (this.formulationShape == null) ?
+				FORMULATION_SHAPE.NODE_FIELDS : this.formulationShape;
+		
+	}
+	
+	/**
+	 * The tiered backend's compile threshold in interpreted instructions,
+	 * where zero selects MatrixFormulationTiering.DEFAULT_COMPILE_THRESHOLD.
+	 */
+	public transient long tieredCompileThreshold = 0;
+	
+	/**
+	 * Gets the tiered backend's compile threshold.
+	 *
+	 * @return the compile threshold
+	 */
+	@Transient
+	public long getTieredCompileThreshold() {
+	
+		// Return the requested threshold or the default.
+		return (this.tieredCompileThreshold <= 0) ?
+				MatrixFormulationTiering.DEFAULT_COMPILE_THRESHOLD :
+				this.tieredCompileThreshold;
+		
+	}
+	
+	/**
+	 * The Enum MUTATION_SAMPLING.
+	 */
+	public static enum MUTATION_SAMPLING {
+		
+		/** One random draw for each allowed cell and each equation. */
+		CELLS,
+		
+		/**
+		 * Random geometric gaps that jump directly to the next mutated
+		 * cell or equation. The mutations have the same distribution as
+		 * CELLS, but far fewer random numbers are drawn when the mutation
+		 * probability is low. The random sequence differs from CELLS, so
+		 * runs are not repeatable across the two methods.
+		 */
+		SKIP
+		
+	}
+	
+	/** The mutation sampling method, which defaults to CELLS. */
+	public transient MUTATION_SAMPLING mutationSampling = null;
+	
+	/**
+	 * Gets the mutation sampling method.
+	 *
+	 * @return the mutation sampling method
+	 */
+	@Transient
+	public MUTATION_SAMPLING getMutationSampling() {
+	
+		// Return the requested method or the default.
+		return (this.mutationSampling == null) ?
+				MUTATION_SAMPLING.CELLS : this.mutationSampling;
+		
+	}
+	
+	/**
+	 * The Enum MODEL_COPYING.
+	 */
+	public static enum MODEL_COPYING {
+		
+		/** Each copied matrix model gets its own copy of every variable. */
+		FULL,
+		
+		/**
+		 * Copied matrix models share their variables with the original
+		 * until mutation, crossover, or normalization changes them, and
+		 * only the changed variables are copied. The results match FULL,
+		 * but written populations refer to shared variables rather than
+		 * repeating them.
+		 */
+		ON_WRITE
+		
+	}
+	
+	/** The matrix model copying method, which defaults to FULL. */
+	public transient MODEL_COPYING modelCopying = null;
+	
+	/**
+	 * Gets the matrix model copying method.
+	 *
+	 * @return the matrix model copying method
+	 */
+	@Transient
+	public MODEL_COPYING getModelCopying() {
+	
+		// Return the requested method or the default.
+		return (this.modelCopying == null) ?
+				MODEL_COPYING.FULL : this.modelCopying;
+		
+	}
+	
+	/**
+	 * The number of islands. When there is more than one, evolve() splits
+	 * the population into islands that evolve on their own threads and
+	 * exchange their best matrix models. Zero, the default, evolves one
+	 * population.
+	 */
+	public transient int islandCount = 0;
+	
+	/**
+	 * The number of generations between migrations, which defaults to
+	 * MatrixIslands.DEFAULT_MIGRATION_INTERVAL.
+	 */
+	public transient int migrationInterval = 0;
+	
+	/**
+	 * Gets the number of generations between migrations.
+	 *
+	 * @return the migration interval
+	 */
+	@Transient
+	public int getMigrationInterval() {
+	
+		// Return the requested interval or the default.
+		return (this.migrationInterval <= 0) ?
+				MatrixIslands.DEFAULT_MIGRATION_INTERVAL :
+				this.migrationInterval;
+		
+	}
+	
+	/**
+	 * The number of matrix models each island sends to each neighbor in a
+	 * migration, which defaults to MatrixIslands.DEFAULT_MIGRATION_SIZE.
+	 */
+	public transient int migrationSize = 0;
+	
+	/**
+	 * Gets the number of matrix models sent in a migration.
+	 *
+	 * @return the migration size
+	 */
+	@Transient
+	public int getMigrationSize() {
+	
+		// Return the requested size or the default.
+		return (this.migrationSize <= 0) ?
+				MatrixIslands.DEFAULT_MIGRATION_SIZE : this.migrationSize;
+		
+	}
+	
+	/**
+	 * The Enum ISLAND_TOPOLOGY.
+	 */
+	public static enum ISLAND_TOPOLOGY {
+		
+		/** Each island sends to the next island in a ring. */
+		RING,
+		
+		/** Each island sends to every other island. */
+		COMPLETE,
+		
+		/** Each island sends to another island chosen at random. */
+		RANDOM
+		
+	}
+	
+	/** The island topology, which defaults to RING. */
+	public transient ISLAND_TOPOLOGY islandTopology = null;
+	
+	/**
+	 * Gets the island topology.
+	 *
+	 * @return the island topology
+	 */
+	@Transient
+	public ISLAND_TOPOLOGY getIslandTopology() {
+	
+		// Return the requested topology or the default.
+		return (this.islandTopology == null) ?
+				ISLAND_TOPOLOGY.RING : this.islandTopology;
+		
+	}
+	
+	/**
+	 * The Enum EVOLUTION_MODE.
+	 */
+	public static enum EVOLUTION_MODE {
+		
+		/**
+		 * Each step removes the less competitive half of the population
+		 * and then refills it, waiting for every new matrix model.
+		 */
+		GENERATIONAL,
+		
+		/**
+		 * Worker threads breed, evaluate, and insert new matrix models
+		 * one at a time, each removing the least competitive model, with
+		 * no wait between generations. Each step is as many new matrix
+		 * models as a generational step. With islands, each island
+		 * evolves this way with its own worker threads between
+		 * migrations. Runs with more than one thread are not repeatable.
+		 */
+		STEADY_STATE
+		
+	}
+	
+	/** The evolution mode, which defaults to GENERATIONAL. */
+	public transient EVOLUTION_MODE evolutionMode = null;
+	
+	/**
+	 * Gets the evolution mode.
+	 *
+	 * @return the evolution mode
+	 */
+	@Transient
+	public EVOLUTION_MODE getEvolutionMode() {
+	
+		// Return the requested mode or the default.
+		return (this.evolutionMode == null) ?
+				EVOLUTION_MODE.GENERATIONAL : this.evolutionMode;
+		
+	}
+	
+	/**
+	 * The number of steady state worker threads, which defaults to the
+	 * number of available processors. With an evaluation farm, this is
+	 * the number of matrix models evaluated at once, so it should be at
+	 * least the farm's capacity.
+	 */
+	public transient int steadyStateThreads = 0;
+	
+	/**
+	 * Gets the number of steady state worker threads.
+	 *
+	 * @return the number of threads
+	 */
+	@Transient
+	public int getSteadyStateThreads() {
+	
+		// Return the requested number or the default.
+		return (this.steadyStateThreads <= 0) ?
+				Runtime.getRuntime().availableProcessors() :
+				this.steadyStateThreads;
+		
+	}
+	
+	/**
+	 * The number of threads used to breed and evaluate new matrix models.
+	 * Zero, the default, or one breeds and evaluates them on the calling
+	 * thread. Every setting uses the same fill algorithm, so the results
+	 * do not depend on this value.
+	 */
+	public transient int evaluationThreads = 0;
+	
+	/**
+	 * The executor used to evaluate new matrix models. This can be any
+	 * executor, such as a ForkJoinPool or a virtual thread executor. If it
+	 * is null and evaluationThreads is more than one, a ForkJoinPool with
+	 * that parallelism is created.
+	 */
+	public transient ExecutorService evaluationExecutor = null;
+	
+	/**
+	 * Gets the evaluation executor.
+	 *
+	 * @return the evaluation executor, or null for serial evaluation
+	 */
+	@Transient
+	public synchronized ExecutorService getEvaluationExecutor() {
+	
+		// Make sure the executor is initialized, if requested.
+		if ((this.evaluationExecutor == null) && (this.evaluationThreads > 1)) {
+			this.evaluationExecutor = new ForkJoinPool(this.evaluationThreads);
+		}
+		
+		// Return the executor.
+		return this.evaluationExecutor;
+		
+	}
+	
+	/**
+	 * The farm used to evaluate new matrix models on worker processes.
+	 * If it is set, new matrix models are bred as they are for
+	 * concurrent evaluation and then sent to the farm.
+	 */
+	public transient MatrixEvaluationFarm evaluationFarm = null;
+	
+	/** The cache of compiled formulation classes. */
+	public transient MatrixFormulationCache formulationCache = null;
+	
+	/**
+	 * Gets the formulation cache.
+	 *
+	 * @return the formulation cache
+	 */
+	@Transient
+	public synchronized MatrixFormulationCache getFormulationCache() {
+	
+		// Make sure the cache is initialized.
+		if (this.formulationCache == null) {
+			this.formulationCache = new MatrixFormulationCache();
+		}
+		
+		// Return the cache.
+		return this.formulationCache;
+		
+	}
+	
+	/**
+	 * The directory for the persistent store of compiled formulation
+	 * bytecode, which lets later runs skip compilation. Null, the default,
+	 * disables the store.
+	 */
+	public transient String formulationStoreDirectory = null;
+	
+	/** The persistent store of compiled formulation bytecode. */
+	public transient MatrixFormulationStore formulationStore = null;
+	
+	/**
+	 * Gets the formulation store.
+	 *
+	 * @return the formulation store, or null if it is disabled
+	 */
+	@Transient
+	public synchronized MatrixFormulationStore getFormulationStore() {
+	
+		// Check for a directory.
+		if (this.formulationStoreDirectory == null) {
+			return null;
+		}
+		
+		// Make sure the store matches the directory and backend.
+		File directory = new File(this.formulationStoreDirectory);
+		String fingerprint = MatrixFormulationStore.fingerprint(
+				this.getFormulationBackend().name());
+		if ((this.formulationStore == null) ||
+				!this.formulationStore.directory.equals(directory) ||
+				!this.formulationStore.fingerprint.equals(fingerprint)) {
+			this.formulationStore = new MatrixFormulationStore(directory,
+					this.getFormulationBackend().name());
+		}
+		
+		// Return the store.
+		return this.formulationStore;
+		
+	}
+	
+	/** The manager for the lifetime of formulation classes. */
+	public transient MatrixFormulationLifetime formulationLifetime = null;
+	
+	/**
+	 * Gets the formulation lifetime manager.
+	 *
+	 * @return the formulation lifetime manager
+	 */
+	@Transient
+	public synchronized MatrixFormulationLifetime getFormulationLifetime() {
+	
+		// Make sure the manager is initialized.
+		if (this.formulationLifetime == null) {
+			this.formulationLifetime = new MatrixFormulationLifetime();
+		}
+		
+		// Return the manager.
+		return this.formulationLifetime;
+		
+	}
+	
+	/** The tiered backend's choice between interpreting and compiling. */
+	public transient MatrixFormulationTiering formulationTiering = null;
+	
+	/**
+	 * Gets the formulation tiering.
+	 *
+	 * @return the formulation tiering
+	 */
+	@Transient
+	public synchronized MatrixFormulationTiering getFormulationTiering() {
+	
+		// Make sure the tiering is initialized.
+		if (this.formulationTiering == null) {
+			this.formulationTiering = new MatrixFormulationTiering();
+		}
+		
+		// Return the tiering.
+		return this.formulationTiering;
+		
+	}
 	
 	/**
 	 * Gets the random number generator.
@@ -148,6 +625,87 @@ public class MatrixEngine implements Serializable {
 		
 	}
 
+	/**
+	 * The Enum RANDOM_SOURCE.
+	 */
+	public static enum RANDOM_SOURCE {
+		
+		/** The commons-math generator, which repeats earlier results. */
+		COMMONS,
+		
+		/** A java.util.SplittableRandom generator, which is faster. */
+		SPLITTABLE
+		
+	}
+	
+	/** The random number source, which defaults to COMMONS. */
+	public transient RANDOM_SOURCE randomSource = null;
+	
+	/** The shared random stream. */
+	public transient MatrixRandom random = null;
+	
+	/**
+	 * The random stream for the current thread, if any. Work spread
+	 * across threads sets this to a stream split from the shared stream.
+	 */
+	public transient ThreadLocal<MatrixRandom> threadRandom = null;
+	
+	/**
+	 * Gets the random stream. This is the current thread's stream, if it
+	 * has one, and otherwise the shared stream.
+	 *
+	 * @return the random stream
+	 */
+	@Transient
+	public MatrixRandom getRandom() {
+	
+		// Check for a stream for the current thread.
+		ThreadLocal<MatrixRandom> currentThreadRandom = this.threadRandom;
+		if (currentThreadRandom != null) {
+			MatrixRandom currentRandom = currentThreadRandom.get();
+			if (currentRandom != null) {
+				return currentRandom;
+			}
+		}
+		
+		// Make sure the shared stream is initialized.
+		if (this.random == null) {
+			if (this.randomSource == RANDOM_SOURCE.SPLITTABLE) {
+				this.random = new MatrixRandom.Splittable(this.randomSeed);
+			} else {
+				this.random = new MatrixRandom.Commons(
+						this.getRandomNumberGenerator());
+			}
+		}
+		
+		// Return the shared stream.
+		return this.random;
+		
+	}
+	
+	/**
+	 * Sets the random stream for the current thread.
+	 *
+	 * @param newRandom the stream, or null to use the shared stream
+	 */
+	public void setThreadRandom(MatrixRandom newRandom) {
+	
+		// Make sure the streams are initialized.
+		synchronized (this) {
+			if (this.threadRandom == null) {
+				this.threadRandom = new ThreadLocal<MatrixRandom>();
+			}
+		}
+		
+		// Note the stream.
+		if (newRandom == null) {
+			this.threadRandom.remove();
+		} else {
+			this.threadRandom.set(newRandom);
+		}
+		
+	}
+	
 	/**
 	 * Gets the random number from to.
 	 *
@@ -168,7 +726,7 @@ public class MatrixEngine implements Serializable {
 		} else {
 
 			// Return the requested random number.
-			return this.getRandomNumberGenerator().nextUniform(from, to);
+			return this.getRandom().nextUniform(from, to);
 			
 		}
 
@@ -591,6 +1149,146 @@ public class MatrixEngine implements Serializable {
 		
 	}
 	
+	/**
+	 * The Settings class holds the transient engine settings that are
+	 * carried to copies of an engine, including copies in other processes.
+	 * Its fields are not transient, so it can be written with the engine's
+	 * matrix models.
+	 */
+	public static class Settings {
+		
+		/** The on-disk formulation flag. */
+		public boolean diskFormulation = false;
+		
+		/** The formulation backend. */
+		public FORMULATION_BACKEND formulationBackend = null;
+		
+		/** The formulation shape. */
+		public FORMULATION_SHAPE formulationShape = null;
+		
+		/** The tiered compilation threshold. */
+		public long tieredCompileThreshold = 0;
+		
+		/** The formulation store directory. */
+		public String formulationStoreDirectory = null;
+		
+		/** The mutation sampling method. */
+		public MUTATION_SAMPLING mutationSampling = null;
+		
+		/** The matrix model copying method. */
+		public MODEL_COPYING modelCopying = null;
+		
+		/** The random number source. */
+		public RANDOM_SOURCE randomSource = null;
+		
+		/** The number of generations between migrations. */
+		public int migrationInterval = 0;
+		
+		/** The number of matrix models sent in a migration. */
+		public int migrationSize = 0;
+		
+		/** The island topology. */
+		public ISLAND_TOPOLOGY islandTopology = null;
+		
+		/** The evolution mode. */
+		public EVOLUTION_MODE evolutionMode = null;
+		
+		/** The number of steady state worker threads. */
+		public int steadyStateThreads = 0;
+		
+	}
+	
+	/**
+	 * Gets the settings that are carried to copies of this engine.
+	 *
+	 * @return the settings
+	 */
+	@Transient
+	public Settings getSettings() {
+		
+		// Note the settings.
+		Settings settings = new Settings();
+		settings.diskFormulation = this.diskFormulation;
+		settings.formulationBackend = this.formulationBackend;
+		settings.formulationShape = this.formulationShape;
+		settings.tieredCompileThreshold = this.tieredCompileThreshold;
+		settings.formulationStoreDirectory = this.formulationStoreDirectory;
+		settings.mutationSampling = this.mutationSampling;
+		settings.modelCopying = this.modelCopying;
+		settings.randomSource = this.randomSource;
+		settings.migrationInterval = this.migrationInterval;
+		settings.migrationSize = this.migrationSize;
+		settings.islandTopology = this.islandTopology;
+		settings.evolutionMode = this.evolutionMode;
+		settings.steadyStateThreads = this.steadyStateThreads;
+		
+		// Return the results.
+		return settings;
+		
+	}
+	
+	/**
+	 * Sets the settings that are carried to copies of an engine.
+	 *
+	 * @param settings the settings
+	 */
+	public void setSettings(Settings settings) {
+		
+		// Restore the settings.
+		this.diskFormulation = settings.diskFormulation;
+		this.formulationBackend = settings.formulationBackend;
+		this.formulationShape = settings.formulationShape;
+		this.tieredCompileThreshold = settings.tieredCompileThreshold;
+		this.formulationStoreDirectory = settings.formulationStoreDirectory;
+		this.mutationSampling = settings.mutationSampling;
+		this.modelCopying = settings.modelCopying;
+		this.randomSource = settings.randomSource;
+		this.migrationInterval = settings.migrationInterval;
+		this.migrationSize = settings.migrationSize;
+		this.islandTopology = settings.islandTopology;
+		this.evolutionMode = settings.evolutionMode;
+		this.steadyStateThreads = settings.steadyStateThreads;
+		
+	}
+	
+	/**
+	 * Copy settings. This creates an engine with the same parameters and
+	 * settings as this one, with empty populations and its own random
+	 * stream. The formulation cache, store, lifetime manager, and tiering
+	 * are shared, since they are thread safe.
+	 *
+	 * @return the new matrix engine
+	 */
+	public MatrixEngine copySettings() {
+		
+		// Copy the parameters.
+		MatrixEngine matrixEngine = new MatrixEngine();
+		matrixEngine.mutationProbabilityForCells = this.mutationProbabilityForCells;
+		matrixEngine.killFraction = this.killFraction;
+		matrixEngine.crossoverProbability = this.crossoverProbability;
+		matrixEngine.populationSize = this.populationSize;
+		matrixEngine.randomSeed = this.randomSeed;
+		matrixEngine.maximumNewTermCount = this.maximumNewTermCount;
+		matrixEngine.additionProbability = this.additionProbability;
+		matrixEngine.subtractionProbability = this.subtractionProbability;
+		matrixEngine.multiplicationProbability = this.multiplicationProbability;
+		matrixEngine.accumulateAddProbability = this.accumulateAddProbability;
+		matrixEngine.accumulateSubtractProbability = this.accumulateSubtractProbability;
+		
+		// Copy the settings.
+		matrixEngine.setSettings(this.getSettings());
+		
+		// Share the formulation support.
+		matrixEngine.formulationCache = this.getFormulationCache();
+		matrixEngine.formulationStore = this.getFormulationStore();
+		matrixEngine.formulationLifetime = this.getFormulationLifetime();
+		matrixEngine.formulationTiering = this.getFormulationTiering();
+		
+		// Return the results.
+		return matrixEngine;
+		
+	}
+	
 	/**
 	 * Stochastic run.
 	 *
@@ -663,16 +1361,15 @@ public class MatrixEngine implements Serializable {
 	public void reset() {
 		
 		// Reset the output population.
-		this.outputPopulation = Util.deepCopy(
-			this.inputPopulation);
-		for (MatrixModel matrixModel : this.outputPopulation) {
-			matrixModel.matrixEngine = this;
-		}
+		this.outputPopulation = this.inputPopulation.copy(this);
 		
 		// Reset the random seed, if needed.
 		if (this.RANDOM_GENERATOR != null) {
 			this.RANDOM_GENERATOR.reSeed(randomSeed);
 		}
+		if (this.random != null) {
+			this.random.reSeed(randomSeed);
+		}
 		
 	}
 		
@@ -686,6 +1383,19 @@ public class MatrixEngine implements Serializable {
 		// Make sure the population is the expected size.
 		this.fill();
 		
+		// Check for islands.
+		if ((this.islandCount > 1) && (steps > 0)) {
+			new MatrixIslands(this).evolve(steps);
+			return;
+		}
+		
+		// Check for steady state evolution.
+		if ((this.getEvolutionMode() == EVOLUTION_MODE.STEADY_STATE) &&
+				(steps > 0)) {
+			new MatrixSteadyState(this).evolve(steps);
+			return;
+		}
+		
 		// Complete the needed evolutionary steps.
 		for (int step = 1; step <= steps; step++) {
 			
@@ -710,49 +1420,392 @@ public class MatrixEngine implements Serializable {
 		// Check for a population.
 		if (competitiveSegment <= 0) return;
 
-		// Add new matrix models. Please note that the population
-		// is sorted in descending fitness value order.
+		// Breed, evaluate, and then merge the new matrix models.
+		this.fillConcurrently(competitiveSegment);
+		
+		// Release unused formulation classes, if needed.
+		this.getFormulationLifetime().check();
+	
+	}
+
+	/**
+	 * Fill concurrently. This is the only fill algorithm, so serial and
+	 * concurrent runs with the same seed give the same results. All of
+	 * the new matrix models are bred from the current population before
+	 * any of them are evaluated, so parents are always chosen from the
+	 * competitive segment that existed when the fill started. Each new
+	 * matrix model is bred with its own random stream, split in order
+	 * from the shared stream, so the results do not depend on the number
+	 * of threads. Without an executor or a farm, the breeding and the
+	 * evaluation simply run on the calling thread.
+	 *
+	 * @param competitiveSegment the competitive segment
+	 */
+	public void fillConcurrently(int competitiveSegment) {
+		
+		// Split a random stream for each new matrix model.
+		List<MatrixRandom> streams = new ArrayList<MatrixRandom>();
 		for (int newMatrixModelCount = this.outputPopulation.size();
 				newMatrixModelCount < this.populationSize;
 				newMatrixModelCount++) {
+			streams.add(this.getRandom().split());
+		}
+		
+		// Breed the new matrix models.
+		List<MatrixModel> newMatrixModels = this.breed(competitiveSegment,
+				streams);
+		
+		// Evaluate the new matrix models.
+		this.evaluate(newMatrixModels);
+		
+		// Merge the new matrix models into the population.
+		this.outputPopulation.addAll(newMatrixModels);
+		
+	}
+	
+	/**
+	 * Breed a new matrix model from the competitive segment.
+	 *
+	 * @param competitiveSegment the competitive segment
+	 * @return the new matrix model
+	 */
+	public MatrixModel breed(int competitiveSegment) {
+		
+		// Breed from the output population.
+		return this.breed(this.chooseParents(this.outputPopulation,
+				competitiveSegment));
+		
+	}
+	
+	/**
+	 * Choose parents from the competitive segment of the given matrix
+	 * models. One parent is chosen for mutation and two for crossover.
+	 *
+	 * @param matrixModels the matrix models, in descending fitness value
+	 *            order
+	 * @param competitiveSegment the competitive segment
+	 * @return the parents
+	 */
+	public List<MatrixModel> chooseParents(List<MatrixModel> matrixModels,
+			int competitiveSegment) {
+		
+		// Choose one or two parents.
+		List<MatrixModel> parents = new ArrayList<MatrixModel>(2);
+		if (this.getRandomNumberFromTo(0.0, 1.0)
+				<= this.crossoverProbability) {
+			parents.add(matrixModels.get((int)
+					this.getRandomNumberFromTo(0, competitiveSegment)));
+		}
+		parents.add(matrixModels.get((int)
+				this.getRandomNumberFromTo(0, competitiveSegment)));
+		
+		// Return the results.
+		return parents;
+		
+	}
+	
+	/**
+	 * Breed a new matrix model from the given parents, by crossover if
+	 * there are two and by mutation if there is one.
+	 *
+	 * @param parents the parents
+	 * @return the new matrix model
+	 */
+	public MatrixModel breed(List<MatrixModel> parents) {
+		
+		// Create a new matrix model, one way or another.
+		MatrixModel newMatrixModel = null;
+		if (parents.size() > 1) {
+			
+			// Crossover.
+			newMatrixModel = parents.get(0).crossOver(parents.get(1));
 			
-			// Create a new matrix model, one way or another.
-			MatrixModel newMatrixModel = null;
-			if (this.getRandomNumberFromTo(0.0, 1.0)
-					<= this.crossoverProbability) {
+		} else {
+			
+			// Copy.
+			newMatrixModel = parents.get(0).copy();
+			
+			// Mutate.
+			newMatrixModel.mutate();
+			
+		}
+		
+		// Return the results.
+		return newMatrixModel;
+		
+	}
+
+	/**
+	 * Formulate a batch of matrix models. With the javac backend, the
+	 * formulations for all of the given models that are not already
+	 * cached are compiled in a single compiler task, each under its own
+	 * class name, and loaded through one class loader. The models then
+	 * reuse these classes when they are evaluated. Other backends build
+	 * each formulation quickly enough that the models are formulated
+	 * individually.
+	 *
+	 * @param matrixModels the matrix models
+	 */
+	public void formulate(List<MatrixModel> matrixModels) {
+		
+		// Check for the javac backend with node fields.
+		if ((this.getFormulationBackend() != FORMULATION_BACKEND.JAVAC) ||
+				(this.getFormulationShape() != FORMULATION_SHAPE.NODE_FIELDS) ||
+				this.diskFormulation) {
+			return;
+		}
+		
+		// Find the formulations that need to be compiled.
+		MatrixFormulationCache formulationCache = this.getFormulationCache();
+		MatrixFormulationStore formulationStore = this.getFormulationStore();
+		Map<String, List<MatrixModel>> pending =
+				new LinkedHashMap<String, List<MatrixModel>>();
+		for (MatrixModel matrixModel : matrixModels) {
+			
+			// Skip models that do not need a formulation.
+			if ((matrixModel.fitnessValue != null) ||
+					(matrixModel.fitnessFunctionType !=
+					MatrixModel.FITNESS_FUNCTION_TYPE.USER_EQUATION)) {
+				continue;
+			}
+			
+			// Skip models whose current formulation is still valid.
+			String source = matrixModel.formulateSource(
+					MatrixModel.CONCRETE_CLASS_NAME);
+			if ((matrixModel.formulationClass != null) &&
+					source.equals(matrixModel.formulationSource)) {
+				continue;
+			}
+			
+			// Note models that share a formulation.
+			List<MatrixModel> sharing = pending.get(source);
+			if (sharing != null) {
+				sharing.add(matrixModel);
+				continue;
+			}
+			
+			// Reuse cached formulations.
+			MatrixFormulationCache.MatrixFormulationCacheEntry entry =
+					formulationCache.getEntry(source);
+			if (entry != null) {
+				matrixModel.formulationClass = entry.formulationClass;
+				matrixModel.formulationCode = entry.formulationCode;
+				matrixModel.formulationSource = source;
+				continue;
+			}
+			
+			// Reuse stored formulations.
+			if (formulationStore != null) {
+				Class<? extends MatrixFormulationAbstract> formulationClass =
+						formulationStore.load(formulationStore.key(source));
+				if (formulationClass != null) {
+					formulationCache.put(source, formulationClass);
+					matrixModel.formulationClass = formulationClass;
+					matrixModel.formulationCode = null;
+					matrixModel.formulationSource = source;
+					continue;
+				}
+			}
+			
+			// Note the new formulation.
+			sharing = new ArrayList<MatrixModel>();
+			sharing.add(matrixModel);
+			pending.put(source, sharing);
+			
+		}
+		
+		// Check for new formulations.
+		if (pending.isEmpty()) {
+			return;
+		}
+		
+		// Name and collect the new formulations.
+		Map<String, String> classNames = new HashMap<String, String>();
+		Map<String, String> sources = new HashMap<String, String>();
+		for (Map.Entry<String, List<MatrixModel>> entry : pending.entrySet()) {
+			String className = MatrixModel.PACKAGE_NAME + "." +
+					MatrixModel.nextFormulationClassName();
+			if (formulationStore != null) {
+				className = formulationStore.className(
+						formulationStore.key(entry.getKey()));
+			}
+			classNames.put(entry.getKey(), className);
+			sources.put(className, entry.getValue().get(0).formulateSource(
+					className.substring(className.lastIndexOf('.') + 1)));
+		}
+		
+		// Compile the new formulations together.
+		try {
+			
+			// Load the results through one class loader.
+			MatrixFormulationClassLoader classLoader =
+					new MatrixFormulationClassLoader(
+					MatrixFormulationCompiler.compileBatch(sources));
+			
+			// Assign the results.
+			for (Map.Entry<String, List<MatrixModel>> entry :
+					pending.entrySet()) {
 				
-				// Choose parents.
-				MatrixModel parentMatrixModel1 = this.outputPopulation.get((int)
-						this.getRandomNumberFromTo(0,
-						competitiveSegment));
-				MatrixModel parentMatrixModel2 = this.outputPopulation.get((int)
-						this.getRandomNumberFromTo(0,
-						competitiveSegment));
-
-				// Crossover.
-				newMatrixModel = parentMatrixModel1
-						.crossOver(parentMatrixModel2);
+				// Skip formulations that did not compile, which are left
+				// to be formulated and reported individually.
+				String className = classNames.get(entry.getKey());
+				if (!classLoader.bytecodes.containsKey(className)) {
+					continue;
+				}
 				
-			} else {
+				// Store the results.
+				Class<? extends MatrixFormulationAbstract> formulationClass =
+						classLoader.loadFormulation(className);
+				formulationCache.put(entry.getKey(), formulationClass);
+				if (formulationStore != null) {
+					formulationStore.write(formulationStore.key(
+							entry.getKey()), classLoader.bytecodes.get(
+							className));
+				}
+				for (MatrixModel matrixModel : entry.getValue()) {
+					matrixModel.formulationClass = formulationClass;
+					matrixModel.formulationCode = null;
+					matrixModel.formulationSource = entry.getKey();
+				}
 				
-				// Choose a parent.
-				MatrixModel parentMatrixModel = this.outputPopulation.get((int)
-						this.getRandomNumberFromTo(0,
-						competitiveSegment));
+			}
+			
+		// Leave the models to be formulated individually.
+		} catch (Exception e) {
+		}
+		
+	}
 
-				// Copy.
-				newMatrixModel = parentMatrixModel.copy();
+	/**
+	 * Breed one new matrix model for each of the given random streams,
+	 * concurrently if there is an executor.
+	 *
+	 * @param competitiveSegment the competitive segment
+	 * @param streams the random streams
+	 * @return the new matrix models
+	 */
+	public List<MatrixModel> breed(final int competitiveSegment,
+			List<MatrixRandom> streams) {
+		
+		// Prepare the results storage.
+		List<MatrixModel> newMatrixModels = new ArrayList<MatrixModel>();
+		
+		// Submit the breeding.
+		ExecutorService executor = this.getEvaluationExecutor();
+		List<Future<MatrixModel>> futures = new ArrayList<Future<MatrixModel>>();
+		for (final MatrixRandom stream : streams) {
+			if (executor == null) {
+				newMatrixModels.add(this.breed(competitiveSegment, stream));
+			} else {
+				futures.add(executor.submit(new Callable<MatrixModel>() {
+					public MatrixModel call() {
+						return MatrixEngine.this.breed(competitiveSegment,
+								stream);
+					}
+				}));
+			}
+		}
+		
+		// Collect the new matrix models in order.
+		for (Future<MatrixModel> future : futures) {
+			try {
+				newMatrixModels.add(future.get());
 				
-				// Mutate.
-				newMatrixModel.mutate();
+			// Stop waiting if interrupted.
+			} catch (InterruptedException e) {
+				for (Future<MatrixModel> remaining : futures) {
+					remaining.cancel(false);
+				}
+				Thread.currentThread().interrupt();
+				break;
 				
+			// Note unexpected errors.
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
 			}
+		}
+		
+		// Return the results.
+		return newMatrixModels;
+		
+	}
+
+	/**
+	 * Breed a new matrix model using the given random stream.
+	 *
+	 * @param competitiveSegment the competitive segment
+	 * @param stream the random stream
+	 * @return the new matrix model
+	 */
+	public MatrixModel breed(int competitiveSegment, MatrixRandom stream) {
+		
+		// Breed with the given stream on the current thread.
+		this.setThreadRandom(stream);
+		try {
+			return this.breed(competitiveSegment);
+		} finally {
+			this.setThreadRandom(null);
+		}
+		
+	}
+
+	/**
+	 * Evaluate the fitness of the given matrix models concurrently.
+	 *
+	 * @param matrixModels the matrix models
+	 */
+	public void evaluate(List<MatrixModel> matrixModels) {
+		
+		// Check for a farm.
+		if (this.evaluationFarm != null) {
+			this.evaluationFarm.evaluate(matrixModels);
+			return;
+		}
+		
+		// Prepare the formulations together, where that helps.
+		this.formulate(matrixModels);
+		
+		// Check for an executor.
+		ExecutorService executor = this.getEvaluationExecutor();
+		if (executor == null) {
 			
-			// Add the new matrix model.
-			this.outputPopulation.add(newMatrixModel);
+			// Evaluate the matrix models serially.
+			for (MatrixModel matrixModel : matrixModels) {
+				matrixModel.getFitnessValue();
+			}
+			return;
 			
 		}
-	
+		
+		// Submit the evaluations.
+		List<Future<Double>> futures = new ArrayList<Future<Double>>();
+		for (final MatrixModel matrixModel : matrixModels) {
+			futures.add(executor.submit(new Callable<Double>() {
+				public Double call() {
+					return matrixModel.getFitnessValue();
+				}
+			}));
+		}
+		
+		// Wait for the evaluations to finish.
+		for (Future<Double> future : futures) {
+			try {
+				future.get();
+				
+			// Stop waiting if interrupted.
+			} catch (InterruptedException e) {
+				for (Future<Double> remaining : futures) {
+					remaining.cancel(false);
+				}
+				Thread.currentThread().interrupt();
+				return;
+				
+			// Note unexpected errors.
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+		
 	}
 
 	/**
@@ -762,13 +1815,8 @@ public class MatrixEngine implements Serializable {
 		
 		// Remove less competitive matrix models. Please note that the
 		// population is sorted in descending fitness value order.
-		for (int targetPopulation = (int) Math.round(this.outputPopulation.size() / 2.0);
-				targetPopulation > 0; targetPopulation--) {
-
-			// Remove the least competitive matrix model.
-			this.outputPopulation.remove(this.outputPopulation.size() - 1);
-			
-		}
+		this.outputPopulation.truncate(this.outputPopulation.size() -
+				(int) Math.round(this.outputPopulation.size() / 2.0));
 		
 	}
 	
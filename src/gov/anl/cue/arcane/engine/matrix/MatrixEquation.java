@@ -174,17 +174,8 @@ class MatrixEquation implements Serializable {
 	 */
 	public int nonNanCount(MatrixVariable currentMatrixVariable) {
 		
-		// Count the non-NaN elements.
-		int count = 0;
-		for (double coefficient : currentMatrixVariable.coefficients.getColumn(this.nodeIndex)) {
-			
-			// Count the next coefficient.
-			if (!Double.isNaN(coefficient)) count++;
-			
-		}
-		
-		// Return the results.
-		return count;
+		// Return the count of non-NaN elements.
+		return currentMatrixVariable.getLinks().countColumn(this.nodeIndex);
 
 	}
 
@@ -0,0 +1,676 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The MatrixEvaluationFarm class evaluates matrix models on a pool of
+ * MatrixEvaluationWorker processes, which can run on this host or on
+ * others. Workers connect to the farm and may join at any time. Each
+ * worker is kept busy with several requests at once, and results are
+ * used as they arrive. Workers that disconnect or stop answering health
+ * checks are dropped and their outstanding requests are sent to other
+ * workers. If no workers are left, the farm evaluates locally. Each
+ * worker has its own sender thread, so the farm's lock is never held
+ * while writing to a worker, and a worker that stops reading only holds
+ * up its own messages.
+ */
+public class MatrixEvaluationFarm {
+
+	/** The default number of outstanding requests per worker. */
+	public static final int DEFAULT_PIPELINE_DEPTH = 4;
+
+	/** The default time between health checks, in milliseconds. */
+	public static final long DEFAULT_HEALTH_INTERVAL = 1000;
+
+	/**
+	 * The default time to wait for a worker to answer a health check, in
+	 * milliseconds.
+	 */
+	public static final long DEFAULT_HEALTH_TIMEOUT = 10000;
+
+	/** The marker that is queued to send a worker a health check. */
+	public static final Request HEALTH_CHECK = new Request();
+
+	/**
+	 * The Request class holds one matrix model being evaluated.
+	 */
+	public static class Request {
+
+		/** The request id. */
+		public long id = 0;
+
+		/** The matrix model. */
+		public MatrixModel matrixModel = null;
+
+		/** The encoded matrix model. */
+		public byte[] encoding = null;
+
+		/** The done flag. */
+		public boolean done = false;
+
+	}
+
+	/**
+	 * The Worker class is the farm's connection to one worker.
+	 */
+	public class Worker {
+
+		/** The connection to the worker. */
+		public Socket socket = null;
+
+		/** The input stream from the worker. */
+		public DataInputStream input = null;
+
+		/** The output stream to the worker. */
+		public DataOutputStream output = null;
+
+		/** The requests sent to the worker that have not been answered. */
+		public Map<Long, Request> outstanding =
+				new ConcurrentHashMap<Long, Request>();
+
+		/** The requests and health checks waiting to be written. */
+		public BlockingQueue<Request> sending =
+				new LinkedBlockingQueue<Request>();
+
+		/** The thread that writes to the worker. */
+		public Thread sender = null;
+
+		/** The last time anything was heard from the worker. */
+		public volatile long lastHeard = System.currentTimeMillis();
+
+		/** The time of the unanswered health check, or zero for none. */
+		public volatile long pingSent = 0;
+
+		/** The alive flag. */
+		public volatile boolean alive = true;
+
+		/**
+		 * Instantiates a new worker connection.
+		 *
+		 * @param newSocket the connection to the worker
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		public Worker(Socket newSocket) throws IOException {
+
+			// Open the streams.
+			this.socket = newSocket;
+			this.socket.setTcpNoDelay(true);
+			this.input = new DataInputStream(new BufferedInputStream(
+					this.socket.getInputStream()));
+			this.output = new DataOutputStream(new BufferedOutputStream(
+					this.socket.getOutputStream()));
+
+		}
+
+		/**
+		 * Read the worker's messages until it disconnects.
+		 */
+		public void read() {
+
+			// Read the messages.
+			try {
+				while (true) {
+					MatrixEvaluationProtocol.MESSAGE_TYPE type =
+							MatrixEvaluationProtocol.readType(this.input);
+					this.lastHeard = System.currentTimeMillis();
+					this.pingSent = 0;
+					if (type == MatrixEvaluationProtocol.MESSAGE_TYPE.RESULT) {
+						long id = this.input.readLong();
+						MatrixEvaluationFarm.this.finish(this, id,
+								this.input.readDouble(), false);
+					} else if (type ==
+							MatrixEvaluationProtocol.MESSAGE_TYPE.FAILED) {
+						MatrixEvaluationFarm.this.finish(this,
+								this.input.readLong(), Double.NaN, true);
+					} else if (type ==
+							MatrixEvaluationProtocol.MESSAGE_TYPE.PONG) {
+						this.input.readLong();
+					} else {
+						throw new IOException("Unexpected message " + type);
+					}
+				}
+
+			// Drop the worker when it disconnects.
+			} catch (IOException e) {
+				MatrixEvaluationFarm.this.drop(this);
+			}
+
+		}
+
+		/**
+		 * Write the worker's configuration and then its queued requests
+		 * and health checks until it is dropped. This is the only thread
+		 * that writes to the worker.
+		 */
+		public void write() {
+
+			// Write the messages.
+			try {
+				MatrixEvaluationFarm.this.configure(this);
+				while (this.alive) {
+					Request request = this.sending.take();
+					if (request == MatrixEvaluationFarm.HEALTH_CHECK) {
+						this.ping();
+					} else if (this.outstanding.get(request.id) == request) {
+						this.send(request);
+					}
+				}
+
+			// Drop the worker when it cannot be written to, or stop when
+			// it has been dropped.
+			} catch (IOException e) {
+				MatrixEvaluationFarm.this.drop(this);
+			} catch (InterruptedException e) {
+				MatrixEvaluationFarm.this.drop(this);
+			}
+
+		}
+
+		/**
+		 * Send a request.
+		 *
+		 * @param request the request
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		public void send(Request request) throws IOException {
+
+			// Send the request.
+			MatrixEvaluationProtocol.writeType(this.output,
+					MatrixEvaluationProtocol.MESSAGE_TYPE.EVALUATE);
+			this.output.writeLong(request.id);
+			this.output.writeInt(request.encoding.length);
+			this.output.write(request.encoding);
+			this.output.flush();
+
+		}
+
+		/**
+		 * Send a health check.
+		 *
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		public void ping() throws IOException {
+
+			// Send the health check.
+			MatrixEvaluationProtocol.writeType(this.output,
+					MatrixEvaluationProtocol.MESSAGE_TYPE.PING);
+			this.output.writeLong(System.currentTimeMillis());
+			this.output.flush();
+
+		}
+
+	}
+
+	/** The matrix engine. */
+	public MatrixEngine matrixEngine = null;
+
+	/** The server socket that workers connect to. */
+	public ServerSocket serverSocket = null;
+
+	/** The connected workers. */
+	public List<Worker> workers = new CopyOnWriteArrayList<Worker>();
+
+	/** The worker processes started on this host. */
+	public List<Process> processes = new ArrayList<Process>();
+
+	/** The number of outstanding requests per worker. */
+	public int pipelineDepth = DEFAULT_PIPELINE_DEPTH;
+
+	/** The time between health checks, in milliseconds. */
+	public long healthInterval = DEFAULT_HEALTH_INTERVAL;
+
+	/**
+	 * The time to wait for a worker to answer a health check, in
+	 * milliseconds.
+	 */
+	public long healthTimeout = DEFAULT_HEALTH_TIMEOUT;
+
+	/** The next request id. */
+	public AtomicLong requestIds = new AtomicLong();
+
+	/** The number of requests sent again after a worker was lost. */
+	public AtomicLong requeueCount = new AtomicLong();
+
+	/** The requests waiting to be sent. */
+	public Deque<Request> pending = new ArrayDeque<Request>();
+
+	/**
+	 * The requests that workers could not evaluate, or that could not be
+	 * sent, which are evaluated locally.
+	 */
+	public Deque<Request> failed = new ArrayDeque<Request>();
+
+	/**
+	 * Instantiates a new farm.
+	 *
+	 * @param newMatrixEngine the matrix engine
+	 */
+	public MatrixEvaluationFarm(MatrixEngine newMatrixEngine) {
+
+		// Note the matrix engine.
+		this.matrixEngine = newMatrixEngine;
+
+	}
+
+	/**
+	 * Start listening for workers.
+	 *
+	 * @param port the port, or zero for any free port
+	 * @return the port
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public int start(int port) throws IOException {
+
+		// Open the server socket.
+		this.serverSocket = new ServerSocket(port);
+
+		// Accept workers as they connect.
+		Thread acceptor = new Thread(new Runnable() {
+			public void run() {
+				MatrixEvaluationFarm.this.accept();
+			}
+		}, "MatrixEvaluationFarm-accept");
+		acceptor.setDaemon(true);
+		acceptor.start();
+
+		// Return the results.
+		return this.serverSocket.getLocalPort();
+
+	}
+
+	/**
+	 * Accept workers until the farm is closed.
+	 */
+	public void accept() {
+
+		// Accept workers.
+		while (!this.serverSocket.isClosed()) {
+			try {
+
+				// Listen to the new worker.
+				final Worker worker = new Worker(this.serverSocket.accept());
+				Thread reader = new Thread(new Runnable() {
+					public void run() {
+						worker.read();
+					}
+				}, "MatrixEvaluationFarm-worker");
+				reader.setDaemon(true);
+				reader.start();
+
+				// Configure the new worker and write to it.
+				worker.sender = new Thread(new Runnable() {
+					public void run() {
+						worker.write();
+					}
+				}, "MatrixEvaluationFarm-sender");
+				worker.sender.setDaemon(true);
+				worker.sender.start();
+
+				// Put the new worker to work.
+				synchronized (this) {
+					this.workers.add(worker);
+					this.notifyAll();
+				}
+
+			// Stop when the farm is closed.
+			} catch (IOException e) {
+			}
+		}
+
+	}
+
+	/**
+	 * Configure a new worker.
+	 *
+	 * @param worker the worker
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void configure(Worker worker) throws IOException {
+
+		// Send the formulation settings.
+		MatrixEvaluationProtocol.writeType(worker.output,
+				MatrixEvaluationProtocol.MESSAGE_TYPE.CONFIGURE);
+		MatrixEngine.FORMULATION_BACKEND backend =
+				this.matrixEngine.formulationBackend;
+		MatrixEngine.FORMULATION_SHAPE shape =
+				this.matrixEngine.formulationShape;
+		worker.output.writeInt((backend == null) ? -1 : backend.ordinal());
+		worker.output.writeInt((shape == null) ? -1 : shape.ordinal());
+		worker.output.writeLong(this.matrixEngine.tieredCompileThreshold);
+		worker.output.flush();
+
+	}
+
+	/**
+	 * Launch worker processes on this host.
+	 *
+	 * @param count the number of workers
+	 * @param threads the number of evaluation threads per worker
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void launch(int count, int threads) throws IOException {
+
+		// Start the processes.
+		List<String> command = MatrixIslandCoordinator.javaCommand(
+				MatrixEvaluationWorker.class, "localhost",
+				"" + this.serverSocket.getLocalPort(), "" + threads);
+		for (int index = 0; index < count; index++) {
+			this.processes.add(new ProcessBuilder(command).inheritIO().start());
+		}
+
+	}
+
+	/**
+	 * Wait for workers to connect.
+	 *
+	 * @param count the number of workers
+	 * @param timeout the time to wait, in milliseconds
+	 * @return true, if the workers connected in time
+	 * @throws InterruptedException the interrupted exception
+	 */
+	public synchronized boolean awaitWorkers(int count, long timeout)
+			throws InterruptedException {
+
+		// Wait for the workers.
+		long deadline = System.currentTimeMillis() + timeout;
+		while ((this.workers.size() < count) &&
+				(System.currentTimeMillis() < deadline)) {
+			this.wait(Math.max(1, deadline - System.currentTimeMillis()));
+		}
+
+		// Return the results.
+		return (this.workers.size() >= count);
+
+	}
+
+	/**
+	 * Evaluate the fitness of the given matrix models. Matrix models that
+	 * already have a fitness value are skipped. Several threads can
+	 * evaluate at once, and their requests share the workers.
+	 *
+	 * @param matrixModels the matrix models
+	 */
+	public void evaluate(List<MatrixModel> matrixModels) {
+
+		// Encode the requests, keeping any that are too long to send for
+		// local evaluation.
+		List<Request> requests = new ArrayList<Request>();
+		synchronized (this) {
+			for (MatrixModel matrixModel : matrixModels) {
+				if (matrixModel.fitnessValue == null) {
+					Request request = new Request();
+					request.id = this.requestIds.incrementAndGet();
+					request.matrixModel = matrixModel;
+					try {
+						request.encoding = MatrixEvaluationProtocol
+								.encode(matrixModel);
+						if (request.encoding.length >
+								MatrixEvaluationProtocol.MAX_LENGTH) {
+							this.failed.add(request);
+						} else {
+							this.pending.add(request);
+						}
+					} catch (IOException e) {
+						this.failed.add(request);
+					}
+					requests.add(request);
+				}
+			}
+		}
+
+		// Work until every request is done.
+		while (true) {
+
+			// Find the next request to evaluate locally, if any.
+			Request local = null;
+			synchronized (this) {
+				if (MatrixEvaluationFarm.remaining(requests) <= 0) return;
+				this.dispatch();
+				if (!this.failed.isEmpty()) {
+					local = this.failed.poll();
+				} else if (this.workers.isEmpty() && !this.pending.isEmpty()) {
+					local = this.pending.poll();
+				} else {
+					try {
+						this.wait(this.healthInterval);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+				}
+			}
+
+			// Evaluate locally, if needed.
+			if (local != null) {
+				local.matrixModel.getFitnessValue();
+				synchronized (this) {
+					local.done = true;
+					this.notifyAll();
+				}
+			}
+
+			// Check the workers' health.
+			this.check();
+
+		}
+
+	}
+
+	/**
+	 * Remaining. The caller must hold the farm's lock.
+	 *
+	 * @param requests the requests
+	 * @return the number of the requests that are not done
+	 */
+	public static int remaining(List<Request> requests) {
+
+		// Count the requests that are not done.
+		int count = 0;
+		for (Request request : requests) {
+			if (!request.done) {
+				count++;
+			}
+		}
+
+		// Return the results.
+		return count;
+
+	}
+
+	/**
+	 * Dispatch. This gives pending requests to workers that have room
+	 * for them, and leaves the writing to the workers' sender threads.
+	 * The caller must hold the farm's lock.
+	 */
+	public void dispatch() {
+
+		// Fill each worker's pipeline.
+		for (Worker worker : this.workers) {
+			while (worker.alive && !this.pending.isEmpty() &&
+					(worker.outstanding.size() < this.pipelineDepth)) {
+				Request request = this.pending.poll();
+				worker.outstanding.put(request.id, request);
+				worker.sending.add(request);
+			}
+		}
+
+	}
+
+	/**
+	 * Check. This sends health checks to quiet workers and drops workers
+	 * that have not answered in time.
+	 */
+	public void check() {
+
+		// Check each worker.
+		long now = System.currentTimeMillis();
+		for (Worker worker : this.workers) {
+			if (worker.pingSent > 0) {
+				if ((now - worker.pingSent) > this.healthTimeout) {
+					this.drop(worker);
+				}
+			} else if ((now - worker.lastHeard) >= this.healthInterval) {
+				worker.pingSent = now;
+				worker.sending.add(MatrixEvaluationFarm.HEALTH_CHECK);
+			}
+		}
+
+	}
+
+	/**
+	 * Finish a request.
+	 *
+	 * @param worker the worker
+	 * @param id the request id
+	 * @param fitnessValue the fitness value
+	 * @param failure true, if the worker could not evaluate the request
+	 */
+	public synchronized void finish(Worker worker, long id,
+			double fitnessValue, boolean failure) {
+
+		// Ignore late results from dropped workers.
+		Request request = worker.outstanding.remove(id);
+		if ((request == null) || !worker.alive) return;
+
+		// Note the results.
+		if (failure) {
+			this.failed.add(request);
+		} else {
+			request.matrixModel.fitnessValue = Double.isNaN(fitnessValue) ?
+					Double.NEGATIVE_INFINITY : fitnessValue;
+			request.done = true;
+		}
+		this.notifyAll();
+
+	}
+
+	/**
+	 * Drop a worker and send its outstanding requests again.
+	 *
+	 * @param worker the worker
+	 */
+	public void drop(Worker worker) {
+
+		// Requeue the outstanding requests.
+		synchronized (this) {
+			if (!worker.alive) return;
+			worker.alive = false;
+			this.workers.remove(worker);
+			for (Request request : worker.outstanding.values()) {
+				this.pending.addFirst(request);
+				this.requeueCount.incrementAndGet();
+			}
+			worker.outstanding.clear();
+			worker.sending.clear();
+			this.notifyAll();
+		}
+
+		// Disconnect and stop the sender.
+		try {
+			worker.socket.close();
+		} catch (IOException e) {
+			// The connection is already closed.
+		}
+		if ((worker.sender != null) &&
+				(worker.sender != Thread.currentThread())) {
+			worker.sender.interrupt();
+		}
+
+	}
+
+	/**
+	 * Close. This disconnects the workers and waits for the worker
+	 * processes started on this host to exit.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void close() throws IOException {
+
+		// Stop listening.
+		if (this.serverSocket != null) {
+			this.serverSocket.close();
+		}
+
+		// Disconnect the workers.
+		for (Worker worker : this.workers) {
+			this.drop(worker);
+		}
+
+		// Wait for the processes.
+		for (Process process : this.processes) {
+			try {
+				if (!process.waitFor(this.healthTimeout,
+						TimeUnit.MILLISECONDS)) {
+					process.destroy();
+				}
+			} catch (InterruptedException e) {
+				process.destroy();
+				Thread.currentThread().interrupt();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * The MatrixEvaluationProtocol class defines the messages between a
+ * MatrixEvaluationFarm and its MatrixEvaluationWorker processes. Each
+ * message starts with a type byte. Matrix models are sent in a compact
+ * binary encoding that holds only what fitness evaluation needs: the
+ * fitness function type, step size and count, node names, fitness
+ * equations, and each variable's name, allowed coefficients, and
+ * equations. Units and transient state are not sent.
+ */
+public class MatrixEvaluationProtocol {
+
+	/**
+	 * The largest length that is read, in bytes or list entries. Longer
+	 * lengths are treated as a broken stream rather than allocated.
+	 */
+	public static final int MAX_LENGTH = 64 << 20;
+
+	/**
+	 * The Enum MESSAGE_TYPE.
+	 */
+	public static enum MESSAGE_TYPE {
+		
+		/** The farm's formulation settings, sent when a worker connects. */
+		CONFIGURE,
+		
+		/** A request to evaluate an encoded matrix model. */
+		EVALUATE,
+		
+		/** A fitness value. */
+		RESULT,
+		
+		/** A request that the worker could not evaluate. */
+		FAILED,
+		
+		/** A health check. */
+		PING,
+		
+		/** A reply to a health check. */
+		PONG
+		
+	}
+
+	/**
+	 * Write a message type.
+	 *
+	 * @param output the output stream
+	 * @param type the message type
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static void writeType(DataOutputStream output, MESSAGE_TYPE type)
+			throws IOException {
+
+		// Write the type.
+		output.writeByte(type.ordinal());
+
+	}
+
+	/**
+	 * Read a message type.
+	 *
+	 * @param input the input stream
+	 * @return the message type
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static MESSAGE_TYPE readType(DataInputStream input)
+			throws IOException {
+
+		// Read the type.
+		int ordinal = input.readUnsignedByte();
+		if (ordinal >= MESSAGE_TYPE.values().length) {
+			throw new IOException("Unknown message type " + ordinal);
+		}
+
+		// Return the results.
+		return MESSAGE_TYPE.values()[ordinal];
+
+	}
+
+	/**
+	 * Read a length, which may be -1 for null.
+	 *
+	 * @param input the input stream
+	 * @return the length
+	 * @throws IOException Signals that an I/O exception has occurred,
+	 *             including a length below -1 or above MAX_LENGTH.
+	 */
+	public static int readLength(DataInputStream input) throws IOException {
+
+		// Read and check the length.
+		int length = input.readInt();
+		if ((length < -1) || (length > MatrixEvaluationProtocol.MAX_LENGTH)) {
+			throw new IOException("Bad length " + length);
+		}
+
+		// Return the results.
+		return length;
+
+	}
+
+	/**
+	 * Write a string of any length, or null.
+	 *
+	 * @param output the output stream
+	 * @param string the string
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static void writeString(DataOutputStream output, String string)
+			throws IOException {
+
+		// Write the string.
+		if (string == null) {
+			output.writeInt(-1);
+		} else {
+			byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			output.writeInt(bytes.length);
+			output.write(bytes);
+		}
+
+	}
+
+	/**
+	 * Read a string.
+	 *
+	 * @param input the input stream
+	 * @return the string, or null
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static String readString(DataInputStream input) throws IOException {
+
+		// Read the string.
+		int length = MatrixEvaluationProtocol.readLength(input);
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		input.readFully(bytes);
+
+		// Return the results.
+		return new String(bytes, StandardCharsets.UTF_8);
+
+	}
+
+	/**
+	 * Write a list of strings, or null.
+	 *
+	 * @param output the output stream
+	 * @param strings the strings
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static void writeStrings(DataOutputStream output,
+			List<String> strings) throws IOException {
+
+		// Write the strings.
+		output.writeInt((strings == null) ? -1 : strings.size());
+		if (strings != null) {
+			for (String string : strings) {
+				MatrixEvaluationProtocol.writeString(output, string);
+			}
+		}
+
+	}
+
+	/**
+	 * Read a list of strings.
+	 *
+	 * @param input the input stream
+	 * @return the strings, or null
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static ArrayList<String> readStrings(DataInputStream input)
+			throws IOException {
+
+		// Read the strings.
+		int size = MatrixEvaluationProtocol.readLength(input);
+		if (size < 0) {
+			return null;
+		}
+		ArrayList<String> strings = new ArrayList<String>(size);
+		for (int index = 0; index < size; index++) {
+			strings.add(MatrixEvaluationProtocol.readString(input));
+		}
+
+		// Return the results.
+		return strings;
+
+	}
+
+	/**
+	 * Encode a matrix model for evaluation.
+	 *
+	 * @param matrixModel the matrix model
+	 * @return the encoding
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static byte[] encode(MatrixModel matrixModel) throws IOException {
+
+		// Write the model's settings.
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(bytes);
+		output.writeInt((matrixModel.fitnessFunctionType == null) ? -1 :
+				matrixModel.fitnessFunctionType.ordinal());
+		output.writeBoolean(matrixModel.stepSize != null);
+		output.writeDouble((matrixModel.stepSize == null) ? 0.0 :
+				matrixModel.stepSize);
+		output.writeInt(matrixModel.stepCount);
+		MatrixEvaluationProtocol.writeStrings(output, matrixModel.nodeNames);
+		MatrixEvaluationProtocol.writeStrings(output,
+				matrixModel.fitnessEquations);
+
+		// Write the variables' allowed coefficients and equations.
+		output.writeInt(matrixModel.size());
+		for (MatrixVariable matrixVariable : matrixModel) {
+			MatrixEvaluationProtocol.writeString(output, matrixVariable.name);
+			MatrixLinks links = matrixVariable.getLinks();
+			double[] values = matrixVariable.getValues();
+			output.writeInt(links.rowCount);
+			output.writeInt(links.columnCount);
+			for (int row = 0; row < links.rowCount; row++) {
+				output.writeInt(links.rowStarts[row + 1] - links.rowStarts[row]);
+				for (int link = links.rowStarts[row];
+						link < links.rowStarts[row + 1]; link++) {
+					output.writeInt(links.rowColumns[link]);
+					output.writeDouble(values[link]);
+				}
+			}
+			MatrixEvaluationProtocol.writeStrings(output,
+					matrixVariable.equations);
+		}
+
+		// Return the results.
+		output.flush();
+		return bytes.toByteArray();
+
+	}
+
+	/**
+	 * Decode a matrix model.
+	 *
+	 * @param encoding the encoding
+	 * @param matrixEngine the matrix engine for the new model
+	 * @return the matrix model
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static MatrixModel decode(byte[] encoding,
+			MatrixEngine matrixEngine) throws IOException {
+
+		// Read the model's settings.
+		DataInputStream input = new DataInputStream(
+				new ByteArrayInputStream(encoding));
+		MatrixModel matrixModel = new MatrixModel(matrixEngine);
+		int fitnessFunctionType = input.readInt();
+		matrixModel.fitnessFunctionType = (fitnessFunctionType < 0) ? null :
+				MatrixModel.FITNESS_FUNCTION_TYPE.values()[fitnessFunctionType];
+		boolean stepSizeFound = input.readBoolean();
+		double stepSize = input.readDouble();
+		matrixModel.stepSize = stepSizeFound ? stepSize : null;
+		matrixModel.stepCount = input.readInt();
+		matrixModel.nodeNames = MatrixEvaluationProtocol.readStrings(input);
+		matrixModel.fitnessEquations =
+				MatrixEvaluationProtocol.readStrings(input);
+
+		// Read the variables.
+		int size = input.readInt();
+		for (int index = 0; index < size; index++) {
+			MatrixVariable matrixVariable = new MatrixVariable();
+			matrixVariable.name = MatrixEvaluationProtocol.readString(input);
+			int rowCount = input.readInt();
+			int colCount = input.readInt();
+			int rowWords = MatrixLinks.rowWords(colCount);
+			if ((rowCount < 0) || (colCount < 0) || ((long) rowCount *
+					rowWords > MatrixEvaluationProtocol.MAX_LENGTH / 8)) {
+				throw new IOException("Bad coefficient dimensions.");
+			}
+			long[] mask = new long[rowCount * rowWords];
+			double[] values = new double[0];
+			int valueCount = 0;
+			for (int row = 0; row < rowCount; row++) {
+				int count = input.readInt();
+				int lastColumn = -1;
+				for (int link = 0; link < count; link++) {
+					int column = input.readInt();
+					if ((column <= lastColumn) || (column >= colCount)) {
+						throw new IOException("Bad coefficient column.");
+					}
+					lastColumn = column;
+					mask[row * rowWords + (column >>> 6)] |= 1L << column;
+					if (valueCount == values.length) {
+						values = Arrays.copyOf(values,
+								Math.max(16, 2 * values.length));
+					}
+					values[valueCount++] = input.readDouble();
+				}
+			}
+			matrixVariable.coefficients = new MatrixCoefficients(
+					new MatrixLinks(rowCount, colCount, mask),
+					Arrays.copyOf(values, valueCount));
+			matrixVariable.equations = MatrixEvaluationProtocol.readStrings(
+					input);
+			matrixModel.add(matrixVariable);
+		}
+
+		// Return the results.
+		return matrixModel;
+
+	}
+
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The MatrixEvaluationWorker class evaluates matrix models for a
+ * MatrixEvaluationFarm. It connects to the farm, which may be on another
+ * host, and evaluates the requests it is sent on a pool of threads,
+ * sending each fitness value back as soon as it is found. Health checks
+ * are answered as they arrive, even while evaluations are running.
+ */
+public class MatrixEvaluationWorker {
+
+	/** The farm's host. */
+	public String host = null;
+
+	/** The farm's port. */
+	public int port = 0;
+
+	/** The number of evaluation threads. */
+	public int threads = 1;
+
+	/** The matrix engine used to evaluate matrix models. */
+	public MatrixEngine matrixEngine = new MatrixEngine();
+
+	/** The connection to the farm. */
+	public Socket socket = null;
+
+	/** The output stream to the farm. */
+	public DataOutputStream output = null;
+
+	/**
+	 * Instantiates a new worker.
+	 *
+	 * @param newHost the farm's host
+	 * @param newPort the farm's port
+	 * @param newThreads the number of evaluation threads
+	 */
+	public MatrixEvaluationWorker(String newHost, int newPort, int newThreads) {
+
+		// Note the farm and threads.
+		this.host = newHost;
+		this.port = newPort;
+		this.threads = Math.max(1, newThreads);
+
+	}
+
+	/**
+	 * The main method, which takes the farm's host and port and an
+	 * optional number of threads, which defaults to the processor count.
+	 *
+	 * @param args the arguments
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static void main(String[] args) throws IOException {
+
+		// Run the worker.
+		int threads = (args.length > 2) ? Integer.parseInt(args[2]) :
+				Runtime.getRuntime().availableProcessors();
+		new MatrixEvaluationWorker(args[0], Integer.parseInt(args[1]),
+				threads).run();
+
+	}
+
+	/**
+	 * Run until the farm closes the connection.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void run() throws IOException {
+
+		// Connect to the farm.
+		this.socket = new Socket(this.host, this.port);
+		this.socket.setTcpNoDelay(true);
+		DataInputStream input = new DataInputStream(
+				new BufferedInputStream(this.socket.getInputStream()));
+		this.output = new DataOutputStream(
+				new BufferedOutputStream(this.socket.getOutputStream()));
+		ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+
+		// Handle requests.
+		try {
+			while (true) {
+				MatrixEvaluationProtocol.MESSAGE_TYPE type =
+						MatrixEvaluationProtocol.readType(input);
+				if (type == MatrixEvaluationProtocol.MESSAGE_TYPE.CONFIGURE) {
+					this.configure(input);
+				} else if (type == MatrixEvaluationProtocol.MESSAGE_TYPE.PING) {
+					long nonce = input.readLong();
+					synchronized (this.output) {
+						MatrixEvaluationProtocol.writeType(this.output,
+								MatrixEvaluationProtocol.MESSAGE_TYPE.PONG);
+						this.output.writeLong(nonce);
+						this.output.flush();
+					}
+				} else if (type ==
+						MatrixEvaluationProtocol.MESSAGE_TYPE.EVALUATE) {
+					final long id = input.readLong();
+					int length = MatrixEvaluationProtocol.readLength(input);
+					if (length < 0) {
+						throw new IOException("Missing request " + id);
+					}
+					final byte[] encoding = new byte[length];
+					input.readFully(encoding);
+					executor.submit(new Runnable() {
+						public void run() {
+							MatrixEvaluationWorker.this.evaluate(id,
+									encoding);
+						}
+					});
+				} else {
+					throw new IOException("Unexpected message " + type);
+				}
+			}
+
+		// Stop when the farm disconnects.
+		} catch (IOException e) {
+		} finally {
+			executor.shutdownNow();
+			this.socket.close();
+		}
+
+	}
+
+	/**
+	 * Configure. This reads the farm's formulation settings.
+	 *
+	 * @param input the input stream
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void configure(DataInputStream input) throws IOException {
+
+		// Read the settings.
+		int backend = input.readInt();
+		int shape = input.readInt();
+		this.matrixEngine.formulationBackend = (backend < 0) ? null :
+				MatrixEngine.FORMULATION_BACKEND.values()[backend];
+		this.matrixEngine.formulationShape = (shape < 0) ? null :
+				MatrixEngine.FORMULATION_SHAPE.values()[shape];
+		this.matrixEngine.tieredCompileThreshold = input.readLong();
+
+	}
+
+	/**
+	 * Decode and evaluate a matrix model. A request that cannot be
+	 * decoded is answered as failed, like one that cannot be evaluated,
+	 * so it does not stop the worker.
+	 *
+	 * @param id the request id
+	 * @param encoding the encoded matrix model
+	 */
+	public void evaluate(long id, byte[] encoding) {
+
+		// Decode the matrix model.
+		MatrixModel matrixModel = null;
+		try {
+			matrixModel = MatrixEvaluationProtocol.decode(encoding,
+					this.matrixEngine);
+		} catch (Exception e) {
+			this.send(id, null);
+			return;
+		}
+
+		// Evaluate the matrix model.
+		this.evaluate(id, matrixModel);
+
+	}
+
+	/**
+	 * Evaluate a matrix model and send back its fitness value.
+	 *
+	 * @param id the request id
+	 * @param matrixModel the matrix model
+	 */
+	public void evaluate(long id, MatrixModel matrixModel) {
+
+		// Evaluate the matrix model, noting failures as a missing value.
+		Double fitnessValue = null;
+		try {
+			fitnessValue = matrixModel.getFitnessValue();
+		} catch (Exception e) {
+			fitnessValue = null;
+		}
+
+		// Send the results.
+		this.send(id, fitnessValue);
+
+	}
+
+	/**
+	 * Send a fitness value.
+	 *
+	 * @param id the request id
+	 * @param fitnessValue the fitness value, or null if the request failed
+	 */
+	public void send(long id, Double fitnessValue) {
+
+		// Send the results.
+		try {
+			synchronized (this.output) {
+				if (fitnessValue == null) {
+					MatrixEvaluationProtocol.writeType(this.output,
+							MatrixEvaluationProtocol.MESSAGE_TYPE.FAILED);
+					this.output.writeLong(id);
+				} else {
+					MatrixEvaluationProtocol.writeType(this.output,
+							MatrixEvaluationProtocol.MESSAGE_TYPE.RESULT);
+					this.output.writeLong(id);
+					this.output.writeDouble(fitnessValue);
+				}
+				this.output.flush();
+			}
+
+		// Leave lost connections to the reader, which stops the worker.
+		} catch (IOException e) {
+			return;
+		}
+
+	}
+
+}
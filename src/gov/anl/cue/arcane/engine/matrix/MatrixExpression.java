@@ -0,0 +1,255 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import java.lang.reflect.Method;
+
+/**
+ * The MatrixExpression class is a parsed formulation expression. The
+ * expressions follow Java's rules for int and double arithmetic so that
+ * formulations built from them produce exactly the same values as the
+ * compiled Java source.
+ */
+public abstract class MatrixExpression {
+
+	/**
+	 * The Enum EXPRESSION_TYPE.
+	 */
+	public static enum EXPRESSION_TYPE {
+		
+		/** The int type. */
+		INT,
+		
+		/** The double type. */
+		DOUBLE,
+		
+		/** The double[][] type used by the step functions. */
+		TABLE
+		
+	}
+	
+	/** The type. */
+	public EXPRESSION_TYPE type = EXPRESSION_TYPE.DOUBLE;
+	
+	/**
+	 * The Constant class is a literal or an inlined constant.
+	 */
+	public static class Constant extends MatrixExpression {
+		
+		/** The value. */
+		public double value;
+		
+		/**
+		 * Instantiates a new constant.
+		 *
+		 * @param newValue the value
+		 * @param newType the type
+		 */
+		public Constant(double newValue, EXPRESSION_TYPE newType) {
+			this.value = newValue;
+			this.type = newType;
+		}
+		
+	}
+	
+	/**
+	 * The Table class is a constant double[][] literal, such as the
+	 * steps passed to LINEARSTEP and SQUARESTEP.
+	 */
+	public static class Table extends MatrixExpression {
+		
+		/** The values. */
+		public double[][] values;
+		
+		/**
+		 * Instantiates a new table.
+		 *
+		 * @param newValues the values
+		 */
+		public Table(double[][] newValues) {
+			this.values = newValues;
+			this.type = EXPRESSION_TYPE.TABLE;
+		}
+		
+	}
+	
+	/**
+	 * The Field class is a reference to a declared formulation variable.
+	 */
+	public static class Field extends MatrixExpression {
+		
+		/** The field index. */
+		public int index;
+		
+		/** The field name. */
+		public String name;
+		
+		/**
+		 * Instantiates a new field.
+		 *
+		 * @param newIndex the field index
+		 * @param newName the field name
+		 */
+		public Field(int newIndex, String newName) {
+			this.index = newIndex;
+			this.name = newName;
+		}
+		
+	}
+	
+	/**
+	 * The StepSize class is a reference to the formulation step size.
+	 */
+	public static class StepSize extends MatrixExpression {
+	}
+	
+	/**
+	 * The Coefficient class is a reference to an element of the
+	 * formulation coefficients.
+	 */
+	public static class Coefficient extends MatrixExpression {
+		
+		/** The index expression. */
+		public MatrixExpression index;
+		
+		/**
+		 * Instantiates a new coefficient.
+		 *
+		 * @param newIndex the index expression
+		 */
+		public Coefficient(MatrixExpression newIndex) {
+			this.index = newIndex;
+		}
+		
+	}
+	
+	/**
+	 * The Negation class is a unary minus.
+	 */
+	public static class Negation extends MatrixExpression {
+		
+		/** The operand. */
+		public MatrixExpression operand;
+		
+		/**
+		 * Instantiates a new negation.
+		 *
+		 * @param newOperand the operand
+		 */
+		public Negation(MatrixExpression newOperand) {
+			this.operand = newOperand;
+			this.type = newOperand.type;
+		}
+		
+	}
+	
+	/**
+	 * The Operation class is a binary arithmetic operation.
+	 */
+	public static class Operation extends MatrixExpression {
+		
+		/** The operator, which is one of '+', '-', '*', '/', or '%'. */
+		public char operator;
+		
+		/** The left operand. */
+		public MatrixExpression left;
+		
+		/** The right operand. */
+		public MatrixExpression right;
+		
+		/**
+		 * Instantiates a new operation.
+		 *
+		 * @param newOperator the operator
+		 * @param newLeft the left operand
+		 * @param newRight the right operand
+		 */
+		public Operation(char newOperator, MatrixExpression newLeft,
+				MatrixExpression newRight) {
+			this.operator = newOperator;
+			this.left = newLeft;
+			this.right = newRight;
+			if ((newLeft.type == EXPRESSION_TYPE.INT) &&
+					(newRight.type == EXPRESSION_TYPE.INT)) {
+				this.type = EXPRESSION_TYPE.INT;
+			} else {
+				this.type = EXPRESSION_TYPE.DOUBLE;
+			}
+		}
+		
+	}
+	
+	/**
+	 * The Call class is a call to a formulation built-in function or
+	 * to a java.lang.Math function.
+	 */
+	public static class Call extends MatrixExpression {
+		
+		/** The method. */
+		public Method method;
+		
+		/** The arguments. */
+		public MatrixExpression[] arguments;
+		
+		/**
+		 * Instantiates a new call.
+		 *
+		 * @param newMethod the method
+		 * @param newArguments the arguments
+		 */
+		public Call(Method newMethod, MatrixExpression[] newArguments) {
+			this.method = newMethod;
+			this.arguments = newArguments;
+			if (newMethod.getReturnType() == int.class) {
+				this.type = EXPRESSION_TYPE.INT;
+			} else {
+				this.type = EXPRESSION_TYPE.DOUBLE;
+			}
+		}
+		
+	}
+	
+}
@@ -0,0 +1,810 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import gov.anl.cue.arcane.engine.matrix.MatrixExpression.EXPRESSION_TYPE;
+
+/**
+ * The MatrixExpressionParser class parses the Java expressions used in
+ * generated formulations. It accepts the subset of Java that equations
+ * are written in: int and double literals, formulation variables, the
+ * step size and coefficients, the MatrixFormulationAbstract built-ins,
+ * java.lang.Math functions and constants, constant double[][] tables
+ * for the step functions, unary minus, and the binary arithmetic
+ * operators. Anything else, including anything javac would
+ * reject, raises an IllegalArgumentException so that callers can fall
+ * back to compiling the source.
+ */
+public class MatrixExpressionParser {
+
+	/** The Java keywords, none of which can name a variable. */
+	public static final Set<String> KEYWORDS = new HashSet<String>(Arrays.asList(
+			"abstract", "assert", "boolean", "break", "byte", "case", "catch",
+			"char", "class", "const", "continue", "default", "do", "double",
+			"else", "enum", "extends", "final", "finally", "float", "for",
+			"goto", "if", "implements", "import", "instanceof", "int",
+			"interface", "long", "native", "new", "package", "private",
+			"protected", "public", "return", "short", "static", "strictfp",
+			"super", "switch", "synchronized", "this", "throw", "throws",
+			"transient", "try", "void", "volatile", "while", "true", "false",
+			"null", "_"));
+
+	/** The names inherited from MatrixFormulationAbstract. */
+	public static final Set<String> INHERITED_NAMES = new HashSet<String>(Arrays.asList(
+			"stepSize", "coefficients", "firstStep", "serialVersionUID"));
+
+	/** The program that owns the parsed expressions. */
+	public MatrixFormulationProgram program;
+
+	/** The number of leading fields that can be referenced by simple name. */
+	public int visibleFieldCount;
+
+	/** The tokens. */
+	public List<String> tokens = new ArrayList<String>();
+
+	/** The current token position. */
+	public int position = 0;
+
+	/**
+	 * Instantiates a new matrix expression parser.
+	 *
+	 * @param newProgram the program that defines the fields
+	 * @param newVisibleFieldCount the number of fields visible by simple name
+	 * @param text the text to parse
+	 */
+	public MatrixExpressionParser(MatrixFormulationProgram newProgram,
+			int newVisibleFieldCount, String text) {
+
+		// Note the context.
+		this.program = newProgram;
+		this.visibleFieldCount = newVisibleFieldCount;
+
+		// Split the text into tokens.
+		this.tokenize(text);
+
+	}
+
+	/**
+	 * Parses a complete expression.
+	 *
+	 * @param program the program that defines the fields
+	 * @param visibleFieldCount the number of fields visible by simple name
+	 * @param text the text to parse
+	 * @return the expression
+	 */
+	public static MatrixExpression parse(MatrixFormulationProgram program,
+			int visibleFieldCount, String text) {
+
+		// Parse the text.
+		MatrixExpressionParser parser = new MatrixExpressionParser(program,
+				visibleFieldCount, text);
+		MatrixExpression expression = parser.parseSum();
+
+		// Make sure that the whole text was used.
+		if (parser.peek() != null) {
+			throw new IllegalArgumentException("Unexpected token: " + parser.peek());
+		}
+
+		// Tables can only be passed to functions.
+		MatrixExpressionParser.checkNumeric(expression);
+
+		// Return the results.
+		return expression;
+
+	}
+
+	/**
+	 * Checks that an expression is numeric rather than a table.
+	 *
+	 * @param expression the expression
+	 * @return the expression
+	 */
+	public static MatrixExpression checkNumeric(MatrixExpression expression) {
+
+		// Check the type.
+		if (expression.type == EXPRESSION_TYPE.TABLE) {
+			throw new IllegalArgumentException("Misplaced table");
+		}
+
+		// Return the results.
+		return expression;
+
+	}
+
+	/**
+	 * Checks if the given text is a usable variable name.
+	 *
+	 * @param name the name
+	 * @return true, if the name is usable
+	 */
+	public static boolean isName(String name) {
+
+		// Check the characters.
+		if ((name.length() == 0) ||
+				!Character.isJavaIdentifierStart(name.charAt(0))) {
+			return false;
+		}
+		for (int index = 1; index < name.length(); index++) {
+			if (!Character.isJavaIdentifierPart(name.charAt(index))) {
+				return false;
+			}
+		}
+
+		// Check for reserved and inherited names.
+		return !KEYWORDS.contains(name) && !INHERITED_NAMES.contains(name);
+
+	}
+
+	/**
+	 * Tokenize.
+	 *
+	 * @param text the text
+	 */
+	public void tokenize(String text) {
+
+		// Scan the text.
+		int index = 0;
+		while (index < text.length()) {
+
+			// Skip white space.
+			char next = text.charAt(index);
+			if (Character.isWhitespace(next)) {
+				index++;
+
+			// Read identifiers.
+			} else if (Character.isJavaIdentifierStart(next)) {
+				int start = index++;
+				while ((index < text.length()) &&
+						Character.isJavaIdentifierPart(text.charAt(index))) {
+					index++;
+				}
+				this.tokens.add(text.substring(start, index));
+
+			// Read numbers.
+			} else if (Character.isDigit(next) || ((next == '.') &&
+					(index + 1 < text.length()) &&
+					Character.isDigit(text.charAt(index + 1)))) {
+				int start = index;
+				while ((index < text.length()) &&
+						(Character.isDigit(text.charAt(index)) ||
+						(text.charAt(index) == '.'))) {
+					index++;
+				}
+				if ((index < text.length()) &&
+						((text.charAt(index) == 'e') || (text.charAt(index) == 'E'))) {
+					index++;
+					if ((index < text.length()) &&
+							((text.charAt(index) == '+') || (text.charAt(index) == '-'))) {
+						index++;
+					}
+					while ((index < text.length()) &&
+							Character.isDigit(text.charAt(index))) {
+						index++;
+					}
+				}
+				if ((index < text.length()) &&
+						((text.charAt(index) == 'd') || (text.charAt(index) == 'D'))) {
+					index++;
+				}
+				this.tokens.add(text.substring(start, index));
+
+			// Read operators and punctuation, leaving increments and
+			// decrements to the compiler.
+			} else if ("+-*/%(),.[]{}".indexOf(next) >= 0) {
+				if (((next == '+') || (next == '-')) &&
+						(index + 1 < text.length()) &&
+						(text.charAt(index + 1) == next)) {
+					throw new IllegalArgumentException("Unsupported operator: " + next + next);
+				}
+				this.tokens.add(String.valueOf(next));
+				index++;
+
+			// Reject everything else.
+			} else {
+				throw new IllegalArgumentException("Unsupported character: " + next);
+			}
+
+		}
+
+	}
+
+	/**
+	 * Peek at the current token.
+	 *
+	 * @return the token, or null at the end of the text
+	 */
+	public String peek() {
+		return (this.position < this.tokens.size()) ?
+				this.tokens.get(this.position) : null;
+	}
+
+	/**
+	 * Take the current token.
+	 *
+	 * @return the token
+	 */
+	public String take() {
+
+		// Check for the end of the text.
+		if (this.position >= this.tokens.size()) {
+			throw new IllegalArgumentException("Unexpected end of expression");
+		}
+
+		// Return the results.
+		return this.tokens.get(this.position++);
+
+	}
+
+	/**
+	 * Take the given token.
+	 *
+	 * @param expected the expected token
+	 */
+	public void expect(String expected) {
+
+		// Check the next token.
+		String token = this.take();
+		if (!token.equals(expected)) {
+			throw new IllegalArgumentException("Expected " + expected +
+					" but found " + token);
+		}
+
+	}
+
+	/**
+	 * Parse an additive expression.
+	 *
+	 * @return the expression
+	 */
+	public MatrixExpression parseSum() {
+
+		// Parse the terms from left to right.
+		MatrixExpression expression = this.parseProduct();
+		while ("+".equals(this.peek()) || "-".equals(this.peek())) {
+			char operator = this.take().charAt(0);
+			expression = new MatrixExpression.Operation(operator,
+					MatrixExpressionParser.checkNumeric(expression),
+					MatrixExpressionParser.checkNumeric(this.parseProduct()));
+		}
+
+		// Return the results.
+		return expression;
+
+	}
+
+	/**
+	 * Parse a multiplicative expression.
+	 *
+	 * @return the expression
+	 */
+	public MatrixExpression parseProduct() {
+
+		// Parse the factors from left to right.
+		MatrixExpression expression = this.parseUnary();
+		while ("*".equals(this.peek()) || "/".equals(this.peek()) ||
+				"%".equals(this.peek())) {
+			char operator = this.take().charAt(0);
+			expression = new MatrixExpression.Operation(operator,
+					MatrixExpressionParser.checkNumeric(expression),
+					MatrixExpressionParser.checkNumeric(this.parseUnary()));
+		}
+
+		// Return the results.
+		return expression;
+
+	}
+
+	/**
+	 * Parse a unary expression.
+	 *
+	 * @return the expression
+	 */
+	public MatrixExpression parseUnary() {
+
+		// Check for unary plus.
+		if ("+".equals(this.peek())) {
+			this.take();
+			return MatrixExpressionParser.checkNumeric(this.parseUnary());
+
+		// Check for unary minus.
+		} else if ("-".equals(this.peek())) {
+			this.take();
+
+			// The most negative int can only be written as a negated literal.
+			if ("2147483648".equals(this.peek())) {
+				this.take();
+				return new MatrixExpression.Constant(Integer.MIN_VALUE,
+						EXPRESSION_TYPE.INT);
+			}
+
+			// Negate the operand.
+			return new MatrixExpression.Negation(
+					MatrixExpressionParser.checkNumeric(this.parseUnary()));
+
+		// Otherwise, parse a primary expression.
+		} else {
+			return this.parsePrimary();
+		}
+
+	}
+
+	/**
+	 * Parse a primary expression.
+	 *
+	 * @return the expression
+	 */
+	public MatrixExpression parsePrimary() {
+
+		// Check for parentheses.
+		String token = this.take();
+		if (token.equals("(")) {
+			MatrixExpression expression = this.parseSum();
+			this.expect(")");
+			return expression;
+
+		// Check for numbers.
+		} else if (Character.isDigit(token.charAt(0)) || (token.charAt(0) == '.')) {
+			return this.parseNumber(token);
+
+		// Check for table literals.
+		} else if (token.equals("new")) {
+			return this.parseTable();
+
+		// Check for member references.
+		} else if (token.equals("this")) {
+			this.expect(".");
+			return this.parseMember(this.take(), true);
+
+		// Check for qualified java.lang.Math references.
+		} else if (token.equals("Math") && ".".equals(this.peek()) &&
+				!this.program.fieldIndices.containsKey(token)) {
+			this.take();
+			return this.parseMath(this.take());
+
+		// Check for simple names.
+		} else if (Character.isJavaIdentifierStart(token.charAt(0)) &&
+				!KEYWORDS.contains(token)) {
+			return this.parseMember(token, false);
+
+		// Reject everything else.
+		} else {
+			throw new IllegalArgumentException("Unexpected token: " + token);
+		}
+
+	}
+
+	/**
+	 * Parse a double[][] literal with constant entries.
+	 *
+	 * @return the expression
+	 */
+	public MatrixExpression parseTable() {
+
+		// Parse the type.
+		this.expect("double");
+		this.expect("[");
+		this.expect("]");
+		this.expect("[");
+		this.expect("]");
+
+		// Parse the rows.
+		List<double[]> rows = new ArrayList<double[]>();
+		List<Double> row = new ArrayList<Double>();
+		this.expect("{");
+		while (!"}".equals(this.peek())) {
+			if (!rows.isEmpty()) {
+				this.expect(",");
+			}
+
+			// Parse the next row's entries.
+			row.clear();
+			this.expect("{");
+			while (!"}".equals(this.peek())) {
+				if (!row.isEmpty()) {
+					this.expect(",");
+				}
+				row.add(this.parseEntry());
+			}
+			this.expect("}");
+
+			// Store the row.
+			double[] values = new double[row.size()];
+			for (int index = 0; index < values.length; index++) {
+				values[index] = row.get(index);
+			}
+			rows.add(values);
+
+		}
+		this.expect("}");
+
+		// Return the results.
+		return new MatrixExpression.Table(rows.toArray(new double[rows.size()][]));
+
+	}
+
+	/**
+	 * Parse a constant table entry.
+	 *
+	 * @return the value
+	 */
+	public double parseEntry() {
+
+		// Find the constant.
+		MatrixExpression expression = this.parseUnary();
+		boolean negate = false;
+		while (expression instanceof MatrixExpression.Negation) {
+			negate = !negate;
+			expression = ((MatrixExpression.Negation) expression).operand;
+		}
+		if (!(expression instanceof MatrixExpression.Constant)) {
+			throw new IllegalArgumentException("Non-constant table entry");
+		}
+
+		// Apply the signs with the entry's own arithmetic.
+		double value = ((MatrixExpression.Constant) expression).value;
+		if (negate) {
+			value = (expression.type == EXPRESSION_TYPE.INT) ?
+					-((int) value) : -value;
+		}
+
+		// Return the results.
+		return value;
+
+	}
+
+	/**
+	 * Parse a number.
+	 *
+	 * @param token the token
+	 * @return the expression
+	 */
+	public MatrixExpression parseNumber(String token) {
+
+		// Check for double literals.
+		if ((token.indexOf('.') >= 0) || (token.indexOf('e') >= 0) ||
+				(token.indexOf('E') >= 0) || (token.indexOf('d') >= 0) ||
+				(token.indexOf('D') >= 0)) {
+
+			// Parse the value.
+			double value = Double.parseDouble(token);
+
+			// Reject values that javac would consider out of range.
+			if (Double.isInfinite(value) || ((value == 0.0) &&
+					token.replaceAll("[eE].*", "").matches(".*[1-9].*"))) {
+				throw new IllegalArgumentException("Literal out of range: " + token);
+			}
+
+			// Return the results.
+			return new MatrixExpression.Constant(value, EXPRESSION_TYPE.DOUBLE);
+
+		}
+
+		// Reject octal literals.
+		if ((token.length() > 1) && (token.charAt(0) == '0')) {
+			throw new IllegalArgumentException("Unsupported literal: " + token);
+		}
+
+		// Return the results.
+		return new MatrixExpression.Constant(Integer.parseInt(token),
+				EXPRESSION_TYPE.INT);
+
+	}
+
+	/**
+	 * Parse a member reference.
+	 *
+	 * @param name the name
+	 * @param qualified true if the name was qualified by "this."
+	 * @return the expression
+	 */
+	public MatrixExpression parseMember(String name, boolean qualified) {
+
+		// Check for method calls.
+		if ("(".equals(this.peek())) {
+			MatrixExpression[] arguments = this.parseArguments();
+			Method method = MatrixExpressionParser.resolve(
+					MatrixExpressionParser.instanceMethods(name), arguments);
+			if ((method == null) && !qualified) {
+				method = MatrixExpressionParser.resolve(
+						MatrixExpressionParser.mathMethods(name), arguments);
+			}
+			if (method == null) {
+				throw new IllegalArgumentException("Unknown function: " + name);
+			}
+			return new MatrixExpression.Call(method, arguments);
+		}
+
+		// Check for formulation variables.
+		Integer index = this.program.fieldIndices.get(name);
+		if (index != null) {
+
+			// Simple names cannot refer forward.
+			if (!qualified && (index >= this.visibleFieldCount)) {
+				throw new IllegalArgumentException("Illegal forward reference: " + name);
+			}
+
+			// Return the results.
+			return new MatrixExpression.Field(index, name);
+
+		}
+
+		// Check for the step size.
+		if (name.equals("stepSize")) {
+			return new MatrixExpression.StepSize();
+		}
+
+		// Check for coefficients.
+		if (name.equals("coefficients")) {
+			this.expect("[");
+			MatrixExpression coefficientIndex = this.parseSum();
+			this.expect("]");
+			if (coefficientIndex.type != EXPRESSION_TYPE.INT) {
+				throw new IllegalArgumentException("Non-integer index");
+			}
+			return new MatrixExpression.Coefficient(coefficientIndex);
+		}
+
+		// Check for statically imported constants.
+		if (!qualified) {
+			return this.parseMath(name);
+		}
+
+		// Reject everything else.
+		throw new IllegalArgumentException("Unknown member: " + name);
+
+	}
+
+	/**
+	 * Parse a java.lang.Math member.
+	 *
+	 * @param name the name
+	 * @return the expression
+	 */
+	public MatrixExpression parseMath(String name) {
+
+		// Check for method calls.
+		if ("(".equals(this.peek())) {
+			MatrixExpression[] arguments = this.parseArguments();
+			Method method = MatrixExpressionParser.resolve(
+					MatrixExpressionParser.mathMethods(name), arguments);
+			if (method == null) {
+				throw new IllegalArgumentException("Unknown function: " + name);
+			}
+			return new MatrixExpression.Call(method, arguments);
+		}
+
+		// Check for constants.
+		if (name.equals("PI")) {
+			return new MatrixExpression.Constant(Math.PI, EXPRESSION_TYPE.DOUBLE);
+		} else if (name.equals("E")) {
+			return new MatrixExpression.Constant(Math.E, EXPRESSION_TYPE.DOUBLE);
+		}
+
+		// Reject everything else.
+		throw new IllegalArgumentException("Unknown name: " + name);
+
+	}
+
+	/**
+	 * Parse a parenthesized argument list.
+	 *
+	 * @return the arguments
+	 */
+	public MatrixExpression[] parseArguments() {
+
+		// Parse the arguments.
+		List<MatrixExpression> arguments = new ArrayList<MatrixExpression>();
+		this.expect("(");
+		if (!")".equals(this.peek())) {
+			arguments.add(this.parseSum());
+			while (",".equals(this.peek())) {
+				this.take();
+				arguments.add(this.parseSum());
+			}
+		}
+		this.expect(")");
+
+		// Return the results.
+		return arguments.toArray(new MatrixExpression[arguments.size()]);
+
+	}
+
+	/**
+	 * Find the formulation methods with the given name.
+	 *
+	 * @param name the name
+	 * @return the methods
+	 */
+	public static List<Method> instanceMethods(String name) {
+
+		// Scan the formulation class and its superclasses.
+		List<Method> methods = new ArrayList<Method>();
+		for (Class<?> owner = MatrixFormulationAbstract.class; owner != null;
+				owner = owner.getSuperclass()) {
+			for (Method method : owner.getDeclaredMethods()) {
+				if (method.getName().equals(name) && !method.isSynthetic() &&
+						!Modifier.isPrivate(method.getModifiers())) {
+					methods.add(method);
+				}
+			}
+		}
+
+		// Return the results.
+		return methods;
+
+	}
+
+	/**
+	 * Find the java.lang.Math methods with the given name.
+	 *
+	 * @param name the name
+	 * @return the methods
+	 */
+	public static List<Method> mathMethods(String name) {
+
+		// Scan the public methods.
+		List<Method> methods = new ArrayList<Method>();
+		for (Method method : Math.class.getMethods()) {
+			if (method.getName().equals(name) &&
+					Modifier.isStatic(method.getModifiers())) {
+				methods.add(method);
+			}
+		}
+
+		// Return the results.
+		return methods;
+
+	}
+
+	/**
+	 * Resolve an overloaded method using Java's rules for primitive
+	 * arguments.
+	 *
+	 * @param methods the candidate methods, all with the same name
+	 * @param arguments the arguments
+	 * @return the method, or null if there are no candidates at all
+	 */
+	public static Method resolve(List<Method> methods,
+			MatrixExpression[] arguments) {
+
+		// Check for unknown names, which allows lookups to continue.
+		if (methods.isEmpty()) {
+			return null;
+		}
+
+		// Find the applicable methods.
+		List<Method> applicable = new ArrayList<Method>();
+		for (Method method : methods) {
+			Class<?>[] parameters = method.getParameterTypes();
+			boolean matches = (parameters.length == arguments.length);
+			for (int index = 0; matches && (index < parameters.length); index++) {
+				if (arguments[index].type == EXPRESSION_TYPE.TABLE) {
+					matches = (parameters[index] == double[][].class);
+				} else {
+					matches = MatrixExpressionParser.widens(
+							(arguments[index].type == EXPRESSION_TYPE.INT) ?
+							int.class : double.class, parameters[index]);
+				}
+			}
+			if (matches) {
+				applicable.add(method);
+			}
+		}
+
+		// Find the most specific applicable method.
+		Method chosen = null;
+		for (Method method : applicable) {
+			boolean mostSpecific = true;
+			for (Method other : applicable) {
+				Class<?>[] parameters = method.getParameterTypes();
+				Class<?>[] otherParameters = other.getParameterTypes();
+				for (int index = 0; index < parameters.length; index++) {
+					mostSpecific &= MatrixExpressionParser.widens(
+							parameters[index], otherParameters[index]);
+				}
+			}
+			if (mostSpecific) {
+				if (chosen != null) {
+					throw new IllegalArgumentException("Ambiguous call: " + method.getName());
+				}
+				chosen = method;
+			}
+		}
+
+		// Check the results.
+		if (chosen == null) {
+			throw new IllegalArgumentException("No applicable method: " +
+					methods.get(0).getName());
+		}
+		for (Class<?> parameter : chosen.getParameterTypes()) {
+			if ((parameter != int.class) && (parameter != double.class) &&
+					(parameter != double[][].class)) {
+				throw new IllegalArgumentException("Unsupported method: " + chosen);
+			}
+		}
+		if ((chosen.getReturnType() != int.class) &&
+				(chosen.getReturnType() != double.class)) {
+			throw new IllegalArgumentException("Unsupported method: " + chosen);
+		}
+
+		// Return the results.
+		return chosen;
+
+	}
+
+	/**
+	 * Checks if a primitive type widens to another.
+	 *
+	 * @param from the source type
+	 * @param to the target type
+	 * @return true, if the source widens to the target
+	 */
+	public static boolean widens(Class<?> from, Class<?> to) {
+
+		// Check the conversion.
+		if (from == to) {
+			return true;
+		} else if (from == int.class) {
+			return (to == long.class) || (to == float.class) || (to == double.class);
+		} else if (from == long.class) {
+			return (to == float.class) || (to == double.class);
+		} else if (from == float.class) {
+			return (to == double.class);
+		} else {
+			return false;
+		}
+
+	}
+
+}
@@ -68,6 +68,23 @@ public abstract class MatrixFormulationAbstract implements Serializable {
 		
 	}
 	
+	/**
+	 * Instantiates a new parameterized matrix formulation.
+	 *
+	 * @param newStepSize the new step size
+	 * @param newCoefficients the new coefficients
+	 */
+	public MatrixFormulationAbstract(double newStepSize,
+			double[] newCoefficients) {
+		
+		// Note the step size.
+		this.stepSize = newStepSize;
+		
+		// Note the coefficients.
+		this.coefficients = newCoefficients;
+		
+	}
+	
 	/**
 	 * Knit.
 	 */
@@ -91,6 +108,9 @@ public abstract class MatrixFormulationAbstract implements Serializable {
 	/** The step size indicator. */
 	public double stepSize = 1.0;
 	
+	/** The coefficients used by parameterized formulations. */
+	public double[] coefficients = new double[0];
+	
 	/**
 	 * Step.
 	 */
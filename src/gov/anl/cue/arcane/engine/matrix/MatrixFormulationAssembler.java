@@ -0,0 +1,673 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.cglib.asm.ClassWriter;
+import net.sf.cglib.asm.MethodVisitor;
+import net.sf.cglib.asm.Opcodes;
+import net.sf.cglib.asm.Type;
+
+import gov.anl.cue.arcane.engine.matrix.MatrixExpression.EXPRESSION_TYPE;
+
+/**
+ * The MatrixFormulationAssembler class emits formulation classes
+ * directly as bytecode, which avoids the cost of running javac on the
+ * straight-line arithmetic that formulations consist of. The emitted
+ * instructions match what javac produces for the same source, so the
+ * results are identical to the compiled formulation. The bytecode is
+ * written with the ASM library that is bundled with cglib.
+ */
+public class MatrixFormulationAssembler implements Opcodes {
+
+	/** The abstract formulation class's internal name. */
+	public static final String ABSTRACT_NAME =
+			Type.getInternalName(MatrixFormulationAbstract.class);
+
+	/**
+	 * Assembles and loads a formulation class.
+	 *
+	 * @param className the fully qualified class name
+	 * @param program the parsed formulation
+	 * @return the formulation class
+	 * @throws ClassNotFoundException the class not found exception
+	 */
+	public static Class<? extends MatrixFormulationAbstract> assembleFormulation(
+			String className, MatrixFormulationProgram program)
+			throws ClassNotFoundException {
+
+		// Assemble the class.
+		Map<String, byte[]> bytecodes = new HashMap<String, byte[]>();
+		bytecodes.put(className, MatrixFormulationAssembler.assemble(
+				className, program));
+
+		// Load the class in its own class loader.
+		return new MatrixFormulationClassLoader(bytecodes)
+				.loadFormulation(className);
+
+	}
+
+	/**
+	 * The estimated size in bytes above which generated code is split into
+	 * helper methods. This keeps every method well under the JVM's 64 KB
+	 * limit and under HotSpot's 8000 byte limit for JIT compilation.
+	 */
+	public static final int METHOD_SIZE_LIMIT = 6000;
+
+	/**
+	 * The Parts class tracks the helper methods split out of a class.
+	 */
+	public static class Parts {
+
+		/** The class writer, or null if methods should not be split. */
+		public ClassWriter writer;
+
+		/** The class's internal name. */
+		public String name;
+
+		/** The number of helper methods. */
+		public int count = 0;
+
+		/**
+		 * Instantiates a new parts tracker.
+		 *
+		 * @param newWriter the class writer
+		 * @param newName the class's internal name
+		 */
+		public Parts(ClassWriter newWriter, String newName) {
+			this.writer = newWriter;
+			this.name = newName;
+		}
+
+		/**
+		 * Names a new private helper method.
+		 *
+		 * @param prefix the method name prefix
+		 * @return the method name
+		 */
+		public String nextName(String prefix) {
+			return prefix + "Part" + this.count++;
+		}
+
+	}
+
+	/**
+	 * Assembles a formulation class.
+	 *
+	 * @param className the fully qualified class name
+	 * @param program the parsed formulation
+	 * @return the bytecode
+	 */
+	public static byte[] assemble(String className,
+			MatrixFormulationProgram program) {
+
+		// Start the class.
+		String name = className.replace('.', '/');
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		writer.visit(V1_5, ACC_PUBLIC + ACC_SUPER, name, null,
+				ABSTRACT_NAME, null);
+		Parts parts = new Parts(writer, name);
+
+		// Declare the fields.
+		for (String fieldName : program.fieldNames) {
+			writer.visitField(0, fieldName, "D", null, null).visitEnd();
+		}
+
+		// Write the constructor, which initializes the fields in order.
+		MethodVisitor method = writer.visitMethod(ACC_PUBLIC, "<init>",
+				"(D[D)V", null, null);
+		method.visitCode();
+		method.visitVarInsn(ALOAD, 0);
+		method.visitVarInsn(DLOAD, 1);
+		method.visitVarInsn(ALOAD, 3);
+		method.visitMethodInsn(INVOKESPECIAL, ABSTRACT_NAME, "<init>", "(D[D)V");
+		List<MatrixFormulationProgram.Assignment> initializers =
+				new ArrayList<MatrixFormulationProgram.Assignment>();
+		for (int index = 0; index < program.fieldNames.size(); index++) {
+			initializers.add(new MatrixFormulationProgram.Assignment(index,
+					false, program.fieldInitializers.get(index)));
+		}
+		MatrixFormulationAssembler.emitAssignments(parts, method,
+				"initialize", program, initializers);
+		method.visitInsn(RETURN);
+		method.visitMaxs(0, 0);
+		method.visitEnd();
+
+		// Write the knit and split methods.
+		MatrixFormulationAssembler.assembleAssignments(parts, "knit",
+				program, program.knit);
+		MatrixFormulationAssembler.assembleAssignments(parts, "split",
+				program, program.split);
+
+		// Write the fitness method.
+		method = writer.visitMethod(ACC_PUBLIC, "calculateFitnessValue",
+				"()Ljava/lang/Double;", null, null);
+		method.visitCode();
+		MatrixFormulationAssembler.emit(parts, method, program.fitness,
+				EXPRESSION_TYPE.DOUBLE);
+		method.visitMethodInsn(INVOKESTATIC, "java/lang/Double", "valueOf",
+				"(D)Ljava/lang/Double;");
+		method.visitInsn(ARETURN);
+		method.visitMaxs(0, 0);
+		method.visitEnd();
+
+		// Return the results.
+		writer.visitEnd();
+		return writer.toByteArray();
+
+	}
+
+	/**
+	 * Assembles a method made of assignments.
+	 *
+	 * @param parts the helper method tracker
+	 * @param methodName the method name
+	 * @param program the program
+	 * @param assignments the assignments
+	 */
+	public static void assembleAssignments(Parts parts, String methodName,
+			MatrixFormulationProgram program,
+			List<MatrixFormulationProgram.Assignment> assignments) {
+
+		// Start the method.
+		MethodVisitor method = parts.writer.visitMethod(ACC_PUBLIC,
+				methodName, "()V", null, null);
+		method.visitCode();
+
+		// Write the assignments.
+		MatrixFormulationAssembler.emitAssignments(parts, method, methodName,
+				program, assignments);
+
+		// Finish the method.
+		method.visitInsn(RETURN);
+		method.visitMaxs(0, 0);
+		method.visitEnd();
+
+	}
+
+	/**
+	 * Emits assignments. Long runs of assignments are split into private
+	 * helper methods that are called in order.
+	 *
+	 * @param parts the helper method tracker
+	 * @param method the method visitor
+	 * @param prefix the helper method name prefix
+	 * @param program the program
+	 * @param assignments the assignments
+	 */
+	public static void emitAssignments(Parts parts, MethodVisitor method,
+			String prefix, MatrixFormulationProgram program,
+			List<MatrixFormulationProgram.Assignment> assignments) {
+
+		// Check the size.
+		int size = 0;
+		for (MatrixFormulationProgram.Assignment assignment : assignments) {
+			size += MatrixFormulationAssembler.size(assignment);
+		}
+		if (size <= METHOD_SIZE_LIMIT) {
+			for (MatrixFormulationProgram.Assignment assignment : assignments) {
+				MatrixFormulationAssembler.emit(parts, method, program,
+						assignment);
+			}
+			return;
+		}
+
+		// Split the assignments into helper methods.
+		int start = 0;
+		while (start < assignments.size()) {
+
+			// Find the next chunk.
+			int end = start;
+			size = 0;
+			while ((end < assignments.size()) && ((end == start) ||
+					(size + MatrixFormulationAssembler.size(
+					assignments.get(end)) <= METHOD_SIZE_LIMIT))) {
+				size += MatrixFormulationAssembler.size(assignments.get(end));
+				end++;
+			}
+
+			// Write the helper method.
+			String helperName = parts.nextName(prefix);
+			MethodVisitor helper = parts.writer.visitMethod(ACC_PRIVATE,
+					helperName, "()V", null, null);
+			helper.visitCode();
+			for (MatrixFormulationProgram.Assignment assignment :
+					assignments.subList(start, end)) {
+				MatrixFormulationAssembler.emit(parts, helper, program,
+						assignment);
+			}
+			helper.visitInsn(RETURN);
+			helper.visitMaxs(0, 0);
+			helper.visitEnd();
+
+			// Call the helper method.
+			method.visitVarInsn(ALOAD, 0);
+			method.visitMethodInsn(INVOKESPECIAL, parts.name, helperName, "()V");
+			start = end;
+
+		}
+
+	}
+
+	/**
+	 * Emits an assignment.
+	 *
+	 * @param parts the helper method tracker
+	 * @param method the method visitor
+	 * @param program the program
+	 * @param assignment the assignment
+	 */
+	public static void emit(Parts parts, MethodVisitor method,
+			MatrixFormulationProgram program,
+			MatrixFormulationProgram.Assignment assignment) {
+
+		// Write the assignment.
+		String fieldName = program.fieldNames.get(assignment.field);
+		method.visitVarInsn(ALOAD, 0);
+		if (assignment.accumulate) {
+			method.visitInsn(DUP);
+			method.visitFieldInsn(GETFIELD, parts.name, fieldName, "D");
+		}
+		MatrixFormulationAssembler.emit(parts, method,
+				assignment.expression, EXPRESSION_TYPE.DOUBLE);
+		if (assignment.accumulate) {
+			method.visitInsn(DADD);
+		}
+		method.visitFieldInsn(PUTFIELD, parts.name, fieldName, "D");
+
+	}
+
+	/**
+	 * Estimates the size of an assignment's bytecode.
+	 *
+	 * @param assignment the assignment
+	 * @return the estimated size in bytes
+	 */
+	public static int size(MatrixFormulationProgram.Assignment assignment) {
+
+		// Return the results.
+		return 10 + MatrixFormulationAssembler.size(assignment.expression);
+
+	}
+
+	/**
+	 * Estimates the size of an expression's bytecode. The estimate is
+	 * an upper bound on what emit() writes without splitting.
+	 *
+	 * @param expression the expression
+	 * @return the estimated size in bytes
+	 */
+	public static int size(MatrixExpression expression) {
+
+		// Check the expression type.
+		int size = 1;
+		if (expression instanceof MatrixExpression.Table) {
+			double[][] values = ((MatrixExpression.Table) expression).values;
+			size += 5;
+			for (double[] row : values) {
+				size += 10 + 8 * row.length;
+			}
+		} else if (expression instanceof MatrixExpression.Coefficient) {
+			size += 5 + MatrixFormulationAssembler.size(
+					((MatrixExpression.Coefficient) expression).index);
+		} else if (expression instanceof MatrixExpression.Negation) {
+			size += 1 + MatrixFormulationAssembler.size(
+					((MatrixExpression.Negation) expression).operand);
+		} else if (expression instanceof MatrixExpression.Operation) {
+			size += 1 + MatrixFormulationAssembler.size(
+					((MatrixExpression.Operation) expression).left) +
+					MatrixFormulationAssembler.size(
+					((MatrixExpression.Operation) expression).right);
+		} else if (expression instanceof MatrixExpression.Call) {
+			size += 4;
+			for (MatrixExpression argument :
+					((MatrixExpression.Call) expression).arguments) {
+				size += MatrixFormulationAssembler.size(argument);
+			}
+		} else {
+			size += 4;
+		}
+
+		// Return the results.
+		return size;
+
+	}
+
+	/**
+	 * Emits an expression, converting it to the requested type.
+	 *
+	 * @param method the method visitor
+	 * @param name the class's internal name
+	 * @param expression the expression
+	 * @param type the requested type
+	 */
+	public static void emit(MethodVisitor method, String name,
+			MatrixExpression expression, EXPRESSION_TYPE type) {
+
+		// Emit the expression without splitting.
+		MatrixFormulationAssembler.emit(new Parts(null, name), method,
+				expression, type);
+
+	}
+
+	/**
+	 * Emits a long chain of operations, such as a large sum, through
+	 * helper methods. The chain is cut into pieces that each take the
+	 * value so far and apply the next operations to it, so the operations
+	 * are carried out in the same order as in a single method.
+	 *
+	 * @param parts the helper method tracker
+	 * @param method the method visitor
+	 * @param expression the expression
+	 * @param type the requested type
+	 */
+	public static void emitChain(Parts parts, MethodVisitor method,
+			MatrixExpression.Operation expression, EXPRESSION_TYPE type) {
+
+		// Find the chain of operations, starting with the innermost.
+		LinkedList<MatrixExpression.Operation> chain =
+				new LinkedList<MatrixExpression.Operation>();
+		MatrixExpression base = expression;
+		while (base instanceof MatrixExpression.Operation) {
+			chain.addFirst((MatrixExpression.Operation) base);
+			base = ((MatrixExpression.Operation) base).left;
+		}
+
+		// Write the pieces.
+		List<String> names = new ArrayList<String>();
+		List<String> descriptors = new ArrayList<String>();
+		EXPRESSION_TYPE previous = null;
+		int start = 0;
+		while (start < chain.size()) {
+
+			// Find the next piece.
+			int end = start;
+			int size = (previous == null) ?
+					MatrixFormulationAssembler.size(base) : 0;
+			while ((end < chain.size()) && ((end == start) ||
+					(size + MatrixFormulationAssembler.size(
+					chain.get(end).right) + 2 <= METHOD_SIZE_LIMIT))) {
+				size += MatrixFormulationAssembler.size(
+						chain.get(end).right) + 2;
+				end++;
+			}
+
+			// Start the helper method.
+			EXPRESSION_TYPE result = chain.get(end - 1).type;
+			String descriptor = "(" + ((previous == null) ? "" :
+					MatrixFormulationAssembler.descriptor(previous)) + ")" +
+					MatrixFormulationAssembler.descriptor(result);
+			String helperName = parts.nextName("value");
+			MethodVisitor helper = parts.writer.visitMethod(ACC_PRIVATE,
+					helperName, descriptor, null, null);
+			helper.visitCode();
+
+			// Load the value so far.
+			EXPRESSION_TYPE current;
+			if (previous == null) {
+				MatrixFormulationAssembler.emit(parts, helper, base,
+						chain.get(start).type);
+			} else {
+				helper.visitVarInsn((previous == EXPRESSION_TYPE.INT) ?
+						ILOAD : DLOAD, 1);
+				if ((previous == EXPRESSION_TYPE.INT) &&
+						(chain.get(start).type == EXPRESSION_TYPE.DOUBLE)) {
+					helper.visitInsn(I2D);
+				}
+			}
+			current = chain.get(start).type;
+
+			// Apply the operations.
+			for (int index = start; index < end; index++) {
+				MatrixExpression.Operation operation = chain.get(index);
+				if ((current == EXPRESSION_TYPE.INT) &&
+						(operation.type == EXPRESSION_TYPE.DOUBLE)) {
+					helper.visitInsn(I2D);
+				}
+				MatrixFormulationAssembler.emit(parts, helper,
+						operation.right, operation.type);
+				MatrixFormulationAssembler.emitOperator(helper, operation);
+				current = operation.type;
+			}
+
+			// Finish the helper method.
+			helper.visitInsn((result == EXPRESSION_TYPE.INT) ?
+					IRETURN : DRETURN);
+			helper.visitMaxs(0, 0);
+			helper.visitEnd();
+			names.add(helperName);
+			descriptors.add(descriptor);
+			previous = result;
+			start = end;
+
+		}
+
+		// Call the pieces in order.
+		for (int index = 0; index < names.size(); index++) {
+			method.visitVarInsn(ALOAD, 0);
+		}
+		for (int index = 0; index < names.size(); index++) {
+			method.visitMethodInsn(INVOKESPECIAL, parts.name,
+					names.get(index), descriptors.get(index));
+		}
+
+		// Widen ints to doubles, as needed.
+		if ((expression.type == EXPRESSION_TYPE.INT) &&
+				(type == EXPRESSION_TYPE.DOUBLE)) {
+			method.visitInsn(I2D);
+		}
+
+	}
+
+	/**
+	 * Finds the descriptor for a numeric expression type.
+	 *
+	 * @param type the type
+	 * @return the descriptor
+	 */
+	public static String descriptor(EXPRESSION_TYPE type) {
+
+		// Return the results.
+		return (type == EXPRESSION_TYPE.INT) ? "I" : "D";
+
+	}
+
+	/**
+	 * Emits an operation's operator.
+	 *
+	 * @param method the method visitor
+	 * @param operation the operation
+	 */
+	public static void emitOperator(MethodVisitor method,
+			MatrixExpression.Operation operation) {
+
+		// Write the instruction.
+		boolean integer = (operation.type == EXPRESSION_TYPE.INT);
+		switch (operation.operator) {
+		case '+':
+			method.visitInsn(integer ? IADD : DADD);
+			break;
+		case '-':
+			method.visitInsn(integer ? ISUB : DSUB);
+			break;
+		case '*':
+			method.visitInsn(integer ? IMUL : DMUL);
+			break;
+		case '/':
+			method.visitInsn(integer ? IDIV : DDIV);
+			break;
+		default:
+			method.visitInsn(integer ? IREM : DREM);
+			break;
+		}
+
+	}
+
+	/**
+	 * Emits an expression, converting it to the requested type. Large
+	 * chains of operations are split into helper methods.
+	 *
+	 * @param parts the helper method tracker
+	 * @param method the method visitor
+	 * @param expression the expression
+	 * @param type the requested type
+	 */
+	public static void emit(Parts parts, MethodVisitor method,
+			MatrixExpression expression, EXPRESSION_TYPE type) {
+
+		// Check for large chains of operations.
+		String name = parts.name;
+		if ((parts.writer != null) &&
+				(expression instanceof MatrixExpression.Operation) &&
+				(MatrixFormulationAssembler.size(expression) >
+				METHOD_SIZE_LIMIT)) {
+			MatrixFormulationAssembler.emitChain(parts, method,
+					(MatrixExpression.Operation) expression, type);
+			return;
+		}
+
+		// Check for constants.
+		if (expression instanceof MatrixExpression.Constant) {
+			double value = ((MatrixExpression.Constant) expression).value;
+			if (expression.type == EXPRESSION_TYPE.INT) {
+				method.visitLdcInsn(Integer.valueOf((int) value));
+			} else {
+				method.visitLdcInsn(Double.valueOf(value));
+			}
+
+		// Check for tables, which are built on each use just as javac
+		// builds array initializers.
+		} else if (expression instanceof MatrixExpression.Table) {
+			double[][] values = ((MatrixExpression.Table) expression).values;
+			method.visitLdcInsn(Integer.valueOf(values.length));
+			method.visitTypeInsn(ANEWARRAY, "[D");
+			for (int row = 0; row < values.length; row++) {
+				method.visitInsn(DUP);
+				method.visitLdcInsn(Integer.valueOf(row));
+				method.visitLdcInsn(Integer.valueOf(values[row].length));
+				method.visitIntInsn(NEWARRAY, T_DOUBLE);
+				for (int column = 0; column < values[row].length; column++) {
+					method.visitInsn(DUP);
+					method.visitLdcInsn(Integer.valueOf(column));
+					method.visitLdcInsn(Double.valueOf(values[row][column]));
+					method.visitInsn(DASTORE);
+				}
+				method.visitInsn(AASTORE);
+			}
+
+		// Check for fields.
+		} else if (expression instanceof MatrixExpression.Field) {
+			method.visitVarInsn(ALOAD, 0);
+			method.visitFieldInsn(GETFIELD, name,
+					((MatrixExpression.Field) expression).name, "D");
+
+		// Check for the step size.
+		} else if (expression instanceof MatrixExpression.StepSize) {
+			method.visitVarInsn(ALOAD, 0);
+			method.visitFieldInsn(GETFIELD, ABSTRACT_NAME, "stepSize", "D");
+
+		// Check for coefficients.
+		} else if (expression instanceof MatrixExpression.Coefficient) {
+			method.visitVarInsn(ALOAD, 0);
+			method.visitFieldInsn(GETFIELD, ABSTRACT_NAME, "coefficients", "[D");
+			MatrixFormulationAssembler.emit(parts, method,
+					((MatrixExpression.Coefficient) expression).index,
+					EXPRESSION_TYPE.INT);
+			method.visitInsn(DALOAD);
+
+		// Check for negation.
+		} else if (expression instanceof MatrixExpression.Negation) {
+			MatrixFormulationAssembler.emit(parts, method,
+					((MatrixExpression.Negation) expression).operand,
+					expression.type);
+			method.visitInsn((expression.type == EXPRESSION_TYPE.INT) ?
+					INEG : DNEG);
+
+		// Check for operations.
+		} else if (expression instanceof MatrixExpression.Operation) {
+			MatrixExpression.Operation operation =
+					(MatrixExpression.Operation) expression;
+			MatrixFormulationAssembler.emit(parts, method, operation.left,
+					operation.type);
+			MatrixFormulationAssembler.emit(parts, method, operation.right,
+					operation.type);
+			MatrixFormulationAssembler.emitOperator(method, operation);
+
+		// Check for calls.
+		} else if (expression instanceof MatrixExpression.Call) {
+			MatrixExpression.Call call = (MatrixExpression.Call) expression;
+			boolean isStatic = Modifier.isStatic(call.method.getModifiers());
+			if (!isStatic) {
+				method.visitVarInsn(ALOAD, 0);
+			}
+			Class<?>[] parameters = call.method.getParameterTypes();
+			for (int index = 0; index < parameters.length; index++) {
+				MatrixFormulationAssembler.emit(parts, method,
+						call.arguments[index], (parameters[index] == double.class) ?
+						EXPRESSION_TYPE.DOUBLE : call.arguments[index].type);
+			}
+			method.visitMethodInsn(isStatic ? INVOKESTATIC : INVOKEVIRTUAL,
+					Type.getInternalName(call.method.getDeclaringClass()),
+					call.method.getName(),
+					Type.getMethodDescriptor(call.method));
+
+		}
+
+		// Widen ints to doubles, as needed.
+		if ((expression.type == EXPRESSION_TYPE.INT) &&
+				(type == EXPRESSION_TYPE.DOUBLE)) {
+			method.visitInsn(I2D);
+		}
+
+	}
+
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The MatrixFormulationCache class holds recently compiled formulation
+ * classes keyed by their generated source. Models whose
+ * equations and link patterns match a cached entry reuse its class
+ * rather than invoking the compiler. The least recently used entry is
+ * evicted once the cache is full, which drops the cache's reference to
+ * the entry's class loader so that the class can be unloaded once no
+ * model refers to it.
+ */
+public class MatrixFormulationCache {
+
+	/** The default maximum number of cached formulations. */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	/** The maximum number of cached formulations. */
+	public int capacity = DEFAULT_CAPACITY;
+
+	/** The number of lookups that found a cached formulation. */
+	public AtomicLong hitCount = new AtomicLong();
+
+	/** The number of lookups that did not find a cached formulation. */
+	public AtomicLong missCount = new AtomicLong();
+
+	/** The number of formulations evicted from the cache. */
+	public AtomicLong evictionCount = new AtomicLong();
+
+	/**
+	 * The cached formulations in least recently used order, keyed by
+	 * their source. Equal sources share one key, so there is no need to
+	 * hash them separately or to keep a second copy in the entries.
+	 */
+	public LinkedHashMap<String, MatrixFormulationCacheEntry> entries =
+			new LinkedHashMap<String, MatrixFormulationCacheEntry>(16, 0.75f, true) {
+
+		/** The Constant serialVersionUID. */
+		private static final long serialVersionUID = 1L;
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+		 */
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<String, MatrixFormulationCacheEntry> eldest) {
+
+			// Check the size.
+			if (this.size() > MatrixFormulationCache.this.capacity) {
+				MatrixFormulationCache.this.evictionCount.incrementAndGet();
+				return true;
+			} else {
+				return false;
+			}
+
+		}
+
+	};
+
+	/**
+	 * The MatrixFormulationCacheEntry class holds a compiled or
+	 * interpreted formulation.
+	 */
+	public static class MatrixFormulationCacheEntry {
+
+		/** The formulation class, if any. */
+		public Class<? extends MatrixFormulationAbstract> formulationClass;
+
+		/** The interpreter code, if any. */
+		public MatrixFormulationInterpreter.Code formulationCode;
+
+		/**
+		 * Instantiates a new matrix formulation cache entry.
+		 *
+		 * @param newFormulationClass the formulation class
+		 * @param newFormulationCode the interpreter code
+		 */
+		public MatrixFormulationCacheEntry(
+				Class<? extends MatrixFormulationAbstract> newFormulationClass,
+				MatrixFormulationInterpreter.Code newFormulationCode) {
+			this.formulationClass = newFormulationClass;
+			this.formulationCode = newFormulationCode;
+		}
+
+	}
+
+	/**
+	 * Instantiates a new matrix formulation cache.
+	 */
+	public MatrixFormulationCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Instantiates a new matrix formulation cache.
+	 *
+	 * @param newCapacity the maximum number of cached formulations
+	 */
+	public MatrixFormulationCache(int newCapacity) {
+		this.capacity = newCapacity;
+	}
+
+	/**
+	 * Finds a SHA-256 digest of a formulation source, which the
+	 * formulation store uses to name its files.
+	 *
+	 * @param source the source
+	 * @return the key
+	 */
+	public static String key(String source) {
+
+		// Attempt to hash the source.
+		try {
+
+			// Hash the source.
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(
+					source.getBytes(StandardCharsets.UTF_8));
+
+			// Format the results.
+			StringBuilder key = new StringBuilder(2 * digest.length);
+			for (byte value : digest) {
+				key.append(Character.forDigit((value >> 4) & 0xF, 16));
+				key.append(Character.forDigit(value & 0xF, 16));
+			}
+
+			// Return the results.
+			return key.toString();
+
+		// Catch errors.
+		} catch (NoSuchAlgorithmException e) {
+
+			// Fall back to the source itself.
+			return source;
+
+		}
+
+	}
+
+	/**
+	 * Gets a cached formulation class.
+	 *
+	 * @param source the source
+	 * @return the formulation class, or null if it is not cached
+	 */
+	public synchronized Class<? extends MatrixFormulationAbstract> get(
+			String source) {
+
+		// Find the entry.
+		MatrixFormulationCacheEntry entry = this.getEntry(source);
+
+		// Return the results.
+		return (entry == null) ? null : entry.formulationClass;
+
+	}
+
+	/**
+	 * Gets a cached formulation.
+	 *
+	 * @param source the source
+	 * @return the entry, or null if it is not cached
+	 */
+	public synchronized MatrixFormulationCacheEntry getEntry(String source) {
+
+		// Find the entry.
+		MatrixFormulationCacheEntry entry = this.entries.get(source);
+
+		// Note the results.
+		if (entry != null) {
+			this.hitCount.incrementAndGet();
+		} else {
+			this.missCount.incrementAndGet();
+		}
+
+		// Return the results.
+		return entry;
+
+	}
+
+	/**
+	 * Adds a formulation class to the cache.
+	 *
+	 * @param source the source
+	 * @param formulationClass the formulation class
+	 */
+	public synchronized void put(String source,
+			Class<? extends MatrixFormulationAbstract> formulationClass) {
+
+		// Store the entry.
+		this.put(source, formulationClass, null);
+
+	}
+
+	/**
+	 * Adds a formulation to the cache.
+	 *
+	 * @param source the source
+	 * @param formulationClass the formulation class, if any
+	 * @param formulationCode the interpreter code, if any
+	 */
+	public synchronized void put(String source,
+			Class<? extends MatrixFormulationAbstract> formulationClass,
+			MatrixFormulationInterpreter.Code formulationCode) {
+
+		// Store the entry.
+		this.entries.put(source, new MatrixFormulationCacheEntry(
+				formulationClass, formulationCode));
+
+	}
+
+	/**
+	 * Gets the number of cached formulations.
+	 *
+	 * @return the size
+	 */
+	public synchronized int size() {
+		return this.entries.size();
+	}
+
+	/**
+	 * Gets the fraction of lookups that found a cached formulation.
+	 *
+	 * @return the hit rate
+	 */
+	public double hitRate() {
+		long hits = this.hitCount.get();
+		long lookups = hits + this.missCount.get();
+		return (lookups == 0) ? 0.0 : ((double) hits) / lookups;
+	}
+
+	/**
+	 * Clears the cache, releasing all of the cached class loaders.
+	 */
+	public synchronized void clear() {
+		this.entries.clear();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public synchronized String toString() {
+		return "MatrixFormulationCache [size=" + this.entries.size() +
+				", capacity=" + this.capacity + ", hits=" + this.hitCount +
+				", misses=" + this.missCount + ", evictions=" +
+				this.evictionCount + "]";
+	}
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The MatrixFormulationClassLoader class defines dynamically generated
+ * formulation classes directly from their bytecode. Each loader owns
+ * the classes it defines, so a formulation class can be unloaded as
+ * soon as its loader is no longer referenced. Classes that are not
+ * owned by the loader, such as MatrixFormulationAbstract, are
+ * delegated to the parent class loader.
+ */
+public class MatrixFormulationClassLoader extends ClassLoader {
+
+	/** The bytecode for the classes that this loader owns. */
+	public Map<String, byte[]> bytecodes = new HashMap<String, byte[]>();
+
+	/**
+	 * Instantiates a new matrix formulation class loader.
+	 *
+	 * @param newBytecodes the bytecodes keyed by fully qualified class name
+	 */
+	public MatrixFormulationClassLoader(Map<String, byte[]> newBytecodes) {
+
+		// Delegate shared classes to the loader that holds the formulations.
+		super(MatrixFormulationAbstract.class.getClassLoader());
+
+		// Note the bytecodes.
+		this.bytecodes.putAll(newBytecodes);
+
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.ClassLoader#loadClass(java.lang.String, boolean)
+	 */
+	@Override
+	protected Class<?> loadClass(String name, boolean resolve)
+			throws ClassNotFoundException {
+
+		// Make sure that only one thread defines a given class.
+		synchronized (this.getClassLoadingLock(name)) {
+
+			// Check for owned classes first since a generated class may
+			// share its name with a class already known to the parent.
+			Class<?> loadedClass = this.findLoadedClass(name);
+			if ((loadedClass == null) && this.bytecodes.containsKey(name)) {
+				loadedClass = this.findClass(name);
+			}
+
+			// Otherwise use the parent.
+			if (loadedClass == null) {
+				return super.loadClass(name, resolve);
+			}
+
+			// Resolve the class, if requested.
+			if (resolve) {
+				this.resolveClass(loadedClass);
+			}
+
+			// Return the results.
+			return loadedClass;
+
+		}
+
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.ClassLoader#findClass(java.lang.String)
+	 */
+	@Override
+	protected Class<?> findClass(String name) throws ClassNotFoundException {
+
+		// Find the requested bytecode.
+		byte[] bytecode = this.bytecodes.get(name);
+
+		// Check the bytecode.
+		if (bytecode == null) {
+			throw new ClassNotFoundException(name);
+		}
+
+		// Define the class.
+		return this.defineClass(name, bytecode, 0, bytecode.length);
+
+	}
+
+	/**
+	 * Loads a formulation class.
+	 *
+	 * @param name the fully qualified class name
+	 * @return the formulation class
+	 * @throws ClassNotFoundException the class not found exception
+	 */
+	public Class<? extends MatrixFormulationAbstract> loadFormulation(
+			String name) throws ClassNotFoundException {
+
+		// Return the results.
+		return this.loadClass(name).asSubclass(
+				MatrixFormulationAbstract.class);
+
+	}
+
+}
@@ -0,0 +1,399 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.DiagnosticListener;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * The MatrixFormulationCompiler class compiles generated formulation
+ * source code entirely in memory. The source is handed to the system
+ * Java compiler as a string and the resulting bytecode is captured in
+ * memory, so no files are written to or read from the temporary
+ * directory.
+ */
+public class MatrixFormulationCompiler {
+
+	/**
+	 * Instantiates a new matrix formulation compiler.
+	 */
+	public MatrixFormulationCompiler() {
+	}
+
+	/**
+	 * Compiles a formulation and loads it through a new class loader.
+	 *
+	 * @param className the fully qualified class name
+	 * @param source the source code
+	 * @return the formulation class
+	 * @throws ClassNotFoundException the class not found exception
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static Class<? extends MatrixFormulationAbstract> compileFormulation(
+			String className, String source) throws ClassNotFoundException,
+			IOException {
+
+		// Prepare the source.
+		Map<String, String> sources = new HashMap<String, String>();
+		sources.put(className, source);
+
+		// Compile and load the results.
+		return new MatrixFormulationClassLoader(
+				MatrixFormulationCompiler.compile(sources))
+				.loadFormulation(className);
+
+	}
+
+	/**
+	 * Compiles a set of classes in memory.
+	 *
+	 * @param sources the source code keyed by fully qualified class name
+	 * @return the bytecode keyed by fully qualified class name
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static Map<String, byte[]> compile(Map<String, String> sources)
+			throws IOException {
+
+		// Compile without collecting diagnostics.
+		return MatrixFormulationCompiler.compile(sources, null);
+
+	}
+
+	/**
+	 * Compiles a batch of classes in memory with one compiler task, so the
+	 * compiler's startup cost is shared by the whole batch. Classes that
+	 * fail to compile are dropped and the rest are compiled again, so one
+	 * invalid formulation does not prevent the others from loading.
+	 *
+	 * @param sources the source code keyed by fully qualified class name
+	 * @return the bytecode keyed by fully qualified class name for the
+	 *         classes that compiled
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static Map<String, byte[]> compileBatch(Map<String, String> sources)
+			throws IOException {
+
+		// Copy the sources so that failures can be removed.
+		Map<String, String> remaining = new HashMap<String, String>(sources);
+
+		// Compile until the remaining sources succeed.
+		while (!remaining.isEmpty()) {
+
+			// Attempt the compilation.
+			DiagnosticCollector<JavaFileObject> diagnostics =
+					new DiagnosticCollector<JavaFileObject>();
+			try {
+				return MatrixFormulationCompiler.compile(remaining,
+						diagnostics);
+
+			// Find the sources that failed.
+			} catch (IOException e) {
+
+				// Remove the failed sources.
+				int size = remaining.size();
+				for (Diagnostic<? extends JavaFileObject> diagnostic :
+						diagnostics.getDiagnostics()) {
+					if ((diagnostic.getKind() == Diagnostic.Kind.ERROR) &&
+							(diagnostic.getSource()
+							instanceof MatrixFormulationSource)) {
+						remaining.remove(((MatrixFormulationSource)
+								diagnostic.getSource()).className);
+					}
+				}
+
+				// Stop if the failures cannot be attributed.
+				if (remaining.size() == size) {
+					throw e;
+				}
+
+			}
+
+		}
+
+		// Return the default.
+		return new HashMap<String, byte[]>();
+
+	}
+
+	/**
+	 * Compiles a set of classes in memory.
+	 *
+	 * @param sources the source code keyed by fully qualified class name
+	 * @param diagnostics the diagnostic listener, or null for the default
+	 * @return the bytecode keyed by fully qualified class name
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static Map<String, byte[]> compile(Map<String, String> sources,
+			DiagnosticListener<? super JavaFileObject> diagnostics)
+			throws IOException {
+
+		// Find the system compiler.
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null) {
+			throw new IOException("No system Java compiler is available.");
+		}
+
+		// Prepare the compilation units.
+		List<JavaFileObject> units = new ArrayList<JavaFileObject>();
+		for (Map.Entry<String, String> entry : sources.entrySet()) {
+			units.add(new MatrixFormulationSource(entry.getKey(),
+					entry.getValue()));
+		}
+
+		// Prepare an in-memory file manager.
+		MatrixFormulationFileManager fileManager =
+				new MatrixFormulationFileManager(
+				compiler.getStandardFileManager(null, null, null));
+
+		// Compile the sources.
+		try {
+
+			// Attempt the compilation.
+			Boolean results = compiler.getTask(null, fileManager, diagnostics,
+					MatrixFormulationCompiler.options(), null, units).call();
+
+			// Check the results.
+			if ((results == null) || !results) {
+				throw new IOException("The formulation failed to compile.");
+			}
+
+		// Release the file manager.
+		} finally {
+
+			// Close the file manager.
+			fileManager.close();
+
+		}
+
+		// Return the results.
+		return fileManager.getBytecodes();
+
+	}
+
+	/**
+	 * Finds the compiler options.
+	 *
+	 * @return the options
+	 */
+	public static List<String> options() {
+
+		// Make sure that the formulation base classes are visible even when
+		// they are not on the system class path (e.g., under test runners).
+		String classPath = System.getProperty("java.class.path");
+		try {
+			String location = new File(MatrixFormulationAbstract.class
+					.getProtectionDomain().getCodeSource().getLocation()
+					.toURI()).getPath();
+			classPath = location + File.pathSeparator + classPath;
+		} catch (Exception e) {
+		}
+
+		// Return the results.
+		return Arrays.asList("-classpath", classPath, "-g:none", "-nowarn");
+
+	}
+
+	/**
+	 * The MatrixFormulationSource class holds source code in memory.
+	 */
+	public static class MatrixFormulationSource extends SimpleJavaFileObject {
+
+		/** The fully qualified class name. */
+		public String className = null;
+
+		/** The source code. */
+		public String source = null;
+
+		/**
+		 * Instantiates a new matrix formulation source.
+		 *
+		 * @param className the fully qualified class name
+		 * @param newSource the new source
+		 */
+		public MatrixFormulationSource(String className, String newSource) {
+
+			// Note the location.
+			super(URI.create("string:///" + className.replace('.', '/')
+					+ Kind.SOURCE.extension), Kind.SOURCE);
+
+			// Note the class name and source.
+			this.className = className;
+			this.source = newSource;
+
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see javax.tools.SimpleJavaFileObject#getCharContent(boolean)
+		 */
+		@Override
+		public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+
+			// Return the results.
+			return this.source;
+
+		}
+
+	}
+
+	/**
+	 * The MatrixFormulationBytecode class holds bytecode in memory.
+	 */
+	public static class MatrixFormulationBytecode extends SimpleJavaFileObject {
+
+		/** The bytecode. */
+		public ByteArrayOutputStream bytecode = new ByteArrayOutputStream();
+
+		/**
+		 * Instantiates a new matrix formulation bytecode.
+		 *
+		 * @param className the fully qualified class name
+		 */
+		public MatrixFormulationBytecode(String className) {
+
+			// Note the location.
+			super(URI.create("bytes:///" + className.replace('.', '/')
+					+ Kind.CLASS.extension), Kind.CLASS);
+
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see javax.tools.SimpleJavaFileObject#openOutputStream()
+		 */
+		@Override
+		public OutputStream openOutputStream() {
+
+			// Return the results.
+			return this.bytecode;
+
+		}
+
+	}
+
+	/**
+	 * The MatrixFormulationFileManager class keeps compiler output in memory.
+	 */
+	public static class MatrixFormulationFileManager extends
+			ForwardingJavaFileManager<StandardJavaFileManager> {
+
+		/** The outputs. */
+		public Map<String, MatrixFormulationBytecode> outputs =
+				new HashMap<String, MatrixFormulationBytecode>();
+
+		/**
+		 * Instantiates a new matrix formulation file manager.
+		 *
+		 * @param fileManager the standard file manager
+		 */
+		public MatrixFormulationFileManager(StandardJavaFileManager fileManager) {
+			super(fileManager);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see javax.tools.ForwardingJavaFileManager#getJavaFileForOutput(javax.tools.JavaFileManager.Location, java.lang.String, javax.tools.JavaFileObject.Kind, javax.tools.FileObject)
+		 */
+		@Override
+		public JavaFileObject getJavaFileForOutput(Location location,
+				String className, Kind kind, FileObject sibling) {
+
+			// Create and note the output.
+			MatrixFormulationBytecode output =
+					new MatrixFormulationBytecode(className);
+			this.outputs.put(className, output);
+
+			// Return the results.
+			return output;
+
+		}
+
+		/**
+		 * Gets the bytecodes.
+		 *
+		 * @return the bytecodes keyed by fully qualified class name
+		 */
+		public Map<String, byte[]> getBytecodes() {
+
+			// Collect the results.
+			Map<String, byte[]> results = new HashMap<String, byte[]>();
+			for (Map.Entry<String, MatrixFormulationBytecode> entry :
+					this.outputs.entrySet()) {
+				results.put(entry.getKey(),
+						entry.getValue().bytecode.toByteArray());
+			}
+
+			// Return the results.
+			return results;
+
+		}
+
+	}
+
+}
@@ -0,0 +1,749 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import gov.anl.cue.arcane.engine.matrix.MatrixExpression.EXPRESSION_TYPE;
+
+/**
+ * The MatrixFormulationInterpreter class evaluates a parsed formulation
+ * without generating any code. The formulation is translated once into
+ * a compact stack machine program that works over a double[] state
+ * vector holding the formulation variables. The program is shared by
+ * every instance, while each instance has its own state, so one
+ * translation can be run by any number of models and threads. Integer
+ * arithmetic follows Java's rules so that the results are identical to
+ * the compiled formulation.
+ */
+public class MatrixFormulationInterpreter extends MatrixFormulationAbstract {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 4087154460237421652L;
+
+	/** Push the constant given by the operand. */
+	public static final int CONSTANT = 0;
+
+	/** Push the variable given by the operand. */
+	public static final int LOAD = 1;
+
+	/** Pop a value into the variable given by the operand. */
+	public static final int STORE = 2;
+
+	/** Pop a value and add it to the variable given by the operand. */
+	public static final int ACCUMULATE = 3;
+
+	/** Push the step size. */
+	public static final int STEP_SIZE = 4;
+
+	/** Pop an index and push the matching coefficient. */
+	public static final int COEFFICIENT = 5;
+
+	/** Push the index of the table given by the operand. */
+	public static final int TABLE = 6;
+
+	/** Negate an int. */
+	public static final int INEG = 7;
+
+	/** Add ints. */
+	public static final int IADD = 8;
+
+	/** Subtract ints. */
+	public static final int ISUB = 9;
+
+	/** Multiply ints. */
+	public static final int IMUL = 10;
+
+	/** Divide ints. */
+	public static final int IDIV = 11;
+
+	/** Find the remainder of ints. */
+	public static final int IREM = 12;
+
+	/** Negate a double. */
+	public static final int DNEG = 13;
+
+	/** Add doubles. */
+	public static final int DADD = 14;
+
+	/** Subtract doubles. */
+	public static final int DSUB = 15;
+
+	/** Multiply doubles. */
+	public static final int DMUL = 16;
+
+	/** Divide doubles. */
+	public static final int DDIV = 17;
+
+	/** Find the remainder of doubles. */
+	public static final int DREM = 18;
+
+	/** Call the built-in or java.lang.Math method given by the operand. */
+	public static final int CALL = 19;
+
+	/** Call a method reflectively. */
+	public static final int REFLECTED = 0;
+
+	/** Call zeroFill(). */
+	public static final int ZERO_FILL = 1;
+
+	/** Call SIN(). */
+	public static final int SIN = 2;
+
+	/** Call COS(). */
+	public static final int COS = 3;
+
+	/** Call EXP(). */
+	public static final int EXP = 4;
+
+	/** Call POW(). */
+	public static final int POW = 5;
+
+	/** Call MIN(). */
+	public static final int MIN = 6;
+
+	/** Call MAX(). */
+	public static final int MAX = 7;
+
+	/** Call LINEARSTEP(). */
+	public static final int LINEARSTEP = 8;
+
+	/** Call SQUARESTEP(). */
+	public static final int SQUARESTEP = 9;
+
+	/**
+	 * The Code class is a translated formulation. The instructions are
+	 * immutable and can be shared between threads. The only mutable
+	 * parts are the tiering counters and the compiled class, which are
+	 * used by MatrixFormulationTiering to promote frequently or
+	 * expensively interpreted formulations to bytecode.
+	 */
+	public static class Code {
+
+		/** The parsed formulation. */
+		public MatrixFormulationProgram program;
+
+		/** The number of instructions run by each step. */
+		public int stepLength = 0;
+
+		/** The total number of instructions interpreted so far. */
+		public AtomicLong interpretedWork = new AtomicLong();
+
+		/** The compiled class, once the formulation has been promoted. */
+		public volatile Class<? extends MatrixFormulationAbstract> compiledClass = null;
+
+		/** The compile failed flag, which prevents repeated attempts. */
+		public volatile boolean compileFailed = false;
+
+		/** The number of variables. */
+		public int fieldCount = 0;
+
+		/** The variable names. */
+		public String[] fieldNames;
+
+		/** The initialization instructions. */
+		public int[] initialize;
+
+		/** The knit instructions. */
+		public int[] knit;
+
+		/** The split instructions. */
+		public int[] split;
+
+		/** The fitness instructions. */
+		public int[] fitness;
+
+		/** The constants. */
+		public double[] constants;
+
+		/** The tables. */
+		public double[][][] tables;
+
+		/** The methods. */
+		public Method[] methods;
+
+		/** The direct call code for each method. */
+		public int[] builtins;
+
+		/** The argument count for each method. */
+		public int[] argumentCounts;
+
+		/** The maximum stack depth. */
+		public int stackSize = 0;
+
+	}
+
+	/** The translated formulation. */
+	public Code code;
+
+	/** The formulation variables. */
+	public double[] state;
+
+	/** The evaluation stack. */
+	public double[] stack;
+
+	/**
+	 * Instantiates a new matrix formulation interpreter.
+	 *
+	 * @param newStepSize the new step size
+	 * @param newCoefficients the new coefficients
+	 * @param newCode the translated formulation
+	 */
+	public MatrixFormulationInterpreter(double newStepSize,
+			double[] newCoefficients, Code newCode) {
+
+		// Note the parameters.
+		super(newStepSize, newCoefficients);
+
+		// Note the code.
+		this.code = newCode;
+
+		// Allocate the storage.
+		this.state = new double[newCode.fieldCount];
+		this.stack = new double[Math.max(1, newCode.stackSize)];
+
+		// Initialize the variables.
+		this.execute(newCode.initialize);
+
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see gov.anl.cue.arcane.engine.matrix.MatrixFormulationAbstract#knit()
+	 */
+	@Override
+	public void knit() {
+		this.execute(this.code.knit);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see gov.anl.cue.arcane.engine.matrix.MatrixFormulationAbstract#split()
+	 */
+	@Override
+	public void split() {
+		this.execute(this.code.split);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see gov.anl.cue.arcane.engine.matrix.MatrixFormulationAbstract#calculateFitnessValue()
+	 */
+	@Override
+	public Double calculateFitnessValue() {
+		return this.execute(this.code.fitness);
+	}
+
+	/**
+	 * Gets the value of a formulation variable.
+	 *
+	 * @param name the name
+	 * @return the value
+	 */
+	public double getValue(String name) {
+
+		// Find the variable.
+		for (int index = 0; index < this.code.fieldNames.length; index++) {
+			if (this.code.fieldNames[index].equals(name)) {
+				return this.state[index];
+			}
+		}
+
+		// Note the missing variable.
+		throw new IllegalArgumentException("Unknown variable: " + name);
+
+	}
+
+	/**
+	 * Executes instructions.
+	 *
+	 * @param instructions the instructions
+	 * @return the value left on the stack, if any
+	 */
+	public double execute(int[] instructions) {
+
+		// Prepare the storage.
+		double[] state = this.state;
+		double[] stack = this.stack;
+		int top = -1;
+
+		// Run the instructions.
+		for (int position = 0; position < instructions.length; position++) {
+			switch (instructions[position]) {
+			case CONSTANT:
+				stack[++top] = this.code.constants[instructions[++position]];
+				break;
+			case LOAD:
+				stack[++top] = state[instructions[++position]];
+				break;
+			case STORE:
+				state[instructions[++position]] = stack[top--];
+				break;
+			case ACCUMULATE:
+				int field = instructions[++position];
+				state[field] = state[field] + stack[top--];
+				break;
+			case STEP_SIZE:
+				stack[++top] = this.stepSize;
+				break;
+			case COEFFICIENT:
+				stack[top] = this.coefficients[(int) stack[top]];
+				break;
+			case TABLE:
+				stack[++top] = instructions[++position];
+				break;
+			case INEG:
+				stack[top] = -((int) stack[top]);
+				break;
+			case IADD:
+				top--;
+				stack[top] = ((int) stack[top]) + ((int) stack[top + 1]);
+				break;
+			case ISUB:
+				top--;
+				stack[top] = ((int) stack[top]) - ((int) stack[top + 1]);
+				break;
+			case IMUL:
+				top--;
+				stack[top] = ((int) stack[top]) * ((int) stack[top + 1]);
+				break;
+			case IDIV:
+				top--;
+				stack[top] = ((int) stack[top]) / ((int) stack[top + 1]);
+				break;
+			case IREM:
+				top--;
+				stack[top] = ((int) stack[top]) % ((int) stack[top + 1]);
+				break;
+			case DNEG:
+				stack[top] = -stack[top];
+				break;
+			case DADD:
+				top--;
+				stack[top] = stack[top] + stack[top + 1];
+				break;
+			case DSUB:
+				top--;
+				stack[top] = stack[top] - stack[top + 1];
+				break;
+			case DMUL:
+				top--;
+				stack[top] = stack[top] * stack[top + 1];
+				break;
+			case DDIV:
+				top--;
+				stack[top] = stack[top] / stack[top + 1];
+				break;
+			case DREM:
+				top--;
+				stack[top] = stack[top] % stack[top + 1];
+				break;
+			case CALL:
+				int method = instructions[++position];
+				top = top - this.code.argumentCounts[method] + 1;
+				stack[top] = this.call(method, stack, top);
+				break;
+			default:
+				throw new IllegalStateException("Unknown instruction: " +
+						instructions[position]);
+			}
+		}
+
+		// Return the results.
+		return (top >= 0) ? stack[top] : Double.NaN;
+
+	}
+
+	/**
+	 * Calls a method. The common built-ins are called directly and the
+	 * rest are called reflectively.
+	 *
+	 * @param method the method index
+	 * @param stack the stack
+	 * @param first the stack position of the first argument
+	 * @return the results
+	 */
+	public double call(int method, double[] stack, int first) {
+
+		// Check for direct calls.
+		switch (this.code.builtins[method]) {
+		case ZERO_FILL:
+			return this.zeroFill(stack[first]);
+		case SIN:
+			return this.SIN(stack[first]);
+		case COS:
+			return this.COS(stack[first]);
+		case EXP:
+			return this.EXP(stack[first]);
+		case POW:
+			return this.POW(stack[first], stack[first + 1]);
+		case MIN:
+			return this.MIN(stack[first], stack[first + 1]);
+		case MAX:
+			return this.MAX(stack[first], stack[first + 1]);
+		case LINEARSTEP:
+			return this.LINEARSTEP(stack[first],
+					this.code.tables[(int) stack[first + 1]]);
+		case SQUARESTEP:
+			return this.SQUARESTEP(stack[first],
+					this.code.tables[(int) stack[first + 1]]);
+		default:
+			break;
+		}
+
+		// Gather the arguments.
+		Method reflected = this.code.methods[method];
+		Class<?>[] parameters = reflected.getParameterTypes();
+		Object[] arguments = new Object[parameters.length];
+		for (int index = 0; index < parameters.length; index++) {
+			if (parameters[index] == int.class) {
+				arguments[index] = (int) stack[first + index];
+			} else if (parameters[index] == double.class) {
+				arguments[index] = stack[first + index];
+			} else {
+				arguments[index] = this.code.tables[(int) stack[first + index]];
+			}
+		}
+
+		// Call the method.
+		try {
+			Object result = reflected.invoke(
+					Modifier.isStatic(reflected.getModifiers()) ? null : this,
+					arguments);
+			return ((Number) result).doubleValue();
+
+		// Pass on errors from the method itself.
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			} else {
+				throw new IllegalStateException(e.getCause());
+			}
+
+		// Catch errors.
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+
+	}
+
+	/**
+	 * Finds the direct call code for a method.
+	 *
+	 * @param method the method
+	 * @return the built-in code, or REFLECTED for reflective calls
+	 */
+	public static int builtin(Method method) {
+
+		// Only the formulation built-ins are called directly.
+		if (method.getDeclaringClass() != MatrixFormulationAbstract.class) {
+			return REFLECTED;
+		}
+
+		// Check the name.
+		String name = method.getName();
+		if (name.equals("zeroFill")) {
+			return ZERO_FILL;
+		} else if (name.equals("SIN")) {
+			return SIN;
+		} else if (name.equals("COS")) {
+			return COS;
+		} else if (name.equals("EXP")) {
+			return EXP;
+		} else if (name.equals("POW")) {
+			return POW;
+		} else if (name.equals("MIN")) {
+			return MIN;
+		} else if (name.equals("MAX")) {
+			return MAX;
+		} else if (name.equals("LINEARSTEP")) {
+			return LINEARSTEP;
+		} else if (name.equals("SQUARESTEP")) {
+			return SQUARESTEP;
+		} else {
+			return REFLECTED;
+		}
+
+	}
+
+	/**
+	 * Translates a formulation.
+	 *
+	 * @param program the parsed formulation
+	 * @return the code
+	 */
+	public static Code translate(MatrixFormulationProgram program) {
+
+		// Prepare the storage.
+		Code code = new Code();
+		MatrixFormulationInterpreter.Translator translator =
+				new MatrixFormulationInterpreter.Translator();
+
+		// Translate the initializers.
+		for (int index = 0; index < program.fieldNames.size(); index++) {
+			translator.translate(program.fieldInitializers.get(index));
+			translator.add(STORE, index, -1);
+		}
+		code.initialize = translator.finish();
+
+		// Translate the equations.
+		code.knit = translator.translate(program.knit);
+		code.split = translator.translate(program.split);
+
+		// Translate the fitness.
+		translator.translate(program.fitness);
+		code.fitness = translator.finish();
+
+		// Note the shared values.
+		code.fieldCount = program.fieldNames.size();
+		code.fieldNames = program.fieldNames.toArray(
+				new String[program.fieldNames.size()]);
+		code.constants = new double[translator.constants.size()];
+		for (int index = 0; index < code.constants.length; index++) {
+			code.constants[index] = translator.constants.get(index);
+		}
+		code.tables = translator.tables.toArray(
+				new double[translator.tables.size()][][]);
+		code.methods = translator.methods.toArray(
+				new Method[translator.methods.size()]);
+		code.builtins = new int[code.methods.length];
+		code.argumentCounts = new int[code.methods.length];
+		for (int index = 0; index < code.methods.length; index++) {
+			code.builtins[index] = MatrixFormulationInterpreter.builtin(
+					code.methods[index]);
+			code.argumentCounts[index] =
+					code.methods[index].getParameterTypes().length;
+		}
+		code.stackSize = translator.maximumDepth;
+		code.program = program;
+		code.stepLength = code.knit.length + code.split.length;
+
+		// Return the results.
+		return code;
+
+	}
+
+	/**
+	 * The Translator class turns expressions into instructions.
+	 */
+	public static class Translator {
+
+		/** The instructions being assembled. */
+		public List<Integer> instructions = new ArrayList<Integer>();
+
+		/** The constants. */
+		public List<Double> constants = new ArrayList<Double>();
+
+		/** The tables. */
+		public List<double[][]> tables = new ArrayList<double[][]>();
+
+		/** The methods. */
+		public List<Method> methods = new ArrayList<Method>();
+
+		/** The current stack depth. */
+		public int depth = 0;
+
+		/** The maximum stack depth. */
+		public int maximumDepth = 0;
+
+		/**
+		 * Adds an instruction.
+		 *
+		 * @param instruction the instruction
+		 * @param change the change in stack depth
+		 */
+		public void add(int instruction, int change) {
+			this.instructions.add(instruction);
+			this.depth += change;
+			this.maximumDepth = Math.max(this.maximumDepth, this.depth);
+		}
+
+		/**
+		 * Adds an instruction with an operand.
+		 *
+		 * @param instruction the instruction
+		 * @param operand the operand
+		 * @param change the change in stack depth
+		 */
+		public void add(int instruction, int operand, int change) {
+			this.add(instruction, change);
+			this.instructions.add(operand);
+		}
+
+		/**
+		 * Finishes the current instruction sequence.
+		 *
+		 * @return the instructions
+		 */
+		public int[] finish() {
+
+			// Copy the instructions.
+			int[] results = new int[this.instructions.size()];
+			for (int index = 0; index < results.length; index++) {
+				results[index] = this.instructions.get(index);
+			}
+
+			// Start the next sequence.
+			this.instructions.clear();
+			this.depth = 0;
+
+			// Return the results.
+			return results;
+
+		}
+
+		/**
+		 * Translates assignments.
+		 *
+		 * @param assignments the assignments
+		 * @return the instructions
+		 */
+		public int[] translate(
+				List<MatrixFormulationProgram.Assignment> assignments) {
+
+			// Translate the assignments.
+			for (MatrixFormulationProgram.Assignment assignment : assignments) {
+				this.translate(assignment.expression);
+				this.add(assignment.accumulate ? ACCUMULATE : STORE,
+						assignment.field, -1);
+			}
+
+			// Return the results.
+			return this.finish();
+
+		}
+
+		/**
+		 * Translates an expression. Ints are held on the stack as exact
+		 * doubles, so widening an int to a double needs no instruction.
+		 *
+		 * @param expression the expression
+		 */
+		public void translate(MatrixExpression expression) {
+
+			// Check for constants.
+			if (expression instanceof MatrixExpression.Constant) {
+				this.constants.add(((MatrixExpression.Constant) expression).value);
+				this.add(CONSTANT, this.constants.size() - 1, 1);
+
+			// Check for tables.
+			} else if (expression instanceof MatrixExpression.Table) {
+				this.tables.add(((MatrixExpression.Table) expression).values);
+				this.add(TABLE, this.tables.size() - 1, 1);
+
+			// Check for fields.
+			} else if (expression instanceof MatrixExpression.Field) {
+				this.add(LOAD, ((MatrixExpression.Field) expression).index, 1);
+
+			// Check for the step size.
+			} else if (expression instanceof MatrixExpression.StepSize) {
+				this.add(STEP_SIZE, 1);
+
+			// Check for coefficients.
+			} else if (expression instanceof MatrixExpression.Coefficient) {
+				this.translate(((MatrixExpression.Coefficient) expression).index);
+				this.add(COEFFICIENT, 0);
+
+			// Check for negation.
+			} else if (expression instanceof MatrixExpression.Negation) {
+				this.translate(((MatrixExpression.Negation) expression).operand);
+				this.add((expression.type == EXPRESSION_TYPE.INT) ?
+						INEG : DNEG, 0);
+
+			// Check for operations.
+			} else if (expression instanceof MatrixExpression.Operation) {
+				MatrixExpression.Operation operation =
+						(MatrixExpression.Operation) expression;
+				this.translate(operation.left);
+				this.translate(operation.right);
+				boolean integer = (operation.type == EXPRESSION_TYPE.INT);
+				switch (operation.operator) {
+				case '+':
+					this.add(integer ? IADD : DADD, -1);
+					break;
+				case '-':
+					this.add(integer ? ISUB : DSUB, -1);
+					break;
+				case '*':
+					this.add(integer ? IMUL : DMUL, -1);
+					break;
+				case '/':
+					this.add(integer ? IDIV : DDIV, -1);
+					break;
+				default:
+					this.add(integer ? IREM : DREM, -1);
+					break;
+				}
+
+			// Check for calls.
+			} else if (expression instanceof MatrixExpression.Call) {
+				MatrixExpression.Call call = (MatrixExpression.Call) expression;
+				Class<?>[] parameters = call.method.getParameterTypes();
+				for (int index = 0; index < parameters.length; index++) {
+					this.translate(call.arguments[index]);
+				}
+				int index = this.methods.indexOf(call.method);
+				if (index < 0) {
+					this.methods.add(call.method);
+					index = this.methods.size() - 1;
+				}
+				this.add(CALL, index, 1 - parameters.length);
+
+			}
+
+		}
+
+	}
+
+}
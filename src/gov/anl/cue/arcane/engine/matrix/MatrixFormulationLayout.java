@@ -0,0 +1,435 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import gov.anl.cue.arcane.engine.Util;
+
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The MatrixFormulationLayout class describes a model for the node array
+ * code shape. Rather than declaring fields for every variable at every
+ * node, the generated class keeps the variables in arrays indexed by
+ * variable and node, and loops over the nodes that share each distinct
+ * equation. The node lists, split links, and initial values are data
+ * that are passed to the formulation when it is instantiated, so the
+ * generated code grows with the number of distinct equations rather
+ * than with the number of nodes.
+ */
+public class MatrixFormulationLayout implements Serializable {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
+	/** The Constant ARRAYS_CLASS_NAME. */
+	public static final String ARRAYS_CLASS_NAME = "MatrixFormulationNodeArrays";
+
+	/** The pattern for state references in the equation templates. */
+	public static final Pattern STATE_REFERENCE =
+			Pattern.compile("this\\.state\\[(\\d+)\\]\\[node\\]");
+
+	/** The pattern for literal initial values. */
+	public static final Pattern LITERAL =
+			Pattern.compile("-?(\\d+\\.?\\d*|\\.\\d+)([eE][+-]?\\d+)?[dD]?");
+
+	/** The number of variables. */
+	public int variableCount = 0;
+
+	/** The number of nodes. */
+	public int nodeCount = 0;
+
+	/** The distinct knit equation templates. */
+	public List<String> knitTemplates = new ArrayList<String>();
+
+	/** The nodes for each knit equation template. */
+	public int[][] knitNodes = new int[0][];
+
+	/** The distinct fitness equation templates. */
+	public List<String> fitnessTemplates = new ArrayList<String>();
+
+	/** The nodes for each fitness equation template. */
+	public int[][] fitnessNodes = new int[0][];
+
+	/** The nodes that have fitness equations, in summation order. */
+	public int[] fitnessOrder = new int[0];
+
+	/** The variable for each split row. */
+	public int[] splitVariables = new int[0];
+
+	/** The destination node for each split row. */
+	public int[] splitDestinations = new int[0];
+
+	/**
+	 * The first coefficient index for each split row, followed by the
+	 * total number of coefficients.
+	 */
+	public int[] splitStarts = new int[] {0};
+
+	/** The source node for each coefficient. */
+	public int[] splitSources = new int[0];
+
+	/** The initial values indexed by variable and node. */
+	public double[][] initialValues = new double[0][0];
+
+	/**
+	 * Instantiates a new matrix formulation layout.
+	 */
+	public MatrixFormulationLayout() {
+	}
+
+	/**
+	 * Instantiates a new matrix formulation layout for a model.
+	 *
+	 * @param matrixModel the matrix model
+	 * @throws IllegalArgumentException if the model cannot use the node
+	 *             array code shape
+	 */
+	public MatrixFormulationLayout(MatrixModel matrixModel) {
+
+		// Note the sizes.
+		this.variableCount = matrixModel.size();
+		this.nodeCount = matrixModel.nodeCount();
+		this.initialValues = new double[this.variableCount][this.nodeCount];
+
+		// Prepare the variable substitutions.
+		HashMap<String, String> substitutions = new HashMap<String, String>();
+		for (int variable = 0; variable < this.variableCount; variable++) {
+			substitutions.put(matrixModel.get(variable).name,
+					"this.state[" + variable + "][node]");
+		}
+
+		// Find the declared variables.
+		boolean[][] declared = new boolean[this.variableCount][this.nodeCount];
+		for (int variable = 0; variable < this.variableCount; variable++) {
+			for (int node = 0; node < this.nodeCount; node++) {
+				declared[variable][node] = matrixModel.get(variable)
+						.equations.get(node).trim().length() > 0;
+			}
+		}
+
+		// Group the knit equations by template.
+		Map<String, List<Integer>> knit =
+				new LinkedHashMap<String, List<Integer>>();
+		for (int variable = 0; variable < this.variableCount; variable++) {
+			for (int node = 0; node < this.nodeCount; node++) {
+
+				// Check for an equation.
+				if (!declared[variable][node]) {
+					continue;
+				}
+
+				// Form the template as filterKnit() would.
+				String line = "this.combined[" + variable + "][node] = " +
+						Util.simultaneousStringReplaceAndEscape(
+						substitutions, matrixModel.get(variable)
+						.equations.get(node));
+				String template = matrixModel.filterKnit(
+						Collections.singleton(line)).iterator().next();
+				MatrixFormulationLayout.checkReferences(template, declared,
+						node);
+
+				// Find the initial value as extractDeclarations() would.
+				if (line.contains("INTEG(") || line.contains("INITIAL(")) {
+					String initialValue = line.substring(
+							line.indexOf(",") + 1).trim();
+					initialValue = initialValue.substring(0,
+							initialValue.length() - 1).trim();
+					if (!LITERAL.matcher(initialValue).matches()) {
+						throw new IllegalArgumentException(
+								"Unsupported initial value: " + initialValue);
+					}
+					this.initialValues[variable][node] =
+							Double.parseDouble(initialValue);
+				}
+
+				// Note the node.
+				MatrixFormulationLayout.group(knit, template, node);
+
+			}
+		}
+		this.knitTemplates = new ArrayList<String>(knit.keySet());
+		this.knitNodes = MatrixFormulationLayout.nodes(knit);
+
+		// Group the fitness equations by template.
+		Map<String, List<Integer>> fitness =
+				new LinkedHashMap<String, List<Integer>>();
+		List<Integer> order = new ArrayList<Integer>();
+		for (int node = 0; node < this.nodeCount; node++) {
+
+			// Check for an equation, as fitness() does.
+			String template = Util.simultaneousStringReplaceAndEscape(
+					substitutions, matrixModel.fitnessEquations.get(node));
+			if (template.trim().length() == 0) {
+				continue;
+			}
+			MatrixFormulationLayout.checkReferences(template, declared, node);
+
+			// Note the node.
+			MatrixFormulationLayout.group(fitness, template, node);
+			order.add(node);
+
+		}
+		if (order.isEmpty()) {
+			throw new IllegalArgumentException("No fitness equations.");
+		}
+		this.fitnessTemplates = new ArrayList<String>(fitness.keySet());
+		this.fitnessNodes = MatrixFormulationLayout.nodes(fitness);
+		this.fitnessOrder = MatrixFormulationLayout.toArray(order);
+
+		// Find the split links in the same order as splitKernel().
+		List<Integer> variables = new ArrayList<Integer>();
+		List<Integer> destinations = new ArrayList<Integer>();
+		List<Integer> starts = new ArrayList<Integer>();
+		List<Integer> sources = new ArrayList<Integer>();
+		for (int variable = 0; variable < this.variableCount; variable++) {
+			MatrixLinks links = matrixModel.get(variable).getLinks();
+			double[] values = matrixModel.get(variable).getValues();
+			for (int destination = 0; destination < this.nodeCount;
+					destination++) {
+
+				// Scan the allowed source nodes (i.e., rows).
+				int start = sources.size();
+				for (int link = links.columnStarts[destination];
+						link < links.columnStarts[destination + 1]; link++) {
+					int source = links.columnRows[link];
+					if (values[links.columnLinks[link]] != 0.0) {
+						if (!declared[variable][source]) {
+							throw new IllegalArgumentException(
+									"Undeclared split source.");
+						}
+						sources.add(source);
+					}
+				}
+
+				// Note the row, if any.
+				if (sources.size() > start) {
+					if (!declared[variable][destination]) {
+						throw new IllegalArgumentException(
+								"Undeclared split destination.");
+					}
+					variables.add(variable);
+					destinations.add(destination);
+					starts.add(start);
+				}
+
+			}
+		}
+		starts.add(sources.size());
+		this.splitVariables = MatrixFormulationLayout.toArray(variables);
+		this.splitDestinations = MatrixFormulationLayout.toArray(destinations);
+		this.splitStarts = MatrixFormulationLayout.toArray(starts);
+		this.splitSources = MatrixFormulationLayout.toArray(sources);
+
+	}
+
+	/**
+	 * Check that a template only refers to declared variables, since the
+	 * equivalent field formulation would otherwise fail to compile.
+	 *
+	 * @param template the template
+	 * @param declared the declared variables
+	 * @param node the node
+	 */
+	public static void checkReferences(String template, boolean[][] declared,
+			int node) {
+
+		// Scan the references.
+		Matcher matcher = STATE_REFERENCE.matcher(template);
+		while (matcher.find()) {
+			if (!declared[Integer.parseInt(matcher.group(1))][node]) {
+				throw new IllegalArgumentException(
+						"Undeclared variable reference.");
+			}
+		}
+
+	}
+
+	/**
+	 * Add a node to a template group.
+	 *
+	 * @param groups the groups
+	 * @param template the template
+	 * @param node the node
+	 */
+	public static void group(Map<String, List<Integer>> groups,
+			String template, int node) {
+
+		// Find or create the group.
+		List<Integer> nodes = groups.get(template);
+		if (nodes == null) {
+			nodes = new ArrayList<Integer>();
+			groups.put(template, nodes);
+		}
+
+		// Add the node.
+		nodes.add(node);
+
+	}
+
+	/**
+	 * Find the node arrays for template groups.
+	 *
+	 * @param groups the groups
+	 * @return the node arrays
+	 */
+	public static int[][] nodes(Map<String, List<Integer>> groups) {
+
+		// Convert the groups.
+		int[][] results = new int[groups.size()][];
+		int index = 0;
+		for (List<Integer> nodes : groups.values()) {
+			results[index++] = MatrixFormulationLayout.toArray(nodes);
+		}
+
+		// Return the results.
+		return results;
+
+	}
+
+	/**
+	 * Convert a list to an array.
+	 *
+	 * @param values the values
+	 * @return the array
+	 */
+	public static int[] toArray(List<Integer> values) {
+
+		// Convert the values.
+		int[] results = new int[values.size()];
+		for (int index = 0; index < results.length; index++) {
+			results[index] = values.get(index);
+		}
+
+		// Return the results.
+		return results;
+
+	}
+
+	/**
+	 * Generate the formulation source. The source depends only on the
+	 * distinct equations, so models that differ only in their node
+	 * structure share it.
+	 *
+	 * @param className the simple class name
+	 * @return the source code
+	 */
+	public String source(String className) {
+
+		// Prepare the results storage.
+		StringWriter source = new StringWriter();
+		PrintWriter writer = new PrintWriter(source);
+
+		// Start the class.
+		writer.println("package " + MatrixModel.PACKAGE_NAME + ";");
+		writer.println("");
+		writer.println("import static java.lang.Math.*;");
+		writer.println("");
+		writer.println("public class " + className + " extends " + ARRAYS_CLASS_NAME + " {");
+		writer.println("");
+		writer.println("\tpublic " + className + "(double newStepSize, double[] newCoefficients, MatrixFormulationLayout newLayout) {");
+		writer.println("\t\tsuper(newStepSize, newCoefficients, newLayout);");
+		writer.println("\t}");
+		writer.println("");
+
+		// Write the knit loops.
+		writer.println("\t@Override");
+		writer.println("\tpublic void knit() {");
+		MatrixFormulationLayout.writeLoops(writer, "knitNodes",
+				this.knitTemplates, "");
+		writer.println("\t}");
+		writer.println("");
+
+		// Write the fitness loops.
+		writer.println("\t@Override");
+		writer.println("\tpublic void fitness() {");
+		MatrixFormulationLayout.writeLoops(writer, "fitnessNodes",
+				this.fitnessTemplates, "this.terms[node] = ");
+		writer.println("\t}");
+		writer.println("");
+		writer.println("}");
+
+		// Close the writer.
+		writer.close();
+
+		// Return the results.
+		return source.toString();
+
+	}
+
+	/**
+	 * Write one loop per template.
+	 *
+	 * @param writer the writer
+	 * @param nodesName the name of the node arrays in the layout
+	 * @param templates the templates
+	 * @param prefix the statement prefix
+	 */
+	public static void writeLoops(PrintWriter writer, String nodesName,
+			List<String> templates, String prefix) {
+
+		// Write the loops.
+		writer.println("\t\tint[] nodes;");
+		for (int index = 0; index < templates.size(); index++) {
+			writer.println("\t\tnodes = this.layout." + nodesName + "[" + index + "];");
+			writer.println("\t\tfor (int index = 0; index < nodes.length; index++) {");
+			writer.println("\t\t\tint node = nodes[index];");
+			writer.println("\t\t\t" + prefix + templates.get(index) + ";");
+			writer.println("\t\t}");
+		}
+
+	}
+
+}
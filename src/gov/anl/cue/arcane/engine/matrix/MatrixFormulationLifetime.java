@@ -0,0 +1,195 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import java.beans.Introspector;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+ * The MatrixFormulationLifetime class manages the unloading of generated
+ * formulation classes. Each formulation class is owned by its own class
+ * loader, so it becomes unreachable as soon as neither the formulation
+ * cache nor any model refers to it, and the JVM reclaims it during
+ * ordinary garbage collection. Rather than forcing a full collection
+ * after every evaluation, the engine checks the manager once per
+ * generation and a collection is only requested when the metaspace
+ * used for class metadata has grown past a configured threshold.
+ */
+public class MatrixFormulationLifetime {
+
+	/** The default metaspace threshold in bytes. */
+	public static final long DEFAULT_METASPACE_THRESHOLD = 256L * 1024L * 1024L;
+
+	/**
+	 * The metaspace threshold in bytes. A collection is requested when the
+	 * metaspace in use reaches this value. Zero or less disables
+	 * collections.
+	 */
+	public long metaspaceThreshold = DEFAULT_METASPACE_THRESHOLD;
+
+	/**
+	 * The metaspace limit in bytes that triggers the next collection. If a
+	 * collection cannot bring the metaspace back under the threshold,
+	 * because the remaining classes are still in use, the limit is raised
+	 * so that collections are not repeated on every check.
+	 */
+	public long metaspaceLimit = 0;
+
+	/** The number of checks. */
+	public long checkCount = 0;
+
+	/** The number of requested collections. */
+	public long collectionCount = 0;
+
+	/**
+	 * Instantiates a new matrix formulation lifetime.
+	 */
+	public MatrixFormulationLifetime() {
+	}
+
+	/**
+	 * Instantiates a new matrix formulation lifetime.
+	 *
+	 * @param newMetaspaceThreshold the metaspace threshold in bytes
+	 */
+	public MatrixFormulationLifetime(long newMetaspaceThreshold) {
+		this.metaspaceThreshold = newMetaspaceThreshold;
+	}
+
+	/**
+	 * Gets the metaspace used.
+	 *
+	 * @return the metaspace used in bytes, or -1 if it is not available
+	 */
+	public static long getMetaspaceUsed() {
+
+		// Find the class metadata pools.
+		long used = -1;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if ((pool.getType() == MemoryType.NON_HEAP) &&
+					(pool.getName().contains("Metaspace") ||
+					pool.getName().contains("Perm Gen"))) {
+				used = Math.max(used, 0) + pool.getUsage().getUsed();
+			}
+		}
+
+		// Return the results.
+		return used;
+
+	}
+
+	/**
+	 * Check the metaspace and request a collection if it has passed the
+	 * threshold.
+	 *
+	 * @return true, if a collection was requested
+	 */
+	public synchronized boolean check() {
+
+		// Note the check.
+		this.checkCount++;
+
+		// Check for disabled collections.
+		if (this.metaspaceThreshold <= 0) {
+			return false;
+		}
+
+		// Check the metaspace.
+		long used = MatrixFormulationLifetime.getMetaspaceUsed();
+		long limit = Math.max(this.metaspaceThreshold, this.metaspaceLimit);
+		if ((used < 0) || (used < limit)) {
+			return false;
+		}
+
+		// Release unreachable formulation classes.
+		this.collect();
+
+		// Raise the limit if the live classes still exceed the threshold.
+		used = MatrixFormulationLifetime.getMetaspaceUsed();
+		if (used >= this.metaspaceThreshold) {
+			this.metaspaceLimit = used + this.metaspaceThreshold / 2;
+		} else {
+			this.metaspaceLimit = 0;
+		}
+
+		// Return the results.
+		return true;
+
+	}
+
+	/**
+	 * Collect unreachable formulation classes.
+	 */
+	public synchronized void collect() {
+
+		// Note the collection.
+		this.collectionCount++;
+
+		// Drop cached bean information that can refer to formulation
+		// classes, then request a collection.
+		Introspector.flushCaches();
+		System.gc();
+
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+
+		// Return the results.
+		return "MatrixFormulationLifetime [metaspaceThreshold=" +
+				this.metaspaceThreshold + ", checks=" + this.checkCount +
+				", collections=" + this.collectionCount + "]";
+
+	}
+
+}
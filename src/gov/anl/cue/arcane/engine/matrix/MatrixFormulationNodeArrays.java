@@ -0,0 +1,156 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+/**
+ * The MatrixFormulationNodeArrays class is the base for formulations
+ * generated with the node array code shape. The variables are kept in
+ * arrays indexed by variable and node, as described by a
+ * MatrixFormulationLayout. Generated subclasses provide the knit
+ * equations and the per-node fitness terms, while the split, which only
+ * depends on the links between nodes, is carried out here.
+ */
+public abstract class MatrixFormulationNodeArrays extends
+		MatrixFormulationAbstract {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
+	/** The layout. */
+	public MatrixFormulationLayout layout;
+
+	/** The variables indexed by variable and node. */
+	public double[][] state;
+
+	/** The combined variables indexed by variable and node. */
+	public double[][] combined;
+
+	/** The fitness terms indexed by node. */
+	public double[] terms;
+
+	/**
+	 * Instantiates a new matrix formulation with node arrays.
+	 *
+	 * @param newStepSize the new step size
+	 * @param newCoefficients the new coefficients
+	 * @param newLayout the new layout
+	 */
+	public MatrixFormulationNodeArrays(double newStepSize,
+			double[] newCoefficients, MatrixFormulationLayout newLayout) {
+
+		// Note the step size and coefficients.
+		super(newStepSize, newCoefficients);
+
+		// Note the layout.
+		this.layout = newLayout;
+
+		// Set the initial values.
+		this.state = new double[newLayout.variableCount][];
+		this.combined = new double[newLayout.variableCount][];
+		for (int variable = 0; variable < newLayout.variableCount;
+				variable++) {
+			this.state[variable] = newLayout.initialValues[variable].clone();
+			this.combined[variable] =
+					newLayout.initialValues[variable].clone();
+		}
+		this.terms = new double[newLayout.nodeCount];
+
+	}
+
+	/**
+	 * Calculate the fitness term for each node with a fitness equation.
+	 */
+	public abstract void fitness();
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see gov.anl.cue.arcane.engine.matrix.MatrixFormulationAbstract#split()
+	 */
+	@Override
+	public void split() {
+
+		// Disperse each variable along its links. The terms are added in
+		// the same order as the equivalent field formulation.
+		int[] starts = this.layout.splitStarts;
+		int[] sources = this.layout.splitSources;
+		for (int row = 0; row < this.layout.splitVariables.length; row++) {
+			double[] values = this.combined[this.layout.splitVariables[row]];
+			int index = starts[row];
+			double sum = this.coefficients[index] * values[sources[index]];
+			for (index++; index < starts[row + 1]; index++) {
+				sum += this.coefficients[index] * values[sources[index]];
+			}
+			this.state[this.layout.splitVariables[row]]
+					[this.layout.splitDestinations[row]] = sum;
+		}
+
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see gov.anl.cue.arcane.engine.matrix.MatrixFormulationAbstract#calculateFitnessValue()
+	 */
+	@Override
+	public Double calculateFitnessValue() {
+
+		// Calculate the terms.
+		this.fitness();
+
+		// Add the terms in node order.
+		int[] order = this.layout.fitnessOrder;
+		double results = this.terms[order[0]];
+		for (int index = 1; index < order.length; index++) {
+			results += this.terms[order[index]];
+		}
+
+		// Return the results.
+		return results;
+
+	}
+
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import gov.anl.cue.arcane.engine.matrix.MatrixExpression.EXPRESSION_TYPE;
+
+/**
+ * The MatrixFormulationProgram class is the parsed form of a generated
+ * formulation. It holds the same declarations, knit equations, split
+ * equations, and fitness equation that MatrixModel.formulateSource()
+ * writes as Java source, so backends other than javac can build an
+ * equivalent formulation without compiling.
+ */
+public class MatrixFormulationProgram {
+
+	/** The declaration pattern. */
+	public static final Pattern DECLARATION =
+			Pattern.compile("^\\s*double\\s+(\\S+)\\s*=(.*)$", Pattern.DOTALL);
+
+	/** The assignment pattern. */
+	public static final Pattern ASSIGNMENT =
+			Pattern.compile("^\\s*(\\S+?)\\s*(\\+?=)(.*)$", Pattern.DOTALL);
+
+	/**
+	 * The Assignment class is an assignment to a formulation variable.
+	 */
+	public static class Assignment {
+
+		/** The index of the assigned field. */
+		public int field;
+
+		/** The accumulate flag, which is true for "+=" assignments. */
+		public boolean accumulate;
+
+		/** The assigned expression. */
+		public MatrixExpression expression;
+
+		/**
+		 * Instantiates a new assignment.
+		 *
+		 * @param newField the field index
+		 * @param newAccumulate the accumulate flag
+		 * @param newExpression the expression
+		 */
+		public Assignment(int newField, boolean newAccumulate,
+				MatrixExpression newExpression) {
+			this.field = newField;
+			this.accumulate = newAccumulate;
+			this.expression = newExpression;
+		}
+
+	}
+
+	/** The field names in declaration order. */
+	public ArrayList<String> fieldNames = new ArrayList<String>();
+
+	/** The field indices keyed by name. */
+	public HashMap<String, Integer> fieldIndices = new HashMap<String, Integer>();
+
+	/** The field initializers in declaration order. */
+	public ArrayList<MatrixExpression> fieldInitializers =
+			new ArrayList<MatrixExpression>();
+
+	/** The knit assignments. */
+	public ArrayList<Assignment> knit = new ArrayList<Assignment>();
+
+	/** The split assignments. */
+	public ArrayList<Assignment> split = new ArrayList<Assignment>();
+
+	/** The fitness expression. */
+	public MatrixExpression fitness = null;
+
+	/**
+	 * Parses a formulation.
+	 *
+	 * @param declarations the declarations
+	 * @param knit the knit
+	 * @param split the split
+	 * @param fitness the fitness
+	 * @return the program
+	 * @throws IllegalArgumentException if the formulation uses anything
+	 *             other than the supported expression subset
+	 */
+	public static MatrixFormulationProgram parse(Set<String> declarations,
+			Set<String> knit, Set<String> split, String fitness) {
+
+		// Create the program.
+		MatrixFormulationProgram program = new MatrixFormulationProgram();
+
+		// Find the field names.
+		ArrayList<String> initializers = new ArrayList<String>();
+		for (String declaration : declarations) {
+			Matcher matcher = DECLARATION.matcher(declaration);
+			if (!matcher.matches() ||
+					!MatrixExpressionParser.isName(matcher.group(1)) ||
+					program.fieldIndices.containsKey(matcher.group(1))) {
+				throw new IllegalArgumentException("Unsupported declaration: " + declaration);
+			}
+			program.fieldIndices.put(matcher.group(1), program.fieldNames.size());
+			program.fieldNames.add(matcher.group(1));
+			initializers.add(matcher.group(2));
+		}
+
+		// Parse the initializers, which can only refer back to
+		// earlier fields by simple name.
+		for (int index = 0; index < initializers.size(); index++) {
+			program.fieldInitializers.add(MatrixExpressionParser.parse(
+					program, index, initializers.get(index)));
+		}
+
+		// Parse the equations.
+		program.parseAssignments(knit, program.knit);
+		program.parseAssignments(split, program.split);
+
+		// Parse the fitness, which is returned as a Double.
+		program.fitness = MatrixExpressionParser.parse(program,
+				program.fieldNames.size(), fitness);
+		if (program.fitness.type != EXPRESSION_TYPE.DOUBLE) {
+			throw new IllegalArgumentException("Fitness is not a double: " + fitness);
+		}
+
+		// Return the results.
+		return program;
+
+	}
+
+	/**
+	 * Parses assignments.
+	 *
+	 * @param lines the lines
+	 * @param assignments the assignments storage
+	 */
+	public void parseAssignments(Set<String> lines,
+			ArrayList<Assignment> assignments) {
+
+		// Scan the lines.
+		for (String line : lines) {
+
+			// Split the assignment.
+			Matcher matcher = ASSIGNMENT.matcher(line);
+			if (!matcher.matches() ||
+					!this.fieldIndices.containsKey(matcher.group(1))) {
+				throw new IllegalArgumentException("Unsupported assignment: " + line);
+			}
+
+			// Store the assignment.
+			assignments.add(new Assignment(
+					this.fieldIndices.get(matcher.group(1)),
+					matcher.group(2).equals("+="),
+					MatrixExpressionParser.parse(this, this.fieldNames.size(),
+					matcher.group(3))));
+
+		}
+
+	}
+
+}
@@ -0,0 +1,375 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The MatrixFormulationStore class keeps compiled formulation bytecode
+ * in a directory so that it can be reused by later runs. Entries are
+ * addressed by a hash of the generated source together with a
+ * fingerprint of the backend, the code generator, and the Java runtime
+ * that produced them, so a change to any of them simply misses rather
+ * than loading stale bytecode.
+ * Entries are written to a temporary file and then moved into place,
+ * so several processes can share one directory safely.
+ */
+public class MatrixFormulationStore {
+
+	/**
+	 * The version of the stored format. Increase it whenever the generated
+	 * classes change in a way that the generator version below does not
+	 * cover, such as a change to how MatrixModel writes its source that
+	 * leaves the source text the same.
+	 */
+	public static final String FORMAT_VERSION = "2";
+
+	/**
+	 * The classes that generate formulation bytecode or that generated
+	 * classes depend on.
+	 */
+	public static final Class<?>[] GENERATOR_CLASSES = new Class<?>[] {
+			MatrixFormulationAbstract.class,
+			MatrixFormulationNodeArrays.class,
+			MatrixFormulationLayout.class,
+			MatrixFormulationProgram.class,
+			MatrixFormulationAssembler.class,
+			MatrixFormulationCompiler.class };
+
+	/**
+	 * The version of the code generator, which is a hash of the bytecode
+	 * of the generator classes. Any change to them changes the version.
+	 */
+	public static final String GENERATOR_VERSION =
+			MatrixFormulationStore.generatorVersion();
+
+	/** The directory. */
+	public File directory;
+
+	/** The fingerprint of the tools that produce the bytecode. */
+	public String fingerprint;
+
+	/** The number of reads that found stored bytecode. */
+	public AtomicLong hitCount = new AtomicLong();
+
+	/** The number of reads that did not find stored bytecode. */
+	public AtomicLong missCount = new AtomicLong();
+
+	/** The number of entries written. */
+	public AtomicLong writeCount = new AtomicLong();
+
+	/**
+	 * Instantiates a new matrix formulation store.
+	 *
+	 * @param newDirectory the directory
+	 * @param backend the formulation backend
+	 */
+	public MatrixFormulationStore(File newDirectory, String backend) {
+		this.directory = newDirectory;
+		this.fingerprint = MatrixFormulationStore.fingerprint(backend);
+	}
+
+	/**
+	 * Finds the version of the code generator.
+	 *
+	 * @return the version
+	 */
+	public static String generatorVersion() {
+
+		// Attempt to hash the generator classes.
+		try {
+
+			// Hash the class files.
+			MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+			byte[] buffer = new byte[8192];
+			for (Class<?> generatorClass : GENERATOR_CLASSES) {
+				InputStream input = generatorClass.getResourceAsStream(
+						generatorClass.getSimpleName() + ".class");
+				if (input == null) {
+					throw new IOException("Missing " + generatorClass);
+				}
+				try {
+					int count;
+					while ((count = input.read(buffer)) > 0) {
+						messageDigest.update(buffer, 0, count);
+					}
+				} finally {
+					input.close();
+				}
+			}
+
+			// Format the results.
+			byte[] digest = messageDigest.digest();
+			StringBuilder version = new StringBuilder(2 * digest.length);
+			for (byte value : digest) {
+				version.append(Character.forDigit((value >> 4) & 0xF, 16));
+				version.append(Character.forDigit(value & 0xF, 16));
+			}
+
+			// Return the results.
+			return version.toString();
+
+		// Use a version that no other run shares, so that nothing stored
+		// by an unknown generator is reused.
+		} catch (IOException e) {
+			return "unknown-" + System.nanoTime();
+		} catch (NoSuchAlgorithmException e) {
+			return "unknown-" + System.nanoTime();
+		}
+
+	}
+
+	/**
+	 * Finds the fingerprint for a backend in this Java runtime.
+	 *
+	 * @param backend the formulation backend
+	 * @return the fingerprint
+	 */
+	public static String fingerprint(String backend) {
+
+		// Return the results.
+		return MatrixFormulationStore.FORMAT_VERSION + ";" + backend + ";" +
+				MatrixFormulationStore.GENERATOR_VERSION + ";" +
+				System.getProperty("java.vendor") + ";" +
+				System.getProperty("java.version");
+
+	}
+
+	/**
+	 * Finds the key for a formulation source.
+	 *
+	 * @param source the source
+	 * @return the key
+	 */
+	public String key(String source) {
+
+		// Return the results.
+		return MatrixFormulationCache.key(this.fingerprint + "\n" + source);
+
+	}
+
+	/**
+	 * Finds the class name for a key. Stored classes are named after their
+	 * contents, so equal names always mean equal formulations.
+	 *
+	 * @param key the key
+	 * @return the fully qualified class name
+	 */
+	public String className(String key) {
+
+		// Return the results.
+		return MatrixModel.PACKAGE_NAME + "." +
+				MatrixModel.CONCRETE_CLASS_NAME + "_" + key.substring(0, 16);
+
+	}
+
+	/**
+	 * Finds the file for a key.
+	 *
+	 * @param key the key
+	 * @return the file
+	 */
+	public File file(String key) {
+
+		// Spread the entries over subdirectories.
+		return new File(new File(this.directory, key.substring(0, 2)),
+				key + ".class");
+
+	}
+
+	/**
+	 * Reads stored bytecode.
+	 *
+	 * @param key the key
+	 * @return the bytecode, or null if none is stored
+	 */
+	public byte[] read(String key) {
+
+		// Attempt to read the file.
+		File file = this.file(key);
+		if (file.isFile()) {
+			try {
+				byte[] bytecode = Files.readAllBytes(file.toPath());
+				this.hitCount.incrementAndGet();
+				return bytecode;
+
+			// Treat unreadable entries as missing.
+			} catch (IOException e) {
+			}
+		}
+
+		// Note the miss.
+		this.missCount.incrementAndGet();
+
+		// Return the default.
+		return null;
+
+	}
+
+	/**
+	 * Writes bytecode. Failures are ignored since the store is only a
+	 * cache.
+	 *
+	 * @param key the key
+	 * @param bytecode the bytecode
+	 */
+	public void write(String key, byte[] bytecode) {
+
+		// Write to a temporary file first.
+		File file = this.file(key);
+		File temporary = null;
+		try {
+
+			// Write the temporary file.
+			file.getParentFile().mkdirs();
+			temporary = File.createTempFile(key, ".tmp",
+					file.getParentFile());
+			Files.write(temporary.toPath(), bytecode);
+
+			// Move the file into place so that readers never see a
+			// partial entry.
+			try {
+				Files.move(temporary.toPath(), file.toPath(),
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary.toPath(), file.toPath(),
+						StandardCopyOption.REPLACE_EXISTING);
+			}
+			this.writeCount.incrementAndGet();
+
+		// Clean up after failures.
+		} catch (IOException e) {
+			if (temporary != null) {
+				temporary.delete();
+			}
+		}
+
+	}
+
+	/**
+	 * Removes an entry, such as one that cannot be loaded.
+	 *
+	 * @param key the key
+	 */
+	public void remove(String key) {
+
+		// Delete the file.
+		this.file(key).delete();
+
+	}
+
+	/**
+	 * Loads a formulation class from bytecode.
+	 *
+	 * @param key the key
+	 * @param bytecode the bytecode
+	 * @return the formulation class
+	 * @throws ClassNotFoundException the class not found exception
+	 */
+	public Class<? extends MatrixFormulationAbstract> load(String key,
+			byte[] bytecode) throws ClassNotFoundException {
+
+		// Load the class in its own class loader.
+		Map<String, byte[]> bytecodes = new HashMap<String, byte[]>();
+		bytecodes.put(this.className(key), bytecode);
+		return new MatrixFormulationClassLoader(bytecodes)
+				.loadFormulation(this.className(key));
+
+	}
+
+	/**
+	 * Loads a stored formulation class.
+	 *
+	 * @param key the key
+	 * @return the formulation class, or null if none could be loaded
+	 */
+	public Class<? extends MatrixFormulationAbstract> load(String key) {
+
+		// Read the bytecode.
+		byte[] bytecode = this.read(key);
+		if (bytecode == null) {
+			return null;
+		}
+
+		// Attempt to load the class.
+		try {
+			return this.load(key, bytecode);
+
+		// Remove entries that cannot be loaded.
+		} catch (ClassNotFoundException e) {
+			this.remove(key);
+		} catch (LinkageError e) {
+			this.remove(key);
+		}
+
+		// Return the default.
+		return null;
+
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "MatrixFormulationStore [directory=" + this.directory +
+				", hits=" + this.hitCount + ", misses=" + this.missCount +
+				", writes=" + this.writeCount + "]";
+	}
+
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import java.lang.reflect.Field;
+
+/**
+ * The MatrixFormulationTiering class decides whether formulations are
+ * interpreted or compiled to bytecode. Interpreting avoids the cost of
+ * building a class, which dominates short simulations, while compiled
+ * formulations run long simulations much faster. The cost of a run is
+ * estimated as the number of instructions per step times the step
+ * count. Runs estimated to cost more than the compile threshold are
+ * compiled up front. Formulations whose interpreted work adds up past
+ * the threshold across many runs are compiled for later runs, and
+ * interpreted runs whose observed speed shows that compiling would pay
+ * off are promoted part way through, much like a JIT compiler's tiers.
+ * Each engine has its own tiering, so the compile time it observes only
+ * affects that engine's promotion decisions.
+ */
+public class MatrixFormulationTiering {
+
+	/**
+	 * The default compile threshold in interpreted instructions, which
+	 * corresponds to a few milliseconds of interpretation or roughly the
+	 * cost of building a formulation class.
+	 */
+	public static final long DEFAULT_COMPILE_THRESHOLD = 2000000L;
+
+	/** The number of steps between promotion checks. */
+	public static final int PROMOTION_INTERVAL = 256;
+
+	/** The default compile time estimate in nanoseconds. */
+	public static final long DEFAULT_COMPILE_NANOSECONDS = 2500000L;
+
+	/** The most recently observed compile time in nanoseconds. */
+	public volatile long compileNanoseconds = DEFAULT_COMPILE_NANOSECONDS;
+
+	/**
+	 * Instantiates a new matrix formulation tiering.
+	 */
+	public MatrixFormulationTiering() {
+	}
+
+	/**
+	 * Runs a formulation.
+	 *
+	 * @param code the interpreter code
+	 * @param stepSize the step size
+	 * @param coefficients the coefficients
+	 * @param stepCount the step count
+	 * @param compileThreshold the compile threshold in instructions
+	 * @return the formulation after the requested steps
+	 * @throws Exception the exception
+	 */
+	public MatrixFormulationAbstract run(
+			MatrixFormulationInterpreter.Code code, double stepSize,
+			double[] coefficients, int stepCount, long compileThreshold)
+			throws Exception {
+
+		// Estimate the interpreted cost of the run.
+		long estimate = ((long) code.stepLength) * stepCount;
+
+		// Compile expensive runs and formulations that are used often.
+		if ((code.compiledClass == null) &&
+				(code.interpretedWork.get() + estimate >= compileThreshold)) {
+			this.compile(code);
+		}
+
+		// Use the compiled class, if it is available.
+		if (code.compiledClass != null) {
+			MatrixFormulationAbstract matrixFormulation =
+					MatrixFormulationTiering.instantiate(code, stepSize,
+					coefficients);
+			matrixFormulation.step(stepCount);
+			return matrixFormulation;
+		}
+
+		// Otherwise, interpret the formulation in blocks of steps.
+		MatrixFormulationInterpreter interpreter =
+				new MatrixFormulationInterpreter(stepSize, coefficients, code);
+		long start = System.nanoTime();
+		int step = 0;
+		while (step < stepCount) {
+
+			// Run the next block.
+			int block = Math.min(PROMOTION_INTERVAL, stepCount - step);
+			interpreter.step(block);
+			step += block;
+			code.interpretedWork.addAndGet(((long) code.stepLength) * block);
+
+			// Check to see if the rest of the run justifies compiling.
+			long remaining = (System.nanoTime() - start) / step *
+					(stepCount - step);
+			if ((step < stepCount) && !code.compileFailed &&
+					(remaining > this.compileNanoseconds)) {
+
+				// Promote the formulation.
+				this.compile(code);
+				if (code.compiledClass != null) {
+					MatrixFormulationAbstract matrixFormulation =
+							MatrixFormulationTiering.promote(interpreter);
+					matrixFormulation.step(stepCount - step);
+					return matrixFormulation;
+				}
+
+			}
+
+		}
+
+		// Return the results.
+		return interpreter;
+
+	}
+
+	/**
+	 * Compiles a formulation to bytecode, if it has not been compiled.
+	 *
+	 * @param code the interpreter code
+	 */
+	public void compile(MatrixFormulationInterpreter.Code code) {
+
+		// Make sure that only one thread compiles a formulation.
+		synchronized (code) {
+
+			// Check for previous attempts.
+			if ((code.compiledClass != null) || code.compileFailed) {
+				return;
+			}
+
+			// Attempt to build the class.
+			try {
+				long start = System.nanoTime();
+				code.compiledClass = MatrixFormulationAssembler
+						.assembleFormulation(MatrixModel.PACKAGE_NAME + "." +
+						MatrixModel.nextFormulationClassName(), code.program);
+				this.compileNanoseconds = System.nanoTime() - start;
+
+			// Keep interpreting formulations that cannot be compiled.
+			} catch (Exception e) {
+				code.compileFailed = true;
+			} catch (LinkageError e) {
+				code.compileFailed = true;
+			}
+
+		}
+
+	}
+
+	/**
+	 * Instantiates a compiled formulation.
+	 *
+	 * @param code the interpreter code
+	 * @param stepSize the step size
+	 * @param coefficients the coefficients
+	 * @return the matrix formulation
+	 * @throws Exception the exception
+	 */
+	public static MatrixFormulationAbstract instantiate(
+			MatrixFormulationInterpreter.Code code, double stepSize,
+			double[] coefficients) throws Exception {
+
+		// Return the results.
+		return code.compiledClass
+				.getDeclaredConstructor(double.class, double[].class)
+				.newInstance(stepSize, coefficients);
+
+	}
+
+	/**
+	 * Promotes an interpreted formulation part way through a run by
+	 * copying its state into a new compiled formulation.
+	 *
+	 * @param interpreter the interpreter
+	 * @return the compiled formulation
+	 * @throws Exception the exception
+	 */
+	public static MatrixFormulationAbstract promote(
+			MatrixFormulationInterpreter interpreter) throws Exception {
+
+		// Create the compiled formulation.
+		MatrixFormulationInterpreter.Code code = interpreter.code;
+		MatrixFormulationAbstract matrixFormulation =
+				MatrixFormulationTiering.instantiate(code,
+				interpreter.stepSize, interpreter.coefficients);
+
+		// Copy the state.
+		for (int index = 0; index < code.fieldNames.length; index++) {
+			Field field = code.compiledClass.getDeclaredField(
+					code.fieldNames[index]);
+			field.setAccessible(true);
+			field.setDouble(matrixFormulation, interpreter.state[index]);
+		}
+		matrixFormulation.firstStep = interpreter.firstStep;
+
+		// Return the results.
+		return matrixFormulation;
+
+	}
+
+}
@@ -0,0 +1,426 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The MatrixIslandCoordinator class runs islands in separate processes,
+ * which may be on other hosts. It splits the engine's population into
+ * islands as MatrixIslands does, gives each island its own random seed,
+ * and hands the islands to MatrixIslandProcess instances as they connect.
+ * Island processes send their migrants to the coordinator, which passes
+ * them to each island's neighbors. When every island has sent back its
+ * population, the islands are merged into the engine's output population
+ * and the engine is written out as usual. The coordinator listens on the
+ * loopback address unless it is given another address to bind to.
+ * 
+ * An island whose connection fails is dropped: it gets no more migrants,
+ * the failure is added to the failures list, and the run reports that
+ * not every island finished.
+ */
+public class MatrixIslandCoordinator {
+
+	/**
+	 * The default time to wait for island processes to connect or exit,
+	 * in milliseconds.
+	 */
+	public static final int DEFAULT_TIMEOUT = 300000;
+
+	/** The matrix engine. */
+	public MatrixEngine matrixEngine = null;
+
+	/** The islands. */
+	public MatrixIslands matrixIslands = null;
+
+	/** The server socket that island processes connect to. */
+	public ServerSocket serverSocket = null;
+
+	/**
+	 * The address to listen on, or null for the loopback address. Island
+	 * processes on other hosts need an address they can reach, such as
+	 * this host's address on a trusted network.
+	 */
+	public String bindAddress = null;
+
+	/** The island processes started on this host. */
+	public List<Process> processes = new ArrayList<Process>();
+
+	/**
+	 * The islands that no longer receive migrants, because they have
+	 * finished or have been dropped.
+	 */
+	public Set<Integer> closedIslands = Collections.newSetFromMap(
+			new ConcurrentHashMap<Integer, Boolean>());
+
+	/** The connection failures of the current run. */
+	public List<IOException> failures =
+			new CopyOnWriteArrayList<IOException>();
+
+	/**
+	 * The time to wait for island processes to connect or exit, in
+	 * milliseconds. Connected islands that are lost are noticed when their
+	 * connections close.
+	 */
+	public int timeout = DEFAULT_TIMEOUT;
+
+	/**
+	 * Instantiates a new coordinator.
+	 *
+	 * @param newMatrixEngine the matrix engine
+	 */
+	public MatrixIslandCoordinator(MatrixEngine newMatrixEngine) {
+
+		// Note the matrix engine.
+		this.matrixEngine = newMatrixEngine;
+
+	}
+
+	/**
+	 * Start listening for island processes.
+	 *
+	 * @param port the port, or zero for any free port
+	 * @return the port
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public int start(int port) throws IOException {
+
+		// Open the server socket.
+		InetAddress address = (this.bindAddress == null) ?
+				InetAddress.getLoopbackAddress() :
+				InetAddress.getByName(this.bindAddress);
+		this.serverSocket = new ServerSocket(port, 0, address);
+		this.serverSocket.setSoTimeout(this.timeout);
+
+		// Return the results.
+		return this.serverSocket.getLocalPort();
+
+	}
+
+	/**
+	 * Launch one island process on this host for each island.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void launch() throws IOException {
+
+		// Start the processes.
+		List<String> command = MatrixIslandCoordinator.javaCommand(
+				MatrixIslandProcess.class,
+				MatrixIslandCoordinator.localHost(this.serverSocket),
+				"" + this.serverSocket.getLocalPort());
+		for (int index = 0; index < Math.max(1, this.matrixEngine.islandCount);
+				index++) {
+			this.processes.add(new ProcessBuilder(command).inheritIO().start());
+		}
+
+	}
+
+	/**
+	 * Local host. This finds the address that processes on this host can
+	 * use to connect to a server socket.
+	 *
+	 * @param serverSocket the server socket
+	 * @return the address
+	 */
+	public static String localHost(ServerSocket serverSocket) {
+
+		// Use the loopback address for sockets bound to every address.
+		InetAddress address = serverSocket.getInetAddress();
+		if (address.isAnyLocalAddress()) {
+			address = InetAddress.getLoopbackAddress();
+		}
+
+		// Return the results.
+		return address.getHostAddress();
+
+	}
+
+	/**
+	 * Java command. This builds the command that runs a main class in a
+	 * new process on this host, using this process's Java installation,
+	 * class path, and JVM options.
+	 *
+	 * @param mainClass the main class
+	 * @param arguments the arguments
+	 * @return the command
+	 */
+	public static List<String> javaCommand(Class<?> mainClass,
+			String... arguments) {
+
+		// Build the command.
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator +
+				"bin" + File.separator + "java");
+		for (String argument : ManagementFactory.getRuntimeMXBean()
+				.getInputArguments()) {
+			if (!argument.startsWith("-agentlib:jdwp")) {
+				command.add(argument);
+			}
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(mainClass.getName());
+		command.addAll(Arrays.asList(arguments));
+
+		// Return the results.
+		return command;
+
+	}
+
+	/**
+	 * Run the islands and collect the results.
+	 *
+	 * @param steps the number of generations to evolve
+	 * @param directoryName the directory to write the engine to, or null
+	 * @return true, if every island finished and the results were written
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public boolean run(int steps, String directoryName) throws IOException {
+
+		// Split the population into islands with their own seeds.
+		this.closedIslands.clear();
+		this.failures.clear();
+		this.matrixEngine.fill();
+		this.matrixIslands = new MatrixIslands(this.matrixEngine);
+		int count = this.matrixIslands.islands.size();
+		for (MatrixEngine island : this.matrixIslands.islands) {
+			island.randomSeed = (int) island.getRandomNumberFromTo(0,
+					Integer.MAX_VALUE);
+		}
+
+		// Assign the islands to processes as they connect.
+		final Socket[] sockets = new Socket[count];
+		final DataOutputStream[] outputs = new DataOutputStream[count];
+		final boolean[] finished = new boolean[count];
+		List<Thread> relays = new ArrayList<Thread>();
+		try {
+			for (int index = 0; index < count; index++) {
+				sockets[index] = this.serverSocket.accept();
+				outputs[index] = new DataOutputStream(new BufferedOutputStream(
+						sockets[index].getOutputStream()));
+				MatrixIslandMessage.assign(index,
+						this.matrixIslands.islands.get(index), steps)
+						.write(outputs[index]);
+			}
+
+			// Relay each island's messages.
+			for (int index = 0; index < count; index++) {
+				final int islandIndex = index;
+				Thread relay = new Thread(new Runnable() {
+					public void run() {
+						finished[islandIndex] = MatrixIslandCoordinator.this
+								.relay(islandIndex, sockets[islandIndex],
+								outputs);
+					}
+				});
+				relay.start();
+				relays.add(relay);
+			}
+
+			// Wait for the islands to finish.
+			for (Thread relay : relays) {
+				relay.join();
+			}
+
+		// Stop waiting if interrupted.
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+		// Disconnect.
+		} finally {
+			for (Socket socket : sockets) {
+				if (socket != null) {
+					socket.close();
+				}
+			}
+		}
+
+		// Merge the islands.
+		this.matrixIslands.merge();
+
+		// Note the results.
+		boolean results = true;
+		for (boolean islandFinished : finished) {
+			results = results & islandFinished;
+		}
+
+		// Write the results, if requested.
+		if (directoryName != null) {
+			results = results & this.matrixEngine.write(directoryName);
+		}
+
+		// Return the results.
+		return results;
+
+	}
+
+	/**
+	 * Relay. This passes an island's migrants to its neighbors until the
+	 * island sends its population. Neighbors that have finished or have
+	 * been dropped are skipped, and neighbors that cannot be written to
+	 * are dropped.
+	 *
+	 * @param islandIndex the island index
+	 * @param socket the island's connection
+	 * @param outputs the connections to all of the islands
+	 * @return true, if the island sent its population
+	 */
+	public boolean relay(int islandIndex, Socket socket,
+			DataOutputStream[] outputs) {
+
+		// Read the island's messages.
+		try {
+			DataInputStream input = new DataInputStream(
+					new BufferedInputStream(socket.getInputStream()));
+			while (true) {
+				MatrixIslandMessage message = MatrixIslandMessage.read(input);
+
+				// Pass migrants to the neighbors.
+				if (message.type == MatrixIslandMessage.MESSAGE_TYPE.MIGRANTS) {
+					for (int neighbor :
+							this.matrixIslands.neighbors(islandIndex)) {
+						if (this.closedIslands.contains(neighbor)) {
+							continue;
+						}
+						try {
+							message.write(outputs[neighbor]);
+							this.matrixIslands.migrantCount.addAndGet(
+									message.matrixModels.size());
+						} catch (IOException e) {
+							this.drop(neighbor, e);
+						}
+					}
+
+				// Store the island's population.
+				} else if (message.type ==
+						MatrixIslandMessage.MESSAGE_TYPE.RESULT) {
+					MatrixEngine island =
+							this.matrixIslands.islands.get(islandIndex);
+					MatrixPopulation matrixPopulation =
+							new MatrixPopulation(island);
+					message.attach(message.matrixModels, island);
+					matrixPopulation.addAll(message.matrixModels);
+					island.outputPopulation = matrixPopulation;
+					this.closedIslands.add(islandIndex);
+					socket.close();
+					return true;
+				}
+
+			}
+
+		// Drop islands that were lost.
+		} catch (IOException e) {
+			this.drop(islandIndex, e);
+			return false;
+		}
+
+	}
+
+	/**
+	 * Drop an island whose connection failed, so that no more migrants
+	 * are sent to it, and note the failure. Islands that have already
+	 * finished are not dropped, since their connections are closed on
+	 * purpose.
+	 *
+	 * @param islandIndex the island index
+	 * @param e the failure
+	 */
+	public void drop(int islandIndex, IOException e) {
+
+		// Drop the island and note the failure.
+		if (this.closedIslands.add(islandIndex)) {
+			this.failures.add(new IOException("Island " + islandIndex +
+					" was dropped", e));
+		}
+
+	}
+
+	/**
+	 * Close. This stops listening and waits for the island processes
+	 * started on this host to exit.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void close() throws IOException {
+
+		// Stop listening.
+		if (this.serverSocket != null) {
+			this.serverSocket.close();
+		}
+
+		// Wait for the processes.
+		for (Process process : this.processes) {
+			try {
+				if (!process.waitFor(this.timeout, TimeUnit.MILLISECONDS)) {
+					process.destroy();
+				}
+			} catch (InterruptedException e) {
+				process.destroy();
+				Thread.currentThread().interrupt();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.XStreamException;
+import com.thoughtworks.xstream.io.xml.DomDriver;
+import com.thoughtworks.xstream.security.ArrayTypePermission;
+import com.thoughtworks.xstream.security.NoTypePermission;
+import com.thoughtworks.xstream.security.NullPermission;
+import com.thoughtworks.xstream.security.PrimitiveTypePermission;
+
+/**
+ * The MatrixIslandMessage class is a message between an island process
+ * and its coordinator. Messages are sent as XStream XML, preceded by
+ * their length in bytes, which is at most MAX_LENGTH. The matrix engine
+ * settings that are transient
+ * are sent separately. Messages come from the network, so they are read
+ * with an XStream instance that only accepts the types that messages
+ * contain.
+ */
+public class MatrixIslandMessage {
+
+	/**
+	 * The largest message that is written or read, in bytes. Longer
+	 * lengths are treated as a broken stream rather than allocated.
+	 */
+	public static final int MAX_LENGTH = 256 << 20;
+
+	/** The XStream instance used to write and read messages. */
+	public static final XStream XSTREAM = MatrixIslandMessage.createXStream();
+
+	/**
+	 * The Enum MESSAGE_TYPE.
+	 */
+	public static enum MESSAGE_TYPE {
+		
+		/** The coordinator assigns an island to a process. */
+		ASSIGN,
+		
+		/** Matrix models sent between islands. */
+		MIGRANTS,
+		
+		/** An island's final population. */
+		RESULT
+		
+	}
+
+	/** The message type. */
+	public MESSAGE_TYPE type = null;
+
+	/** The island index. */
+	public int islandIndex = 0;
+
+	/** The number of generations to evolve. */
+	public int steps = 0;
+
+	/** The island's matrix engine, including its population. */
+	public MatrixEngine matrixEngine = null;
+
+	/** The matrix models. */
+	public ArrayList<MatrixModel> matrixModels = null;
+
+	/** The island's transient engine settings. */
+	public MatrixEngine.Settings settings = null;
+
+	/**
+	 * Instantiates a new message.
+	 *
+	 * @param newType the message type
+	 * @param newIslandIndex the island index
+	 */
+	public MatrixIslandMessage(MESSAGE_TYPE newType, int newIslandIndex) {
+
+		// Note the message type and island.
+		this.type = newType;
+		this.islandIndex = newIslandIndex;
+
+	}
+
+	/**
+	 * Instantiates a new message carrying matrix models.
+	 *
+	 * @param newType the message type
+	 * @param newIslandIndex the island index
+	 * @param newMatrixModels the matrix models
+	 */
+	public MatrixIslandMessage(MESSAGE_TYPE newType, int newIslandIndex,
+			List<MatrixModel> newMatrixModels) {
+
+		// Note the message type, island, and matrix models.
+		this(newType, newIslandIndex);
+		this.matrixModels = new ArrayList<MatrixModel>(newMatrixModels);
+
+	}
+
+	/**
+	 * Create the XStream instance used for messages. It rejects every type
+	 * other than the messages themselves and the engine, population,
+	 * matrix model, matrix, and unit types they contain.
+	 *
+	 * @return the XStream instance
+	 */
+	public static XStream createXStream() {
+
+		// Allow only the types found in messages.
+		XStream xStream = new XStream(new DomDriver());
+		xStream.addPermission(NoTypePermission.NONE);
+		xStream.addPermission(NullPermission.NULL);
+		xStream.addPermission(PrimitiveTypePermission.PRIMITIVES);
+		xStream.addPermission(ArrayTypePermission.ARRAYS);
+		xStream.allowTypes(new Class[] { String.class, List.class,
+				ArrayList.class });
+		xStream.allowTypesByWildcard(new String[] {
+				"gov.anl.cue.arcane.engine.matrix.*",
+				"org.apache.commons.math3.linear.Array2DRowRealMatrix",
+				"javax.measure.**", "org.jscience.**" });
+
+		// Return the results.
+		return xStream;
+
+	}
+
+	/**
+	 * Assign. This creates the message that gives an island to a process.
+	 *
+	 * @param islandIndex the island index
+	 * @param island the island's matrix engine
+	 * @param steps the number of generations to evolve
+	 * @return the message
+	 */
+	public static MatrixIslandMessage assign(int islandIndex,
+			MatrixEngine island, int steps) {
+
+		// Note the island and its transient settings.
+		MatrixIslandMessage message = new MatrixIslandMessage(
+				MESSAGE_TYPE.ASSIGN, islandIndex);
+		message.steps = steps;
+		message.matrixEngine = island;
+		message.settings = island.getSettings();
+
+		// Return the results.
+		return message;
+
+	}
+
+	/**
+	 * Gets the island's matrix engine, restoring its transient settings
+	 * and the links from its populations and matrix models back to it.
+	 *
+	 * @return the matrix engine
+	 */
+	public MatrixEngine getMatrixEngine() {
+
+		// Restore the settings.
+		MatrixEngine island = this.matrixEngine;
+		island.setSettings(this.settings);
+
+		// Restore the links to the engine.
+		this.attach(island.inputPopulation, island);
+		this.attach(island.outputPopulation, island);
+
+		// Return the results.
+		return island;
+
+	}
+
+	/**
+	 * Attach. This links matrix models back to an engine after they are
+	 * read, since the links are transient.
+	 *
+	 * @param matrixModels the matrix models
+	 * @param matrixEngine the matrix engine
+	 */
+	public void attach(List<MatrixModel> matrixModels,
+			MatrixEngine matrixEngine) {
+
+		// Link the population, if any.
+		if (matrixModels instanceof MatrixPopulation) {
+			((MatrixPopulation) matrixModels).matrixEngine = matrixEngine;
+		}
+
+		// Link the matrix models.
+		for (MatrixModel matrixModel : matrixModels) {
+			matrixModel.matrixEngine = matrixEngine;
+		}
+
+	}
+
+	/**
+	 * Write the message to a stream. Writes to the same stream from
+	 * different threads are done one at a time.
+	 *
+	 * @param output the output stream
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void write(DataOutputStream output) throws IOException {
+
+		// Encode the message.
+		byte[] bytes = MatrixIslandMessage.XSTREAM.toXML(this).getBytes(
+				StandardCharsets.UTF_8);
+
+		// Write the message.
+		if (bytes.length > MatrixIslandMessage.MAX_LENGTH) {
+			throw new IOException("Message too long " + bytes.length);
+		}
+		synchronized (output) {
+			output.writeInt(bytes.length);
+			output.write(bytes);
+			output.flush();
+		}
+
+	}
+
+	/**
+	 * Read a message from a stream.
+	 *
+	 * @param input the input stream
+	 * @return the message
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static MatrixIslandMessage read(DataInputStream input)
+			throws IOException {
+
+		// Read the message.
+		int length = input.readInt();
+		if ((length < 0) || (length > MatrixIslandMessage.MAX_LENGTH)) {
+			throw new IOException("Invalid message length " + length);
+		}
+		byte[] bytes = new byte[length];
+		input.readFully(bytes);
+
+		// Decode the message, rejecting unexpected types.
+		Object message = null;
+		try {
+			message = MatrixIslandMessage.XSTREAM.fromXML(
+					new String(bytes, StandardCharsets.UTF_8));
+		} catch (XStreamException e) {
+			throw new IOException("Invalid message", e);
+		}
+		if (!(message instanceof MatrixIslandMessage)) {
+			throw new IOException("Invalid message");
+		}
+
+		// Return the results.
+		return (MatrixIslandMessage) message;
+
+	}
+
+}
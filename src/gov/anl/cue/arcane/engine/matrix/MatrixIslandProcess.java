@@ -0,0 +1,213 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.List;
+
+/**
+ * The MatrixIslandProcess class runs one island in its own process. It
+ * connects to a MatrixIslandCoordinator, which assigns it an island with
+ * a population and random seed. It then evolves the island, sending its
+ * best matrix models to the coordinator to be passed to its neighbors and
+ * adding the matrix models that arrive from them, and finally sends back
+ * its population. If the connection to the coordinator fails before the
+ * population is sent, the island stops sending migrants and the run
+ * fails with the first failure.
+ */
+public class MatrixIslandProcess {
+
+	/** The coordinator's host. */
+	public String host = null;
+
+	/** The coordinator's port. */
+	public int port = 0;
+
+	/** The first failure of the connection to the coordinator, if any. */
+	public volatile IOException failure = null;
+
+	/** The finished flag, which is set when the population is sent. */
+	public volatile boolean finished = false;
+
+	/**
+	 * Instantiates a new island process.
+	 *
+	 * @param newHost the coordinator's host
+	 * @param newPort the coordinator's port
+	 */
+	public MatrixIslandProcess(String newHost, int newPort) {
+
+		// Note the coordinator.
+		this.host = newHost;
+		this.port = newPort;
+
+	}
+
+	/**
+	 * The main method, which takes the coordinator's host and port.
+	 *
+	 * @param args the arguments
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static void main(String[] args) throws IOException {
+
+		// Run the island.
+		new MatrixIslandProcess(args[0], Integer.parseInt(args[1])).run();
+
+	}
+
+	/**
+	 * Fail. This notes the first failure of the connection to the
+	 * coordinator.
+	 *
+	 * @param e the failure
+	 */
+	public synchronized void fail(IOException e) {
+
+		// Note the first failure.
+		if (this.failure == null) {
+			this.failure = e;
+		}
+
+	}
+
+	/**
+	 * Run the assigned island.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred,
+	 *             including a failed connection to the coordinator.
+	 */
+	public void run() throws IOException {
+
+		// Connect to the coordinator.
+		Socket socket = new Socket(this.host, this.port);
+		try {
+
+			// Read the assignment.
+			final DataInputStream input = new DataInputStream(
+					new BufferedInputStream(socket.getInputStream()));
+			final DataOutputStream output = new DataOutputStream(
+					new BufferedOutputStream(socket.getOutputStream()));
+			MatrixIslandMessage assignment = MatrixIslandMessage.read(input);
+			final int islandIndex = assignment.islandIndex;
+			final MatrixEngine matrixEngine = assignment.getMatrixEngine();
+
+			// Create the island, which sends its migrants to the
+			// coordinator.
+			final MatrixIslands matrixIslands = new MatrixIslands(
+					matrixEngine, 1) {
+				public void send(int sender, List<MatrixModel> matrixModels) {
+					if (MatrixIslandProcess.this.failure != null) {
+						return;
+					}
+					try {
+						new MatrixIslandMessage(
+								MatrixIslandMessage.MESSAGE_TYPE.MIGRANTS,
+								islandIndex, matrixModels).write(output);
+						this.migrantCount.addAndGet(matrixModels.size());
+					} catch (IOException e) {
+						MatrixIslandProcess.this.fail(e);
+					}
+				}
+			};
+
+			// Receive migrants until the coordinator closes the connection.
+			Thread receiver = new Thread(new Runnable() {
+				public void run() {
+					try {
+						while (true) {
+							MatrixIslandMessage message =
+									MatrixIslandMessage.read(input);
+							if (message.type ==
+									MatrixIslandMessage.MESSAGE_TYPE.MIGRANTS) {
+								matrixIslands.inboxes.get(0).addAll(
+										message.matrixModels);
+							}
+						}
+					} catch (IOException e) {
+						if (!MatrixIslandProcess.this.finished) {
+							MatrixIslandProcess.this.fail(e);
+						}
+					}
+				}
+			});
+			receiver.setDaemon(true);
+			receiver.start();
+
+			// Evolve the island.
+			matrixIslands.evolve(assignment.steps);
+
+			// Stop if the connection failed.
+			if (this.failure != null) {
+				throw new IOException("Island " + islandIndex +
+						" lost its coordinator", this.failure);
+			}
+
+			// Send the results, and then wait for the coordinator to close
+			// the connection so that they are not lost.
+			this.finished = true;
+			new MatrixIslandMessage(MatrixIslandMessage.MESSAGE_TYPE.RESULT,
+					islandIndex, matrixEngine.outputPopulation).write(output);
+			socket.shutdownOutput();
+			try {
+				receiver.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+		// Disconnect.
+		} finally {
+			socket.close();
+		}
+
+	}
+
+}
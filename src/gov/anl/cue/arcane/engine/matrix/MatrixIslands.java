@@ -0,0 +1,384 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The MatrixIslands class evolves a population as a set of islands. Each
+ * island is a matrix engine with its own share of the population and its
+ * own random stream, split in order from the main engine's stream, and
+ * each island runs the usual kill and fill cycle on its own thread. Every
+ * few generations, each island sends copies of its best matrix models to
+ * its neighbors through lock-free queues. Islands never wait for each
+ * other, so migrants arrive whenever their neighbors send them, and runs
+ * with more than one island are not repeatable. When the islands finish,
+ * their matrix models are merged back into the main engine's population.
+ */
+public class MatrixIslands {
+
+	/** The default number of generations between migrations. */
+	public static final int DEFAULT_MIGRATION_INTERVAL = 5;
+
+	/** The default number of matrix models sent to each neighbor. */
+	public static final int DEFAULT_MIGRATION_SIZE = 2;
+
+	/** The main matrix engine. */
+	public MatrixEngine matrixEngine = null;
+
+	/** The islands. */
+	public List<MatrixEngine> islands = new ArrayList<MatrixEngine>();
+
+	/** The queues of matrix models sent to each island. */
+	public List<ConcurrentLinkedQueue<MatrixModel>> inboxes =
+			new ArrayList<ConcurrentLinkedQueue<MatrixModel>>();
+
+	/** The number of matrix models sent between islands. */
+	public AtomicLong migrantCount = new AtomicLong();
+
+	/**
+	 * The random streams used to choose each island's random neighbors,
+	 * which are split from the islands' streams when they are first
+	 * needed. Each stream is only used while holding its lock, so
+	 * neighbors can be found from any thread without touching the
+	 * islands' own streams.
+	 */
+	public List<MatrixRandom> topologyRandoms = new ArrayList<MatrixRandom>();
+
+	/**
+	 * Instantiates new islands from the main engine's output population.
+	 * The matrix models are dealt to the islands in turn, so each island
+	 * gets a similar share of the competitive models.
+	 *
+	 * @param newMatrixEngine the main matrix engine
+	 */
+	public MatrixIslands(MatrixEngine newMatrixEngine) {
+
+		// Create the requested number of islands.
+		this(newMatrixEngine, newMatrixEngine.islandCount);
+
+	}
+
+	/**
+	 * Instantiates a given number of new islands from the main engine's
+	 * output population.
+	 *
+	 * @param newMatrixEngine the main matrix engine
+	 * @param islandCount the number of islands
+	 */
+	public MatrixIslands(MatrixEngine newMatrixEngine, int islandCount) {
+
+		// Note the main engine.
+		this.matrixEngine = newMatrixEngine;
+
+		// Create the islands.
+		int count = Math.max(1, islandCount);
+		for (int index = 0; index < count; index++) {
+			MatrixEngine island = newMatrixEngine.copySettings();
+			island.populationSize = newMatrixEngine.populationSize / count +
+					((index < newMatrixEngine.populationSize % count) ? 1 : 0);
+			island.random = newMatrixEngine.getRandom().split();
+			this.islands.add(island);
+			this.inboxes.add(new ConcurrentLinkedQueue<MatrixModel>());
+			this.topologyRandoms.add((island.getIslandTopology() ==
+					MatrixEngine.ISLAND_TOPOLOGY.RANDOM) ?
+					island.getRandom().split() : null);
+		}
+
+		// Deal the matrix models to the islands.
+		MatrixPopulation matrixPopulation = newMatrixEngine.outputPopulation;
+		for (int index = 0; index < matrixPopulation.size(); index++) {
+			MatrixEngine island = this.islands.get(index % count);
+			MatrixModel matrixModel = matrixPopulation.get(index);
+			matrixModel.matrixEngine = island;
+			island.outputPopulation.append(matrixModel);
+		}
+
+		// Make sure every island has a matrix model to breed from.
+		for (MatrixEngine island : this.islands) {
+			if (island.outputPopulation.isEmpty() &&
+					!matrixPopulation.isEmpty()) {
+				MatrixModel matrixModel = matrixPopulation.get(0).copy();
+				matrixModel.matrixEngine = island;
+				island.outputPopulation.append(matrixModel);
+			}
+		}
+
+	}
+
+	/**
+	 * Evolve the islands, each on its own thread, and then merge them.
+	 *
+	 * @param steps the steps
+	 */
+	public void evolve(final int steps) {
+
+		// Start the islands.
+		ExecutorService executor = Executors.newFixedThreadPool(
+				this.islands.size());
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int index = 0; index < this.islands.size(); index++) {
+			final int islandIndex = index;
+			futures.add(executor.submit(new Runnable() {
+				public void run() {
+					MatrixIslands.this.evolve(islandIndex, steps);
+				}
+			}));
+		}
+
+		// Wait for the islands to finish.
+		try {
+			for (Future<?> future : futures) {
+				future.get();
+			}
+
+		// Stop waiting if interrupted.
+		} catch (InterruptedException e) {
+			for (Future<?> remaining : futures) {
+				remaining.cancel(true);
+			}
+			Thread.currentThread().interrupt();
+
+		// Note unexpected errors.
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+
+		// Release the threads.
+		} finally {
+			executor.shutdown();
+		}
+
+		// Merge the islands.
+		this.merge();
+
+	}
+
+	/**
+	 * Evolve one island.
+	 *
+	 * @param islandIndex the island index
+	 * @param steps the steps
+	 */
+	public void evolve(int islandIndex, int steps) {
+
+		// Complete the needed evolutionary steps.
+		MatrixEngine island = this.islands.get(islandIndex);
+		for (int step = 1; step <= steps; step++) {
+
+			// Check for interruptions.
+			if (Thread.currentThread().isInterrupted()) {
+				return;
+			}
+
+			// Take in the matrix models that have arrived.
+			this.immigrate(islandIndex);
+
+			// Replace less competitive matrix models, one way or another.
+			if (island.getEvolutionMode() ==
+					MatrixEngine.EVOLUTION_MODE.STEADY_STATE) {
+				new MatrixSteadyState(island).evolve(1);
+			} else {
+				island.kill();
+				island.fill();
+			}
+
+			// Send the best matrix models, if needed.
+			if ((step % island.getMigrationInterval()) == 0) {
+				this.emigrate(islandIndex);
+			}
+
+		}
+
+	}
+
+	/**
+	 * Immigrate. This adds the matrix models sent to an island.
+	 *
+	 * @param islandIndex the island index
+	 */
+	public void immigrate(int islandIndex) {
+
+		// Add the matrix models that have arrived.
+		MatrixEngine island = this.islands.get(islandIndex);
+		ConcurrentLinkedQueue<MatrixModel> inbox = this.inboxes.get(islandIndex);
+		MatrixModel matrixModel = inbox.poll();
+		while (matrixModel != null) {
+			matrixModel.matrixEngine = island;
+			island.outputPopulation.add(matrixModel);
+			matrixModel = inbox.poll();
+		}
+
+	}
+
+	/**
+	 * Emigrate. This sends copies of an island's best matrix models to
+	 * its neighbors.
+	 *
+	 * @param islandIndex the island index
+	 */
+	public void emigrate(int islandIndex) {
+
+		// Send the best matrix models.
+		MatrixEngine island = this.islands.get(islandIndex);
+		this.send(islandIndex, island.outputPopulation.top(
+				island.getMigrationSize()));
+
+	}
+
+	/**
+	 * Send. This puts copies of the given matrix models in the queues of
+	 * an island's neighbors. Other transports can override this.
+	 *
+	 * @param islandIndex the sending island's index
+	 * @param matrixModels the matrix models
+	 */
+	public void send(int islandIndex, List<MatrixModel> matrixModels) {
+
+		// Send the matrix models to each neighbor.
+		for (int neighbor : this.neighbors(islandIndex)) {
+			for (MatrixModel matrixModel : matrixModels) {
+				this.inboxes.get(neighbor).offer(matrixModel.copy());
+				this.migrantCount.incrementAndGet();
+			}
+		}
+
+	}
+
+	/**
+	 * Topology random. This finds the random stream used to choose an
+	 * island's random neighbors, splitting it from the island's stream if
+	 * the island did not start with a random topology.
+	 *
+	 * @param islandIndex the island index
+	 * @return the random stream
+	 */
+	public synchronized MatrixRandom topologyRandom(int islandIndex) {
+
+		// Split the stream, if needed.
+		MatrixRandom topologyRandom = this.topologyRandoms.get(islandIndex);
+		if (topologyRandom == null) {
+			topologyRandom = this.islands.get(islandIndex).getRandom().split();
+			this.topologyRandoms.set(islandIndex, topologyRandom);
+		}
+
+		// Return the results.
+		return topologyRandom;
+
+	}
+
+	/**
+	 * Neighbors. This finds the islands that an island sends to. It may
+	 * be called from several threads at once.
+	 *
+	 * @param islandIndex the island index
+	 * @return the neighbors
+	 */
+	public List<Integer> neighbors(int islandIndex) {
+
+		// Prepare the results storage.
+		List<Integer> neighbors = new ArrayList<Integer>();
+		int count = this.islands.size();
+		if (count < 2) {
+			return neighbors;
+		}
+
+		// Find the neighbors.
+		MatrixEngine island = this.islands.get(islandIndex);
+		switch (island.getIslandTopology()) {
+		case COMPLETE:
+			for (int offset = 1; offset < count; offset++) {
+				neighbors.add((islandIndex + offset) % count);
+			}
+			break;
+		case RANDOM:
+			MatrixRandom topologyRandom = this.topologyRandom(islandIndex);
+			synchronized (topologyRandom) {
+				neighbors.add((islandIndex + 1 + (int) topologyRandom
+						.nextUniform(0, count - 1)) % count);
+			}
+			break;
+		default:
+			neighbors.add((islandIndex + 1) % count);
+			break;
+		}
+
+		// Return the results.
+		return neighbors;
+
+	}
+
+	/**
+	 * Merge. This moves the islands' matrix models back into the main
+	 * engine's output population, keeping the most competitive models.
+	 */
+	public void merge() {
+
+		// Collect the matrix models.
+		List<MatrixModel> matrixModels = new ArrayList<MatrixModel>();
+		for (MatrixEngine island : this.islands) {
+			for (MatrixModel matrixModel : island.outputPopulation) {
+				matrixModel.matrixEngine = this.matrixEngine;
+				matrixModels.add(matrixModel);
+			}
+		}
+
+		// Store the results.
+		MatrixPopulation matrixPopulation =
+				new MatrixPopulation(this.matrixEngine);
+		matrixPopulation.addAll(matrixModels);
+		matrixPopulation.truncate(this.matrixEngine.populationSize);
+		this.matrixEngine.outputPopulation = matrixPopulation;
+
+	}
+
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import org.apache.commons.math3.linear.RealMatrix;
+
+/**
+ * The MatrixLinks class lists the allowed links (i.e., the cells that are
+ * not Double.NaN) in a variable's coefficient matrix. The links are kept
+ * as a bit mask with one bit per cell, for membership checks, and are
+ * listed from the mask in compressed sparse row form, for scans from
+ * source nodes, and in compressed sparse column form, for scans into
+ * destination nodes. The row order of the links is also the order of the
+ * values in MatrixCoefficients, so the column form notes each link's row
+ * order index. Both lists are in ascending order, so scanning them
+ * visits the allowed cells in the same order as scanning the full
+ * matrix, while the cost grows with the number of links rather than with
+ * the square of the number of nodes.
+ * 
+ * Evolution does not change which links are allowed, so links are not
+ * changed once they are found. This lets a model and all of its
+ * descendants share the same links.
+ */
+public class MatrixLinks implements Serializable {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
+	/** The number of rows. */
+	public int rowCount;
+
+	/** The number of columns. */
+	public int columnCount;
+
+	/** The number of mask words for each row. */
+	public int rowWords;
+
+	/** The mask, with one bit for each cell in row order. */
+	public long[] mask;
+
+	/** The start of each row's links, with a final entry for the end. */
+	public int[] rowStarts;
+
+	/** The column of each link, in row order. */
+	public int[] rowColumns;
+
+	/** The start of each column's links, with a final entry for the end. */
+	public int[] columnStarts;
+
+	/** The row of each link, in column order. */
+	public int[] columnRows;
+
+	/** The row order index of each link, in column order. */
+	public int[] columnLinks;
+
+	/**
+	 * Instantiates new links from the allowed cells of a coefficient
+	 * matrix.
+	 *
+	 * @param coefficients the coefficients
+	 */
+	public MatrixLinks(RealMatrix coefficients) {
+
+		// Find the mask.
+		this(coefficients.getRowDimension(),
+				coefficients.getColumnDimension(),
+				MatrixLinks.mask(coefficients));
+
+	}
+
+	/**
+	 * Instantiates new links from a mask.
+	 *
+	 * @param newRowCount the row count
+	 * @param newColumnCount the column count
+	 * @param newMask the mask
+	 */
+	public MatrixLinks(int newRowCount, int newColumnCount, long[] newMask) {
+
+		// Note the dimensions.
+		this.rowCount = newRowCount;
+		this.columnCount = newColumnCount;
+		this.rowWords = MatrixLinks.rowWords(newColumnCount);
+		this.mask = newMask;
+
+		// Count the links in each row and column.
+		this.rowStarts = new int[this.rowCount + 1];
+		this.columnStarts = new int[this.columnCount + 1];
+		for (int row = 0; row < this.rowCount; row++) {
+			int count = 0;
+			for (int word = 0; word < this.rowWords; word++) {
+				long bits = this.mask[row * this.rowWords + word];
+				count += Long.bitCount(bits);
+				while (bits != 0) {
+					this.columnStarts[(word << 6) +
+							Long.numberOfTrailingZeros(bits) + 1]++;
+					bits &= bits - 1;
+				}
+			}
+			this.rowStarts[row + 1] = this.rowStarts[row] + count;
+		}
+		for (int column = 0; column < this.columnCount; column++) {
+			this.columnStarts[column + 1] += this.columnStarts[column];
+		}
+
+		// Fill in the links from the set bits.
+		this.rowColumns = new int[this.rowStarts[this.rowCount]];
+		this.columnRows = new int[this.columnStarts[this.columnCount]];
+		this.columnLinks = new int[this.columnStarts[this.columnCount]];
+		int[] columnNext = new int[this.columnCount];
+		int next = 0;
+		for (int row = 0; row < this.rowCount; row++) {
+			for (int word = 0; word < this.rowWords; word++) {
+				long bits = this.mask[row * this.rowWords + word];
+				while (bits != 0) {
+					int column = (word << 6) + Long.numberOfTrailingZeros(bits);
+					int position = this.columnStarts[column] +
+							columnNext[column]++;
+					this.columnRows[position] = row;
+					this.columnLinks[position] = next;
+					this.rowColumns[next++] = column;
+					bits &= bits - 1;
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Finds the number of mask words for each row.
+	 *
+	 * @param columnCount the column count
+	 * @return the number of words
+	 */
+	public static int rowWords(int columnCount) {
+
+		// Return the results.
+		return (columnCount + 63) >>> 6;
+
+	}
+
+	/**
+	 * Finds the mask of allowed cells in a coefficient matrix.
+	 *
+	 * @param coefficients the coefficients
+	 * @return the mask
+	 */
+	public static long[] mask(RealMatrix coefficients) {
+
+		// Set the bits for the allowed cells.
+		int rowWords = MatrixLinks.rowWords(coefficients.getColumnDimension());
+		long[] mask = new long[coefficients.getRowDimension() * rowWords];
+		for (int row = 0; row < coefficients.getRowDimension(); row++) {
+			double[] values = coefficients.getRow(row);
+			for (int column = 0; column < values.length; column++) {
+				if (!Double.isNaN(values[column])) {
+					mask[row * rowWords + (column >>> 6)] |= 1L << column;
+				}
+			}
+		}
+
+		// Return the results.
+		return mask;
+
+	}
+
+	/**
+	 * Checks if a cell is allowed.
+	 *
+	 * @param row the row
+	 * @param column the column
+	 * @return true, if the cell is allowed
+	 */
+	public boolean isAllowed(int row, int column) {
+
+		// Return the results.
+		return (this.mask[row * this.rowWords + (column >>> 6)] &
+				(1L << column)) != 0;
+
+	}
+
+	/**
+	 * Adds another set of links to a row. These links are not changed.
+	 *
+	 * @param row the row
+	 * @param that the other links
+	 * @return the combined links, which are these links if nothing is added
+	 */
+	public MatrixLinks addRow(int row, MatrixLinks that) {
+
+		// Check for new links.
+		int start = row * this.rowWords;
+		boolean added = false;
+		for (int word = start; word < start + this.rowWords; word++) {
+			added |= (that.mask[word] & ~this.mask[word]) != 0;
+		}
+		if (!added) {
+			return this;
+		}
+
+		// Combine the links.
+		long[] newMask = this.mask.clone();
+		for (int word = start; word < start + this.rowWords; word++) {
+			newMask[word] |= that.mask[word];
+		}
+
+		// Return the results.
+		return new MatrixLinks(this.rowCount, this.columnCount, newMask);
+
+	}
+
+	/**
+	 * Finds the row of a link.
+	 *
+	 * @param link the link's index in row order
+	 * @return the row
+	 */
+	public int rowOf(int link) {
+
+		// Find the last row that starts at or before the link.
+		int low = 0;
+		int high = this.rowCount - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (this.rowStarts[middle] <= link) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+
+		// Return the results.
+		return low;
+
+	}
+
+	/**
+	 * Checks if other links allow the same cells.
+	 *
+	 * @param that the other links
+	 * @return true, if the same cells are allowed
+	 */
+	public boolean sameAs(MatrixLinks that) {
+
+		// Return the results.
+		return (this == that) || ((this.rowCount == that.rowCount) &&
+				(this.columnCount == that.columnCount) &&
+				Arrays.equals(this.mask, that.mask));
+
+	}
+
+	/**
+	 * Counts the links.
+	 *
+	 * @return the number of links
+	 */
+	public int count() {
+
+		// Return the results.
+		return this.rowColumns.length;
+
+	}
+
+	/**
+	 * Counts the links into a column.
+	 *
+	 * @param column the column
+	 * @return the number of links
+	 */
+	public int countColumn(int column) {
+
+		// Return the results.
+		return this.columnStarts[column + 1] - this.columnStarts[column];
+
+	}
+
+	/**
+	 * Checks the dimensions against a coefficient matrix.
+	 *
+	 * @param coefficients the coefficients
+	 * @return true, if the dimensions match
+	 */
+	public boolean fits(RealMatrix coefficients) {
+
+		// Return the results.
+		return (coefficients.getRowDimension() == this.rowCount) &&
+				(coefficients.getColumnDimension() == this.columnCount);
+
+	}
+
+}
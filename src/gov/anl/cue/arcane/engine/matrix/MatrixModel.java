@@ -48,7 +48,6 @@ package gov.anl.cue.arcane.engine.matrix;
 import java.awt.Dimension;
 import java.awt.HeadlessException;
 import java.awt.image.BufferedImage;
-import java.beans.Introspector;
 import java.beans.Transient;
 import java.io.File;
 import java.io.FileInputStream;
@@ -57,19 +56,20 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.Serializable;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Method;
-import java.net.URL;
-import java.net.URLClassLoader;
+import java.io.StringWriter;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.ResourceBundle;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.imageio.ImageIO;
 import javax.swing.JFrame;
@@ -81,7 +81,6 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.math3.exception.NotStrictlyPositiveException;
 import org.apache.commons.math3.exception.OutOfRangeException;
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
-import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Font;
 import org.apache.poi.ss.usermodel.Row;
@@ -399,6 +398,9 @@ public class MatrixModel extends ArrayList<MatrixVariable> implements Serializab
 
 			}
 
+			// Find the allowed links once, so that copies can share them.
+			matrixVariable.getLinks();
+
 			// Store the new variable.
 			matrixModel.add(matrixVariable);
 
@@ -666,6 +668,9 @@ public class MatrixModel extends ArrayList<MatrixVariable> implements Serializab
 
 			}
 
+			// Find the allowed links once, so that copies can share them.
+			matrixVariable.getLinks();
+
 			// Store the new variable.
 			matrixModel.add(matrixVariable);
 
@@ -828,12 +833,36 @@ public class MatrixModel extends ArrayList<MatrixVariable> implements Serializab
 	/** The equation evolution flag. */
 	public boolean equationEvolution = false;
 
+	/** The most recently compiled formulation class, if any. */
+	public transient Class<? extends MatrixFormulationAbstract> formulationClass = null;
+
+	/** The most recently translated interpreter formulation, if any. */
+	public transient MatrixFormulationInterpreter.Code formulationCode = null;
+
+	/** The source code for the most recently built formulation. */
+	public transient String formulationSource = null;
+
+	/** The layout for node array formulations, if any. */
+	public transient MatrixFormulationLayout formulationLayout = null;
+
 	/** The Constant ABSTRACT_CLASS_NAME. */
 	public static transient final String ABSTRACT_CLASS_NAME = MatrixModelConstants.getString("MatrixModel.0");
 	
 	/** The Constant CONCRETE_CLASS_NAME. */
 	public static transient final String CONCRETE_CLASS_NAME = MatrixModelConstants.getString("MatrixModel.1");
 	
+	/**
+	 * The count of formulation classes that have been named. This keeps
+	 * the name of each generated formulation class unique within a JVM.
+	 */
+	public static transient final AtomicLong FORMULATION_CLASS_COUNT = new AtomicLong();
+	
+	/** The approximate source size above which methods are split. */
+	public static transient final int METHOD_SOURCE_LIMIT = 4000;
+	
+	/** The line separator. */
+	public static transient final String NEW_LINE = System.getProperty("line.separator");
+	
 	/** The Constant RSD_CLASS_NAME. */
 	public static transient final String RSD_CLASS_NAME = MatrixModelConstants.getString("MatrixModel.14");
 	
@@ -925,11 +954,23 @@ public class MatrixModel extends ArrayList<MatrixVariable> implements Serializab
 	 */
 	public double userEquationFitnessFunction() {
 		
+		// Check for the node array code shape.
+		if ((this.matrixEngine != null) &&
+				(this.matrixEngine.getFormulationShape() ==
+				MatrixEngine.FORMULATION_SHAPE.NODE_ARRAYS) &&
+				this.formulateArrays()) {
+			
+			// Run the formulation.
+			return this.runMatrixModel();
+			
+		}
+		
 		// Evaluate the equations.
 		Set<String> knit = this.knit(MatrixModel.NO_SUFFIX, MatrixModel.COMBINED_SUFFIX);
 		
-		// Disperse the results of the equations.
-		Set<String> split = this.split(MatrixModel.NO_SUFFIX, MatrixModel.COMBINED_SUFFIX);
+		// Disperse the results of the equations using coefficients
+		// that are passed in when the formulation is instantiated.
+		Set<String> split = this.splitKernel(MatrixModel.NO_SUFFIX, MatrixModel.COMBINED_SUFFIX);
 
 		// Collect the fitness equation.
 		String fitness = this.fitness(MatrixModel.NO_SUFFIX);
@@ -1069,17 +1110,21 @@ public class MatrixModel extends ArrayList<MatrixVariable> implements Serializab
 		for (MatrixVariable matrixVariable : this) {
 			
 			// Scan the destination nodes (i.e., columns).
+			MatrixLinks links = matrixVariable.getLinks();
+			double[] values = matrixVariable.getValues();
 			for (int destination = 0; destination < this.nodeCount(); destination++) {
 
 				// Prepare to assemble the next equation.
 				equation = "";
 
-				// Scan the source nodes (i.e., rows).
-				for (int source = 0; source < this.nodeCount(); source++) {
+				// Scan the allowed source nodes (i.e., rows).
+				for (int link = links.columnStarts[destination];
+						link < links.columnStarts[destination + 1]; link++) {
 					
-					// Check to see if the next coefficient is defined.
-					coefficient = matrixVariable.coefficients.getEntry(source, destination);
-					if ((coefficient != 0.0) && !Double.isNaN(coefficient)) {
+					// Check to see if the next coefficient is nonzero.
+					int source = links.columnRows[link];
+					coefficient = values[links.columnLinks[link]];
+					if (coefficient != 0.0) {
 						
 						// Add the next term.
 						if (equation.length() > 0) equation += " + ";
@@ -1109,6 +1154,126 @@ public class MatrixModel extends ArrayList<MatrixVariable> implements Serializab
 	
 	}
 
+	/**
+	 * Evaluate the equations using coefficient references rather than
+	 * coefficient values. The n-th term refers to the n-th value returned
+	 * by splitKernelCoefficients(), so every model with the same equations
+	 * and the same pattern of nonzero links produces the same code.
+	 *
+	 * @param regularSuffix the regular suffix
+	 * @param combinedSuffix the combined suffix
+	 * @return the hash map
+	 */
+	public Set<String> splitKernel(String regularSuffix, String combinedSuffix) {
+		
+		// Declare the storage.
+		Set<String> split = new TreeSet<String>();
+		StringBuilder equation = new StringBuilder();
+		double coefficient;
+		int coefficientIndex = 0;
+		
+		// Make substitutions, as required.
+		for (MatrixVariable matrixVariable : this) {
+			
+			// Scan the destination nodes (i.e., columns).
+			MatrixLinks links = matrixVariable.getLinks();
+			double[] values = matrixVariable.getValues();
+			for (int destination = 0; destination < this.nodeCount(); destination++) {
+
+				// Prepare to assemble the next equation.
+				equation.setLength(0);
+
+				// Scan the allowed source nodes (i.e., rows).
+				for (int link = links.columnStarts[destination];
+						link < links.columnStarts[destination + 1]; link++) {
+					
+					// Check to see if the next coefficient is nonzero.
+					int source = links.columnRows[link];
+					coefficient = values[links.columnLinks[link]];
+					if (coefficient != 0.0) {
+						
+						// Add the next term.
+						if (equation.length() > 0) equation.append(" + ");
+						equation.append("this.coefficients[")
+								.append(coefficientIndex++).append("] * ")
+								.append(matrixVariable.name)
+								.append(MatrixModelConstants.getString("MatrixModel.20"))
+								.append(this.nodeName(source))
+								.append(combinedSuffix);
+						
+					}
+					
+				}
+
+				// Add the next equation, if appropriate.
+				if (equation.length() > 0) {
+					split.add(matrixVariable.name +
+							MatrixModelConstants.getString("MatrixModel.20") +
+							this.nodeName(destination) + 
+							regularSuffix + 
+							" = " + equation);
+				}
+				
+			}
+			
+		}
+	
+		// Return the results.
+		return split;
+	
+	}
+
+	/**
+	 * Find the coefficient values referenced by splitKernel().
+	 *
+	 * @return the coefficients
+	 */
+	public double[] splitKernelCoefficients() {
+		
+		// Declare the storage.
+		double[] coefficients = new double[0];
+		double coefficient;
+		int coefficientIndex = 0;
+		
+		// Scan the variables in the same order as splitKernel().
+		for (MatrixVariable matrixVariable : this) {
+			
+			// Scan the destination nodes (i.e., columns).
+			MatrixLinks links = matrixVariable.getLinks();
+			double[] values = matrixVariable.getValues();
+			for (int destination = 0; destination < this.nodeCount(); destination++) {
+
+				// Scan the allowed source nodes (i.e., rows).
+				for (int link = links.columnStarts[destination];
+						link < links.columnStarts[destination + 1]; link++) {
+					
+					// Check to see if the next coefficient is nonzero.
+					int source = links.columnRows[link];
+					coefficient = values[links.columnLinks[link]];
+					if (coefficient != 0.0) {
+						
+						// Grow the storage, if needed.
+						if (coefficientIndex == coefficients.length) {
+							coefficients = Arrays.copyOf(coefficients,
+									Math.max(16, 2 * coefficients.length));
+						}
+						
+						// Store the next coefficient.
+						coefficients[coefficientIndex++] = coefficient;
+						
+					}
+					
+				}
+				
+			}
+			
+		}
+	
+		// Return the results.
+		return Arrays.copyOf(coefficients, coefficientIndex);
+	
+	}
+
 	/**
 	 * Fitness.
 	 *
@@ -1175,11 +1340,102 @@ public class MatrixModel extends ArrayList<MatrixVariable> implements Serializab
 		// Attempt to create a new formulation class.
 		try {
 			
-			// Attempt to write the Java file.
-			this.formulateJava(declarations, knit, split, fitness);
+			// Note that node fields are used.
+			this.formulationLayout = null;
+			
+			// Generate the source.
+			String source = this.formulateSource(declarations, knit,
+					split, fitness);
+			
+			// Reuse the current formulation, such as one inherited from
+			// a parent, if the generated code has not changed.
+			if (((this.formulationClass != null) ||
+					(this.formulationCode != null)) &&
+					source.equals(this.formulationSource)) {
+				return true;
+			}
+			
+			// Forget the previous formulation.
+			this.formulationClass = null;
+			this.formulationCode = null;
+			this.formulationSource = null;
+
+			// Check for the on-disk debugging path.
+			if ((this.matrixEngine != null) &&
+					this.matrixEngine.diskFormulation) {
+
+				// Name the class so that concurrent evaluations do not
+				// overwrite each other's files.
+				String className = MatrixModel.nextFormulationClassName();
+				
+				// Attempt to write the Java file.
+				this.formulateJava(className, declarations, knit, split,
+						fitness);
+				
+				// Attempt to compile the Java file.
+				this.formulateBytecode(className);
+
+				// Attempt to load the compiled file.
+				this.formulationClass = this.formulateLoad(className);
+
+			} else {
+
+				// Check the engine's cache for a matching formulation.
+				MatrixFormulationCache formulationCache = null;
+				MatrixFormulationCache.MatrixFormulationCacheEntry entry = null;
+				if (this.matrixEngine != null) {
+					formulationCache = this.matrixEngine.getFormulationCache();
+					entry = formulationCache.getEntry(source);
+				}
+				
+				// Reuse a cached formulation.
+				if (entry != null) {
+					this.formulationClass = entry.formulationClass;
+					this.formulationCode = entry.formulationCode;
+					
+				// Build the formulation in memory, if needed.
+				} else {
+					
+					// Check for the interpreter, which the tiered backend
+					// starts with.
+					if ((this.matrixEngine != null) &&
+							((this.matrixEngine.getFormulationBackend() ==
+							MatrixEngine.FORMULATION_BACKEND.INTERPRETER) ||
+							(this.matrixEngine.getFormulationBackend() ==
+							MatrixEngine.FORMULATION_BACKEND.TIERED))) {
+						this.formulationCode = this.formulateCode(
+								declarations, knit, split, fitness);
+					}
+					
+					// Otherwise, build a class or reuse a stored one.
+					if (this.formulationCode == null) {
+						MatrixFormulationStore formulationStore = null;
+						if (this.matrixEngine != null) {
+							formulationStore =
+									this.matrixEngine.getFormulationStore();
+						}
+						if (formulationStore != null) {
+							this.formulationClass = this.formulateClass(
+									formulationStore, source, declarations,
+									knit, split, fitness);
+						} else {
+							this.formulationClass = this.formulateClass(
+									declarations, knit, split, fitness);
+						}
+					}
+					
+					// Store the results.
+					if (formulationCache != null) {
+						formulationCache.put(source, this.formulationClass,
+								this.formulationCode);
+					}
+					
+				}
+
+			}
 			
-			// Attempt to compile the Java file.
-			this.formulateBytecode();
+			// Note the source of the new formulation.
+			this.formulationSource = source;
 			
 			// Return the results.
 			return true;
@@ -1187,15 +1443,542 @@ public class MatrixModel extends ArrayList<MatrixVariable> implements Serializab
 		// Catch errors.
 		} catch (Exception e) {
 			
-			// Return the results.
-			return false;
+			// Return the results.
+			return false;
+			
+		}
+		
+	}
+
+	/**
+	 * Formulate arrays. This builds a formulation with the node array code
+	 * shape, in which the generated code grows with the number of distinct
+	 * equations rather than with the number of nodes.
+	 *
+	 * @return true, if successful, or false if the model needs the node
+	 *         field code shape
+	 */
+	public boolean formulateArrays() {
+		
+		// Attempt to create a new formulation class.
+		try {
+			
+			// Find the layout and generate the source.
+			MatrixFormulationLayout layout = new MatrixFormulationLayout(this);
+			String source = layout.source(MatrixModel.CONCRETE_CLASS_NAME);
+			
+			// Reuse the current formulation if the code has not changed.
+			if ((this.formulationClass != null) &&
+					source.equals(this.formulationSource)) {
+				this.formulationLayout = layout;
+				return true;
+			}
+			
+			// Forget the previous formulation.
+			this.formulationClass = null;
+			this.formulationCode = null;
+			this.formulationSource = null;
+			this.formulationLayout = null;
+			
+			// Check the engine's cache for a matching formulation.
+			MatrixFormulationCache formulationCache =
+					this.matrixEngine.getFormulationCache();
+			MatrixFormulationCache.MatrixFormulationCacheEntry entry =
+					formulationCache.getEntry(source);
+			Class<? extends MatrixFormulationAbstract> formulationClass =
+					(entry == null) ? null : entry.formulationClass;
+			
+			// Check the engine's store for a matching formulation.
+			MatrixFormulationStore formulationStore =
+					this.matrixEngine.getFormulationStore();
+			String key = null;
+			if ((formulationClass == null) && (formulationStore != null)) {
+				key = formulationStore.key(source);
+				formulationClass = formulationStore.load(key);
+			}
+			
+			// Compile the formulation, if needed.
+			if (formulationClass == null) {
+				
+				// Name the class.
+				String className = MatrixModel.PACKAGE_NAME + "." +
+						MatrixModel.nextFormulationClassName();
+				if (formulationStore != null) {
+					className = formulationStore.className(key);
+				}
+				
+				// Compile and load the class.
+				HashMap<String, String> sources = new HashMap<String, String>();
+				sources.put(className, layout.source(className.substring(
+						className.lastIndexOf('.') + 1)));
+				HashMap<String, byte[]> bytecodes = new HashMap<String, byte[]>(
+						MatrixFormulationCompiler.compile(sources));
+				formulationClass = new MatrixFormulationClassLoader(bytecodes)
+						.loadFormulation(className);
+				
+				// Store the results.
+				if (formulationStore != null) {
+					formulationStore.write(key, bytecodes.get(className));
+				}
+				
+			}
+			
+			// Cache the results.
+			if (entry == null) {
+				formulationCache.put(source, formulationClass);
+			}
+			
+			// Note the new formulation.
+			this.formulationClass = formulationClass;
+			this.formulationSource = source;
+			this.formulationLayout = layout;
+			
+			// Return the results.
+			return true;
+			
+		// Fall back to node fields.
+		} catch (Exception e) {
+			
+			// Return the results.
+			return false;
+			
+		}
+		
+	}
+
+	/**
+	 * Next formulation class name. Each generated formulation class gets
+	 * its own name so that formulations from different models or engines
+	 * in the same JVM can never be confused with one another.
+	 *
+	 * @return the simple class name
+	 */
+	public static String nextFormulationClassName() {
+		
+		// Return the results.
+		return MatrixModel.CONCRETE_CLASS_NAME + "_" +
+				MatrixModel.FORMULATION_CLASS_COUNT.incrementAndGet();
+		
+	}
+
+	/**
+	 * Formulate class. This builds a formulation class in memory with
+	 * the engine's formulation backend.
+	 *
+	 * @param declarations the declarations
+	 * @param knit the knit
+	 * @param split the split
+	 * @param fitness the fitness
+	 * @return the formulation class
+	 * @throws Exception the exception
+	 */
+	public Class<? extends MatrixFormulationAbstract> formulateClass(
+			Set<String> declarations, Set<String> knit, Set<String> split,
+			String fitness) throws Exception {
+		
+		// Note the class name.
+		String className = MatrixModel.PACKAGE_NAME + "." +
+				MatrixModel.nextFormulationClassName();
+		
+		// Build the class and load it in its own class loader.
+		HashMap<String, byte[]> bytecodes = new HashMap<String, byte[]>();
+		bytecodes.put(className, this.formulateClassBytecode(className,
+				declarations, knit, split, fitness));
+		return new MatrixFormulationClassLoader(bytecodes)
+				.loadFormulation(className);
+		
+	}
+
+	/**
+	 * Formulate class. This reuses a formulation class from the given
+	 * store, or builds the class and adds it to the store.
+	 *
+	 * @param formulationStore the formulation store
+	 * @param source the source
+	 * @param declarations the declarations
+	 * @param knit the knit
+	 * @param split the split
+	 * @param fitness the fitness
+	 * @return the formulation class
+	 * @throws Exception the exception
+	 */
+	public Class<? extends MatrixFormulationAbstract> formulateClass(
+			MatrixFormulationStore formulationStore, String source,
+			Set<String> declarations, Set<String> knit, Set<String> split,
+			String fitness) throws Exception {
+		
+		// Check the store.
+		String key = formulationStore.key(source);
+		Class<? extends MatrixFormulationAbstract> formulationClass =
+				formulationStore.load(key);
+		
+		// Build and store the class, if needed.
+		if (formulationClass == null) {
+			byte[] bytecode = this.formulateClassBytecode(
+					formulationStore.className(key), declarations, knit,
+					split, fitness);
+			formulationClass = formulationStore.load(key, bytecode);
+			formulationStore.write(key, bytecode);
+		}
+		
+		// Return the results.
+		return formulationClass;
+		
+	}
+
+	/**
+	 * Formulate class bytecode. This builds the bytecode for a
+	 * formulation class with the engine's formulation backend.
+	 *
+	 * @param className the fully qualified class name
+	 * @param declarations the declarations
+	 * @param knit the knit
+	 * @param split the split
+	 * @param fitness the fitness
+	 * @return the bytecode
+	 * @throws Exception the exception
+	 */
+	public byte[] formulateClassBytecode(String className,
+			Set<String> declarations, Set<String> knit, Set<String> split,
+			String fitness) throws Exception {
+		
+		// Check for the bytecode backend.
+		if ((this.matrixEngine == null) ||
+				(this.matrixEngine.getFormulationBackend() ==
+				MatrixEngine.FORMULATION_BACKEND.BYTECODE)) {
+			
+			// Attempt to emit the class directly.
+			try {
+				return MatrixFormulationAssembler.assemble(className,
+						MatrixFormulationProgram.parse(declarations, knit,
+						split, fitness));
+				
+			// Fall back to javac for unsupported equations.
+			} catch (IllegalArgumentException e) {
+			}
+			
+		}
+		
+		// Compile the formulation.
+		HashMap<String, String> sources = new HashMap<String, String>();
+		sources.put(className, this.formulateSource(
+				className.substring(className.lastIndexOf('.') + 1),
+				declarations, knit, split, fitness));
+		return MatrixFormulationCompiler.compile(sources).get(className);
+		
+	}
+
+	/**
+	 * Formulate code. This translates a formulation for the interpreter.
+	 *
+	 * @param declarations the declarations
+	 * @param knit the knit
+	 * @param split the split
+	 * @param fitness the fitness
+	 * @return the code, or null if the interpreter does not support
+	 *         the equations
+	 */
+	public MatrixFormulationInterpreter.Code formulateCode(
+			Set<String> declarations, Set<String> knit, Set<String> split,
+			String fitness) {
+		
+		// Attempt to translate the formulation.
+		try {
+			return MatrixFormulationInterpreter.translate(
+					MatrixFormulationProgram.parse(declarations, knit,
+					split, fitness));
+			
+		// Note unsupported equations.
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+		
+	}
+
+	/**
+	 * Formulate instance. This creates a formulation instance with this
+	 * model's step size and coefficients.
+	 *
+	 * @return the matrix formulation
+	 * @throws Exception the exception
+	 */
+	public MatrixFormulationAbstract formulateInstance() throws Exception {
+		
+		// Check for interpreted formulations.
+		if (this.formulationCode != null) {
+			return new MatrixFormulationInterpreter(this.stepSize,
+					this.splitKernelCoefficients(), this.formulationCode);
+		}
+		
+		// Check for node array formulations.
+		if (this.formulationLayout != null) {
+			return this.formulationClass
+					.getDeclaredConstructor(double.class, double[].class,
+					MatrixFormulationLayout.class)
+					.newInstance(this.stepSize, this.splitKernelCoefficients(),
+					this.formulationLayout);
+		}
+		
+		// Otherwise, instantiate the formulation class.
+		return this.formulationClass
+				.getDeclaredConstructor(double.class, double[].class)
+				.newInstance(this.stepSize, this.splitKernelCoefficients());
+		
+	}
+
+	/**
+	 * Formulate source. This generates the source for this model's
+	 * current equations, as userEquationFitnessFunction() does.
+	 *
+	 * @param className the simple class name
+	 * @return the source code
+	 */
+	public String formulateSource(String className) {
+		
+		// Evaluate the equations.
+		Set<String> knit = this.knit(MatrixModel.NO_SUFFIX, MatrixModel.COMBINED_SUFFIX);
+		
+		// Disperse the results of the equations.
+		Set<String> split = this.splitKernel(MatrixModel.NO_SUFFIX, MatrixModel.COMBINED_SUFFIX);
+
+		// Collect the fitness equation.
+		String fitness = this.fitness(MatrixModel.NO_SUFFIX);
+		
+		// Extract the declarations from the new equations.
+		Set<String> declarations = this.extractDeclarations(knit);
+		
+		// Return the results.
+		return this.formulateSource(className, declarations,
+				this.filterKnit(knit), split, fitness);
+		
+	}
+
+	/**
+	 * Formulate source. The source uses the shared concrete class name,
+	 * so equivalent formulations produce identical source.
+	 *
+	 * @param declarations the declarations
+	 * @param knit the knit
+	 * @param split the split
+	 * @param fitness the fitness
+	 * @return the source code
+	 */
+	public String formulateSource(Set<String> declarations, Set<String> knit,
+			Set<String> split, String fitness) {
+		
+		// Return the results.
+		return this.formulateSource(MatrixModel.CONCRETE_CLASS_NAME,
+				declarations, knit, split, fitness);
+		
+	}
+
+	/**
+	 * Formulate source.
+	 *
+	 * @param className the simple class name
+	 * @param declarations the declarations
+	 * @param knit the knit
+	 * @param split the split
+	 * @param fitness the fitness
+	 * @return the source code
+	 */
+	public String formulateSource(String className, Set<String> declarations,
+			Set<String> knit, Set<String> split, String fitness) {
+		
+		// Prepare the results storage.
+		StringWriter source = new StringWriter();
+		PrintWriter writer = new PrintWriter(source);
+		
+		// Check the size, since large models need their methods split.
+		int size = fitness.length();
+		for (String line : declarations) size += line.length();
+		for (String line : knit) size += line.length();
+		for (String line : split) size += line.length();
+		boolean large = (size > MatrixModel.METHOD_SOURCE_LIMIT);
+		StringBuilder helpers = new StringBuilder();
+		
+		// Combine the formulation elements.
+		writer.println("package " + MatrixModel.PACKAGE_NAME + ";");
+		writer.println("");
+		writer.println("import static java.lang.Math.*;");
+		writer.println("");
+		writer.println("public class " + className + " extends " + MatrixModel.ABSTRACT_CLASS_NAME + " {");
+		writer.println("");
+		if (!large) {
+			for (String line : declarations) writer.println("\t" + line + ";");
+		} else {
+			for (String line : declarations) writer.println("\t" + line.substring(0, line.indexOf(" = ")) + ";");
+		}
+		writer.println("");
+		writer.println("\tpublic " + className + "(double newStepSize, double[] newCoefficients) {");
+		writer.println("\t\tsuper(newStepSize, newCoefficients);");
+		if (large) {
+			List<String> initializers = new ArrayList<String>();
+			for (String line : declarations) initializers.add(line.substring("double ".length()));
+			this.formulateSourceParts(writer, helpers, "initialize", initializers);
+		}
+		writer.println("\t}");
+		writer.println("");
+		writer.println("\t@Override");
+		writer.println("\tpublic void knit() {");
+		writer.println("");
+		if (!large) {
+			for (String line : knit) writer.println("\t\t" + line + ";");
+		} else {
+			this.formulateSourceParts(writer, helpers, "knit", knit);
+		}
+		writer.println("");
+		writer.println("\t}");
+		writer.println("");
+		writer.println("\t@Override");
+		writer.println("\tpublic void split() {");
+		writer.println("");
+		if (!large) {
+			for (String line : split) writer.println("\t\t" + line + ";");
+		} else {
+			this.formulateSourceParts(writer, helpers, "split", split);
+		}
+		writer.println("");
+		writer.println("\t}");
+		writer.println("");
+		writer.println("\tpublic Double calculateFitnessValue() {");
+		writer.println("");
+		if (!large) {
+			writer.println("\t\treturn " + fitness + ";");
+		} else {
+			this.formulateSourceFitness(writer, helpers, fitness);
+		}
+		writer.println("");
+		writer.println("\t}");
+		writer.print(helpers);
+		writer.println("");
+		writer.println("}");
+		
+		// Close the writer.
+		writer.close();
+
+		// Return the results.
+		return source.toString();
+		
+	}
+
+	/**
+	 * Formulate source parts. This writes calls to helper methods that
+	 * each run a piece of the given statements, in order, and adds the
+	 * helper methods to the helper source.
+	 *
+	 * @param writer the writer for the calling method
+	 * @param helpers the helper source
+	 * @param prefix the helper method name prefix
+	 * @param lines the statements
+	 */
+	public void formulateSourceParts(PrintWriter writer, StringBuilder helpers,
+			String prefix, Collection<String> lines) {
+		
+		// Split the statements into pieces.
+		int count = 0;
+		List<String> piece = new ArrayList<String>();
+		int size = 0;
+		for (String line : lines) {
+			if ((!piece.isEmpty()) &&
+					(size + line.length() > MatrixModel.METHOD_SOURCE_LIMIT)) {
+				this.formulateSourcePart(writer, helpers, prefix + "Part" + count++, piece);
+				piece.clear();
+				size = 0;
+			}
+			piece.add(line);
+			size += line.length();
+		}
+		if (!piece.isEmpty()) this.formulateSourcePart(writer, helpers, prefix + "Part" + count, piece);
+		
+	}
+
+	/**
+	 * Formulate source part. This writes a call to one helper method and
+	 * adds the helper method to the helper source.
+	 *
+	 * @param writer the writer for the calling method
+	 * @param helpers the helper source
+	 * @param name the helper method name
+	 * @param lines the statements
+	 */
+	public void formulateSourcePart(PrintWriter writer, StringBuilder helpers,
+			String name, List<String> lines) {
+		
+		// Write the call.
+		writer.println("\t\t" + name + "();");
+		
+		// Write the helper method.
+		helpers.append(MatrixModel.NEW_LINE);
+		helpers.append("\tprivate void " + name + "() {" + MatrixModel.NEW_LINE);
+		for (String line : lines) helpers.append("\t\t" + line + ";" + MatrixModel.NEW_LINE);
+		helpers.append("\t}" + MatrixModel.NEW_LINE);
+		
+	}
+
+	/**
+	 * Formulate source fitness. This splits the fitness sum into helper
+	 * methods that each add a piece of the terms to the value so far.
+	 *
+	 * @param writer the writer for the calling method
+	 * @param helpers the helper source
+	 * @param fitness the fitness equation
+	 */
+	public void formulateSourceFitness(PrintWriter writer,
+			StringBuilder helpers, String fitness) {
+		
+		// Find the top level terms.
+		List<String> terms = new ArrayList<String>();
+		int depth = 0;
+		int start = 0;
+		for (int index = 0; index < fitness.length(); index++) {
+			char character = fitness.charAt(index);
+			if (character == '(') {
+				depth++;
+			} else if (character == ')') {
+				depth--;
+			} else if ((depth == 0) && fitness.startsWith(" + ", index)) {
+				terms.add(fitness.substring(start, index));
+				start = index + " + ".length();
+				index = start - 1;
+			}
+		}
+		terms.add(fitness.substring(start));
+		
+		// Write the helper methods and the calls to them.
+		int count = 0;
+		int index = 0;
+		while (index < terms.size()) {
+			
+			// Write the next helper method.
+			String name = "fitnessPart" + count++;
+			helpers.append(MatrixModel.NEW_LINE);
+			if (index == 0) {
+				helpers.append("\tprivate double " + name + "() {" + MatrixModel.NEW_LINE);
+				helpers.append("\t\treturn " + terms.get(index));
+				writer.println("\t\tdouble value = " + name + "();");
+			} else {
+				helpers.append("\tprivate double " + name + "(double value) {" + MatrixModel.NEW_LINE);
+				helpers.append("\t\treturn value + " + terms.get(index));
+				writer.println("\t\tvalue = " + name + "(value);");
+			}
+			int size = terms.get(index).length();
+			for (index++; (index < terms.size()) &&
+					(size + terms.get(index).length() <= MatrixModel.METHOD_SOURCE_LIMIT); index++) {
+				helpers.append(" + " + terms.get(index));
+				size += terms.get(index).length();
+			}
+			helpers.append(";" + MatrixModel.NEW_LINE);
+			helpers.append("\t}" + MatrixModel.NEW_LINE);
 			
 		}
+		writer.println("\t\treturn value;");
 		
 	}
 
 	/**
-	 * Formulate java.
+	 * Formulate java. This writes the formulation to the temporary
+	 * directory and is only used for on-disk debugging.
 	 *
 	 * @param declarations the declarations
 	 * @param knit the knit
@@ -1206,49 +1989,38 @@ public class MatrixModel extends ArrayList<MatrixVariable> implements Serializab
 	public void formulateJava(Set<String> declarations, Set<String> knit,
 			Set<String> split, String fitness) throws FileNotFoundException {
 		
+		// Write the formulation with the shared class name.
+		this.formulateJava(MatrixModel.CONCRETE_CLASS_NAME, declarations,
+				knit, split, fitness);
+		
+	}
+
+	/**
+	 * Formulate java. This writes the formulation to the temporary
+	 * directory and is only used for on-disk debugging.
+	 *
+	 * @param className the simple class name
+	 * @param declarations the declarations
+	 * @param knit the knit
+	 * @param split the split
+	 * @param fitness the fitness
+	 * @throws FileNotFoundException the file not found exception
+	 */
+	public void formulateJava(String className, Set<String> declarations,
+			Set<String> knit, Set<String> split, String fitness)
+			throws FileNotFoundException {
+		
 		// Create the folders, if needed.
 		File folders = new File(Util.TEMP_DIR + "//" + MatrixModel.PACKAGE_PATH);
 		folders.mkdirs();		
 		
 		// Attempt to create a new print writer.
 		PrintWriter writer = new PrintWriter(new File(Util.TEMP_DIR + "//" +
-				MatrixModel.PACKAGE_PATH +
-				MatrixModel.CONCRETE_CLASS_NAME + ".java"));
+				MatrixModel.PACKAGE_PATH + className + ".java"));
 		
-		// Combine the formulation elements.
-		writer.println("package " + MatrixModel.PACKAGE_NAME + ";");
-		writer.println("");
-		writer.println("import static java.lang.Math.*;");
-		writer.println("");
-		writer.println("public class " + MatrixModel.CONCRETE_CLASS_NAME + " extends " + MatrixModel.ABSTRACT_CLASS_NAME + " {");
-		writer.println("");
-		for (String line : declarations) writer.println("\t" + line + ";");
-		writer.println("");
-		writer.println("\tpublic " + MatrixModel.CONCRETE_CLASS_NAME + "(double newStepSize) {");
-		writer.println("\t\tsuper(newStepSize);");
-		writer.println("\t}");
-		writer.println("");
-		writer.println("\t@Override");
-		writer.println("\tpublic void knit() {");
-		writer.println("");
-		for (String line : knit) writer.println("\t\t" + line + ";");
-		writer.println("");
-		writer.println("\t}");
-		writer.println("");
-		writer.println("\t@Override");
-		writer.println("\tpublic void split() {");
-		writer.println("");
-		for (String line : split) writer.println("\t\t" + line + ";");
-		writer.println("");
-		writer.println("\t}");
-		writer.println("");
-		writer.println("\tpublic Double calculateFitnessValue() {");
-		writer.println("");
-		writer.println("\t\treturn " + fitness + ";");
-		writer.println("");
-		writer.println("\t}");
-		writer.println("");
-		writer.println("}");
+		// Write the formulation.
+		writer.print(this.formulateSource(className, declarations, knit,
+				split, fitness));
 		
 		// Close the file.
 		writer.close();
@@ -1256,18 +2028,72 @@ public class MatrixModel extends ArrayList<MatrixVariable> implements Serializab
 	}
 
 	/**
-	 * Formulate bytecode.
+	 * Formulate bytecode. This compiles the formulation in the temporary
+	 * directory and is only used for on-disk debugging.
 	 */
 	public void formulateBytecode() {
 		
+		// Compile the formulation with the shared class name.
+		this.formulateBytecode(MatrixModel.CONCRETE_CLASS_NAME);
+		
+	}
+
+	/**
+	 * Formulate bytecode. This compiles the formulation in the temporary
+	 * directory and is only used for on-disk debugging.
+	 *
+	 * @param className the simple class name
+	 */
+	public void formulateBytecode(String className) {
+		
 		// Attempt to compile the file.
 		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
 		compiler.run(null, null, null,
 				Util.TEMP_DIR + MatrixModel.PACKAGE_PATH +
-				MatrixModel.CONCRETE_CLASS_NAME + ".java");
+				className + ".java");
 		
 	}
 
+	/**
+	 * Formulate load. This loads the formulation compiled in the temporary
+	 * directory and is only used for on-disk debugging.
+	 *
+	 * @return the formulation class
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @throws ClassNotFoundException the class not found exception
+	 */
+	public Class<? extends MatrixFormulationAbstract> formulateLoad()
+			throws IOException, ClassNotFoundException {
+
+		// Load the formulation with the shared class name.
+		return this.formulateLoad(MatrixModel.CONCRETE_CLASS_NAME);
+
+	}
+
+	/**
+	 * Formulate load. This loads the formulation compiled in the temporary
+	 * directory and is only used for on-disk debugging.
+	 *
+	 * @param className the simple class name
+	 * @return the formulation class
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @throws ClassNotFoundException the class not found exception
+	 */
+	public Class<? extends MatrixFormulationAbstract> formulateLoad(
+			String className) throws IOException, ClassNotFoundException {
+
+		// Read the compiled file.
+		HashMap<String, byte[]> bytecodes = new HashMap<String, byte[]>();
+		bytecodes.put(MatrixModel.PACKAGE_NAME + "." + className,
+				Files.readAllBytes(Paths.get(Util.TEMP_DIR +
+				MatrixModel.PACKAGE_PATH + className + ".class")));
+
+		// Return the results.
+		return new MatrixFormulationClassLoader(bytecodes)
+				.loadFormulation(MatrixModel.PACKAGE_NAME + "." + className);
+
+	}
+
 	/**
 	 * Run the matrix model.
 	 *
@@ -1281,40 +2107,39 @@ public class MatrixModel extends ArrayList<MatrixVariable> implements Serializab
 		// Attempt to run the model.
 		try {
 		
-			// Setup a temporary class loader.
-			URL[] urls = new URL[]{
-					new File(Util.TEMP_DIR).toURI().toURL()
-			};
-			URLClassLoader classLoader = new URLClassLoader(urls, null, null);
-
-			// Attempt to load the compiled file.
-		    @SuppressWarnings("rawtypes")
-			Constructor constructor = classLoader.loadClass(
-					MatrixModel.PACKAGE_NAME + "." + MatrixModel.CONCRETE_CLASS_NAME)
-				.getDeclaredConstructor(double.class);
-		    constructor.setAccessible(true);
-		    Object object = constructor.newInstance(this.stepSize);
-
-			// Call "matrixFormulation.step(steps)".
-			Method method = object.getClass()
-					.getSuperclass().getMethod("step", int.class);
-			method.invoke(object, this.stepCount);
-			
-			// Call matrixFormulation.calculateFitnessValue();
-			method = object.getClass().getSuperclass()
-					.getMethod("calculateFitnessValue");
-			results = (Double) method.invoke(object);
-
-			// Clear the given class loader, which should not be
-			// a child of another class loader.
-			object = null;
-			method = null;
-			classLoader.close();
-			ResourceBundle.clearCache(classLoader);
-			classLoader = null;
-			Introspector.flushCaches();
-			System.runFinalization();
-			System.gc();
+			// Check for tiered evaluation.
+			MatrixFormulationAbstract matrixFormulation;
+			if ((this.formulationCode != null) &&
+					(this.matrixEngine != null) &&
+					(this.matrixEngine.getFormulationBackend() ==
+					MatrixEngine.FORMULATION_BACKEND.TIERED)) {
+				
+				// Run the formulation in the appropriate tier.
+				matrixFormulation = this.matrixEngine
+						.getFormulationTiering().run(
+						this.formulationCode, this.stepSize,
+						this.splitKernelCoefficients(), this.stepCount,
+						this.matrixEngine.getTieredCompileThreshold());
+				
+			} else {
+				
+				// Instantiate the most recent formulation with this
+				// model's coefficients.
+				matrixFormulation = this.formulateInstance();
+	
+				// Run the formulation.
+				matrixFormulation.step(this.stepCount);
+				
+			}
+			
+			// Calculate the fitness value.
+			results = matrixFormulation.calculateFitnessValue();
+
+			// Clear the formulation instance. The formulation class is
+			// kept so that offspring with the same code can reuse it,
+			// and unused classes are released by the engine's
+			// formulation lifetime manager.
+			matrixFormulation = null;
 		
 		// Catch exceptions.
 		} catch (Exception e) {
@@ -1432,14 +2257,18 @@ public class MatrixModel extends ArrayList<MatrixVariable> implements Serializab
 		for (MatrixVariable matrixVariable : this) {
 			
 			// Scan the source nodes (i.e., rows).
+			MatrixLinks links = matrixVariable.getLinks();
+			double[] values = matrixVariable.getValues();
 			for (int source = 0; source < this.nodeCount(); source++) {
 				
-				// Scan the destination nodes (i.e., columns).
-				for (int destination = 0; destination < this.nodeCount(); destination++) {
-
-					// Check to see if the next coefficient is defined.
-					Double coefficient = matrixVariable.coefficients.getEntry(source, destination);
-					if ((!Double.isNaN(coefficient)) && (coefficient != 0.0)) {
+				// Scan the allowed destination nodes (i.e., columns).
+				for (int link = links.rowStarts[source];
+						link < links.rowStarts[source + 1]; link++) {
+
+					// Check to see if the next coefficient is nonzero.
+					int destination = links.rowColumns[link];
+					double coefficient = values[link];
+					if (coefficient != 0.0) {
 						
 						// Add a link from the source to the destination.
 						graph.addVertex(this.nodeName(source));
@@ -1714,14 +2543,18 @@ public class MatrixModel extends ArrayList<MatrixVariable> implements Serializab
 		for (MatrixVariable matrixVariable : this) {
 			
 			// Scan the source nodes (i.e., rows).
+			MatrixLinks links = matrixVariable.getLinks();
+			double[] values = matrixVariable.getValues();
 			for (int source = 0; source < this.nodeCount(); source++) {
 				
-				// Scan the destination nodes (i.e., columns).
-				for (int destination = 0; destination < this.nodeCount(); destination++) {
-
-					// Check to see if the next coefficient is defined.
-					Double coefficient = matrixVariable.coefficients.getEntry(source, destination);
-					if ((!Double.isNaN(coefficient)) && (coefficient != 0.0)) {
+				// Scan the allowed destination nodes (i.e., columns).
+				for (int link = links.rowStarts[source];
+						link < links.rowStarts[source + 1]; link++) {
+
+					// Check to see if the next coefficient is nonzero.
+					int destination = links.rowColumns[link];
+					double coefficient = values[link];
+					if (coefficient != 0.0) {
 						
 						// Add a link from the source to the destination.
 						graph.addVertex("" + source);
@@ -2451,20 +3284,15 @@ public class MatrixModel extends ArrayList<MatrixVariable> implements Serializab
 		for (MatrixVariable matrixVariable : this) {
 
 			// Scan the matrix rows.
-			RealMatrix coefficients = matrixVariable.coefficients;
-			for (int row = 0; row < coefficients.getRowDimension(); row++) {
+			MatrixLinks links = matrixVariable.getLinks();
+			double[] values = matrixVariable.getValues();
+			for (int row = 0; row < links.rowCount; row++) {
 
-				// Scan the matrix columns.
+				// Scan the allowed matrix columns.
 				double rowMax = 0.0;
-				for (int column = 0; column <
-						coefficients.getColumnDimension(); column++) {
-
-					// Check the next cell.
-					if (!Double.isNaN(coefficients.getEntry(row, column))) {
-						rowMax = Math.max(rowMax,
-								coefficients.getEntry(row, column));
-					}
-
+				for (int link = links.rowStarts[row];
+						link < links.rowStarts[row + 1]; link++) {
+					rowMax = Math.max(rowMax, values[link]);
 				}
 
 				// Accumulate the value.
@@ -2576,15 +3404,238 @@ public class MatrixModel extends ArrayList<MatrixVariable> implements Serializab
 	 */
 	public MatrixModel copy() {
 		
+		// Return the results.
+		return this.copy(null);
+		
+	}
+
+	/**
+	 * Copy.
+	 *
+	 * @param unitCopies the copies of the units, from copyUnits(), or null
+	 *            to share the units
+	 * @return the matrix model
+	 */
+	public MatrixModel copy(Map<Object, Object> unitCopies) {
+		
 		// Copy the current matrix model.
-		MatrixModel newMatrixModel = Util.deepCopy(this);
+		MatrixModel newMatrixModel;
+		if (this.getClass() != MatrixModel.class) {
+			newMatrixModel = Util.deepCopy(this);
+		} else if (this.isSharing()) {
+			newMatrixModel = this.copyShared();
+		} else {
+			newMatrixModel = this.copyStructure(unitCopies);
+		}
 		
 		// Note the matrix engine, since it is transient.
 		newMatrixModel.matrixEngine = this.matrixEngine;
+		
+		// Share the formulation, since it is also transient.
+		newMatrixModel.formulationClass = this.formulationClass;
+		newMatrixModel.formulationCode = this.formulationCode;
+		newMatrixModel.formulationSource = this.formulationSource;
+
+		// Share the allowed links, since evolution does not change them.
+		newMatrixModel.shareLinks(this);
+
+		// Return the results.
+		return newMatrixModel;
+
+	}
+
+	/**
+	 * Copy structure. This copies the model field by field rather than
+	 * through serialization. Strings, units, and other values that are not
+	 * changed in place are shared, unless unit copies are given.
+	 *
+	 * @param unitCopies the copies of the units, from copyUnits(), or null
+	 *            to share the units
+	 * @return the matrix model
+	 */
+	public MatrixModel copyStructure(Map<Object, Object> unitCopies) {
+		
+		// Copy the fields.
+		MatrixModel newMatrixModel = this.copyFields();
+		
+		// Copy the variables.
+		newMatrixModel.ensureCapacity(this.size());
+		for (MatrixVariable matrixVariable : this) {
+			MatrixVariable newMatrixVariable = (matrixVariable == null) ?
+					null : matrixVariable.copy();
+			if (newMatrixVariable != null) {
+				newMatrixVariable.owner = newMatrixModel;
+				if ((unitCopies != null) &&
+						unitCopies.containsKey(newMatrixVariable.units)) {
+					newMatrixVariable.units = (Amount<?>) unitCopies.get(
+							newMatrixVariable.units);
+				}
+			}
+			newMatrixModel.add(newMatrixVariable);
+		}
+		
+		// Return the results.
+		return newMatrixModel;
+		
+	}
+
+	/**
+	 * Copy shared. This copies the model's fields but shares its
+	 * variables, which are then copied by whichever model first changes
+	 * them.
+	 *
+	 * @return the matrix model
+	 */
+	public MatrixModel copyShared() {
+		
+		// Copy the fields.
+		MatrixModel newMatrixModel = this.copyFields();
+		
+		// Share the variables, which leaves them without an owner.
+		newMatrixModel.ensureCapacity(this.size());
+		for (MatrixVariable matrixVariable : this) {
+			if (matrixVariable != null) {
+				matrixVariable.owner = null;
+			}
+			newMatrixModel.add(matrixVariable);
+		}
+		
+		// Return the results.
+		return newMatrixModel;
+		
+	}
 
+	/**
+	 * Copy fields. This copies the model's fields other than its
+	 * variables and transient fields.
+	 *
+	 * @return the matrix model, which has no variables
+	 */
+	public MatrixModel copyFields() {
+		
+		// Copy the fields.
+		MatrixModel newMatrixModel = new MatrixModel(null);
+		newMatrixModel.fitnessEquations = (this.fitnessEquations == null) ?
+				null : new ArrayList<String>(this.fitnessEquations);
+		newMatrixModel.nodeNames = (this.nodeNames == null) ?
+				null : new ArrayList<String>(this.nodeNames);
+		newMatrixModel.fitnessValue = this.fitnessValue;
+		newMatrixModel.fitnessFunctionType = this.fitnessFunctionType;
+		newMatrixModel.stepSize = this.stepSize;
+		newMatrixModel.stepCount = this.stepCount;
+		newMatrixModel.equationEvolution = this.equationEvolution;
+		
 		// Return the results.
 		return newMatrixModel;
+		
+	}
+
+	/**
+	 * Checks if copies of this model share variables until they are
+	 * changed.
+	 *
+	 * @return true, if variables are shared
+	 */
+	public boolean isSharing() {
+		
+		// Return the results.
+		return (this.matrixEngine != null) &&
+				(this.matrixEngine.getModelCopying() ==
+				MatrixEngine.MODEL_COPYING.ON_WRITE);
+		
+	}
+
+	/**
+	 * Checks if a variable is shared with other models, so that it must
+	 * be copied before this model changes it.
+	 *
+	 * @param matrixVariable the matrix variable
+	 * @return true, if the variable is shared
+	 */
+	public boolean isShared(MatrixVariable matrixVariable) {
+		
+		// Return the results.
+		return (matrixVariable != null) && (matrixVariable.owner != this) &&
+				this.isSharing();
+		
+	}
+
+	/**
+	 * Gets a variable that this model may change in place, copying it
+	 * first if it is shared.
+	 *
+	 * @param variableIndex the variable index
+	 * @return the matrix variable
+	 */
+	public MatrixVariable writableVariable(int variableIndex) {
+		
+		// Copy the variable, if needed.
+		MatrixVariable matrixVariable = this.get(variableIndex);
+		if (this.isShared(matrixVariable)) {
+			matrixVariable = matrixVariable.copy();
+			matrixVariable.owner = this;
+			this.set(variableIndex, matrixVariable);
+		}
+		
+		// Return the results.
+		return matrixVariable;
+		
+	}
+
+	/**
+	 * Copy units. Units are not changed in place, so copied models
+	 * normally share them. Copies of whole populations instead copy the
+	 * distinct units of all of their models together, once, so that the
+	 * copies share unit objects exactly as serialized copies would.
+	 *
+	 * @param matrixModels the matrix models
+	 * @return the copies, keyed by the original units
+	 */
+	public static Map<Object, Object> copyUnits(
+			Collection<MatrixModel> matrixModels) {
+		
+		// Find the distinct units.
+		ArrayList<Object> units = new ArrayList<Object>();
+		IdentityHashMap<Object, Object> unitCopies =
+				new IdentityHashMap<Object, Object>();
+		for (MatrixModel matrixModel : matrixModels) {
+			for (MatrixVariable matrixVariable : matrixModel) {
+				if ((matrixVariable != null) && (matrixVariable.units != null) &&
+						!unitCopies.containsKey(matrixVariable.units)) {
+					unitCopies.put(matrixVariable.units, null);
+					units.add(matrixVariable.units);
+				}
+			}
+		}
+		
+		// Copy the units together.
+		if (!units.isEmpty()) {
+			ArrayList<Object> newUnits = Util.deepCopy(units);
+			for (int index = 0; index < units.size(); index++) {
+				unitCopies.put(units.get(index), newUnits.get(index));
+			}
+		}
+		
+		// Return the results.
+		return unitCopies;
+		
+	}
 
+	/**
+	 * Share links. This gives each variable the allowed links of the
+	 * matching variable in another model with the same structure.
+	 *
+	 * @param that the other matrix model
+	 */
+	public void shareLinks(MatrixModel that) {
+		
+		// Share the links of matching variables.
+		for (int variableIndex = 0; variableIndex < Math.min(this.size(),
+				that.size()); variableIndex++) {
+			this.get(variableIndex).shareLinks(
+					that.get(variableIndex).getLinks());
+		}
+		
 	}
 
 	/**
@@ -2640,7 +3691,7 @@ public class MatrixModel extends ArrayList<MatrixVariable> implements Serializab
 			// Note the next matrix variables.
 			MatrixVariable thisMatrixVariable = this.get(variableIndex);
 			MatrixVariable childMatrixVariable = childMatrixModel
-					.get(variableIndex);
+					.writableVariable(variableIndex);
 
 			// Choose roughly half of the other matrix variable's equations.
 			this.crossOverScanVariablesChooseHalf(thisMatrixVariable,
@@ -2670,34 +3721,9 @@ public class MatrixModel extends ArrayList<MatrixVariable> implements Serializab
 				thisMatrixVariable.coefficients.getRowDimension();
 				rowIndex++) {
 
-			// Combine coefficients by scanning coefficient columns.
-			for (int columnIndex = 0; columnIndex <
-					thisMatrixVariable.coefficients.getColumnDimension();
-					columnIndex++) {
-				
-				// Check the next entries to see if they are both valid.
-				if (!Double.isNaN(childMatrixVariable
-						.coefficients.getEntry(rowIndex, columnIndex)) &&
-				    !Double.isNaN(thisMatrixVariable
-				    		.coefficients.getEntry( rowIndex, columnIndex))) {
-					
-					// Combine two valid entries.
-					childMatrixVariable.coefficients.setEntry(rowIndex, columnIndex,
-							childMatrixVariable.coefficients.getEntry(rowIndex, columnIndex) +
-							thisMatrixVariable.coefficients.getEntry( rowIndex, columnIndex));
-				
-				// Check the next entry to see if thisMatrixVariable's value is valid.
-				// If not then childMatrixVariable's value must already be valid.
-				} else if (!Double.isNaN(thisMatrixVariable
-						.coefficients.getEntry( rowIndex, columnIndex))) {
-
-					// Use one valid entry.
-					childMatrixVariable.coefficients.setEntry(rowIndex, columnIndex,
-							thisMatrixVariable.coefficients.getEntry( rowIndex, columnIndex));
-					
-				}
-					
-			}
+			// Add thisMatrixVariable's valid entries to the child's valid
+			// entries, and use them where the child's entries are invalid.
+			childMatrixVariable.combineRow(rowIndex, thisMatrixVariable);
 			
 		}
 		
@@ -2790,27 +3816,33 @@ public class MatrixModel extends ArrayList<MatrixVariable> implements Serializab
 	 */
 	public void mutateScanVariables() throws OutOfRangeException {
 		
+		// Check for skip sampling.
+		if (this.getMatrixEngine().getMutationSampling() ==
+				MatrixEngine.MUTATION_SAMPLING.SKIP) {
+			this.mutateSkipVariables();
+			return;
+		}
+		
 		// Scan the variables.
-		for (MatrixVariable matrixVariable : this) {
+		for (int variableIndex = 0; variableIndex < this.size(); variableIndex++) {
 
 			// Scan the rows.
-			for (int rowIndex = 0; rowIndex < matrixVariable.coefficients
-					.getRowDimension(); rowIndex++) {
+			MatrixVariable matrixVariable = this.get(variableIndex);
+			MatrixLinks links = matrixVariable.getLinks();
+			for (int rowIndex = 0; rowIndex < links.rowCount; rowIndex++) {
 
-				// Scan the columns.
-				for (int columnIndex = 0; columnIndex < matrixVariable.coefficients
-						.getColumnDimension(); columnIndex++) {
+				// Scan the allowed columns.
+				for (int link = links.rowStarts[rowIndex];
+						link < links.rowStarts[rowIndex + 1]; link++) {
 
 					// Consider imposing a random mutation.
-					if ((!Double.isNaN(matrixVariable.coefficients
-							.getEntry(rowIndex, columnIndex))) &&
-							(this.getMatrixEngine().getRandomNumberFromTo(0.0, 1.0) <=
-									this.getMatrixEngine().mutationProbabilityForCells)) {
+					if (this.getMatrixEngine().getRandomNumberFromTo(0.0, 1.0) <=
+									this.getMatrixEngine().mutationProbabilityForCells) {
 
 						// Mutate the coefficient.
-						matrixVariable.coefficients.setEntry(rowIndex,
-								columnIndex,
-								this.getMatrixEngine().getRandomNumberFromTo(0.0, 1.0));
+						matrixVariable = this.writableVariable(variableIndex);
+						matrixVariable.getValues()[link] =
+								this.getMatrixEngine().getRandomNumberFromTo(0.0, 1.0);
 
 					}
 
@@ -2824,6 +3856,7 @@ public class MatrixModel extends ArrayList<MatrixVariable> implements Serializab
 							this.getMatrixEngine().mutationProbabilityForCells) {
 						
 						// Mutate the current equation.
+						matrixVariable = this.writableVariable(variableIndex);
 						MatrixEquation matrixEquation =  new MatrixEquation(this,
 								matrixVariable, rowIndex);
 						matrixEquation.grow();
@@ -2841,15 +3874,103 @@ public class MatrixModel extends ArrayList<MatrixVariable> implements Serializab
 		
 	}
 
+	/**
+	 * Mutate skip variables. This mutates the same cells and equations
+	 * as mutateScanVariables() with the same probabilities, but it draws
+	 * the gaps between mutations rather than deciding each cell and
+	 * equation separately. The cells of all the variables are treated as
+	 * one sequence, as are the equations.
+	 *
+	 * @throws OutOfRangeException the out of range exception
+	 */
+	public void mutateSkipVariables() throws OutOfRangeException {
+		
+		// Find the first mutated cell and equation.
+		double probability = this.getMatrixEngine().mutationProbabilityForCells;
+		long cellGap = this.mutateGap(probability);
+		long equationGap = this.equationEvolution ?
+				this.mutateGap(probability) : Long.MAX_VALUE;
+		
+		// Scan the variables.
+		for (int variableIndex = 0; variableIndex < this.size(); variableIndex++) {
+			
+			// Jump to the mutated cells.
+			MatrixVariable matrixVariable = this.get(variableIndex);
+			MatrixLinks links = matrixVariable.getLinks();
+			while (cellGap < links.count()) {
+				
+				// Mutate the coefficient.
+				int link = (int) cellGap;
+				matrixVariable = this.writableVariable(variableIndex);
+				matrixVariable.getValues()[link] =
+						this.getMatrixEngine().getRandomNumberFromTo(0.0, 1.0);
+				
+				// Find the next mutated cell.
+				cellGap += 1 + this.mutateGap(probability);
+				
+			}
+			cellGap -= links.count();
+			
+			// Jump to the mutated equations.
+			if (this.equationEvolution) {
+				while (equationGap < links.rowCount) {
+					
+					// Mutate the equation.
+					int rowIndex = (int) equationGap;
+					matrixVariable = this.writableVariable(variableIndex);
+					MatrixEquation matrixEquation =  new MatrixEquation(this,
+							matrixVariable, rowIndex);
+					matrixEquation.grow();
+					matrixVariable.equations.set(rowIndex,
+							matrixEquation.getEquation());
+					
+					// Find the next mutated equation.
+					equationGap += 1 + this.mutateGap(probability);
+					
+				}
+				equationGap -= links.rowCount;
+			}
+			
+		}
+		
+	}
+
+	/**
+	 * Mutate gap. This draws the number of cells or equations that are
+	 * skipped before the next mutation, which follows a geometric
+	 * distribution.
+	 *
+	 * @param probability the mutation probability
+	 * @return the number of cells or equations to skip
+	 */
+	public long mutateGap(double probability) {
+		
+		// Check for probabilities that do not need a random draw.
+		if (probability >= 1.0) {
+			return 0;
+		} else if (probability <= 0.0) {
+			return Long.MAX_VALUE / 2;
+		}
+		
+		// Draw the gap.
+		double gap = Math.floor(Math.log(this.getMatrixEngine()
+				.getRandomNumberFromTo(0.0, 1.0)) / Math.log1p(-probability));
+		
+		// Return the results.
+		return (long) Math.min(gap, Long.MAX_VALUE / 2);
+		
+	}
+
 	/**
 	 * Normalize.
 	 */
 	public void normalize() {
 
 		// Normalize each variable.
-		for (MatrixVariable matrixVariable : this) {
+		for (int variableIndex = 0; variableIndex < this.size(); variableIndex++) {
 
 			// Normalize the coefficients for each equation.
+			MatrixVariable matrixVariable = this.get(variableIndex);
 			for (int rowIndex = 0; rowIndex < matrixVariable.coefficients
 					.getRowDimension(); rowIndex++) {
 
@@ -2859,6 +3980,16 @@ public class MatrixModel extends ArrayList<MatrixVariable> implements Serializab
 				// Find the row sum, if any.
 				sum = this.normalizeFindRowSum(matrixVariable, rowIndex, sum);
 
+				// Leave shared rows that are already normalized alone, and
+				// copy shared variables before changing them.
+				if (this.isShared(matrixVariable)) {
+					if ((sum == 0.0) ||
+							!matrixVariable.scaleRowChanges(rowIndex, sum)) {
+						continue;
+					}
+					matrixVariable = this.writableVariable(variableIndex);
+				}
+
 				// Normalize the row.
 				this.normalizeRow(matrixVariable, rowIndex, sum);
 
@@ -2884,24 +4015,8 @@ public class MatrixModel extends ArrayList<MatrixVariable> implements Serializab
 		// Check for valid sums.
 		if (sum != 0.0) {
 
-			// Normalize the row.
-			for (int columnIndex = 0; columnIndex < matrixVariable.coefficients
-					.getColumnDimension(); columnIndex++) {
-
-				// Check for assigned cells.
-				if (!Double.isNaN(matrixVariable.coefficients.getEntry(
-						rowIndex, columnIndex))) {
-
-					// Normalize.
-					matrixVariable.coefficients.setEntry(
-							rowIndex,
-							columnIndex,
-							matrixVariable.coefficients.getEntry(
-									rowIndex, columnIndex) / sum);
-
-				}
-
-			}
+			// Normalize the row's assigned cells.
+			matrixVariable.scaleRow(rowIndex, sum);
 
 		}
 	}
@@ -2918,24 +4033,8 @@ public class MatrixModel extends ArrayList<MatrixVariable> implements Serializab
 	public double normalizeFindRowSum(MatrixVariable matrixVariable, int rowIndex,
 			double sum) throws OutOfRangeException {
 		
-		// Find the sum, if any.
-		for (int columnIndex = 0; columnIndex < matrixVariable.coefficients
-				.getColumnDimension(); columnIndex++) {
-
-			// Check for assigned cells.
-			if (!Double.isNaN(matrixVariable.coefficients.getEntry(
-					rowIndex, columnIndex))) {
-
-				// Accumulate the value.
-				sum += matrixVariable.coefficients.getEntry(rowIndex,
-						columnIndex);
-
-			}
-
-		}
-		
-		// Return the results.
-		return sum;
+		// Return the sum of the assigned cells, if any.
+		return matrixVariable.sumRow(rowIndex, sum);
 		
 	}
 
@@ -3054,13 +4153,13 @@ public class MatrixModel extends ArrayList<MatrixVariable> implements Serializab
 				cell.setCellStyle(cellStyle);
 
 				// Fill in the coefficients.
+				MatrixLinks links = matrixVariable.getLinks();
 				for (int columnIndex = 0; columnIndex < matrixVariable.equations
 						.size(); columnIndex++) {
 					cell = row.createCell(columnIndex + 2);
-					double cellValue = matrixVariable.coefficients
-							.getEntry(rowIndex, columnIndex);
-					if (!Double.isNaN(cellValue)) {
-						cell.setCellValue(cellValue);
+					if (links.isAllowed(rowIndex, columnIndex)) {
+						cell.setCellValue(matrixVariable.coefficients
+								.getEntry(rowIndex, columnIndex));
 					}
 				}
 
@@ -50,8 +50,10 @@ import java.io.File;
 import java.io.FilenameFilter;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 import gov.anl.cue.arcane.engine.Util;
 
@@ -176,6 +178,57 @@ public class MatrixPopulation extends ArrayList<MatrixModel> implements Serializ
 
 	}
 
+	/**
+	 * The fitness values of the matrix models, in population order. The
+	 * values are only used while fitnessKeysModCount matches the list's
+	 * modification count, and are found again otherwise. Matrix models
+	 * are not expected to change their fitness while they are in the
+	 * population, so sort() should be called after changing them.
+	 */
+	public transient double[] fitnessKeys = null;
+	
+	/** The list modification count at which the fitness keys were found. */
+	public transient int fitnessKeysModCount = -1;
+	
+	/**
+	 * Gets the fitness keys. This sorts the population first, if needed.
+	 * The array may be longer than the population.
+	 *
+	 * @return the fitness keys
+	 */
+	@Transient
+	public double[] getFitnessKeys() {
+		
+		// Check the current keys.
+		if ((this.fitnessKeys == null) ||
+				(this.fitnessKeysModCount != this.modCount)) {
+			
+			// Find the keys.
+			int size = this.size();
+			double[] keys = new double[size];
+			boolean sorted = true;
+			for (int index = 0; index < size; index++) {
+				keys[index] = this.get(index).getFitnessValue();
+				if ((index > 0) && (keys[index] > keys[index - 1])) {
+					sorted = false;
+				}
+			}
+			
+			// Sort the population, if needed.
+			if (sorted) {
+				this.fitnessKeys = keys;
+				this.fitnessKeysModCount = this.modCount;
+			} else {
+				this.sort();
+			}
+			
+		}
+		
+		// Return the results.
+		return this.fitnessKeys;
+		
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -184,27 +237,274 @@ public class MatrixPopulation extends ArrayList<MatrixModel> implements Serializ
 	@Override
 	public boolean add(MatrixModel matrixModel) {
 
-		// Add the new matrix model.
-		super.add(matrixModel);
+		// Add the first matrix model without finding its fitness, which
+		// is not needed until there is another model to compare it with.
+		if (this.isEmpty()) {
+			super.add(matrixModel);
+			this.fitnessKeys = null;
+			return true;
+		}
 
-		// Sort the updated matrix models list in the order of decreasing
-		// fitness.
-		Collections.sort(this, new Comparator<MatrixModel>() {
-			public int compare(MatrixModel left, MatrixModel right) {
-				if (left.getFitnessValue() < right.getFitnessValue()) {
-					return 1;
-				} else if (left.getFitnessValue() > right.getFitnessValue()) {
-					return -1;
-				} else {
-					return 0;
-				}
+		// Find the new matrix model's place, which is after every
+		// matrix model with the same or higher fitness. This gives the
+		// same order as adding the model and then sorting.
+		double[] keys = this.getFitnessKeys();
+		double key = matrixModel.getFitnessValue();
+		int size = this.size();
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (keys[middle] < key) {
+				high = middle;
+			} else {
+				low = middle + 1;
 			}
-		});
+		}
+
+		// Add the new matrix model.
+		super.add(low, matrixModel);
+		
+		// Add the new key.
+		if (keys.length <= size) {
+			keys = Arrays.copyOf(keys, Math.max(2 * size, 16));
+		}
+		System.arraycopy(keys, low, keys, low + 1, size - low);
+		keys[low] = key;
+		this.fitnessKeys = keys;
+		this.fitnessKeysModCount = this.modCount;
 
 		// Return the default.
 		return true;
 
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.ArrayList#addAll(java.util.Collection)
+	 */
+	@Override
+	public boolean addAll(Collection<? extends MatrixModel> matrixModels) {
+		
+		// Check for new matrix models.
+		if (matrixModels.isEmpty()) {
+			return false;
+		} else if (this.isEmpty() && (matrixModels.size() == 1)) {
+			return this.add(matrixModels.iterator().next());
+		}
+		
+		// Sort the new matrix models.
+		double[] keys = this.getFitnessKeys();
+		MatrixModel[] newMatrixModels = matrixModels.toArray(
+				new MatrixModel[matrixModels.size()]);
+		double[] newKeys = new double[newMatrixModels.length];
+		for (int index = 0; index < newMatrixModels.length; index++) {
+			newKeys[index] = newMatrixModels[index].getFitnessValue();
+		}
+		int[] order = MatrixPopulation.sortOrder(newKeys);
+		
+		// Merge the new matrix models into the population. The current
+		// matrix models come first when fitness values are equal, which
+		// gives the same order as adding the models one by one.
+		int size = this.size();
+		MatrixModel[] mergedMatrixModels =
+				new MatrixModel[size + newMatrixModels.length];
+		double[] mergedKeys = new double[mergedMatrixModels.length];
+		int current = 0;
+		int next = 0;
+		for (int index = 0; index < mergedMatrixModels.length; index++) {
+			if ((next >= order.length) || ((current < size) &&
+					!(newKeys[order[next]] > keys[current]))) {
+				mergedMatrixModels[index] = this.get(current);
+				mergedKeys[index] = keys[current++];
+			} else {
+				mergedMatrixModels[index] = newMatrixModels[order[next]];
+				mergedKeys[index] = newKeys[order[next++]];
+			}
+		}
+		
+		// Store the results.
+		super.clear();
+		super.addAll(Arrays.asList(mergedMatrixModels));
+		this.fitnessKeys = mergedKeys;
+		this.fitnessKeysModCount = this.modCount;
+		
+		// Return the results.
+		return true;
+		
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.ArrayList#set(int, java.lang.Object)
+	 */
+	@Override
+	public MatrixModel set(int index, MatrixModel matrixModel) {
+		
+		// Note that the fitness keys must be found again.
+		this.fitnessKeys = null;
+		
+		// Return the results.
+		return super.set(index, matrixModel);
+		
+	}
+
+	/**
+	 * Sort the matrix models in the order of decreasing fitness. The
+	 * sort is stable, so models with the same fitness keep their order.
+	 */
+	public void sort() {
+		
+		// Check for matrix models to compare.
+		int size = this.size();
+		if (size < 2) return;
+		
+		// Find the fitness values once.
+		double[] keys = new double[size];
+		for (int index = 0; index < size; index++) {
+			keys[index] = this.get(index).getFitnessValue();
+		}
+		
+		// Sort the matrix models.
+		int[] order = MatrixPopulation.sortOrder(keys);
+		MatrixModel[] matrixModels = this.toArray(new MatrixModel[size]);
+		double[] sortedKeys = new double[size];
+		for (int index = 0; index < size; index++) {
+			super.set(index, matrixModels[order[index]]);
+			sortedKeys[index] = keys[order[index]];
+		}
+		
+		// Note the sorted keys.
+		this.fitnessKeys = sortedKeys;
+		this.fitnessKeysModCount = this.modCount;
+		
+	}
+	
+	/**
+	 * Sort order. This finds the order of decreasing keys with a stable
+	 * merge sort, so equal keys keep their order.
+	 *
+	 * @param keys the keys
+	 * @return the indices of the keys in sorted order
+	 */
+	public static int[] sortOrder(double[] keys) {
+		
+		// Start with the current order.
+		int[] order = new int[keys.length];
+		int[] buffer = new int[keys.length];
+		for (int index = 0; index < keys.length; index++) {
+			order[index] = index;
+		}
+		
+		// Merge runs of increasing width.
+		for (int width = 1; width < keys.length; width *= 2) {
+			for (int start = 0; start < keys.length; start += 2 * width) {
+				int middle = Math.min(start + width, keys.length);
+				int end = Math.min(start + 2 * width, keys.length);
+				int left = start;
+				int right = middle;
+				for (int index = start; index < end; index++) {
+					if ((right >= end) || ((left < middle) &&
+							!(keys[order[right]] > keys[order[left]]))) {
+						buffer[index] = order[left++];
+					} else {
+						buffer[index] = order[right++];
+					}
+				}
+			}
+			int[] merged = buffer;
+			buffer = order;
+			order = merged;
+		}
+		
+		// Return the results.
+		return order;
+		
+	}
+	
+	/**
+	 * Truncate. This removes the least competitive matrix models from
+	 * the end of the population without moving the others.
+	 *
+	 * @param newSize the new population size
+	 */
+	public void truncate(int newSize) {
+		
+		// Check the size.
+		int size = this.size();
+		if (newSize >= size) return;
+		
+		// Remove the matrix models, keeping the fitness keys if possible.
+		boolean keysFound = (this.fitnessKeys != null) &&
+				(this.fitnessKeysModCount == this.modCount);
+		this.removeRange(Math.max(newSize, 0), size);
+		if (keysFound) {
+			this.fitnessKeysModCount = this.modCount;
+		}
+		
+	}
+	
+	/**
+	 * Top. This finds the most competitive matrix models.
+	 *
+	 * @param count the number of matrix models
+	 * @return the matrix models, in order of decreasing fitness
+	 */
+	public List<MatrixModel> top(int count) {
+		
+		// Return the results.
+		return new ArrayList<MatrixModel>(this.subList(0,
+				Math.max(0, Math.min(count, this.size()))));
+		
+	}
+	
+	/**
+	 * Copy. The matrix models are copied in their current order, without
+	 * sorting, so their fitness values are not needed. Other classes of
+	 * populations are copied through serialization.
+	 *
+	 * @param newMatrixEngine the matrix engine for the copy
+	 * @return the new matrix population
+	 */
+	public MatrixPopulation copy(MatrixEngine newMatrixEngine) {
+		
+		// Copy the population.
+		MatrixPopulation matrixPopulation;
+		if (this.getClass() == MatrixPopulation.class) {
+			matrixPopulation = new MatrixPopulation(newMatrixEngine);
+			matrixPopulation.ensureCapacity(this.size());
+			Map<Object, Object> unitCopies = MatrixModel.copyUnits(this);
+			for (MatrixModel matrixModel : this) {
+				matrixPopulation.append(matrixModel.copy(unitCopies));
+			}
+		} else {
+			matrixPopulation = Util.deepCopy(this);
+			matrixPopulation.matrixEngine = newMatrixEngine;
+		}
+		
+		// Note the matrix engine.
+		for (MatrixModel matrixModel : matrixPopulation) {
+			matrixModel.matrixEngine = newMatrixEngine;
+		}
+		
+		// Return the results.
+		return matrixPopulation;
+		
+	}
+	
+	/**
+	 * Append. This adds a matrix model to the end without sorting.
+	 *
+	 * @param matrixModel the matrix model
+	 */
+	public void append(MatrixModel matrixModel) {
+		
+		// Add the matrix model.
+		super.add(matrixModel);
+		
+	}
 	
 	/**
 	 * Gets the fitness value.
@@ -0,0 +1,229 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import java.util.SplittableRandom;
+
+import org.apache.commons.math3.random.RandomDataGenerator;
+import org.apache.commons.math3.random.Well512a;
+
+/**
+ * The MatrixRandom class is a source of random numbers for evolution.
+ * Sources can be split into independent streams, so that work that is
+ * spread across threads can draw from its own stream. Streams are split
+ * in a fixed order from a source seeded with the engine's random seed,
+ * so the results are repeatable no matter which threads do the work.
+ */
+public abstract class MatrixRandom {
+
+	/**
+	 * Draws a uniform random number between the limits, excluding the
+	 * lower limit.
+	 *
+	 * @param from the lower limit
+	 * @param to the upper limit
+	 * @return the random number
+	 */
+	public abstract double nextUniform(double from, double to);
+
+	/**
+	 * Splits off an independent stream. This changes the state of this
+	 * source, so streams split in the same order are the same.
+	 *
+	 * @return the new stream
+	 */
+	public abstract MatrixRandom split();
+
+	/**
+	 * Restarts the source from a seed.
+	 *
+	 * @param seed the seed
+	 */
+	public abstract void reSeed(long seed);
+
+	/**
+	 * The Commons class draws from a commons-math RandomDataGenerator.
+	 * This is the original source, so it repeats earlier results. Split
+	 * streams use a Well512a generator, whose 16 words of state are far
+	 * cheaper to seed than the 624 words of the default Well19937c, since
+	 * a stream is split for every new matrix model.
+	 */
+	public static class Commons extends MatrixRandom {
+
+		/** The generator. */
+		public RandomDataGenerator generator;
+
+		/**
+		 * Instantiates a new source from a generator.
+		 *
+		 * @param newGenerator the generator
+		 */
+		public Commons(RandomDataGenerator newGenerator) {
+			this.generator = newGenerator;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see gov.anl.cue.arcane.engine.matrix.MatrixRandom#nextUniform(double, double)
+		 */
+		@Override
+		public double nextUniform(double from, double to) {
+
+			// Return the results.
+			return this.generator.nextUniform(from, to);
+
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see gov.anl.cue.arcane.engine.matrix.MatrixRandom#split()
+		 */
+		@Override
+		public MatrixRandom split() {
+
+			// Seed a small new generator from this one.
+			RandomDataGenerator newGenerator = new RandomDataGenerator(
+					new Well512a(new int[] {
+					this.generator.getRandomGenerator().nextInt(),
+					this.generator.getRandomGenerator().nextInt() }));
+
+			// Return the results.
+			return new Commons(newGenerator);
+
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see gov.anl.cue.arcane.engine.matrix.MatrixRandom#reSeed(long)
+		 */
+		@Override
+		public void reSeed(long seed) {
+
+			// Restart the generator.
+			this.generator.reSeed(seed);
+
+		}
+
+	}
+
+	/**
+	 * The Splittable class draws from a java.util.SplittableRandom, which
+	 * is a small and fast SplitMix64 generator designed to be split.
+	 */
+	public static class Splittable extends MatrixRandom {
+
+		/** The generator. */
+		public SplittableRandom generator;
+
+		/**
+		 * Instantiates a new source from a seed.
+		 *
+		 * @param seed the seed
+		 */
+		public Splittable(long seed) {
+			this.generator = new SplittableRandom(seed);
+		}
+
+		/**
+		 * Instantiates a new source from a generator.
+		 *
+		 * @param newGenerator the generator
+		 */
+		public Splittable(SplittableRandom newGenerator) {
+			this.generator = newGenerator;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see gov.anl.cue.arcane.engine.matrix.MatrixRandom#nextUniform(double, double)
+		 */
+		@Override
+		public double nextUniform(double from, double to) {
+
+			// Draw a number that excludes the lower limit.
+			double value = this.generator.nextDouble();
+			while (value == 0.0) {
+				value = this.generator.nextDouble();
+			}
+
+			// Return the results.
+			return from + value * (to - from);
+
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see gov.anl.cue.arcane.engine.matrix.MatrixRandom#split()
+		 */
+		@Override
+		public MatrixRandom split() {
+
+			// Return the results.
+			return new Splittable(this.generator.split());
+
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see gov.anl.cue.arcane.engine.matrix.MatrixRandom#reSeed(long)
+		 */
+		@Override
+		public void reSeed(long seed) {
+
+			// Restart the generator.
+			this.generator = new SplittableRandom(seed);
+
+		}
+
+	}
+
+}
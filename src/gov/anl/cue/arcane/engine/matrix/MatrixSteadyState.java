@@ -0,0 +1,207 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The MatrixSteadyState class evolves a population without generations.
+ * Each worker thread repeatedly chooses parents from the competitive half
+ * of the shared population, breeds and evaluates a new matrix model, and
+ * inserts it, removing the least competitive model. The population is
+ * only locked to pick the one or two parents and to insert, so workers
+ * never wait for each other's evaluations and slow matrix models do not
+ * hold up the rest. Each worker has its own random stream, split in order
+ * from the engine's stream. New matrix models are evaluated on the
+ * engine's evaluation farm, if it has one, and otherwise on the worker
+ * threads.
+ */
+public class MatrixSteadyState {
+
+	/** The matrix engine. */
+	public MatrixEngine matrixEngine = null;
+
+	/** The number of new matrix models still to be bred. */
+	public AtomicLong remaining = new AtomicLong();
+
+	/** The number of new matrix models inserted. */
+	public AtomicLong birthCount = new AtomicLong();
+
+	/**
+	 * Instantiates a new steady state evolution.
+	 *
+	 * @param newMatrixEngine the matrix engine
+	 */
+	public MatrixSteadyState(MatrixEngine newMatrixEngine) {
+
+		// Note the matrix engine.
+		this.matrixEngine = newMatrixEngine;
+
+	}
+
+	/**
+	 * Evolve. Each step breeds as many new matrix models as a
+	 * generational step would.
+	 *
+	 * @param steps the steps
+	 */
+	public void evolve(int steps) {
+
+		// Find the amount of work.
+		MatrixEngine engine = this.matrixEngine;
+		if (engine.outputPopulation.isEmpty()) return;
+		this.remaining.set((long) steps *
+				Math.round(engine.populationSize / 2.0));
+
+		// Split a random stream for each worker.
+		int threads = engine.getSteadyStateThreads();
+		List<MatrixRandom> streams = new ArrayList<MatrixRandom>();
+		for (int index = 0; index < threads; index++) {
+			streams.add(engine.getRandom().split());
+		}
+
+		// Start the workers.
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (final MatrixRandom stream : streams) {
+			futures.add(executor.submit(new Runnable() {
+				public void run() {
+					MatrixSteadyState.this.work(stream);
+				}
+			}));
+		}
+
+		// Wait for the workers to finish.
+		try {
+			for (Future<?> future : futures) {
+				future.get();
+			}
+
+		// Stop waiting if interrupted.
+		} catch (InterruptedException e) {
+			for (Future<?> remainingFuture : futures) {
+				remainingFuture.cancel(true);
+			}
+			Thread.currentThread().interrupt();
+
+		// Note unexpected errors.
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+
+		// Release the threads.
+		} finally {
+			executor.shutdown();
+		}
+
+	}
+
+	/**
+	 * Work. This breeds new matrix models until there are no more to
+	 * breed.
+	 *
+	 * @param stream the worker's random stream
+	 */
+	public void work(MatrixRandom stream) {
+
+		// Use the worker's stream.
+		MatrixEngine engine = this.matrixEngine;
+		MatrixPopulation matrixPopulation = engine.outputPopulation;
+		long generationSize = Math.max(1,
+				Math.round(engine.populationSize / 2.0));
+		engine.setThreadRandom(stream);
+		try {
+			while ((this.remaining.getAndDecrement() > 0) &&
+					!Thread.currentThread().isInterrupted()) {
+
+				// Choose parents from the competitive segment as it is now.
+				List<MatrixModel> parents = null;
+				synchronized (matrixPopulation) {
+					int competitiveSegment = Math.min(
+							matrixPopulation.size(), engine.populationSize -
+							(int) Math.round(engine.populationSize / 2.0));
+					parents = engine.chooseParents(matrixPopulation,
+							Math.max(1, competitiveSegment));
+				}
+
+				// Breed and evaluate a new matrix model.
+				MatrixModel newMatrixModel = engine.breed(parents);
+				if (engine.evaluationFarm != null) {
+					engine.evaluationFarm.evaluate(
+							Collections.singletonList(newMatrixModel));
+				} else {
+					newMatrixModel.getFitnessValue();
+				}
+
+				// Insert the new matrix model and remove the least
+				// competitive one, if needed.
+				synchronized (matrixPopulation) {
+					matrixPopulation.add(newMatrixModel);
+					if (matrixPopulation.size() > engine.populationSize) {
+						matrixPopulation.truncate(engine.populationSize);
+					}
+				}
+
+				// Release unused formulation classes after each
+				// generation's worth of new matrix models, if needed.
+				if ((this.birthCount.incrementAndGet() % generationSize) == 0) {
+					engine.getFormulationLifetime().check();
+				}
+
+			}
+		} finally {
+			engine.setThreadRandom(null);
+		}
+
+	}
+
+}
@@ -56,11 +56,17 @@ import gov.anl.cue.arcane.engine.Util;
 /**
  * The MatrixVariable class contains the equations for each variable
  * and node as well as a two dimensional array of coefficients. Double.NaN
- * means that a connection is not allowed.
+ * means that a connection is not allowed. The coefficients are kept as
+ * MatrixCoefficients, with one value for each allowed link, once they are
+ * first used, and they are only written out as a full matrix.
  */
 public class MatrixVariable implements Serializable {
 
-	/** The matrix. */
+	/**
+	 * The matrix. This is a full matrix when it is read or built from a
+	 * workbook, and it is replaced by MatrixCoefficients when it is first
+	 * used.
+	 */
 	public RealMatrix coefficients = null;
 
 	/** The equations. */
@@ -73,9 +79,270 @@ public class MatrixVariable implements Serializable {
 	@SuppressWarnings("rawtypes")
 	public Amount units = Amount.ONE;
 
+	/**
+	 * The matrix model that may change this variable in place, if any.
+	 * When models share variables, the shared variables have no owner,
+	 * so each model copies them before changing them.
+	 */
+	public transient MatrixModel owner = null;
+
 	/** The Constant serialVersionUID. */
 	private static final long serialVersionUID = 1L;
 	
+	/**
+	 * Gets the coefficients, converting them to one value for each
+	 * allowed link if needed.
+	 *
+	 * @return the coefficients
+	 */
+	public MatrixCoefficients getCoefficients() {
+
+		// Convert the coefficients, if needed.
+		RealMatrix currentCoefficients = this.coefficients;
+		if (!(currentCoefficients instanceof MatrixCoefficients)) {
+			currentCoefficients = new MatrixCoefficients(currentCoefficients);
+			this.coefficients = currentCoefficients;
+		}
+
+		// Return the results.
+		return (MatrixCoefficients) currentCoefficients;
+
+	}
+
+	/**
+	 * Gets the allowed links. The links may be shared with other
+	 * variables, so they are replaced rather than changed.
+	 *
+	 * @return the links
+	 */
+	public MatrixLinks getLinks() {
+
+		// Return the results.
+		return this.getCoefficients().links;
+
+	}
+
+	/**
+	 * Gets the value of each allowed link, in the row order of the links.
+	 * Changes to the values change the coefficients.
+	 *
+	 * @return the values
+	 */
+	public double[] getValues() {
+
+		// Return the results.
+		return this.getCoefficients().values;
+
+	}
+
+	/**
+	 * Shares other links that allow the same cells.
+	 *
+	 * @param thatLinks the other links
+	 */
+	public void shareLinks(MatrixLinks thatLinks) {
+
+		// Share the links, if they match.
+		MatrixCoefficients currentCoefficients = this.getCoefficients();
+		if (currentCoefficients.links.sameAs(thatLinks)) {
+			currentCoefficients.links = thatLinks;
+		}
+
+	}
+
+	/**
+	 * Copy. This copies the coefficient values and the equation list, and
+	 * shares the strings, units, and links, which are not changed in place.
+	 * Other classes of variables are copied through serialization.
+	 *
+	 * @return the new matrix variable
+	 */
+	public MatrixVariable copy() {
+
+		// Check for other classes of variables.
+		if (this.getClass() != MatrixVariable.class) {
+			return Util.deepCopy(this);
+		}
+
+		// Copy the variable.
+		MatrixVariable newMatrixVariable = new MatrixVariable();
+		if (this.coefficients != null) {
+			newMatrixVariable.coefficients = this.getCoefficients().copy();
+		}
+		newMatrixVariable.equations = (this.equations == null) ? null :
+				new ArrayList<String>(this.equations);
+		newMatrixVariable.name = this.name;
+		newMatrixVariable.units = this.units;
+
+		// Return the results.
+		return newMatrixVariable;
+
+	}
+
+	/**
+	 * Sums a row's allowed coefficients.
+	 *
+	 * @param row the row
+	 * @param sum the starting sum
+	 * @return the sum
+	 */
+	public double sumRow(int row, double sum) {
+
+		// Add the allowed coefficients in order.
+		MatrixCoefficients currentCoefficients = this.getCoefficients();
+		double[] values = currentCoefficients.values;
+		int end = currentCoefficients.links.rowStarts[row + 1];
+		for (int link = currentCoefficients.links.rowStarts[row];
+				link < end; link++) {
+			sum += values[link];
+		}
+
+		// Return the results.
+		return sum;
+
+	}
+
+	/**
+	 * Divides a row's allowed coefficients by a common divisor.
+	 *
+	 * @param row the row
+	 * @param divisor the divisor
+	 */
+	public void scaleRow(int row, double divisor) {
+
+		// Divide the allowed coefficients.
+		MatrixCoefficients currentCoefficients = this.getCoefficients();
+		double[] values = currentCoefficients.values;
+		int end = currentCoefficients.links.rowStarts[row + 1];
+		for (int link = currentCoefficients.links.rowStarts[row];
+				link < end; link++) {
+			values[link] /= divisor;
+		}
+
+	}
+
+	/**
+	 * Checks if dividing a row's allowed coefficients by a common divisor
+	 * would change any of them.
+	 *
+	 * @param row the row
+	 * @param divisor the divisor
+	 * @return true, if scaleRow() would change the row
+	 */
+	public boolean scaleRowChanges(int row, double divisor) {
+
+		// Check the allowed coefficients.
+		MatrixCoefficients currentCoefficients = this.getCoefficients();
+		double[] values = currentCoefficients.values;
+		int end = currentCoefficients.links.rowStarts[row + 1];
+		for (int link = currentCoefficients.links.rowStarts[row];
+				link < end; link++) {
+			if ((values[link] / divisor) != values[link]) {
+				return true;
+			}
+		}
+
+		// Return the results.
+		return false;
+
+	}
+
+	/**
+	 * Combines another variable's allowed coefficients into a row. Cells
+	 * that are allowed in both variables are added, and cells that are
+	 * only allowed in the other variable are copied.
+	 *
+	 * @param row the row
+	 * @param that the other variable
+	 * @return true, if cells were copied, which adds new links
+	 */
+	public boolean combineRow(int row, MatrixVariable that) {
+
+		// Make room for the other variable's links, if needed.
+		MatrixCoefficients currentCoefficients = this.getCoefficients();
+		MatrixLinks currentLinks = currentCoefficients.links;
+		MatrixLinks thatLinks = that.getLinks();
+		double[] thatValues = that.getValues();
+		MatrixLinks newLinks = currentLinks.addRow(row, thatLinks);
+		currentCoefficients.relink(newLinks);
+
+		// Combine the other variable's allowed coefficients.
+		double[] values = currentCoefficients.values;
+		int index = newLinks.rowStarts[row];
+		int end = thatLinks.rowStarts[row + 1];
+		for (int link = thatLinks.rowStarts[row]; link < end; link++) {
+			int column = thatLinks.rowColumns[link];
+			while (newLinks.rowColumns[index] != column) {
+				index++;
+			}
+			if (currentLinks.isAllowed(row, column)) {
+				values[index] = values[index] + thatValues[link];
+			} else {
+				values[index] = thatValues[link];
+			}
+		}
+
+		// Return the results.
+		return newLinks != currentLinks;
+
+	}
+
+	/**
+	 * Copies another variable's allowed coefficients into a row.
+	 *
+	 * @param row the row
+	 * @param that the other variable
+	 */
+	public void copyRow(int row, MatrixVariable that) {
+
+		// Make room for the other variable's links, if needed.
+		MatrixCoefficients currentCoefficients = this.getCoefficients();
+		MatrixLinks thatLinks = that.getLinks();
+		double[] thatValues = that.getValues();
+		MatrixLinks newLinks = currentCoefficients.links.addRow(row,
+				thatLinks);
+		currentCoefficients.relink(newLinks);
+
+		// Copy the other variable's allowed coefficients.
+		double[] values = currentCoefficients.values;
+		int index = newLinks.rowStarts[row];
+		int end = thatLinks.rowStarts[row + 1];
+		for (int link = thatLinks.rowStarts[row]; link < end; link++) {
+			while (newLinks.rowColumns[index] != thatLinks.rowColumns[link]) {
+				index++;
+			}
+			values[index] = thatValues[link];
+		}
+
+	}
+
+	/**
+	 * Replaces the variable with a copy that has a full coefficient matrix
+	 * when it is written, so the written form stays the same however the
+	 * coefficients are held.
+	 *
+	 * @return the variable to write
+	 */
+	private Object writeReplace() {
+
+		// Check for coefficients that are already full.
+		if (!(this.coefficients instanceof MatrixCoefficients)) {
+			return this;
+		}
+
+		// Copy the variable with full coefficients.
+		MatrixVariable fullMatrixVariable = new MatrixVariable();
+		fullMatrixVariable.coefficients =
+				((MatrixCoefficients) this.coefficients).toDense();
+		fullMatrixVariable.equations = this.equations;
+		fullMatrixVariable.name = this.name;
+		fullMatrixVariable.units = this.units;
+
+		// Return the results.
+		return fullMatrixVariable;
+
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -89,4 +356,4 @@ public class MatrixVariable implements Serializable {
 
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The MatrixCoefficientsTest class is used to test the MatrixCoefficients
+ * class.
+ */
+public class MatrixCoefficientsTest {
+
+	/**
+	 * Test reading and copying the coefficients.
+	 */
+	@Test
+	public void testValues() {
+
+		// Convert the example coefficients.
+		MatrixCoefficients coefficients = new MatrixCoefficients(
+				new Array2DRowRealMatrix(MatrixLinksTest.COEFFICIENTS));
+		Assert.assertArrayEquals(new double[] { 0.5, 0.0, 0.25, 0.75 },
+				coefficients.values, 0.0);
+		Assert.assertEquals(3, coefficients.getRowDimension());
+		Assert.assertEquals(3, coefficients.getColumnDimension());
+
+		// Check the cells.
+		for (int row = 0; row < 3; row++) {
+			Assert.assertArrayEquals(MatrixLinksTest.COEFFICIENTS[row],
+					coefficients.getRow(row), 0.0);
+			Assert.assertArrayEquals(MatrixLinksTest.COEFFICIENTS[row],
+					coefficients.toDense().getRow(row), 0.0);
+		}
+		Assert.assertEquals(-1, coefficients.indexOf(1, 1));
+		Assert.assertEquals(3, coefficients.indexOf(2, 1));
+
+		// Check that copies share the links but not the values.
+		MatrixCoefficients copy = coefficients.copy();
+		Assert.assertSame(coefficients.links, copy.links);
+		Assert.assertNotSame(coefficients.values, copy.values);
+		copy.setEntry(0, 0, 2.0);
+		Assert.assertEquals(0.5, coefficients.getEntry(0, 0), 0.0);
+		Assert.assertEquals(2.0, copy.getEntry(0, 0), 0.0);
+
+	}
+
+	/**
+	 * Test changing which cells are allowed.
+	 */
+	@Test
+	public void testLinks() {
+
+		// Allow a new cell.
+		MatrixCoefficients coefficients = new MatrixCoefficients(
+				new Array2DRowRealMatrix(MatrixLinksTest.COEFFICIENTS));
+		MatrixLinks links = coefficients.links;
+		coefficients.setEntry(1, 1, 4.0);
+		Assert.assertNotSame(links, coefficients.links);
+		Assert.assertEquals(4, links.count());
+		Assert.assertArrayEquals(new double[] { 0.5, 0.0, 4.0, 0.25, 0.75 },
+				coefficients.values, 0.0);
+
+		// Remove an allowed cell.
+		coefficients.setEntry(0, 0, Double.NaN);
+		Assert.assertFalse(coefficients.links.isAllowed(0, 0));
+		Assert.assertArrayEquals(new double[] { 0.0, 4.0, 0.25, 0.75 },
+				coefficients.values, 0.0);
+
+		// Check that cells that stay disallowed keep the links.
+		links = coefficients.links;
+		coefficients.setEntry(0, 1, Double.NaN);
+		Assert.assertSame(links, coefficients.links);
+
+		// Check that moving to the same cells shares the links.
+		MatrixLinks sameLinks = new MatrixLinks(coefficients);
+		coefficients.relink(sameLinks);
+		Assert.assertSame(sameLinks, coefficients.links);
+		Assert.assertArrayEquals(new double[] { 0.0, 4.0, 0.25, 0.75 },
+				coefficients.values, 0.0);
+
+	}
+
+}
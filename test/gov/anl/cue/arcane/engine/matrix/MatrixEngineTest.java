@@ -52,6 +52,13 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -180,7 +187,7 @@ public class MatrixEngineTest {
 		// Check the best fitness value.
 		//System.out.println(matrixEngine.population.getFitnessValue());
 		Assert.assertEquals(matrixEngine.outputPopulation.getFitnessValue(),
-				(Double) 5.999878227941653);
+				(Double) 5.121768472495256);
 		
 		// Check the fitness value distribution.
 		BufferedReader reader = new BufferedReader(
@@ -199,6 +206,199 @@ public class MatrixEngineTest {
 
 	}
 	
+	/**
+	 * Test evolve one step with concurrent fitness evaluation.
+	 */
+	@Test
+	public void testEvolveOneStepConcurrently() {
+
+		// Evolve serially, with the default settings.
+		MatrixEngine matrixEngine0 = MatrixEngine
+				.read(UtilTest.INPUT_TEST_MATRIX_SCENARIO_1_DIR);
+		matrixEngine0.evolve(1);
+
+		// Evolve with one evaluation thread.
+		MatrixEngine matrixEngine1 = MatrixEngine
+				.read(UtilTest.INPUT_TEST_MATRIX_SCENARIO_1_DIR);
+		matrixEngine1.evaluationThreads = 1;
+		matrixEngine1.evolve(1);
+
+		// Evolve with four evaluation threads.
+		MatrixEngine matrixEngine4 = MatrixEngine
+				.read(UtilTest.INPUT_TEST_MATRIX_SCENARIO_1_DIR);
+		matrixEngine4.evaluationThreads = 4;
+		matrixEngine4.evolve(1);
+
+		// Evolve with a supplied executor.
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		MatrixEngine matrixEngine3 = MatrixEngine
+				.read(UtilTest.INPUT_TEST_MATRIX_SCENARIO_1_DIR);
+		matrixEngine3.evaluationExecutor = executor;
+		matrixEngine3.evolve(1);
+		executor.shutdown();
+
+		// Check that the results do not depend on the number of threads.
+		Assert.assertEquals(matrixEngine0.outputPopulation.size(),
+				matrixEngine1.outputPopulation.size());
+		Assert.assertEquals(matrixEngine1.populationSize,
+				matrixEngine1.outputPopulation.size());
+		Assert.assertEquals(matrixEngine1.outputPopulation.size(),
+				matrixEngine4.outputPopulation.size());
+		Assert.assertEquals(matrixEngine1.outputPopulation.size(),
+				matrixEngine3.outputPopulation.size());
+		for (int index = 0; index < matrixEngine1.outputPopulation.size();
+				index++) {
+			Assert.assertEquals(
+					matrixEngine1.outputPopulation.get(index).getFitnessValue(),
+					matrixEngine4.outputPopulation.get(index).getFitnessValue());
+			Assert.assertEquals(
+					matrixEngine1.outputPopulation.get(index).getFitnessValue(),
+					matrixEngine3.outputPopulation.get(index).getFitnessValue());
+			Assert.assertEquals(
+					matrixEngine1.outputPopulation.get(index).getFitnessValue(),
+					matrixEngine0.outputPopulation.get(index).getFitnessValue());
+		}
+
+	}
+
+	/**
+	 * Test evolving with split random streams.
+	 */
+	@Test
+	public void testEvolveSplittable() {
+
+		// Evolve with one thread and with four threads.
+		MatrixEngine matrixEngine1 = MatrixEngine
+				.read(UtilTest.INPUT_TEST_MATRIX_SCENARIO_1_DIR);
+		matrixEngine1.randomSource = MatrixEngine.RANDOM_SOURCE.SPLITTABLE;
+		matrixEngine1.evaluationThreads = 1;
+		matrixEngine1.evolve(2);
+		MatrixEngine matrixEngine4 = MatrixEngine
+				.read(UtilTest.INPUT_TEST_MATRIX_SCENARIO_1_DIR);
+		matrixEngine4.randomSource = MatrixEngine.RANDOM_SOURCE.SPLITTABLE;
+		matrixEngine4.evaluationThreads = 4;
+		matrixEngine4.evolve(2);
+
+		// Check that the results repeat and do not depend on the threads.
+		Assert.assertEquals(matrixEngine1.populationSize,
+				matrixEngine4.outputPopulation.size());
+		for (int index = 0; index < matrixEngine1.outputPopulation.size();
+				index++) {
+			Assert.assertEquals(
+					matrixEngine1.outputPopulation.get(index).getFitnessValue(),
+					matrixEngine4.outputPopulation.get(index).getFitnessValue());
+		}
+		Assert.assertTrue(matrixEngine1.random
+				instanceof MatrixRandom.Splittable);
+
+		// Check that the thread streams are only used while breeding.
+		Assert.assertSame(matrixEngine4.random, matrixEngine4.getRandom());
+
+	}
+
+	/**
+	 * Test evolve with islands.
+	 */
+	@Test
+	public void testEvolveIslands() {
+
+		// Evolve with four islands.
+		MatrixEngine matrixEngine = MatrixEngine
+				.read(UtilTest.INPUT_TEST_MATRIX_SCENARIO_1_DIR);
+		matrixEngine.islandCount = 4;
+		matrixEngine.migrationInterval = 1;
+		matrixEngine.evolve(2);
+
+		// Check the results.
+		Assert.assertEquals(matrixEngine.populationSize,
+				matrixEngine.outputPopulation.size());
+		Assert.assertTrue(matrixEngine.outputPopulation.getFitnessValue() >=
+				matrixEngine.inputPopulation.getFitnessValue());
+
+	}
+
+	/**
+	 * Test evolve with copy-on-write matrix models.
+	 */
+	@Test
+	public void testEvolveCopyOnWrite() {
+
+		// Evolve with full copies and with shared variables.
+		MatrixEngine matrixEngineFull = MatrixEngine
+				.read(UtilTest.INPUT_TEST_MATRIX_SCENARIO_1_DIR);
+		matrixEngineFull.evolve(3);
+		MatrixEngine matrixEngineShared = MatrixEngine
+				.read(UtilTest.INPUT_TEST_MATRIX_SCENARIO_1_DIR);
+		matrixEngineShared.modelCopying = MatrixEngine.MODEL_COPYING.ON_WRITE;
+		matrixEngineShared.evolve(3);
+
+		// Check that the results match.
+		Assert.assertEquals(matrixEngineFull.outputPopulation.size(),
+				matrixEngineShared.outputPopulation.size());
+		int variableCount = 0;
+		Set<MatrixVariable> variables = Collections.newSetFromMap(
+				new IdentityHashMap<MatrixVariable, Boolean>());
+		for (int index = 0; index < matrixEngineFull.outputPopulation.size();
+				index++) {
+			MatrixModel matrixModel =
+					matrixEngineShared.outputPopulation.get(index);
+			Assert.assertTrue(Util.isEqual(
+					matrixEngineFull.outputPopulation.get(index), matrixModel));
+			variableCount += matrixModel.size();
+			variables.addAll(matrixModel);
+		}
+
+		// Check that some variables are shared.
+		Assert.assertTrue(variables.size() < variableCount);
+
+	}
+
+	/**
+	 * Test formulating a batch of matrix models with javac.
+	 */
+	@Test
+	public void testFormulateBatch() {
+
+		// Breed some matrix models with the javac backend.
+		MatrixEngine matrixEngine = MatrixEngine
+				.importTemplate(UtilTest.INPUT_TEST_DIR +
+				"//MatrixEngineTemplate_7.xlsx");
+		matrixEngine.formulationBackend =
+				MatrixEngine.FORMULATION_BACKEND.JAVAC;
+		List<MatrixModel> matrixModels = new ArrayList<MatrixModel>();
+		for (int index = 0; index < 4; index++) {
+			matrixModels.add(matrixEngine.breed(
+					matrixEngine.outputPopulation.size()));
+		}
+		matrixModels.add(matrixModels.get(0).copy());
+
+		// Formulate the batch.
+		matrixEngine.formulate(matrixModels);
+
+		// Check that the new formulations share a class loader.
+		ClassLoader classLoader =
+				matrixModels.get(0).formulationClass.getClassLoader();
+		for (MatrixModel matrixModel : matrixModels) {
+			Assert.assertNotNull(matrixModel.formulationClass);
+			Assert.assertSame(classLoader,
+					matrixModel.formulationClass.getClassLoader());
+		}
+		Assert.assertSame(matrixModels.get(0).formulationClass,
+				matrixModels.get(4).formulationClass);
+
+		// Check the results against individually assembled formulations.
+		for (MatrixModel matrixModel : matrixModels) {
+			MatrixModel matrixModelCopy = matrixModel.copy();
+			matrixModelCopy.matrixEngine = new MatrixEngine();
+			matrixModelCopy.formulationClass = null;
+			Assert.assertEquals(matrixModelCopy.getFitnessValue(),
+					matrixModel.getFitnessValue());
+			Assert.assertSame(classLoader,
+					matrixModel.formulationClass.getClassLoader());
+		}
+
+	}
+
 	/**
 	 * Test evolve ten steps.
 	 * 
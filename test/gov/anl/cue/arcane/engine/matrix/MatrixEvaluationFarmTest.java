@@ -0,0 +1,312 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import gov.anl.cue.arcane.engine.UtilTest;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The MatrixEvaluationFarmTest class is used to test the
+ * MatrixEvaluationFarm class.
+ */
+public class MatrixEvaluationFarmTest {
+
+	/**
+	 * Start a worker on a new thread.
+	 *
+	 * @param matrixEvaluationWorker the worker
+	 */
+	public static void startWorker(
+			final MatrixEvaluationWorker matrixEvaluationWorker) {
+
+		// Run the worker.
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					matrixEvaluationWorker.run();
+				} catch (IOException e) {
+				}
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+
+	}
+
+	/**
+	 * Breed new matrix models and find their fitness values locally.
+	 *
+	 * @param matrixEngine the matrix engine
+	 * @param expected the expected fitness values
+	 * @return the new matrix models, without fitness values
+	 */
+	public static List<MatrixModel> breed(MatrixEngine matrixEngine,
+			List<Double> expected) {
+
+		// Breed the new matrix models.
+		List<MatrixModel> newMatrixModels = new ArrayList<MatrixModel>();
+		for (int index = 0; index < 12; index++) {
+			MatrixModel newMatrixModel = matrixEngine.breed(
+					matrixEngine.outputPopulation.size());
+			expected.add(newMatrixModel.copy().getFitnessValue());
+			newMatrixModels.add(newMatrixModel);
+		}
+
+		// Return the results.
+		return newMatrixModels;
+
+	}
+
+	/**
+	 * Test evaluating on workers, including one that hangs and one that
+	 * disconnects.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testEvaluate() throws Exception {
+
+		// Read an engine.
+		MatrixEngine matrixEngine = MatrixEngine
+				.read(UtilTest.INPUT_TEST_MATRIX_SCENARIO_1_DIR);
+		matrixEngine.fill();
+
+		// Start a farm.
+		MatrixEvaluationFarm farm = new MatrixEvaluationFarm(matrixEngine);
+		farm.healthInterval = 50;
+		farm.healthTimeout = 500;
+		int port = farm.start(0);
+
+		// Start a healthy worker, a worker that disconnects when asked to
+		// evaluate, and a connection that never answers.
+		MatrixEvaluationFarmTest.startWorker(
+				new MatrixEvaluationWorker("localhost", port, 2));
+		MatrixEvaluationFarmTest.startWorker(
+				new MatrixEvaluationWorker("localhost", port, 1) {
+			public void evaluate(long id, MatrixModel matrixModel) {
+				try {
+					this.socket.close();
+				} catch (IOException e) {
+				}
+			}
+		});
+		Socket hung = new Socket("localhost", port);
+		Assert.assertTrue(farm.awaitWorkers(3, 10000));
+
+		// Evaluate on the farm.
+		List<Double> expected = new ArrayList<Double>();
+		List<MatrixModel> newMatrixModels =
+				MatrixEvaluationFarmTest.breed(matrixEngine, expected);
+		farm.evaluate(newMatrixModels);
+
+		// Check the results.
+		for (int index = 0; index < newMatrixModels.size(); index++) {
+			Assert.assertEquals(expected.get(index),
+					newMatrixModels.get(index).fitnessValue);
+		}
+		Assert.assertTrue(farm.requeueCount.get() > 0);
+		Assert.assertEquals(1, farm.workers.size());
+
+		// Evaluate locally when there are no workers.
+		farm.close();
+		hung.close();
+		Assert.assertTrue(farm.workers.isEmpty());
+		expected.clear();
+		newMatrixModels = MatrixEvaluationFarmTest.breed(matrixEngine,
+				expected);
+		farm.evaluate(newMatrixModels);
+		for (int index = 0; index < newMatrixModels.size(); index++) {
+			Assert.assertEquals(expected.get(index),
+					newMatrixModels.get(index).fitnessValue);
+		}
+
+	}
+
+	/**
+	 * Test that a request that a worker cannot decode is answered as
+	 * failed and evaluated locally, without stopping the worker.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test(timeout = 30000)
+	public void testUndecodableRequest() throws Exception {
+
+		// Read an engine.
+		MatrixEngine matrixEngine = MatrixEngine
+				.read(UtilTest.INPUT_TEST_MATRIX_SCENARIO_1_DIR);
+		matrixEngine.fill();
+
+		// Start a farm with one worker.
+		MatrixEvaluationFarm farm = new MatrixEvaluationFarm(matrixEngine);
+		int port = farm.start(0);
+		MatrixEvaluationFarmTest.startWorker(
+				new MatrixEvaluationWorker("localhost", port, 1));
+		Assert.assertTrue(farm.awaitWorkers(1, 10000));
+
+		// Send a request that cannot be decoded.
+		List<Double> expected = new ArrayList<Double>();
+		MatrixModel matrixModel = MatrixEvaluationFarmTest.breed(
+				matrixEngine, expected).get(0);
+		MatrixEvaluationFarm.Request request =
+				new MatrixEvaluationFarm.Request();
+		request.id = farm.requestIds.incrementAndGet();
+		request.matrixModel = matrixModel;
+		request.encoding = new byte[] { 0, 0, 0, 99 };
+		synchronized (farm) {
+			farm.pending.add(request);
+			farm.dispatch();
+			while (farm.failed.isEmpty()) {
+				farm.wait(100);
+			}
+			Assert.assertSame(request, farm.failed.poll());
+		}
+
+		// Check that the worker is still connected and still evaluates.
+		Assert.assertEquals(1, farm.workers.size());
+		expected.clear();
+		List<MatrixModel> newMatrixModels =
+				MatrixEvaluationFarmTest.breed(matrixEngine, expected);
+		farm.evaluate(newMatrixModels);
+		for (int index = 0; index < newMatrixModels.size(); index++) {
+			Assert.assertEquals(expected.get(index),
+					newMatrixModels.get(index).fitnessValue);
+		}
+		Assert.assertEquals(1, farm.workers.size());
+		Assert.assertEquals(0, farm.requeueCount.get());
+		farm.close();
+
+	}
+
+	/**
+	 * Test that a worker that stops reading does not hold the farm's lock.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test(timeout = 30000)
+	public void testStalledWorker() throws Exception {
+
+		// Start a farm with a connection that never reads.
+		MatrixEvaluationFarm farm = new MatrixEvaluationFarm(new MatrixEngine());
+		farm.healthInterval = 50;
+		farm.healthTimeout = 500;
+		farm.pipelineDepth = 8;
+		int port = farm.start(0);
+		Socket stalled = new Socket("localhost", port);
+		Assert.assertTrue(farm.awaitWorkers(1, 10000));
+
+		// Give the connection more than its buffers can hold.
+		synchronized (farm) {
+			for (int index = 0; index < farm.pipelineDepth; index++) {
+				MatrixEvaluationFarm.Request request =
+						new MatrixEvaluationFarm.Request();
+				request.id = farm.requestIds.incrementAndGet();
+				request.encoding = new byte[4 << 20];
+				farm.pending.add(request);
+			}
+			farm.dispatch();
+			Assert.assertTrue(farm.pending.isEmpty());
+		}
+
+		// Check that the farm drops the connection and requeues the
+		// requests while its sender is stuck writing.
+		while (!farm.workers.isEmpty()) {
+			farm.check();
+			Thread.sleep(10);
+		}
+		synchronized (farm) {
+			Assert.assertEquals(farm.pipelineDepth, farm.pending.size());
+		}
+		Assert.assertEquals(farm.pipelineDepth, farm.requeueCount.get());
+		farm.close();
+		stalled.close();
+
+	}
+
+	/**
+	 * Test evolving with a farm.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testEvolve() throws Exception {
+
+		// Evolve serially.
+		MatrixEngine expectedEngine = MatrixEngine
+				.read(UtilTest.INPUT_TEST_MATRIX_SCENARIO_1_DIR);
+		expectedEngine.evolve(2);
+
+		// Evolve with a farm.
+		MatrixEngine matrixEngine = MatrixEngine
+				.read(UtilTest.INPUT_TEST_MATRIX_SCENARIO_1_DIR);
+		MatrixEvaluationFarm farm = new MatrixEvaluationFarm(matrixEngine);
+		int port = farm.start(0);
+		MatrixEvaluationFarmTest.startWorker(
+				new MatrixEvaluationWorker("localhost", port, 2));
+		Assert.assertTrue(farm.awaitWorkers(1, 10000));
+		matrixEngine.evaluationFarm = farm;
+		matrixEngine.evolve(2);
+		farm.close();
+
+		// Check the results.
+		Assert.assertEquals(expectedEngine.outputPopulation.size(),
+				matrixEngine.outputPopulation.size());
+		for (int index = 0; index < matrixEngine.outputPopulation.size();
+				index++) {
+			Assert.assertEquals(
+					expectedEngine.outputPopulation.get(index).fitnessValue,
+					matrixEngine.outputPopulation.get(index).fitnessValue);
+		}
+
+	}
+
+}
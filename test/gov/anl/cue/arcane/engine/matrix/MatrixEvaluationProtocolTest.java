@@ -0,0 +1,144 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import gov.anl.cue.arcane.engine.UtilTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The MatrixEvaluationProtocolTest class is used to test the
+ * MatrixEvaluationProtocol class.
+ */
+public class MatrixEvaluationProtocolTest {
+
+	/**
+	 * Test encoding and decoding matrix models.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testEncode() throws IOException {
+
+		// Read an engine.
+		MatrixEngine matrixEngine = MatrixEngine
+				.read(UtilTest.INPUT_TEST_MATRIX_SCENARIO_1_DIR);
+		matrixEngine.fill();
+
+		// Check each matrix model.
+		MatrixEngine workerEngine = new MatrixEngine();
+		for (MatrixModel matrixModel : matrixEngine.outputPopulation) {
+
+			// Encode and decode the matrix model.
+			byte[] encoding = MatrixEvaluationProtocol.encode(matrixModel);
+			MatrixModel newMatrixModel = MatrixEvaluationProtocol.decode(
+					encoding, workerEngine);
+
+			// Check the results.
+			Assert.assertSame(workerEngine, newMatrixModel.getMatrixEngine());
+			Assert.assertEquals(matrixModel.stepCount,
+					newMatrixModel.stepCount);
+			Assert.assertEquals(matrixModel.nodeNames,
+					newMatrixModel.nodeNames);
+			Assert.assertEquals(matrixModel.size(), newMatrixModel.size());
+			Assert.assertArrayEquals(encoding,
+					MatrixEvaluationProtocol.encode(newMatrixModel));
+			Assert.assertNull(newMatrixModel.fitnessValue);
+			Assert.assertEquals(matrixModel.getFitnessValue(),
+					newMatrixModel.getFitnessValue(), 0.0);
+
+		}
+
+	}
+
+	/**
+	 * Test that bad lengths are rejected rather than allocated.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testReadLength() throws IOException {
+
+		// Write lengths at and beyond the limits.
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(bytes);
+		output.writeInt(-1);
+		output.writeInt(MatrixEvaluationProtocol.MAX_LENGTH);
+		output.writeInt(-2);
+		output.writeInt(MatrixEvaluationProtocol.MAX_LENGTH + 1);
+		output.writeInt(Integer.MAX_VALUE);
+		DataInputStream input = new DataInputStream(
+				new ByteArrayInputStream(bytes.toByteArray()));
+
+		// Check the results.
+		Assert.assertEquals(-1, MatrixEvaluationProtocol.readLength(input));
+		Assert.assertEquals(MatrixEvaluationProtocol.MAX_LENGTH,
+				MatrixEvaluationProtocol.readLength(input));
+		for (int index = 0; index < 2; index++) {
+			try {
+				MatrixEvaluationProtocol.readLength(input);
+				Assert.fail();
+			} catch (IOException e) {
+				Assert.assertTrue(e.getMessage().startsWith("Bad length"));
+			}
+		}
+		try {
+			MatrixEvaluationProtocol.readStrings(input);
+			Assert.fail();
+		} catch (IOException e) {
+			Assert.assertTrue(e.getMessage().startsWith("Bad length"));
+		}
+
+	}
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import gov.anl.cue.arcane.engine.matrix.MatrixExpression.EXPRESSION_TYPE;
+
+/**
+ * The MatrixExpressionParserTest class is used to test the
+ * MatrixExpressionParser class.
+ */
+public class MatrixExpressionParserTest {
+
+	/**
+	 * Creates an example program.
+	 *
+	 * @return the program
+	 */
+	public static MatrixFormulationProgram program() {
+
+		// Create the program.
+		Set<String> declarations = new TreeSet<String>();
+		declarations.add("double a = 1.0");
+		declarations.add("double b = 2.0");
+		return MatrixFormulationProgram.parse(declarations,
+				new TreeSet<String>(), new TreeSet<String>(), "a");
+
+	}
+
+	/**
+	 * Test types.
+	 */
+	@Test
+	public void testTypes() {
+
+		// Check the types.
+		MatrixFormulationProgram program = program();
+		Assert.assertEquals(EXPRESSION_TYPE.INT,
+				MatrixExpressionParser.parse(program, 2, "1 / 2").type);
+		Assert.assertEquals(EXPRESSION_TYPE.DOUBLE,
+				MatrixExpressionParser.parse(program, 2, "1.0 / 2").type);
+		Assert.assertEquals(EXPRESSION_TYPE.DOUBLE,
+				MatrixExpressionParser.parse(program, 2, "a / 2").type);
+		Assert.assertEquals(EXPRESSION_TYPE.INT,
+				MatrixExpressionParser.parse(program, 2, "abs(-2)").type);
+		Assert.assertEquals(EXPRESSION_TYPE.DOUBLE,
+				MatrixExpressionParser.parse(program, 2, "MIN(1, 2)").type);
+
+	}
+
+	/**
+	 * Test structure.
+	 */
+	@Test
+	public void testStructure() {
+
+		// Check the precedence and associativity.
+		MatrixExpression expression = MatrixExpressionParser.parse(program(),
+				2, "a - b - this.zeroFill(a) * 2");
+		Assert.assertTrue(expression instanceof MatrixExpression.Operation);
+		MatrixExpression.Operation operation =
+				(MatrixExpression.Operation) expression;
+		Assert.assertEquals('-', operation.operator);
+		Assert.assertTrue(operation.left instanceof MatrixExpression.Operation);
+		Assert.assertEquals('*',
+				((MatrixExpression.Operation) operation.right).operator);
+		Assert.assertTrue(((MatrixExpression.Operation) operation.right).left
+				instanceof MatrixExpression.Call);
+
+	}
+
+	/**
+	 * Test unsupported expressions.
+	 */
+	@Test
+	public void testUnsupported() {
+
+		// Check expressions that must be left to javac.
+		String[] expressions = { "a++", "--a", "(int) a", "a ? b : 1",
+				"010", "1.5f", "2L", "0x10", "LINEARSTEP(a, null)",
+				"step()", "firstStep", "unknown", "this.sin(a)", "b",
+				"1e999", "a b", "(a", "new double[][] {{1}} + a",
+				"LINEARSTEP(a, new double[][] {{b}})" };
+		for (String expression : expressions) {
+			try {
+				MatrixExpressionParser.parse(program(), 1, expression);
+				Assert.fail(expression);
+			} catch (IllegalArgumentException e) {
+			}
+		}
+
+	}
+
+}
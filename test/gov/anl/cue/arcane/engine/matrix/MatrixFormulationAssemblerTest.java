@@ -0,0 +1,302 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import java.lang.reflect.Method;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import gov.anl.cue.arcane.engine.UtilTest;
+
+/**
+ * The MatrixFormulationAssemblerTest class is used to test the
+ * MatrixFormulationAssembler class.
+ */
+public class MatrixFormulationAssemblerTest {
+
+	/** The example expressions, which exercise Java's typing rules. */
+	public static final String[] EXPRESSIONS = {
+		"a + b * c - a / b",
+		"a % b + 7 / 2 + 7 % 3 - -2",
+		"(a + 1) / 3 + 1 / 3 * a",
+		"this.zeroFill(a - a) + MIN(a, 2) + MAX(b, c)",
+		"abs(-3) / 2 + abs(-3.0) / 2 + Math.max(1, 2) / 2",
+		"pow(a, 2) + sqrt(b) + SIN(c) + COS(PI) + exp(1) + E",
+		"POW(a, b) - MODULO(c, a) + ARCTAN(1) + floorMod(-7, 3)",
+		"this.stepSize * a + stepSize + 1e-3 + .5 + 2. + 3d",
+		"a + (-2147483648 / -1 + 2147483647 + 1)",
+		"LINEARSTEP(a, new double[][] {{-10, 0.0}, {0, 1}, {100.5, -2}}) + " +
+				"SQUARESTEP(b, new double[][] {{0, 5}, {1e3, 6}})",
+	};
+
+	/**
+	 * Creates a formulation from a fitness expression.
+	 *
+	 * @param fitness the fitness
+	 * @param assemble true for the bytecode backend, false for javac
+	 * @return the formulation class
+	 * @throws Exception the exception
+	 */
+	public static Class<? extends MatrixFormulationAbstract> formulate(
+			String fitness, boolean assemble) throws Exception {
+
+		// Create the formulation elements.
+		Set<String> declarations = new TreeSet<String>();
+		declarations.add("double a = 2.5");
+		declarations.add("double a_combined = a * 2");
+		declarations.add("double b = 7.0");
+		declarations.add("double b_combined = 0.0");
+		declarations.add("double c = -1.25");
+		declarations.add("double c_combined = 0.0");
+		Set<String> knit = new TreeSet<String>();
+		knit.add("a_combined += ((a + b) * this.stepSize)");
+		knit.add("b_combined = a / 4");
+		knit.add("c_combined = c");
+		Set<String> split = new TreeSet<String>();
+		split.add("a = this.coefficients[0] * a_combined + this.coefficients[1] * c_combined");
+		split.add("b = this.coefficients[2] * b_combined");
+		split.add("c = 0.5 * c_combined");
+
+		// Build the formulation.
+		String className = MatrixModel.PACKAGE_NAME + "." +
+				MatrixModel.CONCRETE_CLASS_NAME;
+		if (assemble) {
+			return MatrixFormulationAssembler.assembleFormulation(className,
+					MatrixFormulationProgram.parse(declarations, knit, split,
+					fitness));
+		} else {
+			return MatrixFormulationCompiler.compileFormulation(className,
+					new MatrixModel(null).formulateSource(declarations, knit,
+					split, fitness));
+		}
+
+	}
+
+	/**
+	 * Runs a formulation.
+	 *
+	 * @param formulationClass the formulation class
+	 * @return the fitness value
+	 * @throws Exception the exception
+	 */
+	public static Double run(
+			Class<? extends MatrixFormulationAbstract> formulationClass)
+			throws Exception {
+
+		// Run the formulation.
+		MatrixFormulationAbstract matrixFormulation = formulationClass
+				.getDeclaredConstructor(double.class, double[].class)
+				.newInstance(0.25, new double[] { 0.3, 0.7, 1.1 });
+		matrixFormulation.step(5);
+
+		// Return the results.
+		return matrixFormulation.calculateFitnessValue();
+
+	}
+
+	/**
+	 * Test assemble formulation.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testAssembleFormulation() throws Exception {
+
+		// Compare the backends.
+		for (String expression : EXPRESSIONS) {
+			Assert.assertEquals(expression,
+					run(formulate(expression, false)),
+					run(formulate(expression, true)));
+		}
+
+	}
+
+	/**
+	 * Test the backends on a model.
+	 */
+	@Test
+	public void testBackends() {
+
+		// Evaluate a model with javac.
+		MatrixEngine matrixEngine = new MatrixEngine();
+		matrixEngine.formulationBackend = MatrixEngine.FORMULATION_BACKEND.JAVAC;
+		MatrixModel matrixModel = MatrixModel.read(matrixEngine,
+				UtilTest.INPUT_TEST_DIR + "//MatrixModel_12.xlsx");
+		Assert.assertEquals((Double) 2.4139874174668718E18,
+				matrixModel.getFitnessValue());
+		Assert.assertTrue(matrixModel.formulationClass.getClassLoader()
+				instanceof MatrixFormulationClassLoader);
+
+		// Evaluate the same model with the bytecode backend.
+		matrixEngine = new MatrixEngine();
+		matrixEngine.formulationBackend = MatrixEngine.FORMULATION_BACKEND.BYTECODE;
+		matrixModel = MatrixModel.read(matrixEngine,
+				UtilTest.INPUT_TEST_DIR + "//MatrixModel_12.xlsx");
+		Assert.assertEquals((Double) 2.4139874174668718E18,
+				matrixModel.getFitnessValue());
+
+	}
+
+	/**
+	 * Test the javac fallback.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testFallback() throws Exception {
+
+		// Use an expression that the assembler does not support.
+		String expression = "(double) (int) a";
+		try {
+			formulate(expression, true);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+		}
+
+		// Check that the model still formulates through javac.
+		MatrixModel matrixModel = new MatrixModel(new MatrixEngine());
+		Set<String> declarations = new TreeSet<String>();
+		declarations.add("double a = 2.5");
+		Set<String> empty = new TreeSet<String>();
+		Assert.assertTrue(matrixModel.formulate(declarations, empty, empty,
+				expression));
+		Assert.assertEquals((Double) 2.0, run(matrixModel.formulationClass));
+
+	}
+
+	/**
+	 * Test large formulations, which need their methods split.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testLargeFormulation() throws Exception {
+
+		// Create a formulation that is too large for single methods.
+		int count = 4000;
+		Set<String> declarations = new TreeSet<String>();
+		Set<String> knit = new TreeSet<String>();
+		Set<String> split = new TreeSet<String>();
+		StringBuilder fitness = new StringBuilder();
+		double expected = 0.0;
+		for (int index = 0; index < count; index++) {
+			String name = String.format("x%04d", index);
+			declarations.add("double " + name + " = " + index + ".0");
+			declarations.add("double " + name + "_combined = 0.0");
+			knit.add(name + "_combined = " + name + " + 1");
+			split.add(name + " = " + name + "_combined * 0.5");
+			double value = index;
+			for (int step = 0; step < 5; step++) {
+				value = (value + 1) * 0.5;
+			}
+			if (index > 0) {
+				fitness.append(" + ");
+			}
+			fitness.append("(" + name + " * 0.5)");
+			expected = expected + value * 0.5;
+			if (index % 100 == 99) {
+				fitness.append(" + (3 / 2)");
+				expected = expected + 1;
+			}
+		}
+
+		// Check the bytecode backend.
+		Class<? extends MatrixFormulationAbstract> formulationClass =
+				MatrixFormulationAssembler.assembleFormulation(
+				MatrixModel.PACKAGE_NAME + "." +
+				MatrixModel.nextFormulationClassName(),
+				MatrixFormulationProgram.parse(declarations, knit, split,
+				fitness.toString()));
+		Assert.assertEquals((Double) expected, run(formulationClass));
+		Assert.assertTrue(hasParts(formulationClass, "knitPart"));
+		Assert.assertTrue(hasParts(formulationClass, "splitPart"));
+		Assert.assertTrue(hasParts(formulationClass, "initializePart"));
+		Assert.assertTrue(hasParts(formulationClass, "valuePart"));
+
+		// Check the javac backend.
+		String className = MatrixModel.nextFormulationClassName();
+		formulationClass = MatrixFormulationCompiler.compileFormulation(
+				MatrixModel.PACKAGE_NAME + "." + className,
+				new MatrixModel(null).formulateSource(className, declarations,
+				knit, split, fitness.toString()));
+		Assert.assertEquals((Double) expected, run(formulationClass));
+		Assert.assertTrue(hasParts(formulationClass, "knitPart"));
+		Assert.assertTrue(hasParts(formulationClass, "splitPart"));
+		Assert.assertTrue(hasParts(formulationClass, "initializePart"));
+		Assert.assertTrue(hasParts(formulationClass, "fitnessPart"));
+
+		// Check that small formulations are not split.
+		Assert.assertFalse(hasParts(formulate(EXPRESSIONS[0], true), "Part"));
+		Assert.assertFalse(hasParts(formulate(EXPRESSIONS[0], false), "Part"));
+
+	}
+
+	/**
+	 * Checks for helper methods.
+	 *
+	 * @param formulationClass the formulation class
+	 * @param prefix the helper method name prefix
+	 * @return true, if there are helper methods with the prefix
+	 */
+	public static boolean hasParts(Class<?> formulationClass, String prefix) {
+
+		// Check the methods.
+		for (Method method :
+				formulationClass.getDeclaredMethods()) {
+			if (method.getName().contains(prefix)) {
+				return true;
+			}
+		}
+
+		// Note the lack of helper methods.
+		return false;
+
+	}
+
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import gov.anl.cue.arcane.engine.UtilTest;
+
+/**
+ * The MatrixFormulationCacheTest class is used to test the
+ * MatrixFormulationCache class.
+ */
+public class MatrixFormulationCacheTest {
+
+	/**
+	 * Test get and put.
+	 */
+	@Test
+	public void testGetPut() {
+
+		// Create a cache.
+		MatrixFormulationCache formulationCache = new MatrixFormulationCache();
+
+		// Check a miss followed by a hit.
+		Assert.assertNull(formulationCache.get("a"));
+		formulationCache.put("a", MatrixFormulationConcrete.class);
+		Assert.assertSame(MatrixFormulationConcrete.class,
+				formulationCache.get("a"));
+
+		// Check the counters.
+		Assert.assertEquals(1, formulationCache.hitCount.get());
+		Assert.assertEquals(1, formulationCache.missCount.get());
+		Assert.assertEquals(0, formulationCache.evictionCount.get());
+		Assert.assertEquals(0.5, formulationCache.hitRate(), 0.0);
+
+		// Check that the entries are keyed by their source.
+		Assert.assertTrue(formulationCache.entries.containsKey("a"));
+
+	}
+
+	/**
+	 * Test counting lookups from several threads.
+	 *
+	 * @throws InterruptedException the interrupted exception
+	 */
+	@Test
+	public void testConcurrentCounts() throws InterruptedException {
+
+		// Look up a cached and a missing source from several threads.
+		final MatrixFormulationCache formulationCache =
+				new MatrixFormulationCache();
+		formulationCache.put("a", MatrixFormulationConcrete.class);
+		Thread[] threads = new Thread[4];
+		for (int index = 0; index < threads.length; index++) {
+			threads[index] = new Thread(new Runnable() {
+				public void run() {
+					for (int trial = 0; trial < 1000; trial++) {
+						formulationCache.get("a");
+						formulationCache.get("b");
+						formulationCache.hitRate();
+					}
+				}
+			});
+			threads[index].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		// Check the counters.
+		Assert.assertEquals(4000, formulationCache.hitCount.get());
+		Assert.assertEquals(4000, formulationCache.missCount.get());
+		Assert.assertEquals(0.5, formulationCache.hitRate(), 0.0);
+
+	}
+
+	/**
+	 * Test eviction.
+	 */
+	@Test
+	public void testEviction() {
+
+		// Create a small cache.
+		MatrixFormulationCache formulationCache = new MatrixFormulationCache(2);
+
+		// Fill the cache and touch the oldest entry.
+		formulationCache.put("a", MatrixFormulationConcrete.class);
+		formulationCache.put("b", MatrixFormulationConcrete.class);
+		formulationCache.get("a");
+
+		// Overflow the cache.
+		formulationCache.put("c", MatrixFormulationConcrete.class);
+
+		// Check that the least recently used entry was evicted.
+		Assert.assertEquals(2, formulationCache.size());
+		Assert.assertEquals(1, formulationCache.evictionCount.get());
+		Assert.assertNotNull(formulationCache.get("a"));
+		Assert.assertNull(formulationCache.get("b"));
+		Assert.assertNotNull(formulationCache.get("c"));
+
+	}
+
+	/**
+	 * Test key.
+	 */
+	@Test
+	public void testKey() {
+
+		// Check the keys.
+		Assert.assertEquals(MatrixFormulationCache.key("a"),
+				MatrixFormulationCache.key("a"));
+		Assert.assertNotEquals(MatrixFormulationCache.key("a"),
+				MatrixFormulationCache.key("b"));
+		Assert.assertEquals(64, MatrixFormulationCache.key("a").length());
+
+	}
+
+	/**
+	 * Test sharing between models.
+	 */
+	@Test
+	public void testSharing() {
+
+		// Create an engine.
+		MatrixEngine matrixEngine = new MatrixEngine();
+
+		// Read two independent copies of the same model.
+		MatrixModel matrixModel1 = MatrixModel.read(matrixEngine,
+				UtilTest.INPUT_TEST_DIR + "//MatrixModel_12.xlsx");
+		MatrixModel matrixModel2 = MatrixModel.read(matrixEngine,
+				UtilTest.INPUT_TEST_DIR + "//MatrixModel_12.xlsx");
+
+		// Evaluate both models.
+		Assert.assertEquals(matrixModel1.getFitnessValue(),
+				matrixModel2.getFitnessValue());
+
+		// Check that the second model reused the first model's class.
+		Assert.assertSame(matrixModel1.formulationClass,
+				matrixModel2.formulationClass);
+		Assert.assertEquals(1, matrixEngine.getFormulationCache().hitCount.get());
+		Assert.assertEquals(1, matrixEngine.getFormulationCache().missCount.get());
+
+	}
+
+}
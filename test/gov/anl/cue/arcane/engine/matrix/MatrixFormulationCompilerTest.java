@@ -0,0 +1,203 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import gov.anl.cue.arcane.engine.Util;
+import gov.anl.cue.arcane.engine.UtilTest;
+
+/**
+ * The MatrixFormulationCompilerTest class is used to test the
+ * MatrixFormulationCompiler class.
+ */
+public class MatrixFormulationCompilerTest {
+
+	/** The example source. */
+	public static final String SOURCE =
+			"package gov.anl.cue.arcane.engine.matrix;\n" +
+			"public class MatrixFormulationConcrete extends MatrixFormulationAbstract {\n" +
+			"\tdouble a_Node1 = 1.0;\n" +
+			"\tdouble a_Node1_combined = 1.0;\n" +
+			"\tpublic MatrixFormulationConcrete(double newStepSize) {\n" +
+			"\t\tsuper(newStepSize);\n" +
+			"\t}\n" +
+			"\tpublic void knit() {\n" +
+			"\t\ta_Node1_combined += ((a_Node1) * this.stepSize);\n" +
+			"\t}\n" +
+			"\tpublic void split() {\n" +
+			"\t\ta_Node1 = 1.0 * a_Node1_combined;\n" +
+			"\t}\n" +
+			"\tpublic Double calculateFitnessValue() {\n" +
+			"\t\treturn (a_Node1);\n" +
+			"\t}\n" +
+			"}\n";
+
+	/**
+	 * Instantiates a new matrix formulation compiler test.
+	 */
+	public MatrixFormulationCompilerTest() {
+	}
+
+	/**
+	 * Test compiling in memory.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testCompileFormulation() throws Exception {
+
+		// Compile the example.
+		Class<? extends MatrixFormulationAbstract> formulationClass =
+				MatrixFormulationCompiler.compileFormulation(
+				MatrixModel.PACKAGE_NAME + "." +
+				MatrixModel.CONCRETE_CLASS_NAME, SOURCE);
+
+		// Make sure that the generated class was not confused with the
+		// example class of the same name.
+		Assert.assertNotSame(formulationClass, MatrixFormulationConcrete.class);
+		Assert.assertTrue(formulationClass.getClassLoader()
+				instanceof MatrixFormulationClassLoader);
+
+		// Run the formulation.
+		MatrixFormulationAbstract matrixFormulation = formulationClass
+				.getDeclaredConstructor(double.class).newInstance(0.5);
+		matrixFormulation.step(3);
+
+		// Check the results.
+		Assert.assertEquals(matrixFormulation.calculateFitnessValue(),
+				(Double) 3.375);
+
+	}
+
+	/**
+	 * Test compiling a batch.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testCompileBatch() throws Exception {
+
+		// Prepare two valid sources and an invalid one.
+		Map<String, String> sources = new HashMap<String, String>();
+		for (String name : new String[] {"Batch1", "Batch2"}) {
+			sources.put(MatrixModel.PACKAGE_NAME + "." + name,
+					SOURCE.replace(MatrixModel.CONCRETE_CLASS_NAME, name));
+		}
+		sources.put(MatrixModel.PACKAGE_NAME + ".Broken",
+				"package " + MatrixModel.PACKAGE_NAME + "; class Broken {");
+
+		// Compile the batch.
+		Map<String, byte[]> bytecodes =
+				MatrixFormulationCompiler.compileBatch(sources);
+
+		// Check that only the invalid source was dropped.
+		Assert.assertEquals(2, bytecodes.size());
+		Assert.assertTrue(bytecodes.containsKey(
+				MatrixModel.PACKAGE_NAME + ".Batch1"));
+		Assert.assertTrue(bytecodes.containsKey(
+				MatrixModel.PACKAGE_NAME + ".Batch2"));
+
+		// Load and run one of the results.
+		MatrixFormulationAbstract matrixFormulation =
+				new MatrixFormulationClassLoader(bytecodes)
+				.loadFormulation(MatrixModel.PACKAGE_NAME + ".Batch2")
+				.getDeclaredConstructor(double.class).newInstance(0.5);
+		matrixFormulation.step(3);
+		Assert.assertEquals(matrixFormulation.calculateFitnessValue(),
+				(Double) 3.375);
+
+	}
+
+	/**
+	 * Test compiling invalid source.
+	 */
+	@Test
+	public void testCompileInvalid() {
+
+		// Prepare an invalid source.
+		Map<String, String> sources = new HashMap<String, String>();
+		sources.put(MatrixModel.PACKAGE_NAME + ".Broken",
+				"package " + MatrixModel.PACKAGE_NAME + "; class Broken {");
+
+		// Check the results.
+		try {
+			MatrixFormulationCompiler.compile(sources);
+			Assert.fail();
+		} catch (Exception e) {
+		}
+
+	}
+
+	/**
+	 * Test that in-memory evaluation leaves the temporary directory alone.
+	 */
+	@Test
+	public void testNoTemporaryFiles() {
+
+		// Clear any previously generated files.
+		File source = new File(Util.TEMP_DIR + "//" +
+				MatrixModel.PACKAGE_PATH +
+				MatrixModel.CONCRETE_CLASS_NAME + ".java");
+		source.delete();
+
+		// Read in an example matrix for testing.
+		MatrixModel matrixModel = MatrixModel.read(new MatrixEngine(),
+				UtilTest.INPUT_TEST_DIR + "//MatrixModel_12.xlsx");
+
+		// Check the results.
+		Assert.assertEquals(matrixModel.getFitnessValue(),
+				(Double) 2.4139874174668718E18);
+		Assert.assertFalse(source.exists());
+
+	}
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import gov.anl.cue.arcane.engine.UtilTest;
+
+/**
+ * The MatrixFormulationInterpreterTest class is used to test the
+ * MatrixFormulationInterpreter class.
+ */
+public class MatrixFormulationInterpreterTest {
+
+	/**
+	 * Creates an interpreted formulation from a fitness expression.
+	 *
+	 * @param fitness the fitness
+	 * @return the formulation
+	 */
+	public static MatrixFormulationInterpreter interpret(String fitness) {
+
+		// Create the formulation elements.
+		Set<String> declarations = new TreeSet<String>();
+		declarations.add("double a = 2.5");
+		declarations.add("double a_combined = a * 2");
+		declarations.add("double b = 7.0");
+		declarations.add("double b_combined = 0.0");
+		declarations.add("double c = -1.25");
+		declarations.add("double c_combined = 0.0");
+		Set<String> knit = new TreeSet<String>();
+		knit.add("a_combined += ((a + b) * this.stepSize)");
+		knit.add("b_combined = a / 4");
+		knit.add("c_combined = c");
+		Set<String> split = new TreeSet<String>();
+		split.add("a = this.coefficients[0] * a_combined + this.coefficients[1] * c_combined");
+		split.add("b = this.coefficients[2] * b_combined");
+		split.add("c = 0.5 * c_combined");
+
+		// Return the results.
+		return new MatrixFormulationInterpreter(0.25,
+				new double[] { 0.3, 0.7, 1.1 },
+				MatrixFormulationInterpreter.translate(
+				MatrixFormulationProgram.parse(declarations, knit, split,
+				fitness)));
+
+	}
+
+	/**
+	 * Test the interpreter against javac.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testInterpret() throws Exception {
+
+		// Compare the results.
+		for (String expression : MatrixFormulationAssemblerTest.EXPRESSIONS) {
+			MatrixFormulationInterpreter matrixFormulation = interpret(expression);
+			matrixFormulation.step(5);
+			Assert.assertEquals(expression,
+					MatrixFormulationAssemblerTest.run(
+					MatrixFormulationAssemblerTest.formulate(expression, false)),
+					matrixFormulation.calculateFitnessValue());
+		}
+
+	}
+
+	/**
+	 * Test state.
+	 */
+	@Test
+	public void testState() {
+
+		// Check the initial values.
+		MatrixFormulationInterpreter matrixFormulation = interpret("a");
+		Assert.assertEquals(2.5, matrixFormulation.getValue("a"), 0.0);
+		Assert.assertEquals(5.0, matrixFormulation.getValue("a_combined"), 0.0);
+
+		// Check one step.
+		matrixFormulation.step();
+		Assert.assertEquals(5.0 + 9.5 * 0.25,
+				matrixFormulation.getValue("a_combined"), 0.0);
+		Assert.assertEquals(0.625, matrixFormulation.getValue("b_combined"), 0.0);
+		Assert.assertFalse(matrixFormulation.firstStep);
+
+		// Check integer division by zero.
+		try {
+			interpret("a + 1 / 0").calculateFitnessValue();
+			Assert.fail();
+		} catch (ArithmeticException e) {
+		}
+
+	}
+
+	/**
+	 * Test the interpreter backend on a model.
+	 */
+	@Test
+	public void testBackend() {
+
+		// Evaluate a model with the interpreter.
+		MatrixEngine matrixEngine = new MatrixEngine();
+		matrixEngine.formulationBackend =
+				MatrixEngine.FORMULATION_BACKEND.INTERPRETER;
+		MatrixModel matrixModel = MatrixModel.read(matrixEngine,
+				UtilTest.INPUT_TEST_DIR + "//MatrixModel_12.xlsx");
+		Assert.assertEquals((Double) 2.4139874174668718E18,
+				matrixModel.getFitnessValue());
+
+		// Check that no class was generated.
+		Assert.assertNull(matrixModel.formulationClass);
+		Assert.assertNotNull(matrixModel.formulationCode);
+
+	}
+
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import gov.anl.cue.arcane.engine.UtilTest;
+
+/**
+ * The MatrixFormulationLayoutTest class is used to test the
+ * MatrixFormulationLayout class.
+ */
+public class MatrixFormulationLayoutTest {
+
+	/**
+	 * Reads the example model.
+	 *
+	 * @param matrixEngine the matrix engine
+	 * @return the matrix model
+	 */
+	public static MatrixModel read(MatrixEngine matrixEngine) {
+
+		// Return the results.
+		return MatrixModel.read(matrixEngine,
+				UtilTest.INPUT_TEST_DIR + "//MatrixModel_12.xlsx");
+
+	}
+
+	/**
+	 * Test the layout.
+	 */
+	@Test
+	public void testLayout() {
+
+		// Find the layout.
+		MatrixModel matrixModel = read(new MatrixEngine());
+		MatrixFormulationLayout layout = new MatrixFormulationLayout(
+				matrixModel);
+
+		// Check the sizes.
+		Assert.assertEquals(matrixModel.size(), layout.variableCount);
+		Assert.assertEquals(matrixModel.nodeCount(), layout.nodeCount);
+		Assert.assertEquals(layout.knitTemplates.size(),
+				layout.knitNodes.length);
+		Assert.assertEquals(layout.fitnessTemplates.size(),
+				layout.fitnessNodes.length);
+
+		// Check the split links against the kernel coefficients.
+		Assert.assertEquals(matrixModel.splitKernelCoefficients().length,
+				layout.splitSources.length);
+		Assert.assertEquals(layout.splitSources.length,
+				layout.splitStarts[layout.splitVariables.length]);
+		Assert.assertEquals(matrixModel.splitKernel(MatrixModel.NO_SUFFIX,
+				MatrixModel.COMBINED_SUFFIX).size(),
+				layout.splitVariables.length);
+
+		// Check the initial values.
+		Assert.assertEquals(2.0, layout.initialValues[0][0], 0.0);
+		Assert.assertEquals(12.4, layout.initialValues[0][1], 0.0);
+		Assert.assertEquals(0.0, layout.initialValues[1][0], 0.0);
+
+	}
+
+	/**
+	 * Test that shared equations share code.
+	 */
+	@Test
+	public void testTemplates() {
+
+		// Give every node the same equations.
+		MatrixModel matrixModel = read(new MatrixEngine());
+		for (MatrixVariable matrixVariable : matrixModel) {
+			for (int node = 0; node < matrixModel.nodeCount(); node++) {
+				matrixVariable.equations.set(node, "a + b");
+			}
+		}
+		for (int node = 0; node < matrixModel.nodeCount(); node++) {
+			matrixModel.fitnessEquations.set(node, "c");
+		}
+
+		// Check that there is one loop per distinct equation.
+		MatrixFormulationLayout layout = new MatrixFormulationLayout(
+				matrixModel);
+		Assert.assertEquals(matrixModel.size(), layout.knitTemplates.size());
+		Assert.assertEquals(matrixModel.nodeCount(),
+				layout.knitNodes[0].length);
+		Assert.assertEquals(1, layout.fitnessTemplates.size());
+		Assert.assertEquals(matrixModel.nodeCount(),
+				layout.fitnessOrder.length);
+
+		// Check that the source does not mention individual nodes.
+		String source = layout.source(MatrixModel.CONCRETE_CLASS_NAME);
+		Assert.assertFalse(source.contains(matrixModel.nodeName(0)));
+		Assert.assertTrue(source.contains(
+				"this.combined[0][node] = this.state[0][node] + this.state[1][node]"));
+
+	}
+
+	/**
+	 * Test models that cannot use node arrays.
+	 */
+	@Test
+	public void testUnsupported() {
+
+		// Check a reference to a variable without an equation.
+		MatrixModel matrixModel = read(new MatrixEngine());
+		matrixModel.get(1).equations.set(0, "");
+		try {
+			new MatrixFormulationLayout(matrixModel);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+		}
+
+		// Check an initial value that is not a literal.
+		matrixModel = read(new MatrixEngine());
+		matrixModel.get(0).equations.set(1, "INTEG(a + b, b)");
+		try {
+			new MatrixFormulationLayout(matrixModel);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+		}
+
+	}
+
+	/**
+	 * Test running node array formulations.
+	 */
+	@Test
+	public void testRun() {
+
+		// Evaluate the example with node arrays.
+		MatrixEngine matrixEngine = new MatrixEngine();
+		matrixEngine.formulationShape =
+				MatrixEngine.FORMULATION_SHAPE.NODE_ARRAYS;
+		MatrixModel matrixModel = read(matrixEngine);
+
+		// Check the results against the node field formulation.
+		Assert.assertEquals((Double) 2.4139874174668718E18,
+				matrixModel.getFitnessValue());
+		Assert.assertNotNull(matrixModel.formulationLayout);
+		Assert.assertTrue(MatrixFormulationNodeArrays.class
+				.isAssignableFrom(matrixModel.formulationClass));
+
+		// Check that unsupported models fall back to node fields.
+		MatrixModel matrixModelCopy = matrixModel.copy();
+		matrixModelCopy.get(2).equations.set(1, "INTEG(b + c, a)");
+		matrixModelCopy.fitnessValue = null;
+		Assert.assertFalse(Double.isInfinite(
+				matrixModelCopy.getFitnessValue()));
+		Assert.assertNull(matrixModelCopy.formulationLayout);
+		Assert.assertFalse(MatrixFormulationNodeArrays.class
+				.isAssignableFrom(matrixModelCopy.formulationClass));
+
+	}
+
+}
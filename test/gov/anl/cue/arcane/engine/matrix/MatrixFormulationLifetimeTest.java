@@ -0,0 +1,133 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import java.lang.ref.WeakReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The MatrixFormulationLifetimeTest class is used to test the
+ * MatrixFormulationLifetime class.
+ */
+public class MatrixFormulationLifetimeTest {
+
+	/**
+	 * Test the metaspace threshold.
+	 */
+	@Test
+	public void testCheck() {
+
+		// Check that metaspace usage is available.
+		Assert.assertTrue(MatrixFormulationLifetime.getMetaspaceUsed() > 0);
+
+		// Check that a high threshold does not collect.
+		MatrixFormulationLifetime formulationLifetime =
+				new MatrixFormulationLifetime(Long.MAX_VALUE);
+		Assert.assertFalse(formulationLifetime.check());
+		Assert.assertEquals(1, formulationLifetime.checkCount);
+		Assert.assertEquals(0, formulationLifetime.collectionCount);
+
+		// Check that disabled collections do not collect.
+		formulationLifetime.metaspaceThreshold = 0;
+		Assert.assertFalse(formulationLifetime.check());
+		Assert.assertEquals(0, formulationLifetime.collectionCount);
+
+		// Check that a low threshold collects and then backs off since the
+		// live classes cannot be released.
+		formulationLifetime.metaspaceThreshold = 1;
+		Assert.assertTrue(formulationLifetime.check());
+		Assert.assertEquals(1, formulationLifetime.collectionCount);
+		Assert.assertTrue(formulationLifetime.metaspaceLimit > 1);
+
+	}
+
+	/**
+	 * Test unloading an unreachable formulation class.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testCollect() throws Exception {
+
+		// Build a formulation and keep only a weak reference to it.
+		WeakReference<Class<? extends MatrixFormulationAbstract>> reference =
+				new WeakReference<Class<? extends MatrixFormulationAbstract>>(
+				MatrixFormulationAssemblerTest.formulate(
+				MatrixFormulationAssemblerTest.EXPRESSIONS[0], true));
+
+		// Collect the formulation class.
+		MatrixFormulationLifetime formulationLifetime =
+				new MatrixFormulationLifetime();
+		for (int attempt = 0; (attempt < 10) && (reference.get() != null);
+				attempt++) {
+			formulationLifetime.collect();
+		}
+
+		// Check the results.
+		Assert.assertNull(reference.get());
+		Assert.assertTrue(formulationLifetime.collectionCount > 0);
+
+	}
+
+	/**
+	 * Test the engine's lifetime manager.
+	 */
+	@Test
+	public void testEngine() {
+
+		// Check the engine's manager.
+		MatrixEngine matrixEngine = new MatrixEngine();
+		Assert.assertSame(matrixEngine.getFormulationLifetime(),
+				matrixEngine.getFormulationLifetime());
+		Assert.assertEquals(
+				MatrixFormulationLifetime.DEFAULT_METASPACE_THRESHOLD,
+				matrixEngine.getFormulationLifetime().metaspaceThreshold);
+
+	}
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The MatrixFormulationProgramTest class is used to test the
+ * MatrixFormulationProgram class.
+ */
+public class MatrixFormulationProgramTest {
+
+	/**
+	 * Test parse.
+	 */
+	@Test
+	public void testParse() {
+
+		// Parse a formulation.
+		Set<String> declarations = new TreeSet<String>();
+		declarations.add("double a = 39.8");
+		declarations.add("double a_combined = a");
+		Set<String> knit = new TreeSet<String>();
+		knit.add("a_combined  += ((a + 1) * this.stepSize)");
+		Set<String> split = new TreeSet<String>();
+		split.add("a = this.coefficients[0] * a_combined");
+		MatrixFormulationProgram program = MatrixFormulationProgram.parse(
+				declarations, knit, split, "(a)");
+
+		// Check the results.
+		Assert.assertEquals(2, program.fieldNames.size());
+		Assert.assertEquals((Integer) 1, program.fieldIndices.get("a_combined"));
+		Assert.assertEquals(1, program.knit.size());
+		Assert.assertTrue(program.knit.get(0).accumulate);
+		Assert.assertEquals(1, program.knit.get(0).field);
+		Assert.assertFalse(program.split.get(0).accumulate);
+		Assert.assertTrue(program.fitness instanceof MatrixExpression.Field);
+
+	}
+
+	/**
+	 * Test invalid formulations.
+	 */
+	@Test
+	public void testInvalid() {
+
+		// Check a forward reference.
+		Set<String> declarations = new TreeSet<String>();
+		declarations.add("double a = b");
+		declarations.add("double b = 1.0");
+		Set<String> empty = new TreeSet<String>();
+		try {
+			MatrixFormulationProgram.parse(declarations, empty, empty, "a");
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+		}
+
+		// Check an assignment to an undeclared variable.
+		declarations.clear();
+		declarations.add("double a = 1.0");
+		Set<String> knit = new TreeSet<String>();
+		knit.add("c = a");
+		try {
+			MatrixFormulationProgram.parse(declarations, knit, empty, "a");
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+		}
+
+		// Check an integer fitness.
+		try {
+			MatrixFormulationProgram.parse(declarations, empty, empty, "1");
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+		}
+
+	}
+
+}
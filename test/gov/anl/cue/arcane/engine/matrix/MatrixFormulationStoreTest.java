@@ -0,0 +1,198 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import gov.anl.cue.arcane.engine.UtilTest;
+
+/**
+ * The MatrixFormulationStoreTest class is used to test the
+ * MatrixFormulationStore class.
+ */
+public class MatrixFormulationStoreTest {
+
+	/** The store directory. */
+	public File directory = null;
+
+	/**
+	 * Creates the store directory.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		this.directory = Files.createTempDirectory("formulations").toFile();
+	}
+
+	/**
+	 * Removes the store directory.
+	 *
+	 * @throws Exception the exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory(this.directory);
+	}
+
+	/**
+	 * Test read and write.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testReadWrite() throws Exception {
+
+		// Create a store.
+		MatrixFormulationStore formulationStore =
+				new MatrixFormulationStore(this.directory, "BYTECODE");
+		String key = formulationStore.key("a");
+
+		// Check a miss.
+		Assert.assertNull(formulationStore.read(key));
+		Assert.assertNull(formulationStore.load(key));
+		Assert.assertEquals(2, formulationStore.missCount.get());
+
+		// Store and reload a class.
+		byte[] bytecode = MatrixFormulationAssembler.assemble(
+				formulationStore.className(key),
+				MatrixFormulationProgram.parse(
+				new TreeSet<String>(),
+				new TreeSet<String>(),
+				new TreeSet<String>(), "1.5"));
+		formulationStore.write(key, bytecode);
+		Class<? extends MatrixFormulationAbstract> formulationClass =
+				formulationStore.load(key);
+
+		// Check the results.
+		Assert.assertEquals(formulationStore.className(key),
+				formulationClass.getName());
+		Assert.assertEquals((Double) 1.5, formulationClass
+				.getDeclaredConstructor(double.class, double[].class)
+				.newInstance(1.0, new double[0]).calculateFitnessValue());
+		Assert.assertEquals(1, formulationStore.hitCount.get());
+		Assert.assertEquals(1, formulationStore.writeCount.get());
+
+		// Check that corrupt entries are removed.
+		Files.write(formulationStore.file(key).toPath(), new byte[] {1, 2});
+		Assert.assertNull(formulationStore.load(key));
+		Assert.assertFalse(formulationStore.file(key).exists());
+
+	}
+
+	/**
+	 * Test key.
+	 */
+	@Test
+	public void testKey() {
+
+		// Check that keys depend on the source and backend.
+		MatrixFormulationStore formulationStore1 =
+				new MatrixFormulationStore(this.directory, "BYTECODE");
+		MatrixFormulationStore formulationStore2 =
+				new MatrixFormulationStore(this.directory, "JAVAC");
+		Assert.assertEquals(formulationStore1.key("a"),
+				formulationStore1.key("a"));
+		Assert.assertNotEquals(formulationStore1.key("a"),
+				formulationStore1.key("b"));
+		Assert.assertNotEquals(formulationStore1.key("a"),
+				formulationStore2.key("a"));
+
+		// Check that keys depend on the code generator.
+		Assert.assertEquals(64,
+				MatrixFormulationStore.GENERATOR_VERSION.length());
+		Assert.assertEquals(MatrixFormulationStore.GENERATOR_VERSION,
+				MatrixFormulationStore.generatorVersion());
+		Assert.assertTrue(formulationStore1.fingerprint.contains(
+				MatrixFormulationStore.GENERATOR_VERSION));
+
+	}
+
+	/**
+	 * Test reuse across engines.
+	 */
+	@Test
+	public void testEngine() {
+
+		// Evaluate a model with a new store.
+		MatrixEngine matrixEngine1 = new MatrixEngine();
+		matrixEngine1.formulationStoreDirectory = this.directory.getPath();
+		MatrixModel matrixModel1 = MatrixModel.read(matrixEngine1,
+				UtilTest.INPUT_TEST_DIR + "//MatrixModel_12.xlsx");
+		Assert.assertEquals((Double) 2.4139874174668718E18,
+				matrixModel1.getFitnessValue());
+		Assert.assertEquals(1,
+				matrixEngine1.getFormulationStore().writeCount.get());
+
+		// Evaluate the model again, as a later run would.
+		MatrixEngine matrixEngine2 = new MatrixEngine();
+		matrixEngine2.formulationStoreDirectory = this.directory.getPath();
+		MatrixModel matrixModel2 = MatrixModel.read(matrixEngine2,
+				UtilTest.INPUT_TEST_DIR + "//MatrixModel_12.xlsx");
+		Assert.assertEquals((Double) 2.4139874174668718E18,
+				matrixModel2.getFitnessValue());
+
+		// Check that the stored class was reused.
+		Assert.assertEquals(1,
+				matrixEngine2.getFormulationStore().hitCount.get());
+		Assert.assertEquals(0,
+				matrixEngine2.getFormulationStore().writeCount.get());
+		Assert.assertNotSame(matrixModel1.formulationClass,
+				matrixModel2.formulationClass);
+		Assert.assertEquals(matrixModel1.formulationClass.getName(),
+				matrixModel2.formulationClass.getName());
+
+	}
+
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import gov.anl.cue.arcane.engine.UtilTest;
+
+/**
+ * The MatrixFormulationTieringTest class is used to test the
+ * MatrixFormulationTiering class.
+ */
+public class MatrixFormulationTieringTest {
+
+	/** The example fitness. */
+	public static final String FITNESS = "a + SIN(b) * c";
+
+	/**
+	 * Test that cheap runs are interpreted.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testInterpret() throws Exception {
+
+		// Run a cheap formulation.
+		MatrixFormulationInterpreter.Code code =
+				MatrixFormulationInterpreterTest.interpret(FITNESS).code;
+		MatrixFormulationAbstract matrixFormulation =
+				new MatrixFormulationTiering().run(code, 0.25,
+				new double[] { 0.3, 0.7, 1.1 }, 5, Long.MAX_VALUE);
+
+		// Check the results.
+		Assert.assertTrue(matrixFormulation instanceof MatrixFormulationInterpreter);
+		Assert.assertNull(code.compiledClass);
+		Assert.assertEquals(5L * code.stepLength, code.interpretedWork.get());
+
+	}
+
+	/**
+	 * Test that expensive runs are compiled.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testCompile() throws Exception {
+
+		// Run an expensive formulation.
+		MatrixFormulationInterpreter.Code code =
+				MatrixFormulationInterpreterTest.interpret(FITNESS).code;
+		MatrixFormulationTiering tiering = new MatrixFormulationTiering();
+		MatrixFormulationAbstract matrixFormulation = tiering.run(code, 0.25,
+				new double[] { 0.3, 0.7, 1.1 }, 5, 5L * code.stepLength);
+
+		// Check the results.
+		Assert.assertFalse(matrixFormulation instanceof MatrixFormulationInterpreter);
+		Assert.assertSame(code.compiledClass, matrixFormulation.getClass());
+		Assert.assertEquals(MatrixFormulationAssemblerTest.run(
+				MatrixFormulationAssemblerTest.formulate(FITNESS, false)),
+				matrixFormulation.calculateFitnessValue());
+
+		// Check that the observed compile time stays with this tiering.
+		Assert.assertTrue(tiering.compileNanoseconds > 0);
+		Assert.assertEquals(MatrixFormulationTiering.DEFAULT_COMPILE_NANOSECONDS,
+				new MatrixFormulationTiering().compileNanoseconds);
+
+	}
+
+	/**
+	 * Test that frequently used formulations are compiled.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testAccumulate() throws Exception {
+
+		// Run a cheap formulation several times.
+		MatrixFormulationInterpreter.Code code =
+				MatrixFormulationInterpreterTest.interpret(FITNESS).code;
+		MatrixFormulationTiering tiering = new MatrixFormulationTiering();
+		for (int run = 0; run < 3; run++) {
+			Assert.assertTrue(tiering.run(code, 0.25,
+					new double[] { 0.3, 0.7, 1.1 }, 5, 16L * code.stepLength)
+					instanceof MatrixFormulationInterpreter);
+		}
+
+		// Check that the next run is compiled.
+		Assert.assertFalse(tiering.run(code, 0.25,
+				new double[] { 0.3, 0.7, 1.1 }, 5, 16L * code.stepLength)
+				instanceof MatrixFormulationInterpreter);
+
+	}
+
+	/**
+	 * Test promotion part way through a run.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testPromote() throws Exception {
+
+		// Interpret a few steps and then promote the formulation.
+		MatrixFormulationInterpreter interpreter =
+				MatrixFormulationInterpreterTest.interpret(FITNESS);
+		interpreter.step(3);
+		new MatrixFormulationTiering().compile(interpreter.code);
+		MatrixFormulationAbstract matrixFormulation =
+				MatrixFormulationTiering.promote(interpreter);
+		matrixFormulation.step(2);
+
+		// Check the results against an uninterrupted run.
+		MatrixFormulationInterpreter reference =
+				MatrixFormulationInterpreterTest.interpret(FITNESS);
+		reference.step(5);
+		Assert.assertEquals(reference.calculateFitnessValue(),
+				matrixFormulation.calculateFitnessValue());
+		Assert.assertFalse(matrixFormulation.firstStep);
+
+	}
+
+	/**
+	 * Test the tiered backend on a model.
+	 */
+	@Test
+	public void testBackend() {
+
+		// Evaluate a model with the tiered backend.
+		MatrixEngine matrixEngine = new MatrixEngine();
+		matrixEngine.formulationBackend = MatrixEngine.FORMULATION_BACKEND.TIERED;
+		MatrixModel matrixModel = MatrixModel.read(matrixEngine,
+				UtilTest.INPUT_TEST_DIR + "//MatrixModel_12.xlsx");
+		Assert.assertEquals((Double) 2.4139874174668718E18,
+				matrixModel.getFitnessValue());
+		Assert.assertNotNull(matrixModel.formulationCode);
+
+		// Check a long run, which is compiled.
+		matrixEngine.tieredCompileThreshold = 1;
+		matrixModel.fitnessValue = null;
+		Assert.assertEquals((Double) 2.4139874174668718E18,
+				matrixModel.getFitnessValue());
+		Assert.assertNotNull(matrixModel.formulationCode.compiledClass);
+
+	}
+
+}
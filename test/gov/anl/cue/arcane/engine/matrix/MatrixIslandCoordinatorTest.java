@@ -0,0 +1,182 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import gov.anl.cue.arcane.engine.Util;
+import gov.anl.cue.arcane.engine.UtilTest;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The MatrixIslandCoordinatorTest class is used to test the
+ * MatrixIslandCoordinator and MatrixIslandProcess classes.
+ */
+public class MatrixIslandCoordinatorTest {
+
+	/**
+	 * Test running islands in separate processes.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testRun() throws IOException {
+
+		// Run two island processes on this host.
+		MatrixEngine matrixEngine = MatrixEngine
+				.read(UtilTest.INPUT_TEST_MATRIX_SCENARIO_1_DIR);
+		matrixEngine.islandCount = 2;
+		matrixEngine.migrationInterval = 1;
+		File directory = Files.createTempDirectory("islands").toFile();
+		MatrixIslandCoordinator matrixIslandCoordinator =
+				new MatrixIslandCoordinator(matrixEngine);
+		try {
+			matrixIslandCoordinator.start(0);
+			Assert.assertTrue(matrixIslandCoordinator.serverSocket
+					.getInetAddress().isLoopbackAddress());
+			matrixIslandCoordinator.launch();
+			Assert.assertTrue(matrixIslandCoordinator.run(2,
+					directory.getPath()));
+			Assert.assertTrue(matrixIslandCoordinator.failures.isEmpty());
+		} finally {
+			matrixIslandCoordinator.close();
+		}
+
+		// Check the merged population.
+		Assert.assertEquals(matrixEngine.populationSize,
+				matrixEngine.outputPopulation.size());
+		Assert.assertTrue(matrixEngine.outputPopulation.getFitnessValue() >=
+				matrixEngine.inputPopulation.getFitnessValue());
+		for (MatrixModel matrixModel : matrixEngine.outputPopulation) {
+			Assert.assertSame(matrixEngine, matrixModel.getMatrixEngine());
+		}
+
+		// Check the written results.
+		Assert.assertEquals(matrixEngine.populationSize, new File(directory,
+				Util.OUTPUT_DIR).list().length);
+		FileUtils.deleteDirectory(directory);
+
+	}
+
+	/**
+	 * Test that relaying drops a neighbor that cannot be written to.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test(timeout = 60000)
+	public void testRelayDropsNeighbor() throws Exception {
+
+		// Split an engine into two islands.
+		MatrixEngine matrixEngine = MatrixEngine
+				.read(UtilTest.INPUT_TEST_MATRIX_SCENARIO_1_DIR);
+		matrixEngine.islandCount = 2;
+		matrixEngine.fill();
+		final MatrixIslandCoordinator matrixIslandCoordinator =
+				new MatrixIslandCoordinator(matrixEngine);
+		matrixIslandCoordinator.matrixIslands = new MatrixIslands(matrixEngine);
+		final MatrixEngine island =
+				matrixIslandCoordinator.matrixIslands.islands.get(0);
+
+		// Send two sets of migrants and then the population from the
+		// first island.
+		ServerSocket serverSocket = new ServerSocket(0);
+		final Socket socket = new Socket("localhost",
+				serverSocket.getLocalPort());
+		Thread sender = new Thread(new Runnable() {
+			public void run() {
+				try {
+					DataOutputStream output = new DataOutputStream(
+							socket.getOutputStream());
+					for (int index = 0; index < 2; index++) {
+						new MatrixIslandMessage(
+								MatrixIslandMessage.MESSAGE_TYPE.MIGRANTS, 0,
+								island.outputPopulation.subList(0, 1))
+								.write(output);
+					}
+					new MatrixIslandMessage(
+							MatrixIslandMessage.MESSAGE_TYPE.RESULT, 0,
+							island.outputPopulation).write(output);
+				} catch (IOException e) {
+					Assert.fail();
+				}
+			}
+		});
+		sender.start();
+
+		// Relay to a second island whose connection fails.
+		DataOutputStream[] outputs = new DataOutputStream[] { null,
+				new DataOutputStream(new OutputStream() {
+					public void write(int b) throws IOException {
+						throw new IOException("Lost");
+					}
+				}) };
+		Assert.assertTrue(matrixIslandCoordinator.relay(0,
+				serverSocket.accept(), outputs));
+		sender.join();
+		socket.close();
+		serverSocket.close();
+
+		// Check that the neighbor was dropped once.
+		Assert.assertEquals(1, matrixIslandCoordinator.failures.size());
+		Assert.assertEquals("Island 1 was dropped",
+				matrixIslandCoordinator.failures.get(0).getMessage());
+		Assert.assertTrue(matrixIslandCoordinator.closedIslands.contains(0));
+		Assert.assertTrue(matrixIslandCoordinator.closedIslands.contains(1));
+		Assert.assertEquals(0,
+				matrixIslandCoordinator.matrixIslands.migrantCount.get());
+
+	}
+
+}
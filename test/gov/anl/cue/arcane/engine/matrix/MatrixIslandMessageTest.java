@@ -0,0 +1,176 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import gov.anl.cue.arcane.engine.Util;
+import gov.anl.cue.arcane.engine.UtilTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The MatrixIslandMessageTest class is used to test the
+ * MatrixIslandMessage class.
+ */
+public class MatrixIslandMessageTest {
+
+	/**
+	 * Test writing and reading an assignment.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testAssign() throws IOException {
+
+		// Create an island.
+		MatrixEngine matrixEngine = MatrixEngine
+				.read(UtilTest.INPUT_TEST_MATRIX_SCENARIO_1_DIR);
+		matrixEngine.islandCount = 2;
+		matrixEngine.mutationSampling = MatrixEngine.MUTATION_SAMPLING.SKIP;
+		matrixEngine.migrationSize = 3;
+		matrixEngine.formulationShape =
+				MatrixEngine.FORMULATION_SHAPE.NODE_ARRAYS;
+		matrixEngine.tieredCompileThreshold = 5;
+		matrixEngine.diskFormulation = true;
+		matrixEngine.formulationStoreDirectory = "store";
+		MatrixEngine island = new MatrixIslands(matrixEngine).islands.get(0);
+
+		// Write and read the assignment.
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		MatrixIslandMessage.assign(1, island, 7).write(
+				new DataOutputStream(bytes));
+		MatrixIslandMessage message = MatrixIslandMessage.read(
+				new DataInputStream(new ByteArrayInputStream(
+				bytes.toByteArray())));
+
+		// Check the results.
+		Assert.assertEquals(MatrixIslandMessage.MESSAGE_TYPE.ASSIGN,
+				message.type);
+		Assert.assertEquals(1, message.islandIndex);
+		Assert.assertEquals(7, message.steps);
+		MatrixEngine newIsland = message.getMatrixEngine();
+		Assert.assertEquals(MatrixEngine.MUTATION_SAMPLING.SKIP,
+				newIsland.getMutationSampling());
+		Assert.assertEquals(3, newIsland.getMigrationSize());
+		Assert.assertEquals(MatrixEngine.FORMULATION_SHAPE.NODE_ARRAYS,
+				newIsland.getFormulationShape());
+		Assert.assertEquals(5, newIsland.tieredCompileThreshold);
+		Assert.assertTrue(newIsland.diskFormulation);
+		Assert.assertEquals("store", newIsland.formulationStoreDirectory);
+		Assert.assertTrue(Util.isEqual(island.getSettings(),
+				newIsland.getSettings()));
+		Assert.assertTrue(Util.isEqual(island.outputPopulation,
+				newIsland.outputPopulation));
+		Assert.assertSame(newIsland, newIsland.outputPopulation.matrixEngine);
+		for (MatrixModel matrixModel : newIsland.outputPopulation) {
+			Assert.assertSame(newIsland, matrixModel.getMatrixEngine());
+		}
+
+	}
+
+	/**
+	 * Test that reading rejects types that messages do not contain.
+	 */
+	@Test
+	public void testReadRejectsOtherTypes() {
+
+		// Frame a message holding a type that is not allowed.
+		byte[] bytes = ("<" + MatrixIslandMessage.class.getName() + ">" +
+				"<matrixModels><java.lang.ProcessBuilder/></matrixModels>" +
+				"</" + MatrixIslandMessage.class.getName() + ">")
+				.getBytes(StandardCharsets.UTF_8);
+		ByteArrayOutputStream frame = new ByteArrayOutputStream();
+		try {
+			DataOutputStream output = new DataOutputStream(frame);
+			output.writeInt(bytes.length);
+			output.write(bytes);
+		} catch (IOException e) {
+			Assert.fail();
+		}
+
+		// Check that the message is rejected.
+		try {
+			MatrixIslandMessage.read(new DataInputStream(
+					new ByteArrayInputStream(frame.toByteArray())));
+			Assert.fail();
+		} catch (IOException e) {
+		}
+
+	}
+
+	/**
+	 * Test that reading rejects lengths that are out of range.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testReadRejectsBadLengths() throws IOException {
+
+		// Check lengths below zero and above the maximum.
+		for (int length : new int[] { -1, MatrixIslandMessage.MAX_LENGTH + 1,
+				Integer.MAX_VALUE }) {
+			ByteArrayOutputStream frame = new ByteArrayOutputStream();
+			new DataOutputStream(frame).writeInt(length);
+			try {
+				MatrixIslandMessage.read(new DataInputStream(
+						new ByteArrayInputStream(frame.toByteArray())));
+				Assert.fail();
+			} catch (IOException e) {
+				Assert.assertTrue(e.getMessage().startsWith(
+						"Invalid message length"));
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import gov.anl.cue.arcane.engine.UtilTest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The MatrixIslandsTest class is used to test the MatrixIslands class.
+ */
+public class MatrixIslandsTest {
+
+	/**
+	 * Test dealing the population to the islands.
+	 */
+	@Test
+	public void testIslands() {
+
+		// Split a population into islands.
+		MatrixEngine matrixEngine = MatrixEngine
+				.read(UtilTest.INPUT_TEST_MATRIX_SCENARIO_1_DIR);
+		matrixEngine.islandCount = 3;
+		matrixEngine.fill();
+		MatrixIslands matrixIslands = new MatrixIslands(matrixEngine);
+
+		// Check the results.
+		Assert.assertEquals(3, matrixIslands.islands.size());
+		int populationSize = 0;
+		int modelCount = 0;
+		for (MatrixEngine island : matrixIslands.islands) {
+			populationSize += island.populationSize;
+			modelCount += island.outputPopulation.size();
+			Assert.assertNotSame(matrixEngine.getRandom(), island.getRandom());
+			Assert.assertSame(matrixEngine.getFormulationCache(),
+					island.getFormulationCache());
+			for (MatrixModel matrixModel : island.outputPopulation) {
+				Assert.assertSame(island, matrixModel.getMatrixEngine());
+			}
+		}
+		Assert.assertEquals(matrixEngine.populationSize, populationSize);
+		Assert.assertEquals(matrixEngine.outputPopulation.size(), modelCount);
+		Assert.assertSame(matrixEngine.outputPopulation.get(0),
+				matrixIslands.islands.get(0).outputPopulation.get(0));
+
+	}
+
+	/**
+	 * Test the island topologies.
+	 *
+	 * @throws InterruptedException the interrupted exception
+	 */
+	@Test
+	public void testNeighbors() throws InterruptedException {
+
+		// Create islands.
+		MatrixEngine matrixEngine = MatrixEngine
+				.read(UtilTest.INPUT_TEST_MATRIX_SCENARIO_1_DIR);
+		matrixEngine.islandCount = 4;
+		MatrixIslands matrixIslands = new MatrixIslands(matrixEngine);
+
+		// Check a ring.
+		Assert.assertEquals(Arrays.asList(1), matrixIslands.neighbors(0));
+		Assert.assertEquals(Arrays.asList(0), matrixIslands.neighbors(3));
+
+		// Check a complete graph.
+		for (MatrixEngine island : matrixIslands.islands) {
+			island.islandTopology = MatrixEngine.ISLAND_TOPOLOGY.COMPLETE;
+		}
+		Assert.assertEquals(Arrays.asList(3, 0, 1), matrixIslands.neighbors(2));
+
+		// Check random neighbors.
+		for (MatrixEngine island : matrixIslands.islands) {
+			island.islandTopology = MatrixEngine.ISLAND_TOPOLOGY.RANDOM;
+		}
+		for (int trial = 0; trial < 100; trial++) {
+			int neighbor = matrixIslands.neighbors(1).get(0);
+			Assert.assertTrue((neighbor >= 0) && (neighbor < 4) &&
+					(neighbor != 1));
+		}
+
+		// Check that random neighbors use their own stream, which can be
+		// shared between threads.
+		Assert.assertSame(matrixIslands.topologyRandom(1),
+				matrixIslands.topologyRandom(1));
+		Assert.assertNotSame(matrixIslands.islands.get(1).getRandom(),
+				matrixIslands.topologyRandom(1));
+		final MatrixIslands sharedMatrixIslands = matrixIslands;
+		final AtomicInteger badNeighbors = new AtomicInteger();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int index = 0; index < 4; index++) {
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					for (int trial = 0; trial < 1000; trial++) {
+						int neighbor = sharedMatrixIslands.neighbors(1).get(0);
+						if ((neighbor < 0) || (neighbor >= 4) ||
+								(neighbor == 1)) {
+							badNeighbors.incrementAndGet();
+						}
+					}
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		Assert.assertEquals(0, badNeighbors.get());
+
+	}
+
+	/**
+	 * Test evolving islands with migration.
+	 */
+	@Test
+	public void testEvolve() {
+
+		// Evolve islands that migrate every generation.
+		MatrixEngine matrixEngine = MatrixEngine
+				.read(UtilTest.INPUT_TEST_MATRIX_SCENARIO_1_DIR);
+		matrixEngine.islandCount = 2;
+		matrixEngine.migrationInterval = 1;
+		matrixEngine.migrationSize = 3;
+		matrixEngine.fill();
+		double fitnessValue = matrixEngine.outputPopulation.getFitnessValue();
+		MatrixIslands matrixIslands = new MatrixIslands(matrixEngine);
+		matrixIslands.evolve(2);
+
+		// Check the migrations.
+		Assert.assertEquals(2 * 2 * 3, matrixIslands.migrantCount.get());
+
+		// Check the merged population.
+		MatrixPopulation matrixPopulation = matrixEngine.outputPopulation;
+		Assert.assertEquals(matrixEngine.populationSize,
+				matrixPopulation.size());
+		Assert.assertTrue(matrixPopulation.getFitnessValue() >= fitnessValue);
+		for (int index = 0; index < matrixPopulation.size(); index++) {
+			Assert.assertSame(matrixEngine,
+					matrixPopulation.get(index).getMatrixEngine());
+			if (index > 0) {
+				Assert.assertTrue(matrixPopulation.get(index - 1)
+						.getFitnessValue() >= matrixPopulation.get(index)
+						.getFitnessValue());
+			}
+		}
+
+	}
+
+}
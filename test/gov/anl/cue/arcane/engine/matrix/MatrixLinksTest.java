@@ -0,0 +1,209 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.junit.Assert;
+import org.junit.Test;
+
+import gov.anl.cue.arcane.engine.UtilTest;
+
+/**
+ * The MatrixLinksTest class is used to test the MatrixLinks class.
+ */
+public class MatrixLinksTest {
+
+	/** The example coefficients, with NaN for links that are not allowed. */
+	public static final double[][] COEFFICIENTS = {
+		{ 0.5, Double.NaN, 0.0 },
+		{ Double.NaN, Double.NaN, Double.NaN },
+		{ 0.25, 0.75, Double.NaN },
+	};
+
+	/**
+	 * Test the compressed rows and columns.
+	 */
+	@Test
+	public void testLinks() {
+
+		// Find the links.
+		MatrixLinks links = new MatrixLinks(
+				new Array2DRowRealMatrix(COEFFICIENTS));
+
+		// Check the rows.
+		Assert.assertEquals(4, links.count());
+		Assert.assertArrayEquals(new int[] { 0, 2, 2, 4 }, links.rowStarts);
+		Assert.assertArrayEquals(new int[] { 0, 2, 0, 1 }, links.rowColumns);
+
+		// Check the columns.
+		Assert.assertArrayEquals(new int[] { 0, 2, 3, 4 }, links.columnStarts);
+		Assert.assertArrayEquals(new int[] { 0, 2, 2, 0 }, links.columnRows);
+		Assert.assertArrayEquals(new int[] { 0, 2, 3, 1 }, links.columnLinks);
+		Assert.assertEquals(2, links.countColumn(0));
+		Assert.assertEquals(1, links.countColumn(1));
+		Assert.assertEquals(1, links.countColumn(2));
+
+	}
+
+	/**
+	 * Test the mask.
+	 */
+	@Test
+	public void testMask() {
+
+		// Check the allowed cells.
+		MatrixLinks links = new MatrixLinks(
+				new Array2DRowRealMatrix(COEFFICIENTS));
+		Assert.assertEquals(1, links.rowWords);
+		Assert.assertArrayEquals(new long[] { 5L, 0L, 3L }, links.mask);
+		for (int row = 0; row < COEFFICIENTS.length; row++) {
+			for (int column = 0; column < COEFFICIENTS[row].length; column++) {
+				Assert.assertEquals(!Double.isNaN(COEFFICIENTS[row][column]),
+						links.isAllowed(row, column));
+			}
+		}
+
+		// Check masks that need more than one word for each row.
+		Array2DRowRealMatrix coefficients = new Array2DRowRealMatrix(2, 130);
+		coefficients.setEntry(0, 64, Double.NaN);
+		coefficients.setEntry(1, 129, Double.NaN);
+		MatrixLinks wideLinks = new MatrixLinks(coefficients);
+		Assert.assertEquals(3, wideLinks.rowWords);
+		Assert.assertEquals(258, wideLinks.count());
+		Assert.assertFalse(wideLinks.isAllowed(0, 64));
+		Assert.assertTrue(wideLinks.isAllowed(0, 65));
+		Assert.assertFalse(wideLinks.isAllowed(1, 129));
+		Assert.assertEquals(65, wideLinks.rowColumns[64]);
+		Assert.assertEquals(1, wideLinks.countColumn(64));
+
+		// Check that adding links makes new links only when needed.
+		Assert.assertSame(links, links.addRow(0, links));
+		Assert.assertTrue(links.sameAs(new MatrixLinks(
+				new Array2DRowRealMatrix(COEFFICIENTS))));
+		MatrixLinks allLinks = new MatrixLinks(new Array2DRowRealMatrix(3, 3));
+		MatrixLinks newLinks = links.addRow(1, allLinks);
+		Assert.assertNotSame(links, newLinks);
+		Assert.assertFalse(links.sameAs(newLinks));
+		Assert.assertEquals(4, links.count());
+		Assert.assertEquals(7, newLinks.count());
+		Assert.assertArrayEquals(new int[] { 0, 2, 5, 7 }, newLinks.rowStarts);
+
+	}
+
+	/**
+	 * Test finding links for variables.
+	 */
+	@Test
+	public void testVariable() {
+
+		// Check that the links are found once and then kept.
+		MatrixVariable matrixVariable = new MatrixVariable();
+		matrixVariable.coefficients = new Array2DRowRealMatrix(COEFFICIENTS);
+		MatrixLinks links = matrixVariable.getLinks();
+		Assert.assertSame(links, matrixVariable.getLinks());
+
+		// Check that the links are found again for new dimensions.
+		matrixVariable.coefficients = new Array2DRowRealMatrix(2, 2);
+		Assert.assertNotSame(links, matrixVariable.getLinks());
+		Assert.assertEquals(4, matrixVariable.getLinks().count());
+
+		// Check that the links are not serialized.
+		Assert.assertFalse(matrixVariable.toString().contains("links"));
+
+	}
+
+	/**
+	 * Test that scanning links matches scanning every cell.
+	 */
+	@Test
+	public void testModel() {
+
+		// Read a model with disallowed links.
+		MatrixModel matrixModel = MatrixModel.read(new MatrixEngine(),
+				UtilTest.INPUT_TEST_DIR + "//MatrixModel_5.xlsx");
+
+		// Check the links against the cells.
+		for (MatrixVariable matrixVariable : matrixModel) {
+			MatrixLinks links = matrixVariable.getLinks();
+			int link = 0;
+			for (int row = 0; row < links.rowCount; row++) {
+				for (int column = 0; column < links.columnCount; column++) {
+					if (!Double.isNaN(matrixVariable.coefficients.getEntry(
+							row, column))) {
+						Assert.assertEquals(column, links.rowColumns[link++]);
+					}
+				}
+				Assert.assertEquals(link, links.rowStarts[row + 1]);
+			}
+		}
+
+		// Check that copies share the links.
+		MatrixModel childMatrixModel = matrixModel.copy();
+		for (int index = 0; index < matrixModel.size(); index++) {
+			Assert.assertSame(matrixModel.get(index).getLinks(),
+					childMatrixModel.get(index).getLinks());
+		}
+		MatrixModel grandchildMatrixModel = childMatrixModel.crossOver(
+				matrixModel);
+		Assert.assertSame(matrixModel.get(0).getLinks(),
+				grandchildMatrixModel.get(0).getLinks());
+
+		// Check that crossover notes new links in the child.
+		MatrixVariable childMatrixVariable = childMatrixModel.get(0);
+		MatrixLinks links = childMatrixVariable.getLinks();
+		int count = links.count();
+		childMatrixVariable.coefficients.setEntry(0, 0, Double.NaN);
+		Assert.assertEquals(count - 1, childMatrixVariable.getLinks().count());
+		matrixModel.crossOverScanVariablesCombineCoefficients(
+				matrixModel.get(0), childMatrixVariable);
+		Assert.assertEquals(count, childMatrixVariable.getLinks().count());
+		Assert.assertEquals(count, links.count());
+		Assert.assertEquals(matrixModel.get(0).coefficients.getEntry(0, 0),
+				childMatrixVariable.coefficients.getEntry(0, 0), 0.0);
+
+	}
+
+}
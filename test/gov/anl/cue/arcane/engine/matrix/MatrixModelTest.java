@@ -50,6 +50,7 @@ import gov.anl.cue.arcane.engine.UtilTest;
 import gov.anl.cue.arcane.engine.matrix.MatrixEngine;
 import gov.anl.cue.arcane.engine.matrix.MatrixModel;
 import gov.anl.cue.arcane.engine.matrix.MatrixModel.FITNESS_FUNCTION_TYPE;
+import gov.anl.cue.arcane.engine.matrix.MatrixVariable;
 
 import java.io.File;
 import java.io.IOException;
@@ -160,6 +161,35 @@ public class MatrixModelTest {
 	
 	}
 	
+	/**
+	 * Test split kernel.
+	 */
+	@Test
+	public void testSplitKernel() {
+
+		// Read in an example matrix for testing.
+		MatrixModel matrixModel = MatrixModel
+				.read(matrixEngine, UtilTest.INPUT_TEST_DIR + 
+				"//MatrixModel_17.xlsx");
+		Set<String> splits = matrixModel.splitKernel(
+				MatrixModel.NO_SUFFIX, MatrixModel.COMBINED_SUFFIX);
+		double[] coefficients = matrixModel.splitKernelCoefficients();
+
+		// Check the results.
+		Assert.assertEquals(matrixModel.split(MatrixModel.NO_SUFFIX,
+				MatrixModel.COMBINED_SUFFIX).size(), splits.size());
+		int terms = 0;
+		for (String split : splits) {
+			terms += split.split("this\\.coefficients\\[").length - 1;
+		}
+		Assert.assertEquals(coefficients.length, terms);
+		for (double coefficient : coefficients) {
+			Assert.assertTrue(coefficient != 0.0);
+			Assert.assertFalse(Double.isNaN(coefficient));
+		}
+	
+	}
+	
 	/**
 	 * Test copy.
 	 */
@@ -178,6 +208,50 @@ public class MatrixModelTest {
 
 	}
 
+	/**
+	 * Test structural copies against serialized copies.
+	 */
+	@Test
+	public void testCopyStructure() {
+
+		// Check several models.
+		for (String fileName : new String[] { "MatrixModel_5.xlsx",
+				"MatrixModel_12.xlsx", "MatrixModelTemplate_1.xlsx" }) {
+
+			// Copy the next model both ways.
+			MatrixModel matrixModel = fileName.contains("Template") ?
+					MatrixModel.importTemplate(matrixEngine,
+					UtilTest.INPUT_TEST_DIR + "//" + fileName) :
+					MatrixModel.read(matrixEngine,
+					UtilTest.INPUT_TEST_DIR + "//" + fileName);
+			matrixModel.getFitnessValue();
+			MatrixModel matrixModelCopy = matrixModel.copy();
+			Assert.assertTrue(fileName, Util.isEqual(
+					Util.deepCopy(matrixModel), matrixModelCopy));
+			Assert.assertSame(matrixEngine, matrixModelCopy.matrixEngine);
+			Assert.assertEquals(matrixModel.fitnessValue,
+					matrixModelCopy.fitnessValue);
+
+			// Check that the copy is independent of the original.
+			MatrixVariable matrixVariable = matrixModel.get(0);
+			MatrixVariable matrixVariableCopy = matrixModelCopy.get(0);
+			Assert.assertNotSame(matrixVariable.coefficients,
+					matrixVariableCopy.coefficients);
+			Assert.assertNotSame(matrixVariable.equations,
+					matrixVariableCopy.equations);
+			Assert.assertNotSame(matrixModel.nodeNames,
+					matrixModelCopy.nodeNames);
+			Assert.assertSame(matrixVariable.getLinks(),
+					matrixVariableCopy.getLinks());
+			Assert.assertSame(matrixVariable.units, matrixVariableCopy.units);
+			matrixVariableCopy.getValues()[0] += 1.0;
+			Assert.assertEquals(matrixVariable.getValues()[0] + 1.0,
+					matrixVariableCopy.getValues()[0], 0.0);
+
+		}
+
+	}
+
 	/**
 	 * Test cross over one.
 	 */
@@ -292,6 +366,46 @@ public class MatrixModelTest {
 
 	}
 
+	/**
+	 * Test skip sampling mutation.
+	 */
+	@Test
+	public void testMutateSkip() {
+
+		// Read in an example matrix for testing.
+		this.matrixEngine.mutationSampling = MatrixEngine.MUTATION_SAMPLING.SKIP;
+		MatrixModel matrixModel = MatrixModel.read(matrixEngine, UtilTest.INPUT_TEST_DIR
+				+ "//MatrixModel_6.xlsx");
+		int cellCount = 0;
+		for (MatrixVariable matrixVariable : matrixModel) {
+			cellCount += matrixVariable.getLinks().count();
+		}
+
+		// Check that the cells are mutated with the requested probability.
+		for (double probability : new double[] { 0.0, 0.1, 0.5, 1.0 }) {
+			this.matrixEngine.mutationProbabilityForCells = probability;
+			int trials = 500;
+			int mutations = 0;
+			for (int trial = 0; trial < trials; trial++) {
+				MatrixModel mutatedMatrixModel = matrixModel.copy();
+				mutatedMatrixModel.mutateScanVariables();
+				for (int index = 0; index < matrixModel.size(); index++) {
+					double[] values = matrixModel.get(index).getValues();
+					double[] mutatedValues =
+							mutatedMatrixModel.get(index).getValues();
+					for (int link = 0; link < values.length; link++) {
+						if (values[link] != mutatedValues[link]) {
+							mutations++;
+						}
+					}
+				}
+			}
+			Assert.assertEquals(probability, ((double) mutations) /
+					(trials * cellCount), 0.03);
+		}
+
+	}
+
 	/**
 	 * Test normalize.
 	 */
@@ -552,6 +666,119 @@ public class MatrixModelTest {
 
 	}
 
+	/**
+	 * Test run matrix model on disk.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testRunMatrixModelDisk() throws Exception {
+
+		// Make sure that the input files are cleared.
+		File source = new File(Util.TEMP_DIR + "//" +
+				MatrixModel.PACKAGE_PATH +
+				MatrixModel.CONCRETE_CLASS_NAME + ".java");
+		source.delete();
+
+		// Read in an example matrix for testing.
+		MatrixModel matrixModel = MatrixModel.read(matrixEngine,
+				UtilTest.INPUT_TEST_DIR + "//MatrixModel_12.xlsx");
+
+		// Request the on-disk debugging path.
+		matrixEngine.diskFormulation = true;
+
+		// Write, compile, and check a formulation.
+		Assert.assertEquals(
+				(Double) matrixModel.getFitnessValue(),
+				(Double) 2.4139874174668718E18);
+		
+		// Check that the files are specific to the formulation.
+		Assert.assertFalse(source.exists());
+		Assert.assertTrue(new File(Util.TEMP_DIR + "//" +
+				MatrixModel.PACKAGE_PATH +
+				matrixModel.formulationClass.getSimpleName() + ".java")
+				.exists());
+
+	}
+
+	/**
+	 * Test run matrix model class names.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testRunMatrixModelClassNames() throws Exception {
+
+		// Read in the same model for two separate engines.
+		MatrixModel matrixModel1 = MatrixModel.read(new MatrixEngine(),
+				UtilTest.INPUT_TEST_DIR + "//MatrixModel_12.xlsx");
+		MatrixModel matrixModel2 = MatrixModel.read(new MatrixEngine(),
+				UtilTest.INPUT_TEST_DIR + "//MatrixModel_12.xlsx");
+
+		// Check the formulations.
+		Assert.assertEquals(
+				(Double) matrixModel1.getFitnessValue(),
+				(Double) 2.4139874174668718E18);
+		Assert.assertEquals(
+				(Double) matrixModel2.getFitnessValue(),
+				(Double) 2.4139874174668718E18);
+
+		// Check that each formulation class has its own name.
+		Assert.assertTrue(matrixModel1.formulationClass.getName()
+				.startsWith(MatrixModel.PACKAGE_NAME + "."));
+		Assert.assertNotEquals(MatrixModel.CONCRETE_CLASS_NAME,
+				matrixModel1.formulationClass.getSimpleName());
+		Assert.assertNotEquals(matrixModel1.formulationClass.getName(),
+				matrixModel2.formulationClass.getName());
+
+	}
+
+	/**
+	 * Test run matrix model reuse.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testRunMatrixModelReuse() throws Exception {
+
+		// Read in an example matrix for testing.
+		MatrixModel matrixModel = MatrixModel.read(matrixEngine,
+				UtilTest.INPUT_TEST_DIR + "//MatrixModel_12.xlsx");
+
+		// Compile and check a formulation.
+		Assert.assertEquals(
+				(Double) matrixModel.getFitnessValue(),
+				(Double) 2.4139874174668718E18);
+		Assert.assertNotNull(matrixModel.formulationClass);
+
+		// Change a nonzero coefficient on a copy.
+		MatrixModel matrixModelCopy = matrixModel.copy();
+		MatrixVariable matrixVariable = matrixModelCopy.get(0);
+		for (int row = 0; row < matrixModelCopy.nodeCount(); row++) {
+			for (int column = 0; column < matrixModelCopy.nodeCount(); column++) {
+				double coefficient = matrixVariable.coefficients.getEntry(row, column);
+				if ((coefficient != 0.0) && !Double.isNaN(coefficient)) {
+					matrixVariable.coefficients.setEntry(row, column, coefficient / 2.0);
+				}
+			}
+		}
+		matrixModelCopy.fitnessValue = null;
+
+		// Check that the copy reuses the compiled formulation.
+		Double copyFitness = matrixModelCopy.getFitnessValue();
+		Assert.assertSame(matrixModel.formulationClass,
+				matrixModelCopy.formulationClass);
+
+		// Check the copy against a fresh compilation.
+		matrixEngine.getFormulationCache().clear();
+		matrixModelCopy.formulationClass = null;
+		matrixModelCopy.fitnessValue = null;
+		Assert.assertEquals(copyFitness, matrixModelCopy.getFitnessValue());
+		Assert.assertNotSame(matrixModel.formulationClass,
+				matrixModelCopy.formulationClass);
+
+	}
+
 	/**
 	 * Test run matrix model invalid.
 	 *
@@ -54,6 +54,11 @@ import gov.anl.cue.arcane.engine.matrix.MatrixPopulation;
 import java.io.IOException;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -102,6 +107,108 @@ public class MatrixPopulationTest {
 
 	}
 	
+	/**
+	 * Test copy.
+	 */
+	@Test
+	public void testCopy() {
+
+		// Copy a population.
+		MatrixEngine matrixEngine = new MatrixEngine();
+		MatrixPopulation matrixPopulation = MatrixPopulation.read(
+				UtilTest.INPUT_TEST_MATRIX_SCENARIO_1_DIR, matrixEngine);
+		MatrixEngine newMatrixEngine = new MatrixEngine();
+		MatrixPopulation matrixPopulationCopy = matrixPopulation.copy(
+				newMatrixEngine);
+
+		// Check the results.
+		Assert.assertTrue(Util.isEqual(matrixPopulation, matrixPopulationCopy));
+		Assert.assertSame(newMatrixEngine, matrixPopulationCopy.matrixEngine);
+		for (int index = 0; index < matrixPopulation.size(); index++) {
+			Assert.assertNotSame(matrixPopulation.get(index),
+					matrixPopulationCopy.get(index));
+			Assert.assertSame(newMatrixEngine,
+					matrixPopulationCopy.get(index).matrixEngine);
+		}
+
+	}
+
+	/**
+	 * Test adding matrix models one at a time and in batches.
+	 */
+	@Test
+	public void testAdd() {
+
+		// Create matrix models with many equal fitness values.
+		Random random = new Random(1);
+		List<MatrixModel> matrixModels = new ArrayList<MatrixModel>();
+		for (int index = 0; index < 200; index++) {
+			MatrixModel matrixModel = new MatrixModel(this.matrixEngine);
+			matrixModel.fitnessValue = (double) random.nextInt(10);
+			matrixModels.add(matrixModel);
+		}
+
+		// Find the expected order with a stable sort.
+		List<MatrixModel> expected = new ArrayList<MatrixModel>(matrixModels);
+		Collections.sort(expected, new Comparator<MatrixModel>() {
+			public int compare(MatrixModel left, MatrixModel right) {
+				return Double.compare(right.getFitnessValue(),
+						left.getFitnessValue());
+			}
+		});
+
+		// Add the matrix models one at a time and in batches.
+		MatrixPopulation matrixPopulation1 =
+				new MatrixPopulation(this.matrixEngine);
+		for (MatrixModel matrixModel : matrixModels) {
+			matrixPopulation1.add(matrixModel);
+		}
+		MatrixPopulation matrixPopulation2 =
+				new MatrixPopulation(this.matrixEngine);
+		for (int start = 0; start < matrixModels.size(); start += 37) {
+			matrixPopulation2.addAll(matrixModels.subList(start,
+					Math.min(start + 37, matrixModels.size())));
+		}
+
+		// Check the results. Matrix models are lists, so they are compared
+		// by identity.
+		List<MatrixModel> top = matrixPopulation1.top(5);
+		Assert.assertEquals(5, top.size());
+		Assert.assertEquals(expected.size(), matrixPopulation1.top(500).size());
+		for (int index = 0; index < expected.size(); index++) {
+			Assert.assertSame(expected.get(index), matrixPopulation1.get(index));
+			Assert.assertSame(expected.get(index), matrixPopulation2.get(index));
+			if (index < top.size()) {
+				Assert.assertSame(expected.get(index), top.get(index));
+			}
+		}
+
+		// Truncate the population and then add to it again.
+		matrixPopulation1.truncate(50);
+		Assert.assertEquals(50, matrixPopulation1.size());
+		for (int index = 0; index < 50; index++) {
+			Assert.assertSame(expected.get(index), matrixPopulation1.get(index));
+		}
+		int highCount = 0;
+		while ((highCount < 50) &&
+				(expected.get(highCount).getFitnessValue() >= 9.0)) {
+			highCount++;
+		}
+		MatrixModel matrixModel = new MatrixModel(this.matrixEngine);
+		matrixModel.fitnessValue = 9.0;
+		matrixPopulation1.add(matrixModel);
+		Assert.assertEquals(51, matrixPopulation1.size());
+		Assert.assertSame(matrixModel, matrixPopulation1.get(highCount));
+
+		// Check that models are placed correctly after other changes.
+		matrixPopulation2.set(0, matrixModel);
+		matrixModel = new MatrixModel(this.matrixEngine);
+		matrixModel.fitnessValue = 100.0;
+		matrixPopulation2.add(matrixModel);
+		Assert.assertSame(matrixModel, matrixPopulation2.get(0));
+
+	}
+
 	/**
 	 * Test get matrix engine.
 	 */
@@ -0,0 +1,126 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import org.apache.commons.math3.random.RandomDataGenerator;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The MatrixRandomTest class is used to test the MatrixRandom class.
+ */
+public class MatrixRandomTest {
+
+	/**
+	 * Test the commons-math source.
+	 */
+	@Test
+	public void testCommons() {
+
+		// Check that the source repeats the generator's sequence.
+		RandomDataGenerator generator = new RandomDataGenerator();
+		generator.reSeed(43);
+		MatrixRandom random = new MatrixRandom.Commons(new RandomDataGenerator());
+		random.reSeed(43);
+		for (int index = 0; index < 100; index++) {
+			Assert.assertEquals(generator.nextUniform(0.0, 1.0),
+					random.nextUniform(0.0, 1.0), 0.0);
+		}
+
+		// Check that split streams are repeatable.
+		check(new MatrixRandom.Commons(new RandomDataGenerator()));
+
+	}
+
+	/**
+	 * Test the splittable source.
+	 */
+	@Test
+	public void testSplittable() {
+
+		// Check the range.
+		MatrixRandom random = new MatrixRandom.Splittable(43);
+		for (int index = 0; index < 1000; index++) {
+			double value = random.nextUniform(2.0, 3.0);
+			Assert.assertTrue((value > 2.0) && (value <= 3.0));
+		}
+
+		// Check that split streams are repeatable.
+		check(new MatrixRandom.Splittable(0));
+
+	}
+
+	/**
+	 * Checks that streams split from reseeded sources are repeatable and
+	 * differ from each other.
+	 *
+	 * @param random the source
+	 */
+	public static void check(MatrixRandom random) {
+
+		// Split streams twice from the same seed.
+		random.reSeed(43);
+		MatrixRandom first = random.split();
+		MatrixRandom second = random.split();
+		random.reSeed(43);
+		MatrixRandom firstAgain = random.split();
+		MatrixRandom secondAgain = random.split();
+
+		// Check the streams.
+		boolean differ = false;
+		for (int index = 0; index < 100; index++) {
+			double value = first.nextUniform(0.0, 1.0);
+			Assert.assertEquals(value, firstAgain.nextUniform(0.0, 1.0), 0.0);
+			double otherValue = second.nextUniform(0.0, 1.0);
+			Assert.assertEquals(otherValue, secondAgain.nextUniform(0.0, 1.0),
+					0.0);
+			differ |= (value != otherValue);
+		}
+		Assert.assertTrue(differ);
+
+	}
+
+}
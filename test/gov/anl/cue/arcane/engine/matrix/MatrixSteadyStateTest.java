@@ -0,0 +1,193 @@
+/*
+ * Copyright © 2016, UChicago Argonne, LLC
+ * All Rights Reserved
+ * ARCANE (ANL-SF-15-108)
+ * Michael J. North, Argonne National Laboratory
+ * Pam Sydelko, Argonne National Laboratory
+ * Ignacio Martinez-Moyano
+ * 
+ * OPEN SOURCE LICENSE
+ * 
+ * Under the terms of Contract No. DE-AC02-06CH11357 with UChicago
+ * Argonne, LLC, the U.S. Government retains certain rights in this
+ * software.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1.	Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer. 
+ * 2.	Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ * 3.	Neither the names of UChicago Argonne, LLC or the Department of Energy
+ *      nor the names of its contributors may be used to endorse or promote
+ *      products derived from this software without specific prior written
+ *      permission. 
+ *  
+ * ****************************************************************************
+ * DISCLAIMER
+ * 
+ * THE SOFTWARE IS SUPPLIED “AS IS” WITHOUT WARRANTY OF ANY KIND.
+ * 
+ * NEITHER THE UNTED STATES GOVERNMENT, NOR THE UNITED STATES DEPARTMENT OF
+ * ENERGY, NOR UCHICAGO ARGONNE, LLC, NOR ANY OF THEIR EMPLOYEES, MAKES ANY
+ * WARRANTY, EXPRESS OR IMPLIED, OR ASSUMES ANY LEGAL LIABILITY OR
+ * RESPONSIBILITY FOR THE ACCURACY, COMPLETENESS, OR USEFULNESS OF ANY
+ * INFORMATION, DATA, APPARATUS, PRODUCT, OR PROCESS DISCLOSED, OR REPRESENTS
+ * THAT ITS USE WOULD NOT INFRINGE PRIVATELY OWNED RIGHTS.
+ * 
+ ******************************************************************************
+ *
+ * @author Michael J. North
+ * @version 1.1.0
+ * 
+*/
+package gov.anl.cue.arcane.engine.matrix;
+
+import gov.anl.cue.arcane.engine.UtilTest;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The MatrixSteadyStateTest class is used to test the MatrixSteadyState
+ * class.
+ */
+public class MatrixSteadyStateTest {
+
+	/**
+	 * Test evolving with several workers.
+	 */
+	@Test
+	public void testEvolve() {
+
+		// Read an engine.
+		MatrixEngine matrixEngine = MatrixEngine
+				.read(UtilTest.INPUT_TEST_MATRIX_SCENARIO_1_DIR);
+		matrixEngine.fill();
+		double bestFitnessValue = matrixEngine.outputPopulation.get(0)
+				.getFitnessValue();
+
+		// Evolve.
+		matrixEngine.steadyStateThreads = 4;
+		long checkCount = matrixEngine.getFormulationLifetime().checkCount;
+		MatrixSteadyState matrixSteadyState =
+				new MatrixSteadyState(matrixEngine);
+		matrixSteadyState.evolve(3);
+
+		// Check the results.
+		Assert.assertEquals(3 * Math.round(matrixEngine.populationSize / 2.0),
+				matrixSteadyState.birthCount.get());
+		Assert.assertEquals(checkCount + 3,
+				matrixEngine.getFormulationLifetime().checkCount);
+		MatrixPopulation matrixPopulation = matrixEngine.outputPopulation;
+		Assert.assertEquals(matrixEngine.populationSize,
+				matrixPopulation.size());
+		Assert.assertTrue(matrixPopulation.get(0).getFitnessValue() >=
+				bestFitnessValue);
+		for (int index = 1; index < matrixPopulation.size(); index++) {
+			Assert.assertTrue(matrixPopulation.get(index - 1).fitnessValue >=
+					matrixPopulation.get(index).fitnessValue);
+			Assert.assertSame(matrixEngine,
+					matrixPopulation.get(index).getMatrixEngine());
+		}
+
+	}
+
+	/**
+	 * Test that evolving with one worker is repeatable.
+	 */
+	@Test
+	public void testEvolveOneThread() {
+
+		// Evolve two engines the same way.
+		MatrixEngine matrixEngine1 = MatrixEngine
+				.read(UtilTest.INPUT_TEST_MATRIX_SCENARIO_1_DIR);
+		matrixEngine1.evolutionMode = MatrixEngine.EVOLUTION_MODE.STEADY_STATE;
+		matrixEngine1.steadyStateThreads = 1;
+		matrixEngine1.evolve(2);
+		MatrixEngine matrixEngine2 = MatrixEngine
+				.read(UtilTest.INPUT_TEST_MATRIX_SCENARIO_1_DIR);
+		matrixEngine2.evolutionMode = MatrixEngine.EVOLUTION_MODE.STEADY_STATE;
+		matrixEngine2.steadyStateThreads = 1;
+		matrixEngine2.evolve(2);
+
+		// Check the results.
+		Assert.assertEquals(matrixEngine1.populationSize,
+				matrixEngine1.outputPopulation.size());
+		for (int index = 0; index < matrixEngine1.outputPopulation.size();
+				index++) {
+			Assert.assertEquals(
+					matrixEngine1.outputPopulation.get(index).fitnessValue,
+					matrixEngine2.outputPopulation.get(index).fitnessValue);
+		}
+
+	}
+
+	/**
+	 * Test evolving islands in steady state.
+	 */
+	@Test
+	public void testEvolveIslands() {
+
+		// Evolve two islands in steady state.
+		MatrixEngine matrixEngine = MatrixEngine
+				.read(UtilTest.INPUT_TEST_MATRIX_SCENARIO_1_DIR);
+		matrixEngine.evolutionMode = MatrixEngine.EVOLUTION_MODE.STEADY_STATE;
+		matrixEngine.steadyStateThreads = 2;
+		matrixEngine.islandCount = 2;
+		matrixEngine.migrationInterval = 1;
+		matrixEngine.fill();
+		MatrixIslands matrixIslands = new MatrixIslands(matrixEngine);
+		for (MatrixEngine island : matrixIslands.islands) {
+			Assert.assertEquals(MatrixEngine.EVOLUTION_MODE.STEADY_STATE,
+					island.getEvolutionMode());
+			Assert.assertEquals(2, island.getSteadyStateThreads());
+		}
+		matrixIslands.evolve(2);
+
+		// Check the results.
+		Assert.assertEquals(matrixEngine.populationSize,
+				matrixEngine.outputPopulation.size());
+		for (MatrixModel matrixModel : matrixEngine.outputPopulation) {
+			Assert.assertSame(matrixEngine, matrixModel.getMatrixEngine());
+		}
+
+	}
+
+	/**
+	 * Test evolving with an evaluation farm.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testEvolveFarm() throws Exception {
+
+		// Start a farm with one worker.
+		MatrixEngine matrixEngine = MatrixEngine
+				.read(UtilTest.INPUT_TEST_MATRIX_SCENARIO_1_DIR);
+		matrixEngine.fill();
+		MatrixEvaluationFarm farm = new MatrixEvaluationFarm(matrixEngine);
+		int port = farm.start(0);
+		MatrixEvaluationFarmTest.startWorker(
+				new MatrixEvaluationWorker("localhost", port, 2));
+		Assert.assertTrue(farm.awaitWorkers(1, 10000));
+
+		// Evolve.
+		matrixEngine.evaluationFarm = farm;
+		matrixEngine.steadyStateThreads = 3;
+		MatrixSteadyState matrixSteadyState =
+				new MatrixSteadyState(matrixEngine);
+		matrixSteadyState.evolve(2);
+		farm.close();
+
+		// Check that the new matrix models were evaluated on the farm.
+		Assert.assertEquals(matrixSteadyState.birthCount.get(),
+				farm.requestIds.get());
+		Assert.assertEquals(matrixEngine.populationSize,
+				matrixEngine.outputPopulation.size());
+
+	}
+
+}
@@ -55,6 +55,8 @@ import java.io.IOException;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.BlockRealMatrix;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -150,4 +152,62 @@ public class MatrixVariableTest {
 
 	}
 
+	/**
+	 * Test the bulk row operations.
+	 */
+	@Test
+	public void testRows() {
+
+		// Create the variables.
+		MatrixVariable matrixVariable = new MatrixVariable();
+		matrixVariable.coefficients = new Array2DRowRealMatrix(
+				MatrixLinksTest.COEFFICIENTS);
+		MatrixVariable thatMatrixVariable = new MatrixVariable();
+		thatMatrixVariable.coefficients = new Array2DRowRealMatrix(
+				new double[][] {
+					{ 1.0, 2.0, Double.NaN },
+					{ Double.NaN, Double.NaN, Double.NaN },
+					{ 4.0, Double.NaN, 8.0 },
+				});
+
+		// Check that the values are the stored coefficients.
+		matrixVariable.getValues()[1] = 3.0;
+		Assert.assertEquals(3.0, matrixVariable.coefficients.getEntry(0, 2), 0.0);
+
+		// Check the sums and scaling, which skip disallowed cells.
+		Assert.assertEquals(3.5, matrixVariable.sumRow(0, 0.0), 0.0);
+		Assert.assertEquals(0.0, matrixVariable.sumRow(1, 0.0), 0.0);
+		matrixVariable.scaleRow(0, 2.0);
+		Assert.assertEquals(0.25, matrixVariable.coefficients.getEntry(0, 0), 0.0);
+		Assert.assertTrue(Double.isNaN(matrixVariable.coefficients.getEntry(0, 1)));
+		Assert.assertEquals(1.5, matrixVariable.coefficients.getEntry(0, 2), 0.0);
+
+		// Check the combinations, which add new links as needed.
+		Assert.assertFalse(matrixVariable.combineRow(1, thatMatrixVariable));
+		Assert.assertTrue(matrixVariable.combineRow(2, thatMatrixVariable));
+		Assert.assertArrayEquals(new double[] { 4.25, 0.75, 8.0 },
+				matrixVariable.coefficients.getRow(2), 0.0);
+		Assert.assertEquals(5, matrixVariable.getLinks().count());
+
+		// Check the copies.
+		matrixVariable.copyRow(0, thatMatrixVariable);
+		Assert.assertArrayEquals(new double[] { 1.0, 2.0, 1.5 },
+				matrixVariable.coefficients.getRow(0), 0.0);
+		Assert.assertEquals(6, matrixVariable.getLinks().count());
+
+		// Check that other matrices are converted to values.
+		matrixVariable.coefficients = new BlockRealMatrix(
+				MatrixLinksTest.COEFFICIENTS);
+		Assert.assertEquals(0.75, matrixVariable.getValues()[3], 0.0);
+		Assert.assertTrue(matrixVariable.coefficients
+				instanceof MatrixCoefficients);
+
+		// Check that the values are written as a full matrix.
+		Assert.assertTrue(matrixVariable.toString().contains(
+				Array2DRowRealMatrix.class.getName()));
+		Assert.assertArrayEquals(MatrixLinksTest.COEFFICIENTS[2],
+				Util.deepCopy(matrixVariable).coefficients.getRow(2), 0.0);
+
+	}
+
 }